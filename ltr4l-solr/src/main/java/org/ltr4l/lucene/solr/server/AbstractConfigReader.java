@@ -19,12 +19,16 @@ package org.ltr4l.lucene.solr.server;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.lucene.util.IOUtils;
 import org.apache.solr.core.SolrResourceLoader;
+import org.ltr4l.tools.BinaryModel;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Map;
 
 public abstract class AbstractConfigReader {
@@ -39,6 +43,10 @@ public abstract class AbstractConfigReader {
     configMap = path == null ? configMap : (Map)configMap.get(path);
   }
 
+  protected AbstractConfigReader(Map configMap) {
+    this.configMap = configMap;
+  }
+
   public AbstractConfigReader(String content) throws IOException {
     if(content != null) {
       InputStream is = new ByteArrayInputStream(content.getBytes());
@@ -51,15 +59,35 @@ public abstract class AbstractConfigReader {
     }
   }
 
+  /**
+   * Loads a JSON file. For a model in the binary format of {@link BinaryModel}, only its "config" is loaded.
+   */
   public static Map load(SolrResourceLoader loader, String fileName) throws IOException {
     if(loader == null)
       loader = new SolrResourceLoader();
     InputStream is = loader.openResource(fileName);
-    try (InputStreamReader ir = new InputStreamReader(is, StandardCharsets.UTF_8)){
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int numRead;
+      while(0 <= (numRead = is.read(buf)))
+        bytes.write(buf, 0, numRead);
       ObjectMapper mapper = new ObjectMapper();
-      return mapper.readValue(ir, Map.class);
+      byte[] content = bytes.toByteArray();
+      if (BinaryModel.isBinary(content))
+        return load(BinaryModel.read(ByteBuffer.wrap(content)));
+      try (InputStreamReader ir = new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)){
+        return mapper.readValue(ir, Map.class);
+      }
     } finally {
       IOUtils.closeWhileHandlingException(is);
     }
   }
+
+  /**
+   * Loads the "config" of a model in the binary format, as {@link #load(SolrResourceLoader, String)} does.
+   */
+  public static Map load(BinaryModel model) throws IOException {
+    return Collections.singletonMap("config", new ObjectMapper().treeToValue(model.getField("config"), Map.class));
+  }
 }
@@ -18,6 +18,7 @@ package org.ltr4l.lucene.solr.server;
 
 import org.apache.solr.core.SolrResourceLoader;
 import org.ltr4l.Ranker;
+import org.ltr4l.tools.BinaryModel;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -26,22 +27,35 @@ import java.util.Map;
 public class DefaultLTRModelReader extends AbstractConfigReader {
   protected String solrHome;
   protected String algorithm;
+  protected boolean compile;
   protected Reader reader;
+  protected BinaryModel binaryModel;  //Instead of reader, for a model in the binary format.
 
   public DefaultLTRModelReader(String fileName) throws IOException {
     this(null, fileName);
   }
 
   public DefaultLTRModelReader(SolrResourceLoader loader, String fileName) throws IOException {
-    super(loader, fileName);
-    algorithm = (String)((Map)configMap.get("config")).get("algorithm");
+    this(loader, fileName, getSolrHome(loader));
+  }
 
-    if (loader == null) {
-      loader = new SolrResourceLoader();
-      solrHome = loader.locateSolrHome().toString();
-    } else {
-      solrHome = loader.getInstancePath().toString();
-    }
+  private DefaultLTRModelReader(SolrResourceLoader loader, String fileName, String solrHome) throws IOException {
+    this(loader, fileName, solrHome, readBinaryModel(solrHome + "/" + fileName));
+  }
+
+  // A binary model is memory mapped once, and both its config and the ranker are loaded from it without parsing JSON.
+  private DefaultLTRModelReader(SolrResourceLoader loader, String fileName, String solrHome, BinaryModel binaryModel) throws IOException {
+    super(binaryModel != null ? load(binaryModel) : load(loader, fileName));
+    this.solrHome = solrHome;
+    this.binaryModel = binaryModel;
+    Map config = (Map)configMap.get("config");
+    algorithm = (String)config.get("algorithm");
+    // "compile" : true in the params of the model config compiles the model into a Java class.
+    Map params = (Map)config.get("params");
+    compile = params != null && Boolean.parseBoolean(String.valueOf(params.get("compile")));
+
+    if (binaryModel != null)
+      return;
 
     // To avoid opening model files every time when getting ranker.
     StringBuilder sb = new StringBuilder();
@@ -59,8 +73,21 @@ public class DefaultLTRModelReader extends AbstractConfigReader {
     reader = new CharArrayReader(sb.toString().toCharArray());
   }
 
+  private static String getSolrHome(SolrResourceLoader loader) {
+    if (loader == null)
+      return new SolrResourceLoader().locateSolrHome().toString();
+    return loader.getInstancePath().toString();
+  }
+
+  //Returns null if the file is not in the binary format.
+  private static BinaryModel readBinaryModel(String file) throws IOException {
+    return BinaryModel.isBinary(file) ? BinaryModel.read(file) : null;
+  }
+
   public Ranker getRanker() throws IOException{
-    return Ranker.RankerFactory.getFromModel(reader);
+    if (binaryModel != null)
+      return Ranker.RankerFactory.getFromModel(binaryModel, compile);
+    return Ranker.RankerFactory.getFromModel(reader, compile);
   }
 
   public String getAlgorithm() {
@@ -25,10 +25,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.ltr4l.boosting.AdaBoost;
 import org.ltr4l.boosting.Ensemble;
 import org.ltr4l.boosting.RankBoost;
+import org.ltr4l.compiler.ModelCompiler;
 import org.ltr4l.nn.*;
 import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
 import org.ltr4l.query.Query;
+import org.ltr4l.tools.BinaryModel;
 import org.ltr4l.tools.Config;
+import org.ltr4l.tools.IndexSorter;
 import org.ltr4l.trainers.*;
 import org.ltr4l.trainers.OAPBPMTrainer.*;
 import org.ltr4l.trainers.PRankTrainer.*;
@@ -43,21 +47,199 @@ import org.ltr4l.trainers.PRankTrainer.*;
  */
 public abstract class Ranker<C extends Config> {
 
+  /**
+   * Writes the model to file, as JSON, or in the format of {@link BinaryModel} if the format of model in config is "binary".
+   */
   public void writeModel(C config, String file) throws IOException {
+    if (config != null && config.model != null && "binary".equals(config.model.format)) {
+      writeBinaryModel(config, file);
+      return;
+    }
     try(Writer writer = new FileWriter(file)){
       writeModel(config, writer);
     }
   }
 
+  /**
+   * Writes the model in the format of {@link BinaryModel}, which loads faster than JSON.
+   */
+  public void writeBinaryModel(C config, String file) throws IOException {
+    StringWriter json = new StringWriter();
+    writeModel(config, json);
+    BinaryModel.fromJson(new StringReader(json.toString()), getNumFeatures()).write(file);
+  }
+
+  /**
+   * @return number of features the model reads, i.e. the highest feature id it uses + 1, or -1 if unknown.
+   */
+  public int getNumFeatures() {
+    return -1;
+  }
+
   public abstract void writeModel(C config, Writer writer) throws IOException;
   public abstract double predict(List<Double> features);
 
+  /**
+   * Predicts the score of a document. Rankers which can skip the features which are not stored
+   * in sparse documents (e.g. linear models) override this.
+   * @param doc document to score.
+   * @return score.
+   */
+  public double predict(Document doc) {
+    return predict(doc.getFeatures());
+  }
+
+  /**
+   * Predicts the score of a feature vector. Rankers override this to avoid boxing the features.
+   * @param features features of a document.
+   * @return score.
+   */
+  public double predict(double[] features) {
+    return predict(asList(features));
+  }
+
+  /**
+   * Whether predict can be called from several threads at once, e.g. by {@link org.ltr4l.evaluation.MetricSet}.
+   * Rankers which keep state while predicting, such as the outputs of the nodes of a network, are not.
+   */
+  public boolean isThreadSafe() {
+    return false;
+  }
+
+  /**
+   * Copies the parameters of the model, e.g. so that a trainer can go back to the best iteration.
+   * @return a copy of the parameters, or null if this ranker does not support it.
+   */
+  public double[] copyParameters() {
+    return null;
+  }
+
+  /**
+   * Puts back parameters returned by {@link #copyParameters()} of this ranker.
+   */
+  public void restoreParameters(double[] parameters) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot restore its parameters.");
+  }
+
+  /**
+   * Scores the documents in one call. Rankers override this when scoring many documents together
+   * is cheaper than scoring them one by one.
+   * @param docs documents to score.
+   * @return scores, in the order of docs.
+   */
+  public double[] predictBatch(List<Document> docs) {
+    double[] scores = new double[docs.size()];
+    for (int i = 0; i < scores.length; i++)
+      scores[i] = predict(docs.get(i));
+    return scores;
+  }
+
+  public double[] predictBatch(Query query) {
+    return predictBatch(query.getDocList());
+  }
+
+  /**
+   * Scores all documents of matrix.
+   * @param matrix documents to score.
+   * @return scores, indexed by the ordinal of the documents in matrix.
+   */
+  public double[] predictBatch(FeatureMatrix matrix) {
+    int numFeatures = matrix.getNumFeatures();
+    double[] rows = matrix.getRowMajor();
+    double[] row = new double[numFeatures];
+    double[] scores = new double[matrix.getNumDocs()];
+    for (int d = 0; d < scores.length; d++) {
+      System.arraycopy(rows, d * numFeatures, row, 0, numFeatures);
+      scores[d] = predict(row);
+    }
+    return scores;
+  }
+
+  /**
+   * Sorts the documents of the query by score, from high to low. Each document is scored once.
+   */
   public List<Document> sort(Query query) {
-    List<Document> ranks = new ArrayList<>(query.getDocList());
-    ranks.sort((docA, docB) -> Double.compare(predict(docB.getFeatures()), predict(docA.getFeatures()))); //reversed for high to low.
+    List<Document> docs = query.getDocList();
+    int[] order = IndexSorter.argsort(predictBatch(docs), true);  //Stable, so ties keep the order of the query.
+    List<Document> ranks = new ArrayList<>(docs.size());
+    for (int i : order)
+      ranks.add(docs.get(i));
     return ranks;
   }
 
+  /**
+   * Ranks only the top k documents of the query, which is cheaper than {@link #sort(Query)} when k is small.
+   * @param query query to rank.
+   * @param k number of documents to order.
+   * @return all documents of the query; the first k are the same as in {@link #sort(Query)}, the rest are not ordered.
+   */
+  public List<Document> topK(Query query, int k) {
+    List<Document> docs = query.getDocList();
+    return topK(docs, predictBatch(docs), k);
+  }
+
+  /**
+   * Same as {@link #topK(Query, int)}, for documents which were already scored.
+   * @param docs documents to rank.
+   * @param scores scores of docs, e.g. from {@link #predictBatch(List)}.
+   * @param k number of documents to order.
+   */
+  public static List<Document> topK(List<Document> docs, double[] scores, int k) {
+    int[] order = IndexSorter.selectTop(scores, k);
+    List<Document> ranks = new ArrayList<>(docs.size());
+    for (int i : order)
+      ranks.add(docs.get(i));
+    return ranks;
+  }
+
+  /**
+   * Returns a read-only List view of features, for rankers which only implement {@link #predict(List)}.
+   */
+  protected static List<Double> asList(double[] features) {
+    return new AbstractList<Double>() {
+      @Override
+      public Double get(int index) {
+        return features[index];
+      }
+
+      @Override
+      public int size() {
+        return features.length;
+      }
+    };
+  }
+
+  /**
+   * Returns features if they have at least minLength values, or a copy padded with 0, for rankers which read
+   * features by index up to minLength.
+   */
+  protected static double[] toArray(double[] features, int minLength) {
+    return features.length < minLength ? Arrays.copyOf(features, minLength) : features;
+  }
+
+  /**
+   * Copies features into a new array, padded with 0 up to minLength.
+   */
+  protected static double[] toArray(List<Double> features, int minLength) {
+    double[] array = new double[Math.max(features.size(), minLength)];
+    for (int i = 0; i < features.size(); i++)
+      array[i] = features.get(i);
+    return array;
+  }
+
+  /**
+   * Copies the features of doc, padded with 0 up to minLength, into buffer if it has the right length, or into a new array.
+   */
+  protected static double[] toArray(Document doc, int minLength, double[] buffer) {
+    int length = Math.max(doc.getFeatureLength(), minLength);
+    if (buffer == null || buffer.length != length)
+      buffer = new double[length];
+    else if (doc.getFeatureLength() < length)
+      Arrays.fill(buffer, doc.getFeatureLength(), length, 0d);
+    doc.copyFeatures(buffer, 0);
+    return buffer;
+  }
+
   private static String makeRegex(String regex, int num){
     StringBuilder splitter = new StringBuilder();
     for (int i = 0; i < num; i++){
@@ -188,6 +370,43 @@ public abstract class Ranker<C extends Config> {
       return getFromModel(algorithm, br); //Pass br to avoid problems with StringReader, FileReader, etc...
     }
 
+    /**
+     * Same as {@link #getFromModel(Reader)}, and compiles the model with {@link ModelCompiler} if compile is true.
+     * Models which cannot be compiled are returned as read.
+     */
+    public static Ranker<?> getFromModel(Reader reader, boolean compile) throws IOException{
+      Ranker<?> ranker = getFromModel(reader);
+      return compileIf(ranker, compile);
+    }
+
+    //Captures the config type of ranker, so that ModelCompiler.compile is called on a typed ranker.
+    private static <C extends Config> Ranker<C> compileIf(Ranker<C> ranker, boolean compile){
+      return compile ? ModelCompiler.compile(ranker) : ranker;
+    }
+
+    /**
+     * Same as {@link #getFromModel(Reader)}, for a model in the binary format.
+     */
+    public static Ranker<?> getFromModel(BinaryModel model) {
+      return getFromModel(model.getAlgorithm().toLowerCase(), model.newReader());
+    }
+
+    public static Ranker<?> getFromModel(BinaryModel model, boolean compile) {
+      Ranker<?> ranker = getFromModel(model);
+      return compileIf(ranker, compile);
+    }
+
+    /**
+     * Reads a model file, in JSON or in the binary format, and compiles it if compile is true.
+     */
+    public static Ranker<?> getFromModelFile(String file, boolean compile) throws IOException {
+      if (BinaryModel.isBinary(file))
+        return getFromModel(BinaryModel.read(file), compile);
+      try (Reader reader = new FileReader(file)) {
+        return getFromModel(reader, compile);
+      }
+    }
+
     public static Ranker getFromModel(String algorithm, Reader reader) {
       String alg = algorithm;
       try {
@@ -210,11 +429,11 @@ public abstract class Ranker<C extends Config> {
           case "listnet":
             return new ListNetMLP(reader);
           case "lambdamart":
-            return new Ensemble(reader);
+            return Ensemble.readScorer(reader);
           case "rankboost":
-            return new RankBoost(reader);
+            return AdaBoost.readScorer(reader, true);
           case "adaboost":
-            return new AdaBoost(reader);
+            return AdaBoost.readScorer(reader, false);
           default:
             throw new IllegalArgumentException("Specified algorithm does not exist.");
         }
@@ -18,6 +18,8 @@ package org.ltr4l.boosting;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.tools.BinaryModel;
 
 import java.io.IOException;
 import java.io.Reader;
@@ -45,6 +47,16 @@ public class AdaBoost extends Ranker<RankBoost.RankBoostConfig> {
     mapper.writeValue(writer, model);
   }
 
+  @Override
+  public int getNumFeatures() {
+    return learners.stream().mapToInt(WeakLearner::getFid).max().orElse(-1) + 1;
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public double predict(List<Double> features) {
     //For binary prediction
@@ -53,22 +65,78 @@ public class AdaBoost extends Ranker<RankBoost.RankBoostConfig> {
     //return learners.stream().mapToDouble(learner -> learner.predict(features)).sum() / learners.size();
   }
 
+  @Override
+  public double predict(double[] features) {
+    int sum = 0;
+    for (WeakLearner learner : learners)
+      sum += (int) learner.predict(features);
+    return Math.signum(sum);
+  }
+
+  @Override
+  public double predict(Document doc) {
+    int sum = 0;
+    for (WeakLearner learner : learners)
+      sum += (int) learner.predict(doc);
+    return Math.signum(sum);
+  }
+
   public List<WeakLearner> readModel(Reader reader){
-    List<WeakLearner> wls = new ArrayList<>();
+    return toLearners(readSavedModel(reader));
+  }
+
+  /**
+   * Reads a model for scoring, in the layout chosen by the "scorer" param of its config: "table" (default)
+   * for {@link ThresholdTable}, or "learners" for AdaBoost or RankBoost.
+   * @param rankBoost whether the model is a RankBoost model, or an AdaBoost one.
+   */
+  public static Ranker<RankBoost.RankBoostConfig> readScorer(Reader reader, boolean rankBoost){
+    RankBoost.SavedModel savedModel = readSavedModel(reader);
+    AdaBoost model = rankBoost ? new RankBoost() : new AdaBoost();
+    toLearners(savedModel).forEach(model::addLearner);
+    String scorer = savedModel.config != null && savedModel.config.params != null ? savedModel.config.getScorer() : "table";
+    switch (scorer) {
+      case "table":
+        return new ThresholdTable(model);
+      case "learners":
+        return model;
+      default:
+        throw new IllegalArgumentException("scorer must be table or learners: " + scorer);
+    }
+  }
+
+  private static RankBoost.SavedModel readSavedModel(Reader reader){
     try{
       Objects.requireNonNull(reader);
       ObjectMapper mapper = new ObjectMapper();
-      RankBoost.SavedModel model = mapper.readValue(reader, RankBoost.SavedModel.class);
+      RankBoost.SavedModel model = BinaryModel.readValue(mapper, reader, RankBoost.SavedModel.class);
       model.assertLengths();
-      for(int i = 0; i < model.thresholds.length; i++)
-        wls.add(new WeakLearner(model.features[i], model.thresholds[i], model.weights[i]));
+      return model;
     } catch(IOException e){
       throw new RuntimeException(e);
     }
+  }
+
+  private static List<WeakLearner> toLearners(RankBoost.SavedModel model){
+    List<WeakLearner> wls = new ArrayList<>();
+    for(int i = 0; i < model.thresholds.length; i++)
+      wls.add(new WeakLearner(model.features[i], model.thresholds[i], model.weights[i]));
     return wls;
   }
 
   public void addLearner(WeakLearner wl){
     learners.add(wl);
   }
+
+  public List<WeakLearner> getLearners(){
+    return learners;
+  }
+
+  /**
+   * Keeps only the first numLearners learners, e.g. those up to the best iteration of training.
+   */
+  public void truncate(int numLearners){
+    if (numLearners < learners.size())
+      learners.subList(numLearners, learners.size()).clear();
+  }
 }
@@ -20,17 +20,34 @@ import org.ltr4l.query.RankedDocs;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class AdaWeakLearner extends WeakLearner {
 
   public static WeakLearner findWeakLearner(double[][] distribution, List<RankedDocs> queries, int numSteps){ //For Adaboost.
-    RankBoostTools tools = new RankBoostTools(distribution, queries);
+    return findWeakLearner(distribution, queries, numSteps, null);
+  }
+
+  /**
+   * @param pool pool on which features are searched in parallel, or null to search sequentially.
+   */
+  public static WeakLearner findWeakLearner(double[][] distribution, List<RankedDocs> queries, int numSteps, ForkJoinPool pool){
+    TreeTools tools = new RankBoostTools(distribution, queries).setPool(pool);
     List<Document> docs = new ArrayList<>();
     queries.forEach(rd -> docs.addAll(rd.getRankedDocs()));
     OptimalLeafLoss optLoss = tools.findMinLeafThreshold(docs, numSteps);
-    double r = 1 / optLoss.getMinLoss();
-    double alpha = 0.5 * Math.log((1 + r) / (1 - r));
-    return new AdaWeakLearner(optLoss.getOptimalFeature(), optLoss.getOptimalThreshold(), alpha);
+    return new AdaWeakLearner(optLoss.getOptimalFeature(), optLoss.getOptimalThreshold(), getAlpha(optLoss));
+  }
+
+  /**
+   * Same as {@link #findWeakLearner(double[][], List, int, ForkJoinPool)}, searching features sorted once in features.
+   * @param features features of the documents of distribution, in order.
+   */
+  public static WeakLearner findWeakLearner(double[][] distribution, PresortedFeatures features, int numSteps, ForkJoinPool pool){
+    RankBoostTools tools = new RankBoostTools(distribution);
+    tools.setPool(pool);
+    OptimalLeafLoss optLoss = tools.findMinLeafThreshold(features, numSteps);
+    return new AdaWeakLearner(optLoss.getOptimalFeature(), optLoss.getOptimalThreshold(), getAlpha(optLoss));
   }
 
   protected AdaWeakLearner(int fid, double threshold, double alpha) {
@@ -38,7 +55,7 @@ public class AdaWeakLearner extends WeakLearner {
   }
 
   @Override
-  protected int calculateScore(List<Double> features){
-    return features.get(fid) < threshold ? -1 : 1;
+  protected int calculateScore(double feature){
+    return feature < threshold ? -1 : 1;
   }
 }
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.boosting;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Read-only {@link Ensemble} compressed so that the data read for scoring stays small.
+ *
+ * Each split compares a feature with one of the distinct thresholds the ensemble uses for that feature. The threshold
+ * is stored as its 16 bit index into the sorted thresholds of the feature, and a document is scored by first finding
+ * the index of each of its features among those thresholds, so the thresholds give the same splits as the original trees.
+ * Leaf values are stored as floats, or as shorts scaled by the largest leaf value. Identical leaves and subtrees are
+ * stored once, and trees whose leaf values are all within pruneEpsilon of 0 are dropped, which changes scores by at
+ * most pruneEpsilon per tree.
+ */
+public class CompressedEnsemble extends Ranker<Ensemble.TreeConfig> {
+  private static final int MAX_INDEX = 0xFFFF;  //of features and thresholds, which are stored in 16 bits each
+
+  private final int[] roots;        //first node of each tree, or ~leaf
+  private final int[] splits;       //feature << 16 | threshold index
+  private final int[] children;     //left and right child of each node; a child c < 0 is leaf ~c
+  private final float[] floatLeaves;
+  private final short[] shortLeaves;
+  private final double leafScale;   //of shortLeaves
+  private final int[] features;     //features which have splits
+  private final double[][] grids;   //distinct thresholds of each feature in ascending order, or null
+  private final int numFeatures;
+  private final int numTrees;       //before pruning
+
+  /**
+   * @param leafPrecision "float" or "short".
+   * @param pruneEpsilon trees whose leaf values are all in [-pruneEpsilon, pruneEpsilon] are dropped.
+   */
+  public CompressedEnsemble(List<RegressionTree> trees, String leafPrecision, double pruneEpsilon) {
+    if (!leafPrecision.equals("float") && !leafPrecision.equals("short"))
+      throw new IllegalArgumentException("leafPrecision must be float or short: " + leafPrecision);
+    numTrees = trees.size();
+    List<RegressionTree> kept = new ArrayList<>();
+    for (RegressionTree tree : trees)
+      if (maxAbsLeaf(tree.getRoot()) > pruneEpsilon)
+        kept.add(tree);
+
+    grids = buildGrids(kept);
+    int maxFeature = -1;
+    for (int f = 0; f < grids.length; f++)
+      if (grids[f] != null) maxFeature = f;
+    numFeatures = maxFeature + 1;
+    features = new int[(int) Arrays.stream(grids).filter(Objects::nonNull).count()];
+    for (int f = 0, i = 0; f < grids.length; f++)
+      if (grids[f] != null) features[i++] = f;
+
+    double maxLeaf = 0d;
+    for (RegressionTree tree : kept)
+      maxLeaf = Math.max(maxLeaf, maxAbsLeaf(tree.getRoot()));
+    boolean useShort = leafPrecision.equals("short");
+    leafScale = useShort && maxLeaf > 0 ? maxLeaf / Short.MAX_VALUE : 1d;
+
+    Builder builder = new Builder(useShort);
+    roots = new int[kept.size()];
+    for (int t = 0; t < roots.length; t++)
+      roots[t] = builder.add(kept.get(t).getRoot());
+    splits = builder.splits.stream().mapToInt(Integer::intValue).toArray();
+    children = builder.children.stream().mapToInt(Integer::intValue).toArray();
+    if (useShort) {
+      shortLeaves = new short[builder.leaves.size()];
+      for (int i = 0; i < shortLeaves.length; i++)
+        shortLeaves[i] = (short) builder.leaves.get(i).intValue();
+      floatLeaves = null;
+    }
+    else {
+      floatLeaves = new float[builder.leaves.size()];
+      for (int i = 0; i < floatLeaves.length; i++)
+        floatLeaves[i] = Float.intBitsToFloat(builder.leaves.get(i));
+      shortLeaves = null;
+    }
+  }
+
+  public CompressedEnsemble(Ensemble ensemble, Ensemble.TreeConfig config) {
+    this(ensemble.getTrees(), config.getLeafPrecision(), config.getPruneEpsilon());
+  }
+
+  private static double maxAbsLeaf(Split node) {
+    if (!node.hasDestinations())
+      return Math.abs(node.getScore());
+    return Math.max(maxAbsLeaf(node.getLeftLeaf()), maxAbsLeaf(node.getRightLeaf()));
+  }
+
+  private static double[][] buildGrids(List<RegressionTree> trees) {
+    Map<Integer, TreeSet<Double>> thresholds = new HashMap<>();
+    for (RegressionTree tree : trees)
+      addThresholds(tree.getRoot(), thresholds);
+    int maxFeature = thresholds.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1);
+    if (maxFeature > MAX_INDEX)
+      throw new IllegalArgumentException("Features above " + MAX_INDEX + " cannot be compressed: " + maxFeature);
+    double[][] grids = new double[maxFeature + 1][];
+    for (Map.Entry<Integer, TreeSet<Double>> entry : thresholds.entrySet()) {
+      if (entry.getValue().size() > MAX_INDEX + 1)
+        throw new IllegalArgumentException("Feature " + entry.getKey() + " has more than " + (MAX_INDEX + 1) + " thresholds.");
+      grids[entry.getKey()] = entry.getValue().stream().mapToDouble(Double::doubleValue).toArray();
+    }
+    return grids;
+  }
+
+  private static void addThresholds(Split node, Map<Integer, TreeSet<Double>> thresholds) {
+    if (!node.hasDestinations()) return;
+    thresholds.computeIfAbsent(node.getFeatureId(), f -> new TreeSet<>()).add(normalize(node.getThreshold()));
+    addThresholds(node.getLeftLeaf(), thresholds);
+    addThresholds(node.getRightLeaf(), thresholds);
+  }
+
+  //-0.0 is compared as 0.0 by splits, but sorted before it by Arrays.binarySearch.
+  private static double normalize(double value) {
+    return value == 0d ? 0d : value;
+  }
+
+  //Adds nodes in post-order, and gives identical subtrees and leaves the same index.
+  private class Builder {
+    final boolean useShort;
+    final List<Integer> splits = new ArrayList<>();
+    final List<Integer> children = new ArrayList<>();
+    final List<Integer> leaves = new ArrayList<>();  //short values, or float bits
+    final Map<Integer, Integer> leafIndex = new HashMap<>();
+    final Map<List<Integer>, Integer> nodeIndex = new HashMap<>();
+
+    Builder(boolean useShort) {
+      this.useShort = useShort;
+    }
+
+    int add(Split node) {
+      if (!node.hasDestinations()) {
+        int leaf = useShort ? (int) Math.round(node.getScore() / leafScale) : Float.floatToIntBits((float) node.getScore());
+        return ~leafIndex.computeIfAbsent(leaf, key -> {
+          leaves.add(key);
+          return leaves.size() - 1;
+        });
+      }
+      int feature = node.getFeatureId();
+      int split = feature << 16 | Arrays.binarySearch(grids[feature], normalize(node.getThreshold()));
+      int left = add(node.getLeftLeaf());
+      int right = add(node.getRightLeaf());
+      return nodeIndex.computeIfAbsent(Arrays.asList(split, left, right), key -> {
+        splits.add(split);
+        children.add(left);
+        children.add(right);
+        return splits.size() - 1;
+      });
+    }
+  }
+
+  /**
+   * @return number of trees kept, i.e. those which were not pruned.
+   */
+  public int getNumTrees() {
+    return roots.length;
+  }
+
+  public int getNumPrunedTrees() {
+    return numTrees - roots.length;
+  }
+
+  public int getNumNodes() {
+    return splits.length;
+  }
+
+  public int getNumLeaves() {
+    return shortLeaves != null ? shortLeaves.length : floatLeaves.length;
+  }
+
+  /**
+   * @return bytes of the arrays read for scoring.
+   */
+  public long getFootprint() {
+    long bytes = 4L * (roots.length + splits.length + children.length + features.length);
+    bytes += shortLeaves != null ? 2L * shortLeaves.length : 4L * floatLeaves.length;
+    for (double[] grid : grids)
+      if (grid != null) bytes += 8L * grid.length;
+    return bytes;
+  }
+
+  @Override
+  public int getNumFeatures() {
+    return numFeatures;
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
+  private double getLeafValue(int leaf) {
+    return shortLeaves != null ? shortLeaves[leaf] * leafScale : floatLeaves[leaf];
+  }
+
+  /**
+   * Scores the document whose features start at offset. indices is a buffer of numFeatures ints.
+   */
+  private double predict(double[] values, int offset, int[] indices) {
+    //Index of each feature among its thresholds: the value is lower than the threshold at index t iff index <= t.
+    for (int feature : features) {
+      double value = values[offset + feature];
+      int index = Double.isNaN(value) ? grids[feature].length : Arrays.binarySearch(grids[feature], normalize(value));
+      indices[feature] = index >= 0 ? index + 1 : ~index;
+    }
+    double score = 0d;
+    for (int root : roots) {
+      int node = root;
+      while (node >= 0) {
+        int split = splits[node];
+        node = children[2 * node + (indices[split >>> 16] <= (split & MAX_INDEX) ? 0 : 1)];
+      }
+      score += getLeafValue(~node);
+    }
+    return score;
+  }
+
+  @Override
+  public double predict(double[] features) {
+    return predict(toArray(features, numFeatures), 0, new int[numFeatures]);
+  }
+
+  @Override
+  public double predict(List<Double> features) {
+    return predict(toArray(features, numFeatures), 0, new int[numFeatures]);
+  }
+
+  @Override
+  public double predict(Document doc) {
+    return predict(toArray(doc, numFeatures, null), 0, new int[numFeatures]);
+  }
+
+  @Override
+  public double[] predictBatch(List<Document> docs) {
+    double[] scores = new double[docs.size()];
+    double[] row = null;
+    int[] indices = new int[numFeatures];
+    for (int i = 0; i < scores.length; i++) {
+      row = toArray(docs.get(i), numFeatures, row);
+      scores[i] = predict(row, 0, indices);
+    }
+    return scores;
+  }
+
+  @Override
+  public double[] predictBatch(FeatureMatrix matrix) {
+    if (matrix.getNumFeatures() < numFeatures)
+      return super.predictBatch(matrix);
+    double[] scores = new double[matrix.getNumDocs()];
+    double[] rows = matrix.getRowMajor();
+    int rowLength = matrix.getNumFeatures();
+    int[] indices = new int[numFeatures];
+    for (int d = 0; d < scores.length; d++)
+      scores[d] = predict(rows, d * rowLength, indices);
+    return scores;
+  }
+
+  /**
+   * Writes the model in the format of {@link Ensemble}, with the leaf values as they are stored, without the pruned
+   * trees. Shared subtrees are written in each tree which uses them.
+   */
+  @Override
+  public void writeModel(Ensemble.TreeConfig config, Writer writer) throws IOException {
+    RegressionTree.SavedModel[] treeModels = new RegressionTree.SavedModel[roots.length];
+    for (int t = 0; t < roots.length; t++) {
+      RegressionTree.SavedModel model = new RegressionTree.SavedModel(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+      fill(model, roots[t], 0);
+      treeModels[t] = model;
+    }
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.enable(SerializationFeature.INDENT_OUTPUT);
+    mapper.writeValue(writer, new Ensemble.SavedModel(config, treeModels));
+  }
+
+  private void fill(RegressionTree.SavedModel model, int node, int leafId) {
+    boolean leaf = node < 0;
+    int split = leaf ? 0 : splits[node];
+    model.featureIds.add(leaf ? -1 : split >>> 16);
+    model.leafIds.add(leafId);
+    model.thresh.add(leaf ? Double.NEGATIVE_INFINITY : grids[split >>> 16][split & MAX_INDEX]);
+    model.scores.add(leaf ? getLeafValue(~node) : 0d);
+    if (leaf) return;
+    fill(model, children[2 * node], 2 * leafId + 1);
+    fill(model, children[2 * node + 1], 2 * leafId + 2);
+  }
+}
@@ -67,40 +67,4 @@ public abstract class Distribution {
       dist[i] = newDist;
     }
   }
-
-  /**
-   * 3-Dimensional distribution used for boosting. R
-   * means that RankedDocs is required (Documents must be
-   * sorted in order of descending label)
-   */
-  public static abstract class D3R extends Distribution{
-    protected final double[][][] dist;
-
-    public D3R(List<RankedDocs> rQueries){
-      dist = new double[rQueries.size()][][];
-      initialize(rQueries);
-    }
-
-    protected void normalize(double normFactor){
-      for(int qid = 0; qid < dist.length; qid++){
-        for(int i = 0; i < dist[qid].length; i++)
-          for(int j = 0; j < dist[qid][i].length; j++) //Note: could be sped up
-            dist[qid][i][j] /= normFactor;
-      }
-      this.normFactor = normFactor;
-    }
-
-    public double[][][] getFullDist(){
-      return dist;
-    }
-    public double[][] getQueryDist(int i){
-      return dist[i];
-    }
-    public void setQueryDist(int i, double[][] newDist){
-      dist[i] = newDist;
-    }
-    public double getNormFactor() {
-      return normFactor;
-    }
-  }
 }
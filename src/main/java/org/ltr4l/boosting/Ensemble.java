@@ -16,14 +16,21 @@
 package org.ltr4l.boosting;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+import org.ltr4l.tools.BinaryModel;
 import org.ltr4l.tools.Config;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -50,21 +57,154 @@ public class Ensemble extends Ranker<Ensemble.TreeConfig> {
     return trees.get(i);
   }
 
+  /**
+   * Keeps only the first numTrees trees, e.g. those up to the best iteration of training.
+   */
+  public void truncate(int numTrees){
+    if (numTrees < trees.size())
+      trees.subList(numTrees, trees.size()).clear();
+  }
+
   protected List<RegressionTree> readModel(Reader reader){
+    return toTrees(readSavedModel(reader));
+  }
+
+  /**
+   * Reads a model for scoring, in the layout chosen by the "scorer" param of its config:
+   * "flat" for {@link FlatEnsemble}, "quickscorer" for {@link QuickScorer}, "compressed" for {@link CompressedEnsemble}
+   * or "tree" for Ensemble.
+   * The default is "flat", or "tree" for oblivious trees, which Ensemble scores by table lookup.
+   * Trees of a binary model are built from the int and double blocks of the model, without binding it as JSON.
+   */
+  public static Ranker<TreeConfig> readScorer(Reader reader){
+    BinaryModel binary = BinaryModel.fromReader(reader);
+    if (binary != null) {
+      Ranker<TreeConfig> scorer = readScorer(binary);
+      if (scorer != null) return scorer;
+    }
+    SavedModel savedModel = readSavedModel(reader);
+    return newScorer(getScorer(savedModel.config, savedModel.obliviousModels != null), savedModel.config, toTrees(savedModel));
+  }
+
+  //Returns null if the trees are not stored in blocks, e.g. if the model was written by hand.
+  private static Ranker<TreeConfig> readScorer(BinaryModel binary){
+    BinaryModel.Value root = binary.getRoot();
+    BinaryModel.Value treeModels = root.get("treeModels");
+    BinaryModel.Value obliviousModels = root.get("obliviousModels");
+    RegressionTree.Nodes[] nodes = treeModels != null ? readNodes(treeModels) : null;
+    List<ObliviousTree.SavedModel> oblivious = obliviousModels != null ? readObliviousModels(obliviousModels) : null;
+    if (nodes == null && oblivious == null) return null;
+
+    TreeConfig config;
+    try {
+      JsonNode configNode = binary.getField("config");
+      config = configNode != null ? new ObjectMapper().treeToValue(configNode, TreeConfig.class) : null;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    String scorer = getScorer(config, oblivious != null);
+    if (oblivious == null && scorer.equals("flat"))
+      return new FlatEnsemble(nodes);
+    List<RegressionTree> trees = new ArrayList<>();
+    if (oblivious != null)
+      oblivious.forEach(model -> trees.add(new ObliviousTree(model)));
+    else
+      for (RegressionTree.Nodes tree : nodes)
+        trees.add(new RegressionTree(tree));
+    return newScorer(scorer, config, trees);
+  }
+
+  private static RegressionTree.Nodes[] readNodes(BinaryModel.Value treeModels){
+    List<BinaryModel.Value> models = treeModels.getElements();
+    if (models == null) return null;
+    RegressionTree.Nodes[] nodes = new RegressionTree.Nodes[models.size()];
+    for (int i = 0; i < nodes.length; i++) {
+      BinaryModel.Value model = models.get(i);
+      IntBuffer featureIds = ints(model, "featureIds");
+      IntBuffer leafIds = ints(model, "leafIds");
+      DoubleBuffer thresh = doubles(model, "thresh");
+      DoubleBuffer scores = doubles(model, "scores");
+      if (featureIds == null || leafIds == null || thresh == null || scores == null) return null;
+      nodes[i] = new RegressionTree.Nodes(featureIds, leafIds, thresh, scores);
+    }
+    return nodes;
+  }
+
+  private static List<ObliviousTree.SavedModel> readObliviousModels(BinaryModel.Value obliviousModels){
+    List<BinaryModel.Value> models = obliviousModels.getElements();
+    if (models == null) return null;
+    List<ObliviousTree.SavedModel> oblivious = new ArrayList<>(models.size());
+    for (BinaryModel.Value model : models) {
+      IntBuffer features = ints(model, "features");
+      DoubleBuffer thresholds = doubles(model, "thresholds");
+      DoubleBuffer leafValues = doubles(model, "leafValues");
+      if (features == null || thresholds == null || leafValues == null) return null;
+      int[] featureArray = new int[features.limit()];
+      double[] thresholdArray = new double[thresholds.limit()];
+      double[] leafArray = new double[leafValues.limit()];
+      features.get(featureArray);
+      thresholds.get(thresholdArray);
+      leafValues.get(leafArray);
+      oblivious.add(new ObliviousTree.SavedModel(featureArray, thresholdArray, leafArray));
+    }
+    return oblivious;
+  }
+
+  private static IntBuffer ints(BinaryModel.Value object, String name){
+    BinaryModel.Value field = object.get(name);
+    return field != null ? field.asInts() : null;
+  }
+
+  private static DoubleBuffer doubles(BinaryModel.Value object, String name){
+    BinaryModel.Value field = object.get(name);
+    return field != null ? field.asDoubles() : null;
+  }
+
+  private static String getScorer(TreeConfig config, boolean oblivious){
+    return config != null && config.params != null ? config.getScorer() : oblivious ? "tree" : "flat";
+  }
+
+  private static Ranker<TreeConfig> newScorer(String scorer, TreeConfig config, List<RegressionTree> trees){
+    switch (scorer) {
+      case "flat":
+        return new FlatEnsemble(trees);
+      case "quickscorer":
+        return new QuickScorer(trees);
+      case "compressed":
+        return new CompressedEnsemble(trees, config.getLeafPrecision(), config.getPruneEpsilon());
+      case "tree":
+        Ensemble ensemble = new Ensemble();
+        trees.forEach(ensemble::addTree);
+        return ensemble;
+      default:
+        throw new IllegalArgumentException("scorer must be flat, quickscorer, compressed or tree: " + scorer);
+    }
+  }
+
+  private static SavedModel readSavedModel(Reader reader){
     try{
       ObjectMapper mapper = new ObjectMapper();
-      SavedModel savedModel = mapper.readValue(reader, SavedModel.class);
-      assert(savedModel.treeModels.length > 0);
-      List<RegressionTree> trees = new ArrayList<>();
-      for(RegressionTree.SavedModel model : savedModel.treeModels){
-        trees.add(new RegressionTree(model));
-      }
-      return trees;
+      SavedModel savedModel = BinaryModel.readValue(mapper, reader, SavedModel.class);
+      assert(savedModel.treeModels != null ? savedModel.treeModels.length > 0 : savedModel.obliviousModels.length > 0);
+      return savedModel;
     } catch(IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  private static List<RegressionTree> toTrees(SavedModel savedModel){
+    List<RegressionTree> trees = new ArrayList<>();
+    if (savedModel.obliviousModels != null) {
+      for (ObliviousTree.SavedModel model : savedModel.obliviousModels)
+        trees.add(new ObliviousTree(model));
+      return trees;
+    }
+    for(RegressionTree.SavedModel model : savedModel.treeModels){
+      trees.add(new RegressionTree(model));
+    }
+    return trees;
+  }
+
   protected RegressionTree.SavedModel[] getTreeModels(){
     RegressionTree.SavedModel[] treeModels = new RegressionTree.SavedModel[trees.size()];
     for(int i = 0; i < trees.size(); i++)
@@ -72,17 +212,84 @@ public class Ensemble extends Ranker<Ensemble.TreeConfig> {
     return treeModels;
   }
 
+  //Oblivious trees are written in their compact form, unless the ensemble also holds other trees.
+  private ObliviousTree.SavedModel[] getObliviousModels(){
+    if (trees.isEmpty() || !trees.stream().allMatch(tree -> tree instanceof ObliviousTree))
+      return null;
+    ObliviousTree.SavedModel[] models = new ObliviousTree.SavedModel[trees.size()];
+    for (int i = 0; i < trees.size(); i++)
+      models[i] = ((ObliviousTree) trees.get(i)).getObliviousModel();
+    return models;
+  }
+
   @Override
   public void writeModel(Ensemble.TreeConfig config, Writer writer) throws IOException {
-    SavedModel savedModel = new SavedModel(config, getTreeModels() );
+    ObliviousTree.SavedModel[] obliviousModels = getObliviousModels();
+    SavedModel savedModel = obliviousModels != null ? new SavedModel(config, obliviousModels) : new SavedModel(config, getTreeModels());
     ObjectMapper mapper = new ObjectMapper();
     mapper.enable(SerializationFeature.INDENT_OUTPUT);
     mapper.writeValue(writer, savedModel);
   }
 
+  @Override
+  public int getNumFeatures() {
+    int maxFeature = -1;
+    for (RegressionTree tree : trees)
+      for (int feature : tree.getModelInfo(RegressionTree.IntProp.FEATURE))
+        maxFeature = Math.max(maxFeature, feature);
+    return maxFeature + 1;
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public double predict(List<Double> features) {
-    return trees.stream().mapToDouble(tree -> tree.predict(features)).sum();
+    double score = 0d;  //Summed in tree order, as predictBatch does.
+    for (RegressionTree tree : trees)
+      score += tree.predict(features);
+    return score;
+  }
+
+  @Override
+  public double predict(double[] features) {
+    double score = 0d;
+    for (RegressionTree tree : trees)
+      score += tree.predict(features);
+    return score;
+  }
+
+  @Override
+  public double predict(Document doc) {
+    double score = 0d;
+    for (RegressionTree tree : trees)
+      score += tree.predict(doc);
+    return score;
+  }
+
+  /**
+   * Walks each tree once for all documents, so that the nodes of a tree stay in cache.
+   * Oblivious trees are evaluated one level at a time for all documents.
+   */
+  @Override
+  public double[] predictBatch(List<Document> docs) {
+    double[] scores = new double[docs.size()];
+    for (RegressionTree tree : trees)
+      for (int i = 0; i < scores.length; i++)
+        scores[i] += tree.predict(docs.get(i));
+    return scores;
+  }
+
+  @Override
+  public double[] predictBatch(FeatureMatrix matrix) {
+    double[] scores = new double[matrix.getNumDocs()];
+    double[] rows = matrix.getRowMajor();
+    int numFeatures = matrix.getNumFeatures();
+    for (RegressionTree tree : trees)
+      tree.addScores(rows, numFeatures, scores);
+    return scores;
   }
 
   public static class TreeConfig extends Config {
@@ -100,12 +307,54 @@ public class Ensemble extends Ranker<Ensemble.TreeConfig> {
     }
     @JsonIgnore
     public int getNumSteps() { return getInt(params, "numSteps", 0); } //TODO: OK default value?
+    @JsonIgnore
+    public int getNumBins() { return getInt(params, "numBins", FeatureBins.DEFAULT_MAX_BINS); }
+    @JsonIgnore
+    public int getNumThreads() { return getInt(params, "numThreads", 0); } //0: common pool, 1: sequential
+    @JsonIgnore
+    public boolean isExactSplitSearch() { //"histogram" (default) or "exact"
+      String splitSearch = getString(params, "splitSearch", "histogram");
+      if (!splitSearch.equals("histogram") && !splitSearch.equals("exact"))
+        throw new IllegalArgumentException("splitSearch must be histogram or exact: " + splitSearch);
+      return splitSearch.equals("exact");
+    }
+    //Stochastic gradient boosting: fractions of the training data and features each tree uses. 1 uses all.
+    @JsonIgnore
+    public double getSubsample() { return getDouble(params, "subsample", 1d); }  //of the documents of the sampled queries
+    @JsonIgnore
+    public double getQuerySubsample() { return getDouble(params, "querySubsample", 1d); }
+    @JsonIgnore
+    public double getColsampleByTree() { return getDouble(params, "colsampleByTree", 1d); }
+    @JsonIgnore
+    public double getColsampleBySplit() { return getDouble(params, "colsampleBySplit", 1d); }  //of the features of the tree
+    @JsonIgnore
+    public long getSeed() { return Long.parseLong(getString(params, "seed", "0")); }
+    @JsonIgnore
+    public String getScorer() { return getString(params, "scorer", isOblivious() ? "tree" : "flat"); }  //layout of the model when it is read for scoring
+    @JsonIgnore
+    public String getLeafPrecision() { return getString(params, "leafPrecision", "float"); }  //of the compressed scorer
+    @JsonIgnore
+    public double getPruneEpsilon() { return getDouble(params, "pruneEpsilon", 0d); }  //of the compressed scorer
+    @JsonIgnore
+    public boolean isOblivious() { //"leafwise" (default) or "oblivious"
+      String treeType = getString(params, "treeType", "leafwise");
+      if (!treeType.equals("leafwise") && !treeType.equals("oblivious"))
+        throw new IllegalArgumentException("treeType must be leafwise or oblivious: " + treeType);
+      return treeType.equals("oblivious");
+    }
+    @JsonIgnore
+    public int getDepth() { //of oblivious trees; by default the least depth with numLeaves leaves
+      return getInt(params, "depth", 32 - Integer.numberOfLeadingZeros(getNumLeaves() - 1));
+    }
   }
 
   public static class SavedModel {
 
     public TreeConfig config;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public RegressionTree.SavedModel[] treeModels;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public ObliviousTree.SavedModel[] obliviousModels;  //Instead of treeModels if every tree is oblivious.
 
     SavedModel(){  // this is needed for Jackson...
     }
@@ -114,5 +363,26 @@ public class Ensemble extends Ranker<Ensemble.TreeConfig> {
       this.config = config;
       this.treeModels = treeModels;
     }
+
+    SavedModel(TreeConfig config, ObliviousTree.SavedModel[] obliviousModels){
+      this.config = config;
+      this.obliviousModels = obliviousModels;
+    }
+
+    /**
+     * @return the trees as nodes, whether they were saved as nodes or as oblivious trees.
+     */
+    public RegressionTree.SavedModel[] toNodeModels(){
+      if (obliviousModels == null)
+        return treeModels;
+      RegressionTree.SavedModel[] models = new RegressionTree.SavedModel[obliviousModels.length];
+      for (int i = 0; i < models.length; i++)
+        models[i] = new ObliviousTree(obliviousModels[i]).getSavedModel();
+      return models;
+    }
+
+    public List<RegressionTree> toTrees(){
+      return Ensemble.toTrees(this);
+    }
   }
 }
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.boosting;
+
+import org.ltr4l.query.Document;
+import org.ltr4l.tools.IndexSorter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Training documents with every feature quantized into at most 256 bins, for histogram based split finding.
+ * Bins are ordered by feature value: a value is below the lower bound of bin b if and only if its bin is below b.
+ * Features with few distinct values get one bin per value, so splits on them are exact.
+ *
+ * For sparse documents, only the stored values which are not zero are quantized. The other rows of a feature share
+ * the bin of zero without being visited, and a histogram derives the count and sum of that bin from the rest of a leaf.
+ */
+public class FeatureBins {
+  public static final int DEFAULT_MAX_BINS = 255;
+
+  private final List<Document> docs;
+  private final byte[][] bins;          //[feature][row], unsigned; null for sparse documents
+  private final double[][] lowerBounds; //[feature][bin], smallest value of each bin
+  private final int[][] storedRows;     //[feature][k], ascending rows whose value is not zero; sparse documents only
+  private final byte[][] storedBins;    //[feature][k], bin of the k-th of storedRows
+  private final int[] zeroBins;         //[feature], bin of zero, or -1 if no row of the feature is zero
+  private final byte[][] rowBins;       //[row][k], bin of the k-th stored feature of the document
+
+  public FeatureBins(List<Document> docs){
+    this(docs, DEFAULT_MAX_BINS);
+  }
+
+  public FeatureBins(List<Document> docs, int maxBins){
+    if (maxBins < 2 || maxBins > 256)
+      throw new IllegalArgumentException("maxBins must be between 2 and 256: " + maxBins);
+    this.docs = docs;
+    int numFeatures = docs.isEmpty() ? 0 : docs.get(0).getFeatureLength();
+    lowerBounds = new double[numFeatures][];
+    if (!docs.isEmpty() && docs.get(0).isSparse()) {
+      bins = null;
+      storedRows = new int[numFeatures][];
+      storedBins = new byte[numFeatures][];
+      zeroBins = new int[numFeatures];
+      rowBins = new byte[docs.size()][];
+      quantizeStored(maxBins);
+      return;
+    }
+    bins = new byte[numFeatures][];
+    storedRows = null;
+    storedBins = null;
+    zeroBins = null;
+    rowBins = null;
+    double[] values = new double[docs.size()];
+    for (int feat = 0; feat < numFeatures; feat++) {
+      for (int row = 0; row < values.length; row++)
+        values[row] = docs.get(row).getFeature(feat);
+      quantize(feat, values, maxBins);
+    }
+  }
+
+  private void quantizeStored(int maxBins){
+    int numFeatures = lowerBounds.length;
+    int[] numStored = new int[numFeatures];
+    for (Document doc : docs)
+      for (int k = 0; k < doc.getNumStored(); k++)
+        if (doc.getStoredIndex(k) < numFeatures && doc.getStoredValue(k) != 0d) numStored[doc.getStoredIndex(k)]++;
+    double[][] values = new double[numFeatures][];
+    for (int feat = 0; feat < numFeatures; feat++) {
+      storedRows[feat] = new int[numStored[feat]];
+      values[feat] = new double[numStored[feat]];
+    }
+    int[] next = new int[numFeatures];
+    for (int row = 0; row < docs.size(); row++) {
+      Document doc = docs.get(row);
+      for (int k = 0; k < doc.getNumStored(); k++) {
+        int feat = doc.getStoredIndex(k);
+        if (feat >= numFeatures || doc.getStoredValue(k) == 0d) continue;
+        storedRows[feat][next[feat]] = row;
+        values[feat][next[feat]++] = doc.getStoredValue(k);
+      }
+    }
+    for (int feat = 0; feat < numFeatures; feat++)
+      quantizeStored(feat, values[feat], docs.size() - numStored[feat], maxBins);
+
+    Arrays.fill(next, 0);
+    for (int row = 0; row < docs.size(); row++) {
+      Document doc = docs.get(row);
+      byte[] featBins = new byte[doc.getNumStored()];
+      for (int k = 0; k < featBins.length; k++) {
+        int feat = doc.getStoredIndex(k);
+        if (feat >= numFeatures) continue;
+        featBins[k] = doc.getStoredValue(k) != 0d ? storedBins[feat][next[feat]++] : (byte) zeroBins[feat];
+      }
+      rowBins[row] = featBins;
+    }
+  }
+
+  //Same as quantize, given only the values which are not zero. The numZeros other rows are walked as one run of zeros,
+  //between the negative and the positive values, so they get the bins they would get from quantize.
+  private void quantizeStored(int feat, double[] values, int numZeros, int maxBins){
+    int[] order = IndexSorter.argsort(values);
+    int numNegative = 0;
+    while (numNegative < order.length && values[order[numNegative]] < 0d) numNegative++;
+    int numDistinct = numZeros > 0 ? 1 : 0;
+    for (int i = 0; i < order.length; i++)
+      if (i == 0 || values[order[i]] != values[order[i - 1]]) numDistinct++;
+    int binSize = numDistinct <= maxBins ? 1 : (order.length + numZeros + maxBins - 1) / maxBins;
+
+    byte[] featBins = new byte[values.length];
+    double[] bounds = new double[Math.min(numDistinct, maxBins)];
+    int bin = -1;
+    int binCount = 0;
+    int zeroBin = -1;
+    for (int i = 0; i <= order.length; i++) {
+      if (i == numNegative && numZeros > 0) {
+        if (bin < 0 || binCount >= binSize) {
+          bounds[++bin] = 0d;
+          binCount = 0;
+        }
+        zeroBin = bin;
+        binCount += numZeros;
+      }
+      if (i == order.length) break;
+      double value = values[order[i]];
+      boolean newValue = i == 0 || (i == numNegative && numZeros > 0) || value != values[order[i - 1]];
+      if (newValue && (bin < 0 || binCount >= binSize)) {
+        bounds[++bin] = value;
+        binCount = 0;
+      }
+      featBins[order[i]] = (byte) bin;
+      binCount++;
+    }
+    storedBins[feat] = featBins;
+    zeroBins[feat] = zeroBin;
+    lowerBounds[feat] = Arrays.copyOf(bounds, bin + 1);
+  }
+
+  private void quantize(int feat, double[] values, int maxBins){
+    int[] order = IndexSorter.argsort(values);
+    int numDistinct = 0;
+    for (int i = 0; i < order.length; i++)
+      if (i == 0 || values[order[i]] != values[order[i - 1]]) numDistinct++;
+    //Without more distinct values than bins, every value gets its own bin.
+    int binSize = numDistinct <= maxBins ? 1 : (order.length + maxBins - 1) / maxBins;
+
+    byte[] featBins = new byte[values.length];
+    double[] bounds = new double[Math.min(numDistinct, maxBins)];
+    int bin = -1;
+    int binCount = 0;
+    for (int i = 0; i < order.length; i++) {
+      double value = values[order[i]];
+      boolean newValue = i == 0 || value != values[order[i - 1]];
+      if (newValue && (bin < 0 || binCount >= binSize)) {
+        bounds[++bin] = value;
+        binCount = 0;
+      }
+      featBins[order[i]] = (byte) bin;
+      binCount++;
+    }
+    bins[feat] = featBins;
+    lowerBounds[feat] = Arrays.copyOf(bounds, bin + 1);
+  }
+
+  public int getNumDocs(){
+    return docs.size();
+  }
+
+  public int getNumFeatures(){
+    return lowerBounds.length;
+  }
+
+  public int getNumBins(int feat){
+    return lowerBounds[feat].length;
+  }
+
+  public int getBin(int feat, int row){
+    if (bins != null) return bins[feat][row] & 0xFF;
+    int k = Arrays.binarySearch(storedRows[feat], row);
+    return k >= 0 ? storedBins[feat][k] & 0xFF : zeroBins[feat];
+  }
+
+  /**
+   * @return all bins of feat, indexed by row. Values are unsigned; use {@code & 0xFF}.
+   * For sparse documents, the array is made at each call.
+   */
+  byte[] getBins(int feat){
+    if (bins != null) return bins[feat];
+    byte[] featBins = new byte[docs.size()];
+    Arrays.fill(featBins, (byte) zeroBins[feat]);
+    for (int k = 0; k < storedRows[feat].length; k++)
+      featBins[storedRows[feat][k]] = storedBins[feat][k];
+    return featBins;
+  }
+
+  /**
+   * @return true if only the values which are not zero were quantized; see {@link #getStoredBins(int)}.
+   */
+  boolean isSparse(){
+    return bins == null;
+  }
+
+  /**
+   * @return for sparse documents, the bin of each stored feature of the document at row, in the order of
+   * {@link Document#getStoredIndex(int)}. Stored features beyond {@link #getNumFeatures()} have no bin.
+   */
+  byte[] getStoredBins(int row){
+    return rowBins[row];
+  }
+
+  /**
+   * @return for sparse documents, the bin of zero, or -1 if no row of feat is zero.
+   */
+  int getZeroBin(int feat){
+    return zeroBins[feat];
+  }
+
+  /**
+   * @return the smallest value of the bin. Used as the threshold of a split, as documents whose value is below the
+   * threshold go to the left.
+   */
+  public double getLowerBound(int feat, int bin){
+    return lowerBounds[feat][bin];
+  }
+
+  public Document getDocument(int row){
+    return docs.get(row);
+  }
+
+  public List<Document> getDocuments(){
+    return docs;
+  }
+}
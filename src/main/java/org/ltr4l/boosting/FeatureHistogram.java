@@ -0,0 +1,257 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.boosting;
+
+import org.ltr4l.query.Document;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Sums and counts of the regression targets per feature bin, for the documents of a leaf.
+ * The squared loss of every candidate split of a feature is found in one pass over its bins.
+ *
+ * The histogram of a child can be derived from its parent and sibling with {@link #subtract(FeatureHistogram)},
+ * so only the smaller child of a split needs a pass over its documents.
+ * For sparse documents, that pass visits only their stored features; the bin of zero gets the rest of the leaf.
+ */
+public class FeatureHistogram {
+  private final FeatureBins bins;
+  private final int[] offsets;  //Start of each feature in sums and counts.
+  private final double[] sums;
+  private final int[] counts;
+  private double sum;
+  private double sumOfSquares;
+  private int count;
+
+  private FeatureHistogram(FeatureBins bins){
+    this.bins = bins;
+    offsets = new int[bins.getNumFeatures() + 1];
+    for (int feat = 0; feat < bins.getNumFeatures(); feat++)
+      offsets[feat + 1] = offsets[feat] + bins.getNumBins(feat);
+    sums = new double[offsets[offsets.length - 1]];
+    counts = new int[sums.length];
+  }
+
+  /**
+   * @param bins quantized training documents.
+   * @param targets regression target of each row of bins.
+   * @param rows rows of the documents of the leaf.
+   */
+  public static FeatureHistogram build(FeatureBins bins, double[] targets, int[] rows){
+    return build(bins, targets, rows, 0, rows.length, null);
+  }
+
+  /**
+   * Same as {@link #build(FeatureBins, double[], int[])} for the rows at [from, to) of rows.
+   * @param pool pool on which features are accumulated in parallel, or null.
+   */
+  public static FeatureHistogram build(FeatureBins bins, double[] targets, int[] rows, int from, int to, ForkJoinPool pool){
+    return build(bins, targets, rows, from, to, null, pool);
+  }
+
+  /**
+   * Same as {@link #build(FeatureBins, double[], int[], int, int, ForkJoinPool)}, accumulating only some features,
+   * e.g. those sampled for a tree. The other features are empty and must not be searched.
+   * @param features features to accumulate, or null for all features.
+   */
+  public static FeatureHistogram build(FeatureBins bins, double[] targets, int[] rows, int from, int to, int[] features,
+                                       ForkJoinPool pool){
+    FeatureHistogram histogram = new FeatureHistogram(bins);
+    for (int i = from; i < to; i++) {
+      histogram.sum += targets[rows[i]];
+      histogram.sumOfSquares += targets[rows[i]] * targets[rows[i]];
+    }
+    histogram.count = to - from;
+    if (bins.isSparse()) {
+      histogram.addStored(targets, rows, from, to, features, pool);
+      return histogram;
+    }
+    //Each feature has its own slice of sums and counts.
+    int numFeatures = features == null ? bins.getNumFeatures() : features.length;
+    TreeTools.forEach(pool, numFeatures, k -> {
+      int feat = features == null ? k : features[k];
+      byte[] featBins = bins.getBins(feat);
+      int offset = histogram.offsets[feat];
+      for (int i = from; i < to; i++) {
+        int row = rows[i];
+        int b = offset + (featBins[row] & 0xFF);
+        histogram.sums[b] += targets[row];
+        histogram.counts[b]++;
+      }
+    });
+    return histogram;
+  }
+
+  private void addStored(double[] targets, int[] rows, int from, int to, int[] features, ForkJoinPool pool){
+    int numFeatures = bins.getNumFeatures();
+    boolean[] accumulated = features == null ? null : new boolean[numFeatures];
+    if (features != null)
+      for (int feat : features) accumulated[feat] = true;
+    //Each block of features goes over the rows in order, so sums do not depend on the number of blocks.
+    int numBlocks = pool == null ? 1 : Math.min(numFeatures, pool.getParallelism());
+    TreeTools.forEach(pool, numBlocks, block -> {
+      int start = (int) ((long) numFeatures * block / numBlocks);
+      int end = (int) ((long) numFeatures * (block + 1) / numBlocks);
+      for (int i = from; i < to; i++) {
+        int row = rows[i];
+        Document doc = bins.getDocument(row);
+        byte[] rowBins = bins.getStoredBins(row);
+        for (int k = firstStored(doc, start); k < rowBins.length; k++) {
+          int feat = doc.getStoredIndex(k);
+          if (feat >= end) break;
+          if (accumulated != null && !accumulated[feat]) continue;
+          int b = offsets[feat] + (rowBins[k] & 0xFF);
+          sums[b] += targets[row];
+          counts[b]++;
+        }
+      }
+      for (int feat = start; feat < end; feat++) {
+        if ((accumulated != null && !accumulated[feat]) || bins.getZeroBin(feat) < 0) continue;
+        double storedSum = 0d;
+        int storedCount = 0;
+        for (int b = offsets[feat]; b < offsets[feat + 1]; b++) {
+          storedSum += sums[b];
+          storedCount += counts[b];
+        }
+        sums[offsets[feat] + bins.getZeroBin(feat)] += sum - storedSum;
+        counts[offsets[feat] + bins.getZeroBin(feat)] += count - storedCount;
+      }
+    });
+  }
+
+  //The position of the first stored feature of doc which is not below feat.
+  private static int firstStored(Document doc, int feat){
+    int low = 0;
+    int high = doc.getNumStored();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (doc.getStoredIndex(mid) < feat) low = mid + 1;
+      else high = mid;
+    }
+    return low;
+  }
+
+  /**
+   * @return histogram of the documents of this histogram which are not in sibling.
+   */
+  public FeatureHistogram subtract(FeatureHistogram sibling){
+    assert(sibling.bins == bins);
+    FeatureHistogram histogram = new FeatureHistogram(bins);
+    for (int b = 0; b < sums.length; b++) {
+      histogram.sums[b] = sums[b] - sibling.sums[b];
+      histogram.counts[b] = counts[b] - sibling.counts[b];
+    }
+    histogram.sum = sum - sibling.sum;
+    histogram.sumOfSquares = sumOfSquares - sibling.sumOfSquares;
+    histogram.count = count - sibling.count;
+    return histogram;
+  }
+
+  public int getCount(){
+    return count;
+  }
+
+  /**
+   * @return squared loss of the targets around their mean.
+   */
+  public double getLoss(){
+    return loss(sum, sumOfSquares, count);
+  }
+
+  private static double loss(double sum, double sumOfSquares, int count){
+    if (count == 0) return 0d;
+    return Math.max(0d, sumOfSquares - sum * sum / count);
+  }
+
+  /**
+   * Finds the threshold of feat with the lowest loss, left + right. Both sides must hold documents.
+   * @return {threshold, loss}, or {+Infinity, +Infinity} if the feature cannot split these documents.
+   */
+  public double[] findThreshold(int feat){
+    double threshold = Double.POSITIVE_INFINITY;
+    double minLoss = Double.POSITIVE_INFINITY;
+    double lSum = 0d;
+    int lCount = 0;
+    //loss(left) + loss(right) = sumOfSquares - lSum^2 / lCount - rSum^2 / rCount, so squares are not needed per bin.
+    for (int b = 0; b < bins.getNumBins(feat) - 1; b++) {
+      int idx = offsets[feat] + b;
+      if (counts[idx] == 0) continue;
+      lSum += sums[idx];
+      lCount += counts[idx];
+      if (lCount == count) break;
+      double loss = sumOfSquares - lSum * lSum / lCount - (sum - lSum) * (sum - lSum) / (count - lCount);
+      if (loss < minLoss) {
+        minLoss = loss;
+        threshold = nextThreshold(feat, b);
+      }
+    }
+    return new double[]{threshold, minLoss == Double.POSITIVE_INFINITY ? minLoss : Math.max(0d, minLoss)};
+  }
+
+  /**
+   * Adds to losses[b] the loss of splitting these documents at the lower bound of bin b + 1 of feat, for every bin b
+   * but the last, and sets splits[b] if both sides hold documents. If one side would be empty, the loss of the
+   * unsplit documents is added, as an oblivious tree level splits every leaf at the same threshold.
+   */
+  void addSplitLosses(int feat, double[] losses, boolean[] splits){
+    double unsplitLoss = getLoss();
+    double lSum = 0d;
+    int lCount = 0;
+    for (int b = 0; b < losses.length; b++) {
+      int idx = offsets[feat] + b;
+      lSum += sums[idx];
+      lCount += counts[idx];
+      if (lCount == 0 || lCount == count) {
+        losses[b] += unsplitLoss;
+        continue;
+      }
+      losses[b] += Math.max(0d, sumOfSquares - lSum * lSum / lCount - (sum - lSum) * (sum - lSum) / (count - lCount));
+      splits[b] = true;
+    }
+  }
+
+  //The lower bound of the first bin after b which holds documents of this leaf.
+  private double nextThreshold(int feat, int b){
+    int next = b + 1;
+    while (counts[offsets[feat] + next] == 0) next++;
+    return bins.getLowerBound(feat, next);
+  }
+
+  /**
+   * Finds the feature and threshold with the lowest loss. Ties go to the lower feature.
+   */
+  public OptimalLeafLoss findMinLeafThreshold(){
+    return findMinLeafThreshold(null);
+  }
+
+  /**
+   * Same as {@link #findMinLeafThreshold()}, searching the features in parallel on pool if it is not null.
+   */
+  public OptimalLeafLoss findMinLeafThreshold(ForkJoinPool pool){
+    return findMinLeafThreshold(null, pool);
+  }
+
+  /**
+   * Same as {@link #findMinLeafThreshold(ForkJoinPool)}, searching only the given features.
+   * @param features features to search in ascending order, or null for all features.
+   */
+  public OptimalLeafLoss findMinLeafThreshold(int[] features, ForkJoinPool pool){
+    double[][] featLoss = new double[features == null ? bins.getNumFeatures() : features.length][];
+    TreeTools.forEach(pool, featLoss.length, i -> featLoss[i] = findThreshold(features == null ? i : features[i]));
+    return TreeTools.minLoss(featLoss, features);
+  }
+}
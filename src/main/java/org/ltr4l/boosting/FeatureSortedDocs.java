@@ -16,7 +16,9 @@
 package org.ltr4l.boosting;
 
 import org.ltr4l.query.Document;
+import org.ltr4l.tools.IndexSorter;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class FeatureSortedDocs {
@@ -25,13 +27,50 @@ public class FeatureSortedDocs {
   private final double[] featureSamples;
 
   public static FeatureSortedDocs get(List<Document> docs, int featureToSort){
-    return new FeatureSortedDocs(TreeTools.orderByFeature(docs, featureToSort), featureToSort);
+    assert(featureToSort >= 0 && featureToSort < docs.get(0).getFeatureLength());
+    double[] values = new double[docs.size()];
+    for (int i = 0; i < values.length; i++)
+      values[i] = docs.get(i).getFeature(featureToSort);
+    int[] order = docs.get(0).isSparse() ? argsortSkippingZeros(values) : IndexSorter.argsort(values);
+    List<Document> sortedDocs = new ArrayList<>(order.length);
+    double[] samples = new double[order.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedDocs.add(docs.get(order[i]));
+      samples[i] = values[order[i]];
+    }
+    return new FeatureSortedDocs(sortedDocs, featureToSort, samples);
   }
 
-  private FeatureSortedDocs(List<Document> featureSortedDocs, int sortedFeature){
+  /**
+   * Same order as IndexSorter.argsort(values), but only sorts the values which are not 0;
+   * the 0s (mostly features which are not stored in sparse documents) keep their order between the negatives and positives.
+   */
+  private static int[] argsortSkippingZeros(double[] values){
+    int numNonZeros = 0;
+    for (double value : values)
+      if (Double.compare(value, 0d) != 0) numNonZeros++;
+    int[] nonZeros = new int[numNonZeros];
+    int[] order = new int[values.length];
+    int n = 0;
+    for (int i = 0; i < values.length; i++)
+      if (Double.compare(values[i], 0d) != 0) nonZeros[n++] = i;
+    IndexSorter.sort(nonZeros, 0, numNonZeros, values, false);
+
+    int pos = 0;
+    int k = 0;
+    while (k < numNonZeros && Double.compare(values[nonZeros[k]], 0d) < 0)
+      order[pos++] = nonZeros[k++];
+    for (int i = 0; i < values.length; i++)
+      if (Double.compare(values[i], 0d) == 0) order[pos++] = i;
+    while (k < numNonZeros)
+      order[pos++] = nonZeros[k++];
+    return order;
+  }
+
+  private FeatureSortedDocs(List<Document> featureSortedDocs, int sortedFeature, double[] featureSamples){
     this.featureSortedDocs = featureSortedDocs;
     this.sortedFeature = sortedFeature;
-    this.featureSamples = featureSortedDocs.stream().mapToDouble(doc -> doc.getFeature(sortedFeature)).toArray();
+    this.featureSamples = featureSamples;
   }
 
   public int getSortedFeature() {
@@ -43,16 +82,15 @@ public class FeatureSortedDocs {
   }
 
   public double getMinFeature(){
-    return featureSortedDocs.get(0).getFeature(sortedFeature);
+    return featureSamples[0];
   }
 
   public double getMaxFeature(){
-    int last= featureSortedDocs.size() - 1;
-    return featureSortedDocs.get(last).getFeature(sortedFeature);
+    return featureSamples[featureSamples.length - 1];
   }
 
   public double getFeatureFromIndex(int i){
-    return featureSortedDocs.get(i).getFeature(sortedFeature);
+    return featureSamples[i];
   }
 
   public int getFeatureLength(){
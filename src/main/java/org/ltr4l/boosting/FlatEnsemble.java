@@ -0,0 +1,264 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.boosting;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only {@link Ensemble} laid out in flat arrays for fast scoring.
+ *
+ * The split nodes of all trees are numbered in pre-order, tree after tree. Node n compares feature
+ * featureIds[n] with thresholds[n] and goes to children[2n] if the feature is lower, or to children[2n + 1].
+ * A child c &lt; 0 is the leaf whose value is leafValues[~c]. Scores are the same as those of the Ensemble.
+ */
+public class FlatEnsemble extends Ranker<Ensemble.TreeConfig> {
+  private final int[] roots;        //first node of each tree
+  private final int[] featureIds;
+  private final double[] thresholds;
+  private final int[] children;
+  private final double[] leafValues;
+  private final int numFeatures;    //features read by the trees, i.e. max feature id + 1
+
+  public FlatEnsemble(List<RegressionTree> trees) {
+    int numNodes = 0;
+    int numLeaves = 0;
+    for (RegressionTree tree : trees) {
+      int leaves = tree.getTerminalLeaves().size();
+      numLeaves += leaves;
+      numNodes += leaves - 1;
+    }
+    roots = new int[trees.size()];
+    featureIds = new int[numNodes];
+    thresholds = new double[numNodes];
+    children = new int[2 * numNodes];
+    leafValues = new double[numLeaves];
+    int[] counts = new int[2];  //nodes and leaves added so far
+    for (int t = 0; t < roots.length; t++)
+      roots[t] = add(trees.get(t).getRoot(), counts);
+    int maxFeature = -1;
+    for (int feature : featureIds)
+      maxFeature = Math.max(maxFeature, feature);
+    numFeatures = maxFeature + 1;
+  }
+
+  /**
+   * Lays out saved trees directly from their nodes, e.g. from the blocks of a binary model, without building the trees.
+   */
+  public FlatEnsemble(RegressionTree.Nodes[] trees) {
+    int numNodes = 0;
+    int numLeaves = 0;
+    for (RegressionTree.Nodes tree : trees) {
+      for (int i = 0; i < tree.size(); i++) {
+        if (tree.isSplit(i)) numNodes++;
+        else numLeaves++;
+      }
+    }
+    roots = new int[trees.length];
+    featureIds = new int[numNodes];
+    thresholds = new double[numNodes];
+    children = new int[2 * numNodes];
+    leafValues = new double[numLeaves];
+    int[] counts = new int[2];
+    for (int t = 0; t < roots.length; t++)
+      roots[t] = add(trees[t], new int[1], counts);
+    int maxFeature = -1;
+    for (int feature : featureIds)
+      maxFeature = Math.max(maxFeature, feature);
+    numFeatures = maxFeature + 1;
+  }
+
+  public FlatEnsemble(Ensemble ensemble) {
+    this(ensemble.getTrees());
+  }
+
+  /**
+   * Reads a model written by {@link Ensemble#writeModel(Ensemble.TreeConfig, Writer)}.
+   */
+  public FlatEnsemble(Reader reader) {
+    this(new Ensemble(reader));
+  }
+
+  //Adds the node and its destinations, and returns the child value which points to the node.
+  private int add(Split node, int[] counts) {
+    if (!node.hasDestinations()) {
+      leafValues[counts[1]] = node.getScore();
+      return ~counts[1]++;
+    }
+    int n = counts[0]++;
+    featureIds[n] = node.getFeatureId();
+    thresholds[n] = node.getThreshold();
+    children[2 * n] = add(node.getLeftLeaf(), counts);
+    children[2 * n + 1] = add(node.getRightLeaf(), counts);
+    return n;
+  }
+
+  //Same as add(Split, int[]) for the node at next[0] of the nodes in pre-order, which is then moved past the subtree.
+  private int add(RegressionTree.Nodes nodes, int[] next, int[] counts) {
+    int i = next[0]++;
+    if (!nodes.isSplit(i)) {
+      leafValues[counts[1]] = nodes.scores.get(i);
+      return ~counts[1]++;
+    }
+    int n = counts[0]++;
+    featureIds[n] = nodes.featureIds.get(i);
+    thresholds[n] = nodes.thresh.get(i);
+    children[2 * n] = add(nodes, next, counts);
+    children[2 * n + 1] = add(nodes, next, counts);
+    return n;
+  }
+
+  public int getNumTrees() {
+    return roots.length;
+  }
+
+  public int getNumNodes() {
+    return featureIds.length;
+  }
+
+  /**
+   * @return bytes of the arrays read for scoring.
+   */
+  public long getFootprint() {
+    return 4L * (roots.length + featureIds.length + children.length) + 8L * (thresholds.length + leafValues.length);
+  }
+
+  @Override
+  public int getNumFeatures() {
+    return numFeatures;
+  }
+
+  /**
+   * @return first node of the tree, or ~leaf if the tree is a single leaf.
+   */
+  public int getRoot(int tree) {
+    return roots[tree];
+  }
+
+  public int getFeatureId(int node) {
+    return featureIds[node];
+  }
+
+  public double getThreshold(int node) {
+    return thresholds[node];
+  }
+
+  /**
+   * @param left whether the child for features lower than the threshold, or the other one, is returned.
+   * @return child node, or ~leaf if the child is a leaf.
+   */
+  public int getChild(int node, boolean left) {
+    return children[2 * node + (left ? 0 : 1)];
+  }
+
+  public double getLeafValue(int leaf) {
+    return leafValues[leaf];
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
+  /**
+   * Scores the document whose features start at offset, e.g. a row of {@link FeatureMatrix#getRowMajor()}.
+   */
+  public double predict(double[] features, int offset) {
+    double score = 0d;  //Summed in tree order, as Ensemble does.
+    for (int root : roots) {
+      int node = root;
+      while (node >= 0)
+        node = children[2 * node + (features[offset + featureIds[node]] < thresholds[node] ? 0 : 1)];
+      score += leafValues[~node];
+    }
+    return score;
+  }
+
+  @Override
+  public double predict(double[] features) {
+    return predict(toArray(features, numFeatures), 0);
+  }
+
+  @Override
+  public double predict(List<Double> features) {
+    return predict(toArray(features, numFeatures), 0);
+  }
+
+  @Override
+  public double predict(Document doc) {
+    return predict(toArray(doc, numFeatures, null), 0);
+  }
+
+  @Override
+  public double[] predictBatch(List<Document> docs) {
+    double[] scores = new double[docs.size()];
+    double[] row = null;
+    for (int i = 0; i < scores.length; i++) {
+      row = toArray(docs.get(i), numFeatures, row);
+      scores[i] = predict(row, 0);
+    }
+    return scores;
+  }
+
+  @Override
+  public double[] predictBatch(FeatureMatrix matrix) {
+    if (matrix.getNumFeatures() < numFeatures)
+      return super.predictBatch(matrix);
+    double[] scores = new double[matrix.getNumDocs()];
+    double[] rows = matrix.getRowMajor();
+    int rowLength = matrix.getNumFeatures();
+    for (int d = 0; d < scores.length; d++)
+      scores[d] = predict(rows, d * rowLength);
+    return scores;
+  }
+
+  /**
+   * Writes the model in the format of {@link Ensemble}. Split nodes are written with a score of 0.
+   */
+  @Override
+  public void writeModel(Ensemble.TreeConfig config, Writer writer) throws IOException {
+    RegressionTree.SavedModel[] treeModels = new RegressionTree.SavedModel[roots.length];
+    for (int t = 0; t < roots.length; t++) {
+      RegressionTree.SavedModel model = new RegressionTree.SavedModel(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+      fill(model, roots[t], 0);
+      treeModels[t] = model;
+    }
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.enable(SerializationFeature.INDENT_OUTPUT);
+    mapper.writeValue(writer, new Ensemble.SavedModel(config, treeModels));
+  }
+
+  //Adds the node in pre-order, as Split does.
+  private void fill(RegressionTree.SavedModel model, int node, int leafId) {
+    boolean leaf = node < 0;
+    model.featureIds.add(leaf ? -1 : featureIds[node]);
+    model.leafIds.add(leafId);
+    model.thresh.add(leaf ? Double.NEGATIVE_INFINITY : thresholds[node]);
+    model.scores.add(leaf ? leafValues[~node] : 0d);
+    if (leaf) return;
+    fill(model, children[2 * node], 2 * leafId + 1);
+    fill(model, children[2 * node + 1], 2 * leafId + 2);
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.boosting;
+
+import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+
+/**
+ * Regression tree whose nodes at the same depth all split on one feature and threshold (a symmetric tree).
+ * Going right at a level sets one bit of the leaf index, the first level being the highest bit, so a document is
+ * scored with one comparison per level and a lookup in the leaf values, without branching on the path.
+ *
+ * The nodes are also built as {@link Split}s, in the same order as the leaf index, so {@link FlatEnsemble},
+ * {@link QuickScorer} and the model compiler read an oblivious tree as any other regression tree.
+ */
+public class ObliviousTree extends RegressionTree {
+  public static final int MAX_DEPTH = 16;
+
+  private final int[] features;       //by level
+  private final double[] thresholds;  //by level
+  private final double[] leafValues;  //by leaf index
+  private final List<Split> leaves;
+  private RowPartition partition;     //Rows of leaf l are [leafStarts[l], leafStarts[l + 1]) of partition while training.
+  private int[] leafStarts;
+
+  public ObliviousTree(int[] features, double[] thresholds, double[] leafValues){
+    super(buildNodes(features, thresholds, leafValues));
+    this.features = features;
+    this.thresholds = thresholds;
+    this.leafValues = leafValues;
+    leaves = getTerminalLeaves();
+  }
+
+  public ObliviousTree(SavedModel model){
+    this(model.features, model.thresholds, model.leafValues);
+  }
+
+  private static Split buildNodes(int[] features, double[] thresholds, double[] leafValues){
+    checkDepth(features.length);
+    if (thresholds.length != features.length || leafValues.length != 1 << features.length)
+      throw new IllegalArgumentException("An oblivious tree of depth " + features.length + " needs as many thresholds and "
+          + (1 << features.length) + " leaf values.");
+    return buildNode(null, 0, 0, 0, features, thresholds, leafValues);
+  }
+
+  private static Split buildNode(Split source, int level, int leafId, int index, int[] features, double[] thresholds, double[] leafValues){
+    if (level == features.length)
+      return new Split(source, -1, Double.NEGATIVE_INFINITY, leafId, leafValues[index]);
+    Split node = new Split(source, features[level], thresholds[level], leafId, 0d);
+    node.setLeftLeaf(buildNode(node, level + 1, 2 * leafId + 1, 2 * index, features, thresholds, leafValues));
+    node.setRightLeaf(buildNode(node, level + 1, 2 * leafId + 2, 2 * index + 1, features, thresholds, leafValues));
+    return node;
+  }
+
+  private static void checkDepth(int depth){
+    if (depth < 1 || depth > MAX_DEPTH)
+      throw new IllegalArgumentException("depth of an oblivious tree must be between 1 and " + MAX_DEPTH + ": " + depth);
+  }
+
+  /**
+   * Grows an oblivious tree with histograms of the quantized features. Each level takes the split whose loss, summed
+   * over all leaves of the level, is the lowest; a leaf which the split leaves on one side keeps its loss.
+   * Leaf values are 0 until they are set with {@link #setLeafValue(int, double)}.
+   * @param depth number of levels.
+   * @param partition partition whose rows [0, numRows) are used, reset or with the sampled rows partitioned to the front.
+   * @param numRows number of rows the tree is built from.
+   * @param targets regression target of each row of bins.
+   * @param rootHistogram histogram of the rows [0, numRows), holding at least treeFeatures.
+   * @param treeFeatures features the histograms of the leaves are built for, or null for all features.
+   * @param levelFeatures features to search at a level, by level, among treeFeatures; null, or a null result, to search treeFeatures.
+   * @param pool pool on which features are searched in parallel, or null to search sequentially.
+   * @throws InvalidFeatureThresholdException if no searched feature splits the rows of any leaf.
+   */
+  public static ObliviousTree grow(int depth, FeatureBins bins, RowPartition partition, int numRows, double[] targets,
+                                   FeatureHistogram rootHistogram, int[] treeFeatures, IntFunction<int[]> levelFeatures,
+                                   ForkJoinPool pool) throws InvalidFeatureThresholdException{
+    checkDepth(depth);
+    int[] features = new int[depth];
+    double[] thresholds = new double[depth];
+    int[] starts = {0, numRows};
+    FeatureHistogram[] histograms = {rootHistogram};
+    for (int level = 0; level < depth; level++) {
+      int[] sampled = levelFeatures == null ? null : levelFeatures.apply(level);  //A new random sample at each call.
+      int[] searched = sampled == null ? treeFeatures : sampled;
+      int numSearched = searched == null ? bins.getNumFeatures() : searched.length;
+      double[][] losses = new double[numSearched][];  //by searched feature and bin boundary
+      boolean[][] splits = new boolean[numSearched][];
+      FeatureHistogram[] levelHistograms = histograms;
+      TreeTools.forEach(pool, numSearched, i -> {
+        int feat = searched == null ? i : searched[i];
+        losses[i] = new double[bins.getNumBins(feat) - 1];
+        splits[i] = new boolean[losses[i].length];
+        for (FeatureHistogram histogram : levelHistograms)
+          if (histogram.getCount() > 0) histogram.addSplitLosses(feat, losses[i], splits[i]);
+      });
+      //Ties go to the lower feature, then the lower threshold.
+      int best = -1;
+      int bestBin = -1;
+      for (int i = 0; i < numSearched; i++)
+        for (int b = 0; b < losses[i].length; b++)
+          if (splits[i][b] && (best < 0 || losses[i][b] < losses[best][bestBin])) {
+            best = i;
+            bestBin = b;
+          }
+      if (best < 0) throw new InvalidFeatureThresholdException();
+      int feat = searched == null ? best : searched[best];
+      int maxLeftBin = bestBin;
+      features[level] = feat;
+      thresholds[level] = bins.getLowerBound(feat, maxLeftBin + 1);
+
+      int[] childStarts = new int[2 * starts.length - 1];
+      FeatureHistogram[] childHistograms = new FeatureHistogram[2 * histograms.length];
+      byte[] featBins = bins.getBins(feat);
+      for (int c = 0; c < histograms.length; c++) {
+        int mid = partition.partition(starts[c], starts[c + 1], row -> (featBins[row] & 0xFF) <= maxLeftBin);
+        childStarts[2 * c] = starts[c];
+        childStarts[2 * c + 1] = mid;
+        childStarts[2 * c + 2] = starts[c + 1];
+        if (level == depth - 1) continue;  //The leaves are not searched.
+        //Only the smaller child is built from its rows; the other one is the difference to the parent.
+        boolean leftIsSmall = mid - starts[c] <= starts[c + 1] - mid;
+        int from = leftIsSmall ? starts[c] : mid;
+        int to = leftIsSmall ? mid : starts[c + 1];
+        FeatureHistogram small = FeatureHistogram.build(bins, targets, partition.getOrder(0), from, to, treeFeatures, pool);
+        childHistograms[2 * c + (leftIsSmall ? 0 : 1)] = small;
+        childHistograms[2 * c + (leftIsSmall ? 1 : 0)] = histograms[c].subtract(small);
+      }
+      starts = childStarts;
+      histograms = childHistograms;
+    }
+    ObliviousTree tree = new ObliviousTree(features, thresholds, new double[1 << depth]);
+    tree.partition = partition;
+    tree.leafStarts = starts;
+    return tree;
+  }
+
+  public int getDepth(){
+    return features.length;
+  }
+
+  public int getNumLeaves(){
+    return leafValues.length;
+  }
+
+  public int getFeature(int level){
+    return features[level];
+  }
+
+  public double getThreshold(int level){
+    return thresholds[level];
+  }
+
+  public double getLeafValue(int leaf){
+    return leafValues[leaf];
+  }
+
+  public void setLeafValue(int leaf, double value){
+    leafValues[leaf] = value;
+    leaves.get(leaf).setScore(value);
+  }
+
+  /**
+   * @param values a value per row of the {@link RowPartition} the tree was grown on.
+   * @return sum of the values of the rows of the leaf.
+   */
+  public double sumOverRows(int leaf, double[] values){
+    if (partition == null)
+      throw new IllegalStateException("The tree does not hold rows of a RowPartition.");
+    int[] rows = partition.getOrder(0);
+    double sum = 0d;
+    for (int pos = leafStarts[leaf]; pos < leafStarts[leaf + 1]; pos++)
+      sum += values[rows[pos]];
+    return sum;
+  }
+
+  @Override
+  public void clearTrainingData(){
+    partition = null;
+    leafStarts = null;
+    super.clearTrainingData();
+  }
+
+  @Override
+  public double predict(List<Double> features) {
+    int leaf = 0;
+    for (int level = 0; level < this.features.length; level++)
+      leaf = leaf << 1 | (features.get(this.features[level]) < thresholds[level] ? 0 : 1);
+    return leafValues[leaf];
+  }
+
+  @Override
+  public double predict(double[] features) {
+    return predict(features, 0);
+  }
+
+  @Override
+  public double predict(Document doc) {
+    int leaf = 0;
+    for (int level = 0; level < features.length; level++)
+      leaf = leaf << 1 | (doc.getFeature(features[level]) < thresholds[level] ? 0 : 1);
+    return leafValues[leaf];
+  }
+
+  @Override
+  double predict(double[] features, int offset) {
+    int leaf = 0;
+    for (int level = 0; level < this.features.length; level++)
+      leaf = leaf << 1 | (features[offset + this.features[level]] < thresholds[level] ? 0 : 1);
+    return leafValues[leaf];
+  }
+
+  @Override
+  public double[] predictBatch(FeatureMatrix matrix) {
+    double[] scores = new double[matrix.getNumDocs()];
+    addScores(matrix.getRowMajor(), matrix.getNumFeatures(), scores);
+    return scores;
+  }
+
+  /**
+   * Evaluates one level for all documents before the next, so the inner loops only compare a column against
+   * one threshold.
+   */
+  @Override
+  void addScores(double[] rows, int numFeatures, double[] scores) {
+    int[] leaf = new int[scores.length];
+    for (int level = 0; level < features.length; level++) {
+      int feature = features[level];
+      double threshold = thresholds[level];
+      for (int d = 0; d < leaf.length; d++)
+        leaf[d] = leaf[d] << 1 | (rows[d * numFeatures + feature] < threshold ? 0 : 1);
+    }
+    for (int d = 0; d < leaf.length; d++)
+      scores[d] += leafValues[leaf[d]];
+  }
+
+  SavedModel getObliviousModel(){
+    return new SavedModel(features.clone(), thresholds.clone(), leafValues.clone());
+  }
+
+  /**
+   * Compact form of an oblivious tree in {@link Ensemble.SavedModel}: a feature and threshold per level, and the
+   * values of the leaves by leaf index.
+   */
+  public static class SavedModel {
+    public int[] features;
+    public double[] thresholds;
+    public double[] leafValues;
+
+    SavedModel() {  // this is needed for Jackson...
+    }
+
+    SavedModel(int[] features, double[] thresholds, double[] leafValues) {
+      this.features = features;
+      this.thresholds = thresholds;
+      this.leafValues = leafValues;
+    }
+  }
+}
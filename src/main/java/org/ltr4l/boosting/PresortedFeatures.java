@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.boosting;
+
+import org.ltr4l.query.Document;
+import org.ltr4l.tools.IndexSorter;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Feature columns of the training documents, each sorted once, for exact greedy split finding.
+ * The orders are partitioned by a {@link RowPartition} as a tree grows, so the rows of every node stay sorted
+ * by every feature without sorting them again.
+ *
+ * Only the rows whose value is not 0d are stored and sorted, as {@link FeatureSortedDocs} does for sparse documents.
+ * The order of a feature is its negative values, then the run of its zeros in row order, then its positive values.
+ */
+public class PresortedFeatures {
+  private final List<Document> docs;
+  private final int[][] rows;         //[feature][k], rows whose value is not 0d, in ascending order of the value
+  private final double[][] values;    //[feature][k], value of rows[feature][k]
+  private final int[] numNegative;    //[feature], stored rows before the run of zeros
+  private final int[] lastZeroRows;   //[feature], last row of the run of zeros, or -1 if no row is zero
+
+  public PresortedFeatures(List<Document> docs){
+    this.docs = docs;
+    int numFeatures = docs.isEmpty() ? 0 : docs.get(0).getFeatureLength();
+    int[] numStored = new int[numFeatures];
+    for (Document doc : docs)
+      for (int k = 0; k < doc.getNumStored(); k++)
+        if (doc.getStoredIndex(k) < numFeatures && Double.compare(doc.getStoredValue(k), 0d) != 0)
+          numStored[doc.getStoredIndex(k)]++;
+    rows = new int[numFeatures][];
+    values = new double[numFeatures][];
+    for (int feat = 0; feat < numFeatures; feat++) {
+      rows[feat] = new int[numStored[feat]];
+      values[feat] = new double[numStored[feat]];
+    }
+    int[] next = new int[numFeatures];
+    for (int row = 0; row < docs.size(); row++) {
+      Document doc = docs.get(row);
+      for (int k = 0; k < doc.getNumStored(); k++) {
+        int feat = doc.getStoredIndex(k);
+        if (feat >= numFeatures || Double.compare(doc.getStoredValue(k), 0d) == 0) continue;
+        rows[feat][next[feat]] = row;
+        values[feat][next[feat]++] = doc.getStoredValue(k);
+      }
+    }
+
+    numNegative = new int[numFeatures];
+    lastZeroRows = new int[numFeatures];
+    for (int feat = 0; feat < numFeatures; feat++) {
+      //rows are still in row order: the last zero is the last row which is not among them.
+      int lastZero = docs.size() - 1;
+      for (int k = rows[feat].length - 1; k >= 0 && rows[feat][k] == lastZero; k--) lastZero--;
+      lastZeroRows[feat] = lastZero;
+
+      int[] order = IndexSorter.argsort(values[feat]);
+      int[] featRows = new int[order.length];
+      double[] featValues = new double[order.length];
+      for (int k = 0; k < order.length; k++) {
+        featRows[k] = rows[feat][order[k]];
+        featValues[k] = values[feat][order[k]];
+        if (Double.compare(featValues[k], 0d) < 0) numNegative[feat]++;
+      }
+      rows[feat] = featRows;
+      values[feat] = featValues;
+    }
+  }
+
+  public int getNumFeatures(){
+    return rows.length;
+  }
+
+  public int getNumRows(){
+    return docs.size();
+  }
+
+  public double getValue(int feat, int row){
+    return docs.get(row).getFeature(feat);
+  }
+
+  /**
+   * @return rows in ascending order of feat, made at each call.
+   */
+  public int[] getOrder(int feat){
+    int[] order = new int[docs.size()];
+    int numZeros = order.length - rows[feat].length;
+    System.arraycopy(rows[feat], 0, order, 0, numNegative[feat]);
+    System.arraycopy(rows[feat], numNegative[feat], order, numNegative[feat] + numZeros, rows[feat].length - numNegative[feat]);
+    //The zeros are the rows which are not stored, in row order.
+    boolean[] stored = new boolean[order.length];
+    for (int row : rows[feat]) stored[row] = true;
+    int pos = numNegative[feat];
+    for (int row = 0; row < order.length; row++)
+      if (!stored[row]) order[pos++] = row;
+    return order;
+  }
+
+  /**
+   * @return the rows of feat whose value is not 0d, in ascending order of the value.
+   * The array is shared and must not be modified.
+   */
+  public int[] getStoredRows(int feat){
+    return rows[feat];
+  }
+
+  /**
+   * @return the values of {@link #getStoredRows(int)}, in the same order. The array is shared and must not be modified.
+   */
+  public double[] getStoredValues(int feat){
+    return values[feat];
+  }
+
+  /**
+   * @return number of the stored rows of feat which are before the run of zeros.
+   */
+  public int getNumNegative(int feat){
+    return numNegative[feat];
+  }
+
+  /**
+   * @return the last row of the run of zeros in the order of feat, or -1 if no row of feat is zero.
+   */
+  public int getLastZeroRow(int feat){
+    return lastZeroRows[feat];
+  }
+
+  /**
+   * @return a partition of all rows, holding the order of each feature.
+   */
+  public RowPartition newPartition(){
+    int[][] orders = new int[rows.length][];
+    for (int feat = 0; feat < orders.length; feat++)
+      orders[feat] = getOrder(feat);
+    return new RowPartition(docs, orders);
+  }
+
+  /**
+   * Finds the threshold of feat with the lowest squared loss, left + right, for the rows of [from, to).
+   * Same as {@link RegressionTreeTools#findThreshold(FeatureSortedDocs)} for the documents of the range.
+   * @param partition partition made by {@link #newPartition()}.
+   * @param targets regression target of each row.
+   * @return {threshold, loss}, or {+Infinity, +Infinity} if the feature cannot split the rows.
+   */
+  public double[] findThreshold(int feat, RowPartition partition, int from, int to, double[] targets){
+    int[] order = partition.getOrder(feat);
+    if (to - from < 2 || getValue(feat, order[from]) == getValue(feat, order[to - 1]))
+      return new double[]{Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+    double sum = 0d;
+    double sumOfSquares = 0d;
+    for (int pos = from; pos < to; pos++) {
+      double target = targets[order[pos]];
+      sum += target;
+      sumOfSquares += target * target;
+    }
+    int count = to - from;
+    double threshold = Double.POSITIVE_INFINITY;
+    double minLoss = Double.POSITIVE_INFINITY;
+    double lSum = 0d;
+    double value = getValue(feat, order[from]);
+    for (int pos = from; pos < to - 1; pos++) {
+      lSum += targets[order[pos]];
+      double next = getValue(feat, order[pos + 1]);
+      boolean tie = value == next;
+      value = next;
+      if (tie) continue;
+      int lCount = pos + 1 - from;
+      double rSum = sum - lSum;
+      double loss = sumOfSquares - lSum * lSum / lCount - rSum * rSum / (count - lCount);
+      if (loss < minLoss) {
+        minLoss = loss;
+        threshold = next;
+      }
+    }
+    return new double[]{threshold, Math.max(0d, minLoss)};
+  }
+
+  /**
+   * Finds the feature and threshold with the lowest loss for the rows of [from, to). Ties go to the lower feature.
+   * @param pool pool on which features are searched in parallel, or null.
+   */
+  public OptimalLeafLoss findMinLeafThreshold(RowPartition partition, int from, int to, double[] targets, ForkJoinPool pool){
+    return findMinLeafThreshold(partition, from, to, targets, null, pool);
+  }
+
+  /**
+   * Same as {@link #findMinLeafThreshold(RowPartition, int, int, double[], ForkJoinPool)}, searching only the given features.
+   * @param features features to search in ascending order, or null for all features.
+   */
+  public OptimalLeafLoss findMinLeafThreshold(RowPartition partition, int from, int to, double[] targets, int[] features,
+                                              ForkJoinPool pool){
+    double[][] featLoss = new double[features == null ? rows.length : features.length][];
+    TreeTools.forEach(pool, featLoss.length,
+        i -> featLoss[i] = findThreshold(features == null ? i : features[i], partition, from, to, targets));
+    return TreeTools.minLoss(featLoss, features);
+  }
+}
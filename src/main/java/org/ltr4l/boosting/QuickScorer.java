@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.boosting;
+
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scores an ensemble with the QuickScorer algorithm instead of walking each tree.
+ *
+ * The split nodes of all trees are grouped by feature and sorted by threshold. A node whose document goes
+ * right carries a mask which clears the leaves of its left subtree from the bitvector of its tree. Scanning
+ * the nodes of each feature up to the first one whose document goes left leaves the exit leaf of every tree
+ * as the lowest bit that is still set. Scores are the same as those of {@link Ensemble}.
+ *
+ * C. Lucchese, F. M. Nardini, S. Orlando, R. Perego, N. Tonellotto and R. Venturini: QuickScorer: a Fast
+ * Algorithm to Rank Documents with Additive Ensembles of Regression Trees. SIGIR 2015.
+ */
+public class QuickScorer extends Ranker<Ensemble.TreeConfig> {
+  public static final int MAX_LEAVES = Long.SIZE;
+
+  private final int[] featureStarts;  //nodes of feature f are [featureStarts[f], featureStarts[f + 1])
+  private final double[] thresholds;
+  private final int[] treeIds;
+  private final long[] masks;
+  private final int[] leafStarts;     //leaves of tree t from left to right start at leafStarts[t]
+  private final double[] leafValues;
+  private final FlatEnsemble flat;  //for writeModel
+
+  /**
+   * @param trees trees of up to {@link #MAX_LEAVES} leaves.
+   */
+  public QuickScorer(List<RegressionTree> trees) {
+    flat = new FlatEnsemble(trees);
+    leafStarts = new int[trees.size() + 1];
+    for (int t = 0; t < trees.size(); t++) {
+      int numLeaves = trees.get(t).getTerminalLeaves().size();
+      if (numLeaves > MAX_LEAVES)
+        throw new IllegalArgumentException("QuickScorer supports trees of up to " + MAX_LEAVES + " leaves: " + numLeaves);
+      leafStarts[t + 1] = leafStarts[t] + numLeaves;
+    }
+    leafValues = new double[leafStarts[trees.size()]];
+
+    int numNodes = leafValues.length - trees.size();
+    int[] nodeFeatures = new int[numNodes];
+    double[] nodeThresholds = new double[numNodes];
+    int[] nodeTrees = new int[numNodes];
+    long[] nodeMasks = new long[numNodes];
+    int[] counts = new int[2];  //nodes and leaves added so far
+    for (int t = 0; t < trees.size(); t++) {
+      counts[1] = leafStarts[t];
+      add(trees.get(t).getRoot(), t, counts, nodeFeatures, nodeThresholds, nodeTrees, nodeMasks);
+    }
+
+    int numFeatures = 0;
+    for (int feature : nodeFeatures)
+      numFeatures = Math.max(numFeatures, feature + 1);
+    Integer[] order = new Integer[numNodes];
+    for (int n = 0; n < numNodes; n++)
+      order[n] = n;
+    Arrays.sort(order, (a, b) -> nodeFeatures[a] != nodeFeatures[b] ? Integer.compare(nodeFeatures[a], nodeFeatures[b])
+        : Double.compare(nodeThresholds[a], nodeThresholds[b]));
+    featureStarts = new int[numFeatures + 1];
+    thresholds = new double[numNodes];
+    treeIds = new int[numNodes];
+    masks = new long[numNodes];
+    for (int i = 0; i < numNodes; i++) {
+      int n = order[i];
+      featureStarts[nodeFeatures[n] + 1]++;
+      thresholds[i] = nodeThresholds[n];
+      treeIds[i] = nodeTrees[n];
+      masks[i] = nodeMasks[n];
+    }
+    for (int f = 0; f < numFeatures; f++)
+      featureStarts[f + 1] += featureStarts[f];
+  }
+
+  public QuickScorer(Ensemble ensemble) {
+    this(ensemble.getTrees());
+  }
+
+  //Numbers the leaves under node from left to right, and adds the split nodes with the masks of their left subtrees.
+  private void add(Split node, int tree, int[] counts, int[] nodeFeatures, double[] nodeThresholds, int[] nodeTrees, long[] nodeMasks) {
+    if (!node.hasDestinations()) {
+      leafValues[counts[1]++] = node.getScore();
+      return;
+    }
+    int n = counts[0]++;
+    int firstLeaf = counts[1] - leafStarts[tree];
+    add(node.getLeftLeaf(), tree, counts, nodeFeatures, nodeThresholds, nodeTrees, nodeMasks);
+    int numLeftLeaves = counts[1] - leafStarts[tree] - firstLeaf;  //< 64, as the right subtree has a leaf
+    nodeFeatures[n] = node.getFeatureId();
+    nodeThresholds[n] = node.getThreshold();
+    nodeTrees[n] = tree;
+    nodeMasks[n] = ~(((1L << numLeftLeaves) - 1) << firstLeaf);
+    add(node.getRightLeaf(), tree, counts, nodeFeatures, nodeThresholds, nodeTrees, nodeMasks);
+  }
+
+  public int getNumTrees() {
+    return leafStarts.length - 1;
+  }
+
+  @Override
+  public int getNumFeatures() {
+    return flat.getNumFeatures();
+  }
+
+  /**
+   * @return the same trees in the layout of {@link FlatEnsemble}.
+   */
+  public FlatEnsemble getFlatEnsemble() {
+    return flat;
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
+  /**
+   * Scores the document whose features start at offset, e.g. a row of {@link FeatureMatrix#getRowMajor()}.
+   * @param bits bitvectors of the trees, which are overwritten.
+   */
+  private double predict(double[] features, int offset, long[] bits) {
+    Arrays.fill(bits, -1L);
+    for (int f = 0; f < featureStarts.length - 1; f++) {
+      double feature = features[offset + f];
+      //Written as !(feature < threshold), so that NaN goes right as in Split.
+      for (int n = featureStarts[f]; n < featureStarts[f + 1] && !(feature < thresholds[n]); n++)
+        bits[treeIds[n]] &= masks[n];
+    }
+    double score = 0d;
+    for (int t = 0; t < bits.length; t++)
+      score += leafValues[leafStarts[t] + Long.numberOfTrailingZeros(bits[t])];
+    return score;
+  }
+
+  @Override
+  public double predict(double[] features) {
+    return predict(toArray(features, featureStarts.length - 1), 0, new long[getNumTrees()]);
+  }
+
+  @Override
+  public double predict(List<Double> features) {
+    return predict(toArray(features, featureStarts.length - 1), 0, new long[getNumTrees()]);
+  }
+
+  @Override
+  public double predict(Document doc) {
+    return predict(toArray(doc, featureStarts.length - 1, null), 0, new long[getNumTrees()]);
+  }
+
+  @Override
+  public double[] predictBatch(List<Document> docs) {
+    double[] scores = new double[docs.size()];
+    long[] bits = new long[getNumTrees()];
+    double[] row = null;
+    for (int i = 0; i < scores.length; i++) {
+      row = toArray(docs.get(i), featureStarts.length - 1, row);
+      scores[i] = predict(row, 0, bits);
+    }
+    return scores;
+  }
+
+  @Override
+  public double[] predictBatch(FeatureMatrix matrix) {
+    if (matrix.getNumFeatures() < featureStarts.length - 1)
+      return super.predictBatch(matrix);
+    double[] scores = new double[matrix.getNumDocs()];
+    long[] bits = new long[getNumTrees()];
+    double[] rows = matrix.getRowMajor();
+    int numFeatures = matrix.getNumFeatures();
+    for (int d = 0; d < scores.length; d++)
+      scores[d] = predict(rows, d * numFeatures, bits);
+    return scores;
+  }
+
+  /**
+   * Writes the model in the format of {@link Ensemble}, as {@link FlatEnsemble} does.
+   */
+  @Override
+  public void writeModel(Ensemble.TreeConfig config, Writer writer) throws IOException {
+    flat.writeModel(config, writer);
+  }
+}
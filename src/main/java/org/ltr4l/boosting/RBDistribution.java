@@ -17,76 +17,217 @@ package org.ltr4l.boosting;
 
 import org.ltr4l.query.Document;
 import org.ltr4l.query.RankedDocs;
-import org.ltr4l.trainers.RankBoostTrainer;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
-public class RBDistribution extends Distribution.D3R {
+/**
+ * Distribution of RankBoost over the pairs of documents of a query whose labels differ.
+ *
+ * The initial distribution is uniform over the pairs, and each round multiplies the weight of pair (i, j), where
+ * i has the higher label, by exp(alpha * h(i)) * exp(-alpha * h(j)). So the weight of a pair factorizes as
+ * scale * v[i] * w[j], and only v, w and one scale per query are stored. As the documents of a query are sorted
+ * by label, the documents with a higher (lower) label than a document are those before (after) its label bucket,
+ * and sums over pairs are computed with prefix sums in time linear in the number of documents.
+ */
+public class RBDistribution extends Distribution {
+  private final double[][] v;         //factor of each document as the one with the higher label of a pair
+  private final double[][] w;         //factor of each document as the one with the lower label of a pair
+  private final double[] scale;       //of the weights of each query
+  private final int[][] bucketStarts; //first document of each label, and the number of documents at the end
 
-  private static int getCorrectPairNumber(RankedDocs docs){
-    int correctPairs = 0;
-    for(int i = 0; i < docs.size() - 1; i++){
-      if(docs.getLabel(i) == 0) return correctPairs;
-      for(int j = docs.size() - 1; j >= i + 1 && docs.getLabel(i) > docs.getLabel(j); j--){ //Go backwards until first label match
-        correctPairs++;
-      }
+  public RBDistribution(List<RankedDocs> rQueries){
+    v = new double[rQueries.size()][];
+    w = new double[rQueries.size()][];
+    scale = new double[rQueries.size()];
+    bucketStarts = new int[rQueries.size()][];
+    initialize(rQueries);
+  }
+
+  private static int[] getBucketStarts(RankedDocs docs){
+    int numBuckets = 1;
+    for (int i = 1; i < docs.size(); i++)
+      if (docs.getLabel(i) != docs.getLabel(i - 1)) numBuckets++;
+    int[] starts = new int[numBuckets + 1];
+    for (int i = 1, b = 1; i < docs.size(); i++)
+      if (docs.getLabel(i) != docs.getLabel(i - 1)) starts[b++] = i;
+    starts[numBuckets] = docs.size();
+    return starts;
+  }
+
+  //Number of pairs (i, j) where i has a higher label than j.
+  private static long getCorrectPairNumber(int[] bucketStarts){
+    long pairs = 0;
+    for (int b = 1; b < bucketStarts.length - 1; b++)
+      pairs += (long) bucketStarts[b] * (bucketStarts[b + 1] - bucketStarts[b]);
+    return pairs;
+  }
+
+  @Override
+  protected void initialize(List<RankedDocs> rQueries){
+    long correctPairNum = 0;
+    for (int qid = 0; qid < rQueries.size(); qid++) {
+      bucketStarts[qid] = getBucketStarts(rQueries.get(qid));
+      correctPairNum += getCorrectPairNumber(bucketStarts[qid]);
     }
-    return correctPairs;
-  }
-
-  private static double[][] initQueryDist(RankedDocs rDocs, int correctPairNum){
-    assert(rDocs.size() >= 2);
-    int size = rDocs.size();
-    double[][] D_0 = new double[size][size];
-    for(int i = 0; i < size - 1; i++){
-      if(rDocs.getLabel(i) == 0) return D_0; //Speedup. As the list is ranked, there should be no valid pairs after 0.
-      for(int j = i + 1; j < size; j++){
-        if(rDocs.getLabel(i) > rDocs.getLabel(j))
-          D_0[i][j] = 1d / correctPairNum;
-      }
+    for (int qid = 0; qid < rQueries.size(); qid++) {
+      int size = rQueries.get(qid).size();
+      v[qid] = new double[size];
+      w[qid] = new double[size];
+      Arrays.fill(v[qid], 1d);
+      Arrays.fill(w[qid], 1d);
+      scale[qid] = correctPairNum > 0 ? 1d / correctPairNum : 0d;
     }
-    return D_0;
   }
 
-  public RBDistribution(List<RankedDocs> rQueries){
-    super(rQueries);
+  //Sum of v[i] * w[j] over the pairs of the query.
+  private double sumPairs(int qid){
+    double[] qv = v[qid];
+    double[] qw = w[qid];
+    int[] starts = bucketStarts[qid];
+    double higher = 0d;  //sum of v over the buckets before b
+    double sum = 0d;
+    for (int b = 0; b < starts.length - 1; b++) {
+      double bucketV = 0d;
+      double bucketW = 0d;
+      for (int i = starts[b]; i < starts[b + 1]; i++) {
+        bucketV += qv[i];
+        bucketW += qw[i];
+      }
+      sum += higher * bucketW;
+      higher += bucketV;
+    }
+    return sum;
   }
 
+  /**
+   * @return potential of each document of each query: the weight of the pairs where it has the lower label,
+   * minus that of the pairs where it has the higher label.
+   */
   protected double[][] calcPotential(){
-    double[][] potential = new double[dist.length][];
-    for(int qid = 0; qid < dist.length; qid++){
-      double[][] qDist = getQueryDist(qid);
-      potential[qid] = new double[qDist.length];
-      for(int i = 0; i < qDist.length; i++) {  //Note: because of how RBDistribution is created, this can be sped up.
-        for(int j = 0; j < qDist.length; j++)
-          potential[qid][i] += qDist[j][i] - qDist[i][j];
-      }
+    return calcPotential(null);
+  }
+
+  /**
+   * Same as {@link #calcPotential()}, with queries computed in parallel on pool unless it is null.
+   */
+  protected double[][] calcPotential(ForkJoinPool pool){
+    double[][] potential = new double[v.length][];
+    TreeTools.forEach(pool, v.length, qid -> potential[qid] = calcQueryPotential(qid));
+    return potential;
+  }
+
+  private double[] calcQueryPotential(int qid){
+    double[] qv = v[qid];
+    double[] qw = w[qid];
+    int[] starts = bucketStarts[qid];
+    int numBuckets = starts.length - 1;
+    double[] higherV = new double[numBuckets];  //sum of v over the buckets before b
+    double[] lowerW = new double[numBuckets];   //sum of w over the buckets after b
+    for (int b = 1; b < numBuckets; b++) {
+      higherV[b] = higherV[b - 1];
+      for (int i = starts[b - 1]; i < starts[b]; i++) higherV[b] += qv[i];
     }
+    for (int b = numBuckets - 2; b >= 0; b--) {
+      lowerW[b] = lowerW[b + 1];
+      for (int i = starts[b + 1]; i < starts[b + 2]; i++) lowerW[b] += qw[i];
+    }
+    double[] potential = new double[qv.length];
+    for (int b = 0; b < numBuckets; b++)
+      for (int i = starts[b]; i < starts[b + 1]; i++)
+        potential[i] = scale[qid] * (qw[i] * higherV[b] - qv[i] * lowerW[b]);
     return potential;
   }
 
-  protected void initialize(List<RankedDocs> rQueries){
-    int correctPairNum = 0;
-    for(RankedDocs query : rQueries)
-      correctPairNum += getCorrectPairNumber(query);
-    for(int i = 0; i < rQueries.size(); i++)
-      dist[i] = initQueryDist(rQueries.get(i), correctPairNum);
+  /**
+   * Same as {@link #update(WeakLearner, List)}, with queries updated in parallel on pool unless it is null.
+   */
+  public void update(WeakLearner wl, List<RankedDocs> queries, ForkJoinPool pool){
+    double[] queryNorms = new double[queries.size()];
+    TreeTools.forEach(pool, queries.size(), qid -> queryNorms[qid] = updateQuery(wl, qid, queries.get(qid).getRankedDocs()));
+    double newNormFactor = 0d;
+    for (double queryNorm : queryNorms)  //Summed in query order, so that the result does not depend on the pool.
+      newNormFactor += queryNorm;
+    normalize(newNormFactor);
+  }
+
+  @Override
+  public void update(WeakLearner wl, List<RankedDocs> queries){
+    update(wl, queries, null);
   }
 
   @Override
   protected double updateQuery(WeakLearner wl, int qid, List<Document> rankedDocs) {
-    double newNormFactor = 0d;
-    for(int i = 0; i < rankedDocs.size() - 1; i++){
-      for(int j = rankedDocs.size() - 1; j >= i + 1; j--){ //Speedup. Go back until equivalent label is reached.
-        if(dist[qid][i][j] == 0) continue;
-        dist[qid][i][j] *= Math.exp(wl.getAlpha() * (wl.predict(rankedDocs.get(i).getFeatures()) - wl.predict(rankedDocs.get(j).getFeatures())));
-        newNormFactor += dist[qid][i][j];
+    double[] qv = v[qid];
+    double[] qw = w[qid];
+    double maxV = 0d;
+    double maxW = 0d;
+    for (int i = 0; i < qv.length; i++) {
+      double factor = Math.exp(wl.getAlpha() * wl.predict(rankedDocs.get(i)));
+      qv[i] *= factor;
+      qw[i] /= factor;
+      maxV = Math.max(maxV, qv[i]);
+      maxW = Math.max(maxW, qw[i]);
+    }
+    //Keeps v and w at most 1, so that they do not overflow over many rounds.
+    if (maxV > 0d && maxW > 0d) {
+      for (int i = 0; i < qv.length; i++) {
+        qv[i] /= maxV;
+        qw[i] /= maxW;
       }
+      scale[qid] *= maxV * maxW;
     }
-    return newNormFactor;
+    return scale[qid] * sumPairs(qid);
   }
 
   protected double updateQuery(WeakLearner wl, int qid, RankedDocs rankedDocs){ //returns the query normalization factor
     return updateQuery(wl, qid, rankedDocs.getRankedDocs());
   }
+
+  @Override
+  protected void normalize(double normFactor){
+    for (int qid = 0; qid < scale.length; qid++)
+      scale[qid] /= normFactor;
+    this.normFactor = normFactor;
+  }
+
+  public double getNormFactor() {
+    return normFactor;
+  }
+
+  /**
+   * @return weight of pair (i, j) of the query, or 0 if the label of i is not higher than that of j.
+   */
+  public double getPairWeight(int qid, int i, int j){
+    int[] starts = bucketStarts[qid];
+    return bucket(starts, i) < bucket(starts, j) ? scale[qid] * v[qid][i] * w[qid][j] : 0d;
+  }
+
+  private static int bucket(int[] starts, int i){
+    int b = Arrays.binarySearch(starts, i);
+    return b >= 0 ? b : -b - 2;
+  }
+
+  /**
+   * @return the weights of all pairs of the query as an n x n matrix, e.g. to inspect the distribution.
+   */
+  public double[][] getQueryDist(int qid){
+    int size = v[qid].length;
+    double[][] dist = new double[size][size];
+    for (int i = 0; i < size; i++)
+      for (int j = 0; j < size; j++)
+        dist[i][j] = getPairWeight(qid, i, j);
+    return dist;
+  }
+
+  /**
+   * @return {@link #getQueryDist(int)} of each query.
+   */
+  public double[][][] getFullDist(){
+    double[][][] dist = new double[v.length][][];
+    for (int qid = 0; qid < dist.length; qid++)
+      dist[qid] = getQueryDist(qid);
+    return dist;
+  }
 }
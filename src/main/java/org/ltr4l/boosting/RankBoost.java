@@ -19,6 +19,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
 import org.ltr4l.tools.Config;
 
 import java.io.IOException;
@@ -40,12 +41,35 @@ public class RankBoost extends AdaBoost {
 
   @Override
   public double predict(List<Double> features) {
-    return learners.isEmpty() ? 0 : learners.stream().mapToDouble(wl -> wl.getAlpha() * wl.predict(features)).sum();
+    double score = 0d;
+    for (WeakLearner wl : learners)
+      score += wl.getAlpha() * wl.predict(features);
+    return score;
+  }
+
+  @Override
+  public double predict(double[] features) {
+    double score = 0d;
+    for (WeakLearner wl : learners)
+      score += wl.getAlpha() * wl.predict(features);
+    return score;
+  }
+
+  @Override
+  public double predict(Document doc) {
+    double score = 0d;
+    for (WeakLearner wl : learners)
+      score += wl.getAlpha() * wl.predict(doc);
+    return score;
   }
 
   public static class RankBoostConfig extends Config {
     @JsonIgnore
     public int getNumSteps() { return getInt(params, "numSteps", 0); } //TODO: OK default value?
+    @JsonIgnore
+    public int getNumThreads() { return getInt(params, "numThreads", 0); } //0: common pool, 1: sequential
+    @JsonIgnore
+    public String getScorer() { return getString(params, "scorer", "table"); }  //layout of the model when it is read for scoring
   }
 
   protected static class SavedModel {
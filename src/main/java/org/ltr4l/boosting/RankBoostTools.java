@@ -19,11 +19,20 @@ import org.ltr4l.query.Document;
 import org.ltr4l.query.RankedDocs;
 
 import java.util.*;
+import java.util.function.IntToDoubleFunction;
 
 public class RankBoostTools extends TreeTools {
   private final double[][] potential; //Since all threshold calculations require potential...
   private final Map<Document, int[]> docMap; //{qid, index}, since FeatureSortedDocs are used...
 
+  /**
+   * Tools for {@link #findMinLeafThreshold(PresortedFeatures, int)} only, which does not look documents up.
+   */
+  public RankBoostTools(double[][] potential){
+    this.potential = Objects.requireNonNull(potential);
+    this.docMap = null;
+  }
+
   public RankBoostTools(double[][] potential, List<RankedDocs> queries){
     this.potential = Objects.requireNonNull(potential);
     Objects.requireNonNull(queries);
@@ -87,6 +96,103 @@ public class RankBoostTools extends TreeTools {
     return new double[] {finalThreshold, 1/maxr, qdef}; //Note 1/maxr is returned as the minimum is searched for in parent.
   }
 
+  /**
+   * Same as {@link #findMinLeafThreshold(List, int)} for the documents of all queries in order, with the documents
+   * sorted by each feature once in features instead of in every round. The potential of the documents above each
+   * candidate threshold is a suffix sum in the sorted order, so a feature is searched in time linear in the documents.
+   * @param features features of the documents of all queries, in the order of the queries and of their documents.
+   */
+  public OptimalLeafLoss findMinLeafThreshold(PresortedFeatures features, int numSteps){
+    double[] weights = new double[Arrays.stream(potential).mapToInt(q -> q.length).sum()];
+    int row = 0;
+    for (double[] query : potential)
+      for (double weight : query)
+        weights[row++] = weight;
+    double R = Arrays.stream(potential).mapToDouble(q -> Arrays.stream(q).sum()).sum();
+    double[][] featLoss = new double[features.getNumFeatures()][];
+    forEach(getPool(), featLoss.length, feat -> featLoss[feat] = findThreshold(features, feat, weights, R, numSteps));
+    return minLoss(featLoss);
+  }
+
+  private double[] findThreshold(PresortedFeatures features, int feat, double[] weights, double R, int numSteps){
+    //Positions are those of the order of feat: the stored rows, with the run of zeros after the negative ones.
+    //The rows of the zeros are not visited, as only the ends of their run can be candidates.
+    int[] rows = features.getStoredRows(feat);
+    double[] values = features.getStoredValues(feat);
+    int numNegative = features.getNumNegative(feat);
+    int numDocs = weights.length;
+    int numZeros = numDocs - rows.length;
+    IntToDoubleFunction value = pos -> pos < numNegative ? values[pos] : pos < numNegative + numZeros ? 0d : values[pos - numZeros];
+    double fmin = value.applyAsDouble(0);
+    double fmax = value.applyAsDouble(numDocs - 1);
+    if (fmin == fmax)
+      return new double[]{Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY}; //Skip this feature
+    double[] storedSuffix = new double[rows.length + 1]; //potential of the stored rows from each of them to the end
+    for (int k = rows.length - 1; k >= 0; k--)
+      storedSuffix[k] = storedSuffix[k + 1] + weights[rows[k]];
+    double zeroWeight = R - storedSuffix[0];
+    double lastZeroWeight = numZeros == 0 ? 0d : weights[features.getLastZeroRow(feat)];
+    //potential of the documents from a position to the end
+    IntToDoubleFunction suffix = pos -> {
+      if (pos >= numNegative + numZeros) return storedSuffix[pos - numZeros];
+      if (numZeros > 0 && pos == numNegative + numZeros - 1) return lastZeroWeight + storedSuffix[numNegative];
+      if (pos == numNegative) return zeroWeight + storedSuffix[numNegative];
+      assert(pos < numNegative);
+      return storedSuffix[pos] + zeroWeight;
+    };
+
+    //Candidates as in findThreshold(FeatureSortedDocs) and searchStepThresholds: {threshold, first position above it}.
+    double[] thresholds;
+    int[] positions;
+    if (numSteps <= 1 || numSteps >= numDocs) {
+      int count = 0;
+      thresholds = new double[rows.length + 1];
+      positions = new int[thresholds.length];
+      for (int pos = 0; pos < numDocs; pos++) {
+        if (pos == numNegative && numZeros > 0) pos += numZeros - 1;  //Only the last zero can end a run of values.
+        double v = value.applyAsDouble(pos);
+        if (pos != numDocs - 1 && v == value.applyAsDouble(pos + 1)) continue;
+        thresholds[count] = v;
+        positions[count++] = pos;
+      }
+      thresholds = Arrays.copyOf(thresholds, count);
+      positions = Arrays.copyOf(positions, count);
+    }
+    else {
+      thresholds = makeStepThresholds(fmin, fmax, numSteps);
+      positions = new int[thresholds.length];
+      for (int i = 0; i < thresholds.length; i++)
+        positions[i] = lowerBound(value, numDocs, thresholds[i]);
+    }
+
+    double threshold = fmin;
+    double maxr = Double.NEGATIVE_INFINITY;
+    int qdef = 0;
+    for (int i = 0; i < thresholds.length; i++) {
+      double L = suffix.applyAsDouble(positions[i]);
+      int q = Math.abs(L) > Math.abs(L - R) ? 0 : 1;
+      double r = Math.abs(L - (q * R));
+      if (r > maxr && r < 0.98) { //As in findThreshold(FeatureSortedDocs).
+        threshold = thresholds[i];
+        maxr = r;
+        qdef = q;
+      }
+    }
+    return new double[] {threshold, 1/maxr, qdef};
+  }
+
+  //First position whose value is not lower than threshold, as binaryThresholdSearch finds in the sorted values.
+  private static int lowerBound(IntToDoubleFunction value, int numDocs, double threshold){
+    int lo = 0;
+    int hi = numDocs;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (value.applyAsDouble(mid) < threshold) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
   protected double calcWLloss(List<Document> subData){
     if (subData.size() == 0) return 0;
     double L = 0d;
@@ -19,43 +19,157 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import org.ltr4l.Ranker;
 import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 public class RegressionTree extends Ranker<Ensemble.TreeConfig>{
   private final Split root;
 
   public RegressionTree(int numLeaves, int initFeat, double initThreshold, List<Document> docs, int numSteps) throws InvalidFeatureThresholdException{
+    this(numLeaves, initFeat, initThreshold, docs, numSteps, null);
+  }
+
+  /**
+   * @param pool pool on which leaves and features are searched in parallel, or null to search sequentially.
+   */
+  public RegressionTree(int numLeaves, int initFeat, double initThreshold, List<Document> docs, int numSteps, ForkJoinPool pool) throws InvalidFeatureThresholdException{
     assert(numLeaves >= 2);
     root = new Split(initFeat, initThreshold, docs);
+    TreeTools treeTools = new RegressionTreeTools().setPool(pool);
+    grow(numLeaves, leaf -> treeTools.findMinLeafThreshold(leaf.getScoredDocs(), numSteps), leaf -> {}, pool);
+  }
+
+  /**
+   * Grows the tree with histograms of the quantized features instead of sorting the documents of every leaf.
+   * @param partition partition of the rows of bins, which is reset before use.
+   * @param targets regression target of each row of bins.
+   * @param rootHistogram histogram of all rows, which is shared between trees trained on the same targets.
+   * @param pool pool on which leaves and features are searched in parallel, or null to search sequentially.
+   */
+  public RegressionTree(int numLeaves, int initFeat, double initThreshold, FeatureBins bins, RowPartition partition,
+                        double[] targets, FeatureHistogram rootHistogram, ForkJoinPool pool) throws InvalidFeatureThresholdException{
+    this(numLeaves, initFeat, initThreshold, bins, reset(partition), partition.getNumRows(), targets, rootHistogram, null, null, pool);
+  }
+
+  /**
+   * Same as {@link #RegressionTree(int, int, double, FeatureBins, RowPartition, double[], FeatureHistogram, ForkJoinPool)},
+   * for a sample of the rows and features, as in stochastic gradient boosting.
+   * @param partition partition whose rows [0, numRows) are used, e.g. after the sampled rows were partitioned to the front.
+   * @param numRows number of rows the tree is built from.
+   * @param rootHistogram histogram of the rows [0, numRows), holding at least treeFeatures.
+   * @param treeFeatures features the histograms of the leaves are built for, or null for all features.
+   * @param leafFeatures features to search at a leaf, by leaf id, among treeFeatures; null, or a null result, to search treeFeatures.
+   */
+  public RegressionTree(int numLeaves, int initFeat, double initThreshold, FeatureBins bins, RowPartition partition, int numRows,
+                        double[] targets, FeatureHistogram rootHistogram, int[] treeFeatures, IntFunction<int[]> leafFeatures,
+                        ForkJoinPool pool) throws InvalidFeatureThresholdException{
+    assert(numLeaves >= 2);
+    root = new Split(initFeat, initThreshold, partition, 0, numRows);
+    Map<Split, FeatureHistogram> histograms = new HashMap<>();
+    histograms.put(root, rootHistogram);
+    //Only the smaller child is built from its documents; the other one is the difference to the parent.
+    Consumer<Split> addChildHistograms = parent -> {
+      Split small = parent.getLeftLeaf().getNumDocs() <= parent.getRightLeaf().getNumDocs() ? parent.getLeftLeaf() : parent.getRightLeaf();
+      Split large = small == parent.getLeftLeaf() ? parent.getRightLeaf() : parent.getLeftLeaf();
+      FeatureHistogram smallHistogram = FeatureHistogram.build(bins, targets, partition.getOrder(0), small.getFrom(), small.getTo(),
+          treeFeatures, pool);
+      histograms.put(small, smallHistogram);
+      histograms.put(large, histograms.remove(parent).subtract(smallHistogram));
+    };
+    addChildHistograms.accept(root);
+    grow(numLeaves, leaf -> histograms.get(leaf).findMinLeafThreshold(features(leafFeatures, leaf.getLeafId(), treeFeatures), pool),
+        addChildHistograms, pool);
+  }
+
+  /**
+   * Grows the tree with exact greedy search over feature columns which were sorted once for the whole training.
+   * @param partition partition made by {@link PresortedFeatures#newPartition()}, which is reset before use.
+   * @param targets regression target of each row.
+   * @param pool pool on which leaves and features are searched in parallel, or null to search sequentially.
+   */
+  public RegressionTree(int numLeaves, int initFeat, double initThreshold, PresortedFeatures features, RowPartition partition,
+                        double[] targets, ForkJoinPool pool) throws InvalidFeatureThresholdException{
+    this(numLeaves, initFeat, initThreshold, features, reset(partition), partition.getNumRows(), targets, null, pool);
+  }
+
+  /**
+   * Same as {@link #RegressionTree(int, int, double, PresortedFeatures, RowPartition, double[], ForkJoinPool)},
+   * for a sample of the rows and features, as in stochastic gradient boosting.
+   * @param partition partition whose rows [0, numRows) are used, e.g. after the sampled rows were partitioned to the front.
+   * @param numRows number of rows the tree is built from.
+   * @param leafFeatures features to search at a leaf, by leaf id; null, or a null result, to search all features.
+   */
+  public RegressionTree(int numLeaves, int initFeat, double initThreshold, PresortedFeatures features, RowPartition partition,
+                        int numRows, double[] targets, IntFunction<int[]> leafFeatures, ForkJoinPool pool) throws InvalidFeatureThresholdException{
+    assert(numLeaves >= 2);
+    root = new Split(initFeat, initThreshold, partition, 0, numRows);
+    grow(numLeaves, leaf -> features.findMinLeafThreshold(partition, leaf.getFrom(), leaf.getTo(), targets,
+        features(leafFeatures, leaf.getLeafId(), null), pool), leaf -> {}, pool);
+  }
+
+  private static RowPartition reset(RowPartition partition){
+    partition.reset();
+    return partition;
+  }
+
+  private static int[] features(IntFunction<int[]> leafFeatures, int leafId, int[] defaultFeatures){
+    int[] features = leafFeatures == null ? null : leafFeatures.apply(leafId);
+    return features == null ? defaultFeatures : features;
+  }
+
+  //Splits the leaf with the lowest loss until the tree has numLeaves leaves. New leaves are searched in parallel.
+  private void grow(int numLeaves, Function<Split, OptimalLeafLoss> findSplit, Consumer<Split> onSplit, ForkJoinPool pool) throws InvalidFeatureThresholdException{
     Map<Split, OptimalLeafLoss> splitErrorMap = new HashMap<>();
-    TreeTools treeTools = new RegressionTreeTools();
     for(int l = 2; l < numLeaves; l++) {
+      List<Split> newLeaves = new ArrayList<>();
       for (Split leaf : root.getTerminalLeaves()) {
         if(!splitErrorMap.containsKey(leaf)) //Speedup: only calculate if it hasnt been done so yet... should be twice
-          splitErrorMap.put(leaf, treeTools.findMinLeafThreshold(leaf.getScoredDocs(), numSteps));
+          newLeaves.add(leaf);
       }
+      OptimalLeafLoss[] losses = new OptimalLeafLoss[newLeaves.size()];
+      TreeTools.forEach(pool, losses.length, i -> losses[i] = findSplit.apply(newLeaves.get(i)));
+      for (int i = 0; i < losses.length; i++)
+        splitErrorMap.put(newLeaves.get(i), losses[i]);
       Split optimalLeaf = TreeTools.findOptimalLeaf(splitErrorMap);
       int feature = splitErrorMap.get(optimalLeaf).getOptimalFeature();
       double threshold = splitErrorMap.get(optimalLeaf).getOptimalThreshold();
       optimalLeaf.addSplit(feature, threshold);
       splitErrorMap.remove(optimalLeaf);
+      onSplit.accept(optimalLeaf);
     }
   }
 
+  /**
+   * For subclasses which build their nodes themselves.
+   */
+  protected RegressionTree(Split root){
+    this.root = root;
+  }
+
   public RegressionTree(SavedModel model){
-    int numNodes = model.leafIds.size();
+    this(new Nodes(model));
+  }
+
+  public RegressionTree(Nodes nodes){
+    int numNodes = nodes.size();
     assert(numNodes > 3);
-    root = new Split(null, model.featureIds.get(0), model.thresh.get(0), model.leafIds.get(0), model.scores.get(0));
+    root = new Split(null, nodes.featureIds.get(0), nodes.thresh.get(0), nodes.leafIds.get(0), nodes.scores.get(0));
     Split currentNode = root;
     for(int i = 1; i < numNodes; i++){
       int currentId = currentNode.getLeafId();
-      int featId = model.featureIds.get(i);
-      double nextThresh = model.thresh.get(i);
-      int nextId = model.leafIds.get(i);
-      double nextScore = model.scores.get(i);
+      int featId = nodes.featureIds.get(i);
+      double nextThresh = nodes.thresh.get(i);
+      int nextId = nodes.leafIds.get(i);
+      double nextScore = nodes.scores.get(i);
 
       if(nextId == 2 * currentId + 1){
         currentNode.setLeftLeaf(new Split(currentNode, featId, nextThresh, nextId, nextScore));
@@ -90,15 +204,62 @@ public class RegressionTree extends Ranker<Ensemble.TreeConfig>{
     return root.getTerminalLeaves();
   }
 
+  /**
+   * Drops the training documents held by the nodes, once the scores of the leaves are set.
+   */
+  public void clearTrainingData(){
+    root.clearTrainingData();
+  }
+
   protected Split getRoot() {
     return root;
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public double predict(List<Double> features) {
     return root.calculateScore(features);
   }
 
+  @Override
+  public double predict(double[] features) {
+    return root.calculateScore(features, 0);
+  }
+
+  @Override
+  public double predict(Document doc) {
+    return root.calculateScore(doc);
+  }
+
+  /**
+   * Scores the document whose features start at offset, e.g. a row of {@link FeatureMatrix#getRowMajor()}.
+   */
+  double predict(double[] features, int offset) {
+    return root.calculateScore(features, offset);
+  }
+
+  @Override
+  public double[] predictBatch(FeatureMatrix matrix) {
+    double[] scores = new double[matrix.getNumDocs()];
+    double[] rows = matrix.getRowMajor();
+    int numFeatures = matrix.getNumFeatures();
+    for (int d = 0; d < scores.length; d++)
+      scores[d] = root.calculateScore(rows, d * numFeatures);
+    return scores;
+  }
+
+  /**
+   * Adds the score of each row of the row-major rows, which have numFeatures features, to scores.
+   */
+  void addScores(double[] rows, int numFeatures, double[] scores) {
+    for (int d = 0; d < scores.length; d++)
+      scores[d] += root.calculateScore(rows, d * numFeatures);
+  }
+
   @Override
   public void writeModel(Ensemble.TreeConfig config, Writer writer) throws IOException {
     SavedModel savedModel = new SavedModel( getModelInfo(IntProp.FEATURE), getModelInfo(IntProp.ID), getModelInfo(DoubleProp.THRESHOLD), getModelInfo(DoubleProp.SCORE));
@@ -141,4 +302,39 @@ public class RegressionTree extends Ranker<Ensemble.TreeConfig>{
     }
   }
 
+  /**
+   * The nodes of a saved tree in pre-order, as in {@link SavedModel}, in primitive buffers,
+   * e.g. views of the blocks of a {@link org.ltr4l.tools.BinaryModel}.
+   */
+  public static class Nodes {
+    final IntBuffer featureIds;
+    final IntBuffer leafIds;
+    final DoubleBuffer thresh;
+    final DoubleBuffer scores;
+
+    public Nodes(IntBuffer featureIds, IntBuffer leafIds, DoubleBuffer thresh, DoubleBuffer scores) {
+      if (featureIds.limit() != leafIds.limit() || thresh.limit() != leafIds.limit() || scores.limit() != leafIds.limit())
+        throw new IllegalArgumentException("Every node of a tree needs a feature, leaf id, threshold and score.");
+      this.featureIds = featureIds;
+      this.leafIds = leafIds;
+      this.thresh = thresh;
+      this.scores = scores;
+    }
+
+    Nodes(SavedModel model) {
+      this(IntBuffer.wrap(model.featureIds.stream().mapToInt(Integer::intValue).toArray()),
+          IntBuffer.wrap(model.leafIds.stream().mapToInt(Integer::intValue).toArray()),
+          DoubleBuffer.wrap(model.thresh.stream().mapToDouble(Double::doubleValue).toArray()),
+          DoubleBuffer.wrap(model.scores.stream().mapToDouble(Double::doubleValue).toArray()));
+    }
+
+    int size() {
+      return leafIds.limit();
+    }
+
+    //In pre-order, a node has children if the next node is its left child.
+    boolean isSplit(int node) {
+      return node + 1 < size() && leafIds.get(node + 1) == 2 * leafIds.get(node) + 1;
+    }
+  }
 }
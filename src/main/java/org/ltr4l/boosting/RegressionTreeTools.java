@@ -17,7 +17,6 @@ package org.ltr4l.boosting;
 
 import org.ltr4l.query.Document;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class RegressionTreeTools extends TreeTools {
@@ -29,18 +28,27 @@ public class RegressionTreeTools extends TreeTools {
     List<Document> fSortedDocs = featureSortedDocs.getFeatureSortedDocs();
     if(featureSortedDocs.getMaxFeature() == featureSortedDocs.getMinFeature())
       return new double[]{Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY}; //Skip this feature
-    int feat = featureSortedDocs.getSortedFeature();
+    double[] featureSamples = featureSortedDocs.getFeatureSamples();
     int numDocs = fSortedDocs.size();
-    double threshold = fSortedDocs.get(0).getFeature(feat);
+    double sum = 0d;
+    double sumOfSquares = 0d;
+    for (Document doc : fSortedDocs) {
+      sum += doc.getLabel();
+      sumOfSquares += doc.getLabel() * doc.getLabel();
+    }
+    double threshold = featureSamples[0];
     double minLoss = Double.POSITIVE_INFINITY;
+    double lSum = 0d;
+    double lSumOfSquares = 0d;
     for(int threshId = 0; threshId < numDocs; threshId++ ){
+      int label = fSortedDocs.get(threshId).getLabel();
+      lSum += label;
+      lSumOfSquares += label * label;
       //Consider cases where sortedFeature values are the same!
-      if (threshId != numDocs -1 && fSortedDocs.get(threshId).getFeature(feat) == fSortedDocs.get(threshId + 1).getFeature(feat)) continue;
-      List<Document> lDocs = new ArrayList<>(fSortedDocs.subList(0, threshId + 1)); //TODO: check +1
-      List<Document> rDocs = new ArrayList<>(fSortedDocs.subList(threshId + 1, numDocs));
-      double loss = calcWLloss(lDocs) + calcWLloss(rDocs);
+      if (threshId != numDocs -1 && featureSamples[threshId] == featureSamples[threshId + 1]) continue;
+      double loss = loss(lSum, lSumOfSquares, threshId + 1) + loss(sum - lSum, sumOfSquares - lSumOfSquares, numDocs - threshId - 1);
       if(loss < minLoss){
-        threshold = !rDocs.isEmpty() ? rDocs.get(0).getFeature(feat) : lDocs.get(lDocs.size() - 1).getFeature(feat);
+        threshold = threshId + 1 < numDocs ? featureSamples[threshId + 1] : featureSamples[threshId];
         minLoss = loss;
       }
     }
@@ -51,14 +59,22 @@ public class RegressionTreeTools extends TreeTools {
   protected double[] searchStepThresholds(FeatureSortedDocs fSortedDocs, double[] thresholds){
     double[] featureSamples = fSortedDocs.getFeatureSamples();
     List<Document> samples = fSortedDocs.getFeatureSortedDocs();
+    //Prefix sums of the labels, so the loss of each candidate is found in constant time.
+    double[] sums = new double[samples.size() + 1];
+    double[] sumsOfSquares = new double[samples.size() + 1];
+    for (int i = 0; i < samples.size(); i++) {
+      int label = samples.get(i).getLabel();
+      sums[i + 1] = sums[i] + label;
+      sumsOfSquares[i + 1] = sumsOfSquares[i] + label * label;
+    }
+    int numDocs = samples.size();
     double finalThreshold = thresholds[0]; //minimum feature
     double minLoss = Double.POSITIVE_INFINITY;
 
     for(double threshold : thresholds){
       int idx = binaryThresholdSearch(featureSamples, threshold);
-      List<Document> lDocs = samples.subList(0, idx);
-      List<Document> rDocs = samples.subList(idx, samples.size());
-      double loss = calcWLloss(lDocs) + calcWLloss(rDocs);
+      double loss = loss(sums[idx], sumsOfSquares[idx], idx)
+          + loss(sums[numDocs] - sums[idx], sumsOfSquares[numDocs] - sumsOfSquares[idx], numDocs - idx);
       if(loss < minLoss){
         finalThreshold = threshold;
         minLoss = loss;
@@ -68,8 +84,18 @@ public class RegressionTreeTools extends TreeTools {
   }
 
   protected double calcWLloss(List<Document> subData){
-    if (subData.size() == 0) return 0;
-    double avg = subData.stream().mapToDouble(doc -> doc.getLabel()).sum() / subData.size();
-    return subData.stream().mapToDouble(doc -> Math.pow(doc.getLabel() - avg, 2)).sum();
+    double sum = 0d;
+    double sumOfSquares = 0d;
+    for (Document doc : subData) {
+      sum += doc.getLabel();
+      sumOfSquares += doc.getLabel() * doc.getLabel();
+    }
+    return loss(sum, sumOfSquares, subData.size());
+  }
+
+  //Squared loss around the mean, from the sum and the sum of squares of count labels.
+  private static double loss(double sum, double sumOfSquares, int count){
+    if (count == 0) return 0;
+    return Math.max(0d, sumOfSquares - sum * sum / count);
   }
 }
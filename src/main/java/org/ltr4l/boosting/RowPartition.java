@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.boosting;
+
+import org.ltr4l.query.Document;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Rows of the training documents in one or more orders (e.g. sorted by each feature), partitioned in place
+ * while a tree grows. The rows of a node are the range [from, to) of every order, so nodes only keep their range.
+ * Partitioning is stable, so a range which was sorted by a feature stays sorted in both children.
+ */
+public class RowPartition {
+  private final List<Document> docs;
+  private final int[][] initialOrders;
+  private final int[][] orders;
+  private final boolean[] goesLeft;  //Scratch, indexed by row.
+  private final int[] buffer;
+
+  /**
+   * @param docs training documents; rows are indices of docs.
+   * @param orders permutations of the rows. They are copied, and restored by {@link #reset()}.
+   */
+  public RowPartition(List<Document> docs, int[]... orders){
+    this.docs = docs;
+    this.initialOrders = orders;
+    this.orders = new int[orders.length][];
+    for (int k = 0; k < orders.length; k++) {
+      assert(orders[k].length == docs.size());
+      this.orders[k] = orders[k].clone();
+    }
+    goesLeft = new boolean[docs.size()];
+    buffer = new int[docs.size()];
+  }
+
+  /**
+   * @return a partition of all rows of docs in index order.
+   */
+  public static RowPartition of(List<Document> docs){
+    int[] rows = new int[docs.size()];
+    for (int row = 0; row < rows.length; row++) rows[row] = row;
+    return new RowPartition(docs, rows);
+  }
+
+  /**
+   * Restores the initial orders, e.g. before growing another tree.
+   */
+  public void reset(){
+    for (int k = 0; k < orders.length; k++)
+      System.arraycopy(initialOrders[k], 0, orders[k], 0, orders[k].length);
+  }
+
+  public int getNumRows(){
+    return buffer.length;
+  }
+
+  public int[] getOrder(int k){
+    return orders[k];
+  }
+
+  /**
+   * @return the row at pos of the first order. Any order holds the same rows in a node's range.
+   */
+  public int getRow(int pos){
+    return orders[0][pos];
+  }
+
+  public Document getDocument(int row){
+    return docs.get(row);
+  }
+
+  /**
+   * @return the rows of [from, to), copied.
+   */
+  public int[] getRows(int from, int to){
+    int[] rows = new int[to - from];
+    System.arraycopy(orders[0], from, rows, 0, rows.length);
+    return rows;
+  }
+
+  /**
+   * @return read-only view of the documents of [from, to).
+   */
+  public List<Document> getDocuments(int from, int to){
+    return new AbstractList<Document>() {
+      @Override
+      public Document get(int index) {
+        if (index < 0 || index >= to - from) throw new IndexOutOfBoundsException("Index: " + index);
+        return docs.get(orders[0][from + index]);
+      }
+
+      @Override
+      public int size() {
+        return to - from;
+      }
+    };
+  }
+
+  /**
+   * Moves the rows of [from, to) for which isLeft is true before the others, in every order, keeping their relative order.
+   * @return the position of the first row which is not left.
+   */
+  public int partition(int from, int to, IntPredicate isLeft){
+    int mid = from;
+    for (int pos = from; pos < to; pos++) {
+      int row = orders[0][pos];
+      goesLeft[row] = isLeft.test(row);
+      if (goesLeft[row]) mid++;
+    }
+    for (int[] order : orders) {
+      int l = from;
+      int r = 0;
+      for (int pos = from; pos < to; pos++) {
+        int row = order[pos];
+        if (goesLeft[row]) order[l++] = row;
+        else buffer[r++] = row;
+      }
+      System.arraycopy(buffer, 0, order, l, r);
+    }
+    return mid;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.boosting;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+import org.ltr4l.query.Document;
+import org.ltr4l.query.Query;
+
+/**
+ * Scores of an additive ranker for every document of a list of queries, kept up to date while the ranker grows.
+ * Each time a learner is added to the ranker, only its contribution is added here, so scoring the data sets
+ * every iteration costs one learner instead of the whole ranker.
+ *
+ * Contributions are summed in the order the learners were added, starting from 0, which is the order the
+ * rankers sum them in, so the scores are the same as those of the ranker.
+ */
+public class ScoreCache {
+  private final List<Query> queries;
+  private final double[][] sums;     //[query][doc], in the order of the doc list of the query
+  private final double[][] scores;   //link applied to sums; the same arrays as sums if there is no link
+  private final DoubleUnaryOperator link;
+
+  public ScoreCache(List<Query> queries) {
+    this(queries, null);
+  }
+
+  /**
+   * @param queries queries whose documents are scored.
+   * @param link function from the sum of the learners to the score of the ranker, e.g. signum; null for the sum itself.
+   */
+  public ScoreCache(List<Query> queries, DoubleUnaryOperator link) {
+    this.queries = queries;
+    this.link = link;
+    sums = new double[queries.size()][];
+    scores = link == null ? sums : new double[queries.size()][];
+    for (int q = 0; q < sums.length; q++) {
+      sums[q] = new double[queries.get(q).getDocList().size()];
+      if (link != null) {
+        scores[q] = new double[sums[q].length];
+        for (int d = 0; d < sums[q].length; d++)
+          scores[q][d] = link.applyAsDouble(0d);
+      }
+    }
+  }
+
+  /**
+   * Adds the contribution of a learner which was just added to the ranker.
+   * @param learner contribution of the learner to the score of a document; must be thread safe if pool is not null.
+   * @param pool queries are scored in parallel on pool, or sequentially if null.
+   */
+  public void add(ToDoubleFunction<Document> learner, ForkJoinPool pool) {
+    TreeTools.forEach(pool, sums.length, q -> {
+      List<Document> docs = queries.get(q).getDocList();
+      double[] querySums = sums[q];
+      for (int d = 0; d < querySums.length; d++) {
+        querySums[d] += learner.applyAsDouble(docs.get(d));
+        if (link != null)
+          scores[q][d] = link.applyAsDouble(querySums[d]);
+      }
+    });
+  }
+
+  public List<Query> getQueries() {
+    return queries;
+  }
+
+  /**
+   * @return scores of the ranker as [query][doc]. The arrays are updated in place by {@link #add}; do not modify them.
+   */
+  public double[][] getScores() {
+    return scores;
+  }
+
+  public double[] getScores(int query) {
+    return scores[query];
+  }
+}
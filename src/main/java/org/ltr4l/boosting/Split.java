@@ -27,7 +27,10 @@ public class Split { //Node for trees
   private double threshold;
   private double score;
   private int featureId;
-  private final List<Document> scoredDocs;
+  private List<Document> scoredDocs;
+  private RowPartition partition;  //If not null, the documents of this node are the rows [from, to) of partition.
+  private int from;
+  private int to;
   private final int leafId;
 
   //TODO: Add builder for Split.
@@ -48,6 +51,20 @@ public class Split { //Node for trees
     leafId = 0;
   }
 
+  protected Split(int featureId, double threshold, RowPartition partition) throws InvalidFeatureThresholdException { //For root node over all rows of partition.
+    this(featureId, threshold, partition, 0, partition.getNumRows());
+  }
+
+  protected Split(int featureId, double threshold, RowPartition partition, int from, int to) throws InvalidFeatureThresholdException { //For root node over the rows [from, to) of partition.
+    this.source = null;
+    this.partition = partition;
+    this.from = from;
+    this.to = to;
+    this.leafId = 0;
+    score = 0.0d;
+    addSplit(featureId, threshold);
+  }
+
   protected Split(Split source, List<Document> scoredDocs, int leafId) throws InvalidFeatureThresholdException {
     if (scoredDocs.isEmpty()) throw new InvalidFeatureThresholdException();
     this.source = source;
@@ -60,6 +77,20 @@ public class Split { //Node for trees
     featureId = -1;
   }
 
+  private Split(Split source, RowPartition partition, int from, int to, int leafId) throws InvalidFeatureThresholdException {
+    if (from == to) throw new InvalidFeatureThresholdException();
+    this.source = source;
+    this.partition = partition;
+    this.from = from;
+    this.to = to;
+    this.leafId = leafId;
+    leftLeaf = null;
+    rightLeaf = null;
+    score = 0.0d;
+    threshold = Double.NEGATIVE_INFINITY;
+    featureId = -1;
+  }
+
   protected Split(Split source, int featureId, double threshold, int leafId, double score){ //Used when reading model!
     this.source = source;
     this.featureId = featureId;
@@ -72,6 +103,12 @@ public class Split { //Node for trees
   protected void addSplit(int feature, double threshold) throws InvalidFeatureThresholdException {
     this.featureId = feature;
     this.threshold = threshold;
+    if (partition != null) {
+      int mid = partition.partition(from, to, row -> partition.getDocument(row).getFeature(featureId) < this.threshold);
+      leftLeaf = new Split(this, partition, from, mid, 2 * leafId + 1);
+      rightLeaf = new Split(this, partition, mid, to, (2 * leafId) + 2);
+      return;
+    }
     List<Document> leftDocs = new ArrayList<>();
     List<Document> rightDocs = new ArrayList<>();
     for (Document doc : this.scoredDocs) {
@@ -99,6 +136,23 @@ public class Split { //Node for trees
     return destination.calculateScore(features);
   }
 
+  /**
+   * Same as {@link #calculateScore(List)}, for the features at [offset, offset + numFeatures) of features.
+   */
+  protected double calculateScore(double[] features, int offset) {
+    Split node = this;
+    while (node.hasDestinations())
+      node = features[offset + node.featureId] < node.threshold ? node.leftLeaf : node.rightLeaf;
+    return node.score;
+  }
+
+  protected double calculateScore(Document doc) {
+    Split node = this;
+    while (node.hasDestinations())
+      node = doc.getFeature(node.featureId) < node.threshold ? node.leftLeaf : node.rightLeaf;
+    return node.score;
+  }
+
   protected void fill(List<Double> info, RegressionTree.DoubleProp type) {
     assert (type != null);
     double prop;
@@ -147,7 +201,42 @@ public class Split { //Node for trees
   }
 
   public List<Document> getScoredDocs() {
-    return scoredDocs;
+    return partition != null ? partition.getDocuments(from, to) : scoredDocs;
+  }
+
+  /**
+   * Drops the documents of this node and its destinations, which are only needed while training.
+   */
+  protected void clearTrainingData() {
+    scoredDocs = new ArrayList<>();
+    partition = null;
+    from = 0;
+    to = 0;
+    if (hasDestinations()) {
+      for (Split destination : getDestinations())
+        destination.clearTrainingData();
+    }
+  }
+
+  /**
+   * @param values a value per row of the {@link RowPartition} the tree was grown on.
+   * @return sum of the values of the rows of this node.
+   */
+  public double sumOverRows(double[] values) {
+    if (partition == null)
+      throw new IllegalStateException("The node does not hold rows of a RowPartition.");
+    int[] rows = partition.getOrder(0);
+    double sum = 0d;
+    for (int pos = from; pos < to; pos++)
+      sum += values[rows[pos]];
+    return sum;
+  }
+
+  RowPartition getPartition() { return partition; }
+  int getFrom() { return from; }
+  int getTo() { return to; }
+  int getNumDocs() {
+    return partition != null ? to - from : scoredDocs.size();
   }
   public void setSource(Split source) {
     this.source = source;
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.boosting;
+
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Read-only {@link AdaBoost} or {@link RankBoost} which scores a document with one binary search per feature
+ * instead of one comparison per weak learner.
+ *
+ * The learners are grouped by feature, and the thresholds of each feature are sorted with the cumulative sums of
+ * what their learners add when the feature is not lower than the threshold. A document adds the sum at the number
+ * of thresholds of each feature which it reaches. AdaBoost votes are integers, so they are the same as those of
+ * the learners; RankBoost scores are summed in another order, so they may differ by the rounding of the sums.
+ */
+public class ThresholdTable extends Ranker<RankBoost.RankBoostConfig> {
+  private final AdaBoost model;
+  private final boolean vote;          //AdaBoost scores with the sign of the sum
+  private final int[] features;        //features used by the learners, in ascending order
+  private final double[][] thresholds; //distinct thresholds of each used feature, in ascending order
+  private final double[][] sums;       //sums[i][k]: what the learners of the k lowest thresholds of features[i] add
+  private final double base;           //sum of the learners when every feature is lower than their thresholds
+  private final int numFeatures;
+
+  public ThresholdTable(AdaBoost model) {
+    this.model = model;
+    vote = !(model instanceof RankBoost);
+    TreeMap<Integer, TreeMap<Double, Double>> table = new TreeMap<>();  //feature -> threshold -> added score
+    double constant = 0d;
+    for (WeakLearner learner : model.getLearners()) {
+      double threshold = learner.getThreshold() == 0d ? 0d : learner.getThreshold();  //-0.0 splits as 0.0
+      double above = score(learner, threshold);
+      if (!(Double.NEGATIVE_INFINITY < threshold)) {  //-Infinity or NaN: no feature is lower
+        constant += above;
+        continue;
+      }
+      double below = score(learner, Double.NEGATIVE_INFINITY);
+      constant += below;
+      table.computeIfAbsent(learner.getFid(), f -> new TreeMap<>()).merge(threshold, above - below, Double::sum);
+    }
+    base = constant;
+
+    features = new int[table.size()];
+    thresholds = new double[table.size()][];
+    sums = new double[table.size()][];
+    int i = 0;
+    for (int feature : table.keySet()) {
+      TreeMap<Double, Double> column = table.get(feature);
+      features[i] = feature;
+      thresholds[i] = new double[column.size()];
+      sums[i] = new double[column.size() + 1];
+      int k = 0;
+      for (double threshold : column.keySet()) {
+        thresholds[i][k] = threshold;
+        sums[i][k + 1] = sums[i][k] + column.get(threshold);
+        k++;
+      }
+      i++;
+    }
+    numFeatures = features.length == 0 ? 0 : features[features.length - 1] + 1;
+  }
+
+  //What the learner adds to the sum of the model for a feature value.
+  private double score(WeakLearner learner, double feature) {
+    int score = learner.calculateScore(feature);
+    return vote ? score : learner.getAlpha() * score;
+  }
+
+  /**
+   * @return the model whose learners the table was made of.
+   */
+  public AdaBoost getModel() {
+    return model;
+  }
+
+  @Override
+  public int getNumFeatures() {
+    return numFeatures;
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
+  //Number of thresholds which value is not lower than; NaN is not lower than any threshold.
+  private static int countReached(double[] thresholds, double value) {
+    if (Double.isNaN(value)) return thresholds.length;
+    int lo = 0;
+    int hi = thresholds.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (value < thresholds[mid]) hi = mid;
+      else lo = mid + 1;
+    }
+    return lo;
+  }
+
+  private double finish(double sum) {
+    return vote ? Math.signum(sum) : sum;
+  }
+
+  @Override
+  public double predict(double[] values) {
+    double sum = base;
+    for (int i = 0; i < features.length; i++)
+      sum += sums[i][countReached(thresholds[i], values[features[i]])];
+    return finish(sum);
+  }
+
+  @Override
+  public double predict(List<Double> values) {
+    double sum = base;
+    for (int i = 0; i < features.length; i++)
+      sum += sums[i][countReached(thresholds[i], values.get(features[i]))];
+    return finish(sum);
+  }
+
+  @Override
+  public double predict(Document doc) {
+    double sum = base;
+    for (int i = 0; i < features.length; i++)
+      sum += sums[i][countReached(thresholds[i], doc.getFeature(features[i]))];
+    return finish(sum);
+  }
+
+  /**
+   * Writes the learners of the model, in the format of {@link AdaBoost}.
+   */
+  @Override
+  public void writeModel(RankBoost.RankBoostConfig config, Writer writer) throws IOException {
+    model.writeModel(config, writer);
+  }
+}
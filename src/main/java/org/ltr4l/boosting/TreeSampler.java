@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.boosting;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws the random subsets for stochastic gradient boosting: the training rows (by query and by document) and
+ * the features each tree is built from, and the features searched at each split.
+ *
+ * Everything is drawn from the seed, one tree after another, so training is reproducible. The features of a split
+ * are drawn from the tree and the id of the leaf, so they do not depend on the order in which leaves are searched.
+ */
+public class TreeSampler {
+  private final int[] queryStarts;   //Rows of query q are [queryStarts[q], queryStarts[q + 1]).
+  private final int numFeatures;
+  private final double subsample;
+  private final double querySubsample;
+  private final double colsampleByTree;
+  private final double colsampleBySplit;
+  private final Random random;
+  private final boolean[] inBag;
+  private int[] treeFeatures;        //null if all features are used
+  private long treeSeed;
+
+  /**
+   * @param queryStarts first row of each query, followed by the number of rows.
+   * @param numFeatures number of features.
+   * @param subsample fraction of the documents of the sampled queries used by each tree.
+   * @param querySubsample fraction of the queries used by each tree.
+   * @param colsampleByTree fraction of the features each tree may split on.
+   * @param colsampleBySplit fraction of the features of the tree searched at each split.
+   * @param seed seed of all draws.
+   */
+  public TreeSampler(int[] queryStarts, int numFeatures, double subsample, double querySubsample,
+                     double colsampleByTree, double colsampleBySplit, long seed){
+    checkFraction("subsample", subsample);
+    checkFraction("querySubsample", querySubsample);
+    checkFraction("colsampleByTree", colsampleByTree);
+    checkFraction("colsampleBySplit", colsampleBySplit);
+    this.queryStarts = queryStarts;
+    this.numFeatures = numFeatures;
+    this.subsample = subsample;
+    this.querySubsample = querySubsample;
+    this.colsampleByTree = colsampleByTree;
+    this.colsampleBySplit = colsampleBySplit;
+    random = new Random(seed);
+    inBag = new boolean[queryStarts[queryStarts.length - 1]];
+    Arrays.fill(inBag, true);
+  }
+
+  private static void checkFraction(String name, double fraction){
+    if (!(fraction > 0d && fraction <= 1d))
+      throw new IllegalArgumentException(name + " must be in (0, 1]: " + fraction);
+  }
+
+  public boolean samplesRows(){
+    return subsample < 1d || querySubsample < 1d;
+  }
+
+  public boolean samplesFeatures(){
+    return colsampleByTree < 1d || colsampleBySplit < 1d;
+  }
+
+  /**
+   * Draws the rows and features of the next tree.
+   */
+  public void nextTree(){
+    if (samplesRows()) {
+      Arrays.fill(inBag, false);
+      int numQueries = queryStarts.length - 1;
+      int[] queries = choose(random, numQueries, count(querySubsample, numQueries));
+      int numRows = 0;
+      for (int q : queries)
+        numRows += queryStarts[q + 1] - queryStarts[q];
+      int[] candidates = new int[numRows];
+      int n = 0;
+      for (int q : queries)
+        for (int row = queryStarts[q]; row < queryStarts[q + 1]; row++)
+          candidates[n++] = row;
+      for (int i : choose(random, numRows, count(subsample, numRows)))
+        inBag[candidates[i]] = true;
+    }
+    treeFeatures = colsampleByTree < 1d ? choose(random, numFeatures, count(colsampleByTree, numFeatures)) : null;
+    treeSeed = random.nextLong();
+  }
+
+  /**
+   * @return whether row is used by the current tree.
+   */
+  public boolean isInBag(int row){
+    return inBag[row];
+  }
+
+  /**
+   * @return features the current tree may split on in ascending order, or null if it may split on all features.
+   */
+  public int[] getTreeFeatures(){
+    return treeFeatures;
+  }
+
+  /**
+   * @return features to search at the leaf with leafId in ascending order, or null to search all features.
+   */
+  public int[] getSplitFeatures(int leafId){
+    if (colsampleBySplit == 1d)
+      return treeFeatures;
+    int[] features = treeFeatures;
+    if (features == null) {
+      features = new int[numFeatures];
+      for (int feat = 0; feat < numFeatures; feat++) features[feat] = feat;
+    }
+    Random leafRandom = new Random(treeSeed + 0x9E3779B97F4A7C15L * (leafId + 1));
+    int[] chosen = choose(leafRandom, features.length, count(colsampleBySplit, features.length));
+    for (int i = 0; i < chosen.length; i++)
+      chosen[i] = features[chosen[i]];
+    return chosen;
+  }
+
+  private static int count(double fraction, int n){
+    return Math.min(n, Math.max(1, (int) Math.round(fraction * n)));
+  }
+
+  //Picks k of 0, 1, ..., n - 1 without replacement (partial Fisher-Yates shuffle), in ascending order.
+  static int[] choose(Random random, int n, int k){
+    int[] ids = new int[n];
+    for (int i = 0; i < n; i++) ids[i] = i;
+    for (int i = 0; i < k; i++) {
+      int j = i + random.nextInt(n - i);
+      int tmp = ids[i];
+      ids[i] = ids[j];
+      ids[j] = tmp;
+    }
+    int[] chosen = Arrays.copyOf(ids, k);
+    Arrays.sort(chosen);
+    return chosen;
+  }
+}
@@ -18,12 +18,76 @@ package org.ltr4l.boosting;
 import org.ltr4l.query.Document;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 public abstract class TreeTools {
+  private ForkJoinPool pool;  //null searches the features sequentially.
 
   public TreeTools(){}
 
+  /**
+   * Sets the pool on which features are searched in parallel. The result does not depend on the pool.
+   * @param pool pool to use, or null to search in the calling thread.
+   */
+  public TreeTools setPool(ForkJoinPool pool){
+    this.pool = pool;
+    return this;
+  }
+
+  public ForkJoinPool getPool(){
+    return pool;
+  }
+
+  /**
+   * @param numThreads 1 to run sequentially, 0 for the common pool, or the number of threads of a new pool.
+   * @return pool for {@link #setPool(ForkJoinPool)}; null if numThreads is 1.
+   */
+  public static ForkJoinPool getPool(int numThreads){
+    if (numThreads < 0) throw new IllegalArgumentException("numThreads must not be negative: " + numThreads);
+    if (numThreads == 1) return null;
+    return numThreads == 0 ? ForkJoinPool.commonPool() : new ForkJoinPool(numThreads);
+  }
+
+  /**
+   * Runs task for 0 &lt;= i &lt; n, in parallel on pool, or sequentially if pool is null.
+   */
+  public static void forEach(ForkJoinPool pool, int n, IntConsumer task){
+    if (pool == null || n < 2) {
+      for (int i = 0; i < n; i++) task.accept(i);
+      return;
+    }
+    pool.submit(() -> IntStream.range(0, n).parallel().forEach(task)).join();
+  }
+
+  /**
+   * Picks the feature with the lowest loss of featLoss ({threshold, loss, ...} per feature); ties go to the lower feature,
+   * so the choice does not depend on the order in which features were searched.
+   * @return {feature, threshold, loss}; feature 0 if no feature has a finite loss.
+   */
+  static OptimalLeafLoss minLoss(double[][] featLoss){
+    if (featLoss.length == 0)
+      return new OptimalLeafLoss(0, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+    int featureToSplit = 0;
+    for (int featId = 1; featId < featLoss.length; featId++) {
+      if (featLoss[featId][1] < featLoss[featureToSplit][1])
+        featureToSplit = featId;
+    }
+    return new OptimalLeafLoss(featureToSplit, featLoss[featureToSplit][0], featLoss[featureToSplit][1]);
+  }
+
+  /**
+   * Same as {@link #minLoss(double[][])} when only some features were searched.
+   * @param features searched features in ascending order, or null if all were; featLoss[i] is the loss of features[i].
+   */
+  static OptimalLeafLoss minLoss(double[][] featLoss, int[] features){
+    OptimalLeafLoss min = minLoss(featLoss);
+    if (features == null || featLoss.length == 0)
+      return min;
+    return new OptimalLeafLoss(features[min.getOptimalFeature()], min.getOptimalThreshold(), min.getMinLoss());
+  }
+
   /**
    * Finds the best threshold for a given feature.
    * @param fSortedDocs
@@ -56,8 +120,7 @@ public abstract class TreeTools {
 
 
   public static List<Document> orderByFeature(List<Document> documents, int feature){
-    assert(feature >= 0 && feature < documents.get(0).getFeatureLength());
-    return documents.stream().sorted(Comparator.comparingDouble(doc -> doc.getFeature(feature))).collect(Collectors.toCollection(ArrayList::new));
+    return FeatureSortedDocs.get(documents, feature).getFeatureSortedDocs();
   }
 
   /**
@@ -70,7 +133,10 @@ public abstract class TreeTools {
     Map.Entry<Split, OptimalLeafLoss> optimalEntry = iterator.next();
     while(iterator.hasNext()){
       Map.Entry<Split, OptimalLeafLoss> nextEntry = iterator.next();
-      if(nextEntry.getValue().getMinLoss() < optimalEntry.getValue().getMinLoss())
+      double nextLoss = nextEntry.getValue().getMinLoss();
+      double optimalLoss = optimalEntry.getValue().getMinLoss();
+      //Ties go to the lower leaf id, as the iteration order of the map is arbitrary.
+      if(nextLoss < optimalLoss || (nextLoss == optimalLoss && nextEntry.getKey().getLeafId() < optimalEntry.getKey().getLeafId()))
         optimalEntry = nextEntry;
     }
     return optimalEntry.getKey();
@@ -84,19 +150,10 @@ public abstract class TreeTools {
    * @return
    */
   public OptimalLeafLoss findMinLeafThreshold(List<Document> leafDocs, int numSteps){ //Faster than default.
-    int featureToSplit = 0;
-    FeatureSortedDocs sortedDocs = FeatureSortedDocs.get(leafDocs, featureToSplit);
-    double[] featLoss = findThreshold(sortedDocs, numSteps);
-    for(int featId = 1; featId < sortedDocs.getFeatureLength(); featId++){
-      double[] error = findThreshold(FeatureSortedDocs.get(leafDocs, featId), numSteps);
-      if(error[1] < featLoss[1]){
-        featLoss = error;
-        featureToSplit = featId;
-      }
-    }
-    double loss = featLoss[1];
-    double threshold = featLoss[0];
-    return new OptimalLeafLoss(featureToSplit, threshold, loss);
+    int numFeatures = leafDocs.get(0).getFeatureLength();
+    double[][] featLoss = new double[numFeatures][];
+    forEach(pool, numFeatures, featId -> featLoss[featId] = findThreshold(FeatureSortedDocs.get(leafDocs, featId), numSteps));
+    return minLoss(featLoss);
   }
 
   public OptimalLeafLoss findMinLeafThreshold(List<Document> leafDocs){ //Note: this can be slow!
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class WeakLearner extends Ranker<RankBoost.RankBoostConfig> {
   protected final int fid;
@@ -30,19 +31,44 @@ public class WeakLearner extends Ranker<RankBoost.RankBoostConfig> {
   protected final double alpha;
 
   public static WeakLearner findWeakLearner(RBDistribution dist, List<RankedDocs> queries, int numSteps){ //For RankBoost
+    return findWeakLearner(dist, queries, numSteps, null);
+  }
+
+  /**
+   * @param pool pool on which features are searched in parallel, or null to search sequentially.
+   */
+  public static WeakLearner findWeakLearner(RBDistribution dist, List<RankedDocs> queries, int numSteps, ForkJoinPool pool){ //For RankBoost
     // Here we want to find alpha and criteria for new weak learner
     //Note: The implementation here uses an approximation; see the third method of 3.2 in the original paper.
-    return findWeakLearner(dist.calcPotential(), queries, numSteps);
+    return findWeakLearner(dist.calcPotential(pool), queries, numSteps, pool);
+  }
+
+  /**
+   * Same as {@link #findWeakLearner(RBDistribution, List, int, ForkJoinPool)}, searching features sorted once in features.
+   * @param features features of the documents of the queries of dist, in order.
+   */
+  public static WeakLearner findWeakLearner(RBDistribution dist, PresortedFeatures features, int numSteps, ForkJoinPool pool){
+    RankBoostTools tools = new RankBoostTools(dist.calcPotential(pool));
+    tools.setPool(pool);
+    OptimalLeafLoss optLoss = tools.findMinLeafThreshold(features, numSteps);
+    return new WeakLearner(optLoss.getOptimalFeature(), optLoss.getOptimalThreshold(), getAlpha(optLoss));
   }
 
   public static WeakLearner findWeakLearner(double[][] distribution, List<RankedDocs> queries, int numSteps){ //For Adaboost.
-    RankBoostTools tools = new RankBoostTools(distribution, queries);
+    return findWeakLearner(distribution, queries, numSteps, null);
+  }
+
+  public static WeakLearner findWeakLearner(double[][] distribution, List<RankedDocs> queries, int numSteps, ForkJoinPool pool){
+    TreeTools tools = new RankBoostTools(distribution, queries).setPool(pool);
     List<Document> docs = new ArrayList<>();
     queries.forEach(rd -> docs.addAll(rd.getRankedDocs()));
     OptimalLeafLoss optLoss = tools.findMinLeafThreshold(docs, numSteps);
+    return new WeakLearner(optLoss.getOptimalFeature(), optLoss.getOptimalThreshold(), getAlpha(optLoss));
+  }
+
+  static double getAlpha(OptimalLeafLoss optLoss){
     double r = 1 / optLoss.getMinLoss();
-    double alpha = 0.5 * Math.log((1 + r) / (1 - r));
-    return new WeakLearner(optLoss.getOptimalFeature(), optLoss.getOptimalThreshold(), alpha);
+    return 0.5 * Math.log((1 + r) / (1 - r));
   }
 
 
@@ -53,7 +79,14 @@ public class WeakLearner extends Ranker<RankBoost.RankBoostConfig> {
   }
 
   protected int calculateScore(List<Double> features){
-    return features.get(fid) < threshold ? 0 : 1;
+    return calculateScore(features.get(fid));
+  }
+
+  /**
+   * @param feature value of the feature fid of a document.
+   */
+  protected int calculateScore(double feature){
+    return feature < threshold ? 0 : 1;
   }
 
   public int getFid() {
@@ -65,11 +98,26 @@ public class WeakLearner extends Ranker<RankBoost.RankBoostConfig> {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public double predict(List<Double> features) {
     return calculateScore(features);
   }
 
+  @Override
+  public double predict(double[] features) {
+    return calculateScore(features[fid]);
+  }
+
+  @Override
+  public double predict(Document doc) {
+    return calculateScore(doc.getFeature(fid));
+  }
+
   public double getAlpha() {
     return alpha;
   }
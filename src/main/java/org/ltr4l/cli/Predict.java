@@ -17,6 +17,8 @@ package org.ltr4l.cli;
 
 import java.io.*;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -29,9 +31,11 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.ltr4l.Ranker;
 import org.ltr4l.Version;
+import org.ltr4l.evaluation.MetricSet;
 import org.ltr4l.evaluation.RankEval;
 import org.ltr4l.query.Query;
 import org.ltr4l.query.QuerySet;
+import org.ltr4l.tools.BinaryModel;
 import org.ltr4l.tools.Config;
 import org.ltr4l.tools.Report;
 
@@ -63,8 +67,8 @@ public class Predict {
 
     String modelPath = getModelPath(line, params);
     Config optionalConfig = createOptionalConfig(modelPath, line);
-    QuerySet testSet = QuerySet.create(optionalConfig.dataSet.test);
-    Ranker ranker = getRanker(modelPath);
+    QuerySet testSet = QuerySet.create(optionalConfig.dataSet.test, true, optionalConfig.verbose);
+    Ranker ranker = getRanker(modelPath, line.hasOption("compile"));
 
     evaluate(ranker, testSet.getQueries(), optionalConfig);
 
@@ -82,6 +86,9 @@ public class Predict {
         .desc("specify type of evaluator").build();
     Option k = Option.builder("k").argName("k").hasArg()
         .desc("specify k-value for evaluators which use @k").build();
+    Option metrics = Option.builder("metrics").argName("list").hasArg()
+        .desc("specify comma separated measures to report, e.g. ndcg@1,ndcg@10,map").build();
+    Option compile = new Option( "compile", "compile the model into a Java class before predicting" );
     Option version = new Option( "version", "print the version information and exit" );
     Option verbose = new Option( "verbose", "be extra verbose" );
     Option noverbose = new Option( "noverbose", "override verboseness" );
@@ -94,6 +101,8 @@ public class Predict {
         .addOption(reportFile)
         .addOption(evalType)
         .addOption(k)
+        .addOption(metrics)
+        .addOption(compile)
         .addOption(version)
         .addOption(verbose)
         .addOption(noverbose)
@@ -134,13 +143,18 @@ public class Predict {
   }
 
   public static Ranker getRanker(String modelPath) throws IOException{
-    Reader reader = new FileReader(modelPath);
-    return Ranker.RankerFactory.getFromModel(reader);
+    return getRanker(modelPath, false);
+  }
+
+  public static Ranker getRanker(String modelPath, boolean compile) throws IOException{
+    return Ranker.RankerFactory.getFromModelFile(modelPath, compile);
   }
 
   public static Config createOptionalConfig(String configPath, CommandLine line) throws IOException{
     ObjectMapper mapper = new ObjectMapper();
-    Config optionalConfig = mapper.readValue(new File(configPath), SavedModel.class).config;
+    Config optionalConfig = BinaryModel.isBinary(configPath)
+        ? mapper.treeToValue(BinaryModel.read(configPath).getField("config"), Config.class)
+        : mapper.readValue(new File(configPath), SavedModel.class).config;
 
     if(line.hasOption("verbose"))
       optionalConfig.verbose = true;
@@ -154,11 +168,17 @@ public class Predict {
       optionalConfig.evaluation.evaluator = line.getOptionValue("eval");
     if(line.hasOption("k"))
       optionalConfig.evaluation.params.put("k", Integer.parseInt(line.getOptionValue("k")));
+    if(line.hasOption("metrics"))
+      optionalConfig.evaluation.metrics = Arrays.asList(line.getOptionValue("metrics").split(","));
 
     return optionalConfig;
   }
 
   public static void evaluate(Ranker ranker, List<Query> testSet, Config optionalConfig){
+    if (!Report.getMetrics(optionalConfig).isEmpty()) {
+      evaluateMetrics(ranker, testSet, optionalConfig);
+      return;
+    }
     RankEval eval = RankEval.RankEvalFactory.get(optionalConfig.evaluation.evaluator);
     double score = eval.calculateAvgAllQueries(ranker, testSet, (int) optionalConfig.evaluation.params.get("k"));
     String header = optionalConfig.evaluation.evaluator + "@" + optionalConfig.evaluation.params.get("k") + " for " + optionalConfig.algorithm;
@@ -167,11 +187,25 @@ public class Predict {
     report.close();
   }
 
+  //Calculates evaluator@k and evaluation.metrics in one pass, and reports them one per line.
+  private static void evaluateMetrics(Ranker ranker, List<Query> testSet, Config optionalConfig){
+    List<String> names = new ArrayList<>();
+    names.add(optionalConfig.evaluation.evaluator + "@" + optionalConfig.evaluation.params.get("k"));
+    names.addAll(Report.getMetrics(optionalConfig));
+    MetricSet metrics = new MetricSet(names);
+    double[] values = metrics.evaluate(ranker, testSet);
+    Report report = Report.getReport(optionalConfig, "metric,value for " + optionalConfig.algorithm);
+    for (int m = 0; m < values.length; m++)
+      report.log(metrics.getNames().get(m), values[m]);
+    report.close();
+  }
+
   private static class SavedModel { //TODO: Don't want to create another Saved Model... maybe make a factory class?
     public Config config;
     public Object weights;    //These will not be used...
     public Object thresholds; //Will not be used...
     public Object treeModels;
+    public Object obliviousModels;
     public Object features;
     SavedModel(){  // this is needed for Jackson...
     }
@@ -30,6 +30,7 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.ltr4l.Version;
 import org.ltr4l.query.QuerySet;
+import org.ltr4l.query.QueryStream;
 import org.ltr4l.tools.Config;
 import org.ltr4l.trainers.AbstractTrainer;
 
@@ -63,10 +64,22 @@ public class Train {
     String configPath = getConfigPath(line, params);
     Config optionalConfig = createOptionalConfig(configPath, line);
 
-    QuerySet trainingSet = QuerySet.create(optionalConfig.dataSet.training);
-    QuerySet validationSet = QuerySet.create(optionalConfig.dataSet.validation);
-
-    AbstractTrainer trainer = AbstractTrainer.TrainerFactory.getTrainer(trainingSet, validationSet, configPath, optionalConfig);
+    AbstractTrainer trainer;
+    Config.Streaming streaming = optionalConfig.dataSet.streaming;
+    if (streaming == null) {
+      QuerySet trainingSet = QuerySet.create(optionalConfig.dataSet.training, true, optionalConfig.verbose);
+      QuerySet validationSet = QuerySet.create(optionalConfig.dataSet.validation, true, optionalConfig.verbose);
+      trainer = AbstractTrainer.TrainerFactory.getTrainer(trainingSet, validationSet, configPath, optionalConfig);
+    }
+    else {
+      //Only samples are held in memory; the training data is read from disk every epoch.
+      QueryStream trainingStream = new QueryStream(optionalConfig.dataSet.training, streaming.shuffleBuffer, streaming.seed);
+      QueryStream validationStream = new QueryStream(optionalConfig.dataSet.validation, 0, streaming.seed);
+      QuerySet trainingSample = new QuerySet(trainingStream.sample(streaming.sampleSize));
+      QuerySet validationSample = new QuerySet(validationStream.sample(streaming.sampleSize));
+      trainer = AbstractTrainer.TrainerFactory.getTrainer(trainingSample, validationSample, configPath, optionalConfig);
+      trainer.setTrainingStream(trainingStream);
+    }
     long startTime = System.currentTimeMillis();
     trainer.trainAndValidate();
     long endTime = System.currentTimeMillis();
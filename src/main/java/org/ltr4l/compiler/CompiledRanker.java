@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.compiler;
+
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+import org.ltr4l.tools.Config;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Ranker which scores with a class compiled from a model by {@link ModelCompiler}.
+ * The model is written by the ranker it was compiled from.
+ */
+public class CompiledRanker<C extends Config> extends Ranker<C> {
+  private final Ranker<C> ranker;
+  private final FeatureScorer scorer;
+  private final int numFeatures;  //features read by the scorer
+
+  CompiledRanker(Ranker<C> ranker, FeatureScorer scorer, int numFeatures) {
+    this.ranker = ranker;
+    this.scorer = scorer;
+    this.numFeatures = numFeatures;
+  }
+
+  /**
+   * @return the ranker the scorer was compiled from.
+   */
+  public Ranker<C> getRanker() {
+    return ranker;
+  }
+
+  public FeatureScorer getScorer() {
+    return scorer;
+  }
+
+  @Override
+  public void writeModel(C config, Writer writer) throws IOException {
+    ranker.writeModel(config, writer);
+  }
+
+  @Override
+  public int getNumFeatures() {
+    return ranker.getNumFeatures();
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
+  @Override
+  public double predict(double[] features) {
+    return scorer.score(toArray(features, numFeatures), 0);
+  }
+
+  @Override
+  public double predict(List<Double> features) {
+    return scorer.score(toArray(features, numFeatures), 0);
+  }
+
+  @Override
+  public double predict(Document doc) {
+    return scorer.score(toArray(doc, numFeatures, null), 0);
+  }
+
+  @Override
+  public double[] predictBatch(FeatureMatrix matrix) {
+    if (matrix.getNumFeatures() < numFeatures)
+      return super.predictBatch(matrix);
+    double[] scores = new double[matrix.getNumDocs()];
+    double[] rows = matrix.getRowMajor();
+    int rowLength = matrix.getNumFeatures();
+    for (int d = 0; d < scores.length; d++)
+      scores[d] = scorer.score(rows, d * rowLength);
+    return scores;
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.compiler;
+
+/**
+ * Scores a feature vector with primitive arrays only. Classes generated by {@link ModelCompiler} implement this.
+ */
+public interface FeatureScorer {
+
+  /**
+   * @param features array holding the features of the document.
+   * @param offset position of the first feature in features, e.g. of a row of a FeatureMatrix.
+   * @return score of the document.
+   */
+  double score(double[] features, int offset);
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.compiler;
+
+import org.ltr4l.Ranker;
+import org.ltr4l.boosting.AdaBoost;
+import org.ltr4l.boosting.Ensemble;
+import org.ltr4l.boosting.FlatEnsemble;
+import org.ltr4l.boosting.QuickScorer;
+import org.ltr4l.boosting.RankBoost;
+import org.ltr4l.boosting.ThresholdTable;
+import org.ltr4l.boosting.WeakLearner;
+import org.ltr4l.tools.Config;
+import org.ltr4l.trainers.PRankTrainer;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiles a model into a Java class when it is loaded, with its thresholds and weights written as constants,
+ * so that the JIT can inline them and predict the branches of each model.
+ *
+ * Tree ensembles ({@link Ensemble}, {@link FlatEnsemble} and {@link QuickScorer}) become a block of nested ifs
+ * per tree, {@link AdaBoost} and {@link RankBoost} (also as a {@link ThresholdTable}) a conditional per weak learner, and
+ * {@link PRankTrainer.PRank} an unrolled dot product. The compiled class gives the same scores as
+ * predict(double[]) of the model. Compiling needs a JDK, as the source is compiled with javax.tools.
+ */
+public class ModelCompiler {
+  private static final String CLASS_NAME = "CompiledModel";
+  //Keeps the methods small enough for the JIT (8000 bytes of bytecode) and the constant pools of the generated
+  //classes within the limits of the class file format.
+  private static final int STATEMENTS_PER_METHOD = 100;
+  private static final int CONSTANTS_PER_METHOD = 400;
+  private static final int CONSTANTS_PER_CLASS = 8000;
+
+  /**
+   * Compiles the model of ranker.
+   * @return a {@link CompiledRanker}, or ranker itself if the model is not supported or cannot be compiled,
+   * e.g. when no Java compiler is available.
+   */
+  public static <C extends Config> Ranker<C> compile(Ranker<C> ranker) {
+    SourceBuilder source = generateSource(ranker);
+    if (source == null)
+      return ranker;
+    try {
+      return new CompiledRanker<>(ranker, compile(source.toString()), source.getNumFeatures());
+    }
+    catch (Exception | LinkageError e) {
+      System.err.printf("%s is not compiled and is used as is: %s\n", ranker.getClass().getSimpleName(), e.getMessage());
+      return ranker;
+    }
+  }
+
+  /**
+   * @return whether {@link #compile(Ranker)} can generate a class for the model of ranker.
+   */
+  public static boolean isSupported(Ranker<?> ranker) {
+    return ranker instanceof Ensemble || ranker instanceof FlatEnsemble || ranker instanceof QuickScorer
+        || ranker instanceof AdaBoost || ranker instanceof ThresholdTable || ranker instanceof PRankTrainer.PRank;
+  }
+
+  //Returns the source of the class for ranker, or null if ranker is not supported.
+  static SourceBuilder generateSource(Ranker<?> ranker) {
+    if (ranker instanceof Ensemble)
+      return generateSource(new FlatEnsemble((Ensemble) ranker));
+    if (ranker instanceof QuickScorer)
+      return generateSource(((QuickScorer) ranker).getFlatEnsemble());
+    if (ranker instanceof FlatEnsemble)
+      return generateSource((FlatEnsemble) ranker);
+    if (ranker instanceof ThresholdTable) {
+      Ranker<?> model = ((ThresholdTable) ranker).getModel();  //dispatched again, as RankBoost or AdaBoost
+      return generateSource(model);
+    }
+    if (ranker instanceof RankBoost)
+      return generateSource((RankBoost) ranker);
+    if (ranker instanceof AdaBoost)
+      return generateSource((AdaBoost) ranker);
+    if (ranker instanceof PRankTrainer.PRank)
+      return generateSource((PRankTrainer.PRank) ranker);
+    return null;
+  }
+
+  //Several trees share a method, as the JIT compiles a few large methods sooner than many small ones.
+  private static SourceBuilder generateSource(FlatEnsemble ensemble) {
+    SourceBuilder source = new SourceBuilder("double");
+    for (int t = 0; t < ensemble.getNumTrees(); t++) {
+      String label = "t" + t;
+      StringBuilder block = new StringBuilder(label).append(": {\n");
+      int numConstants = addNode(source, ensemble, ensemble.getRoot(t), label, block, "        ");
+      block.append("      }");
+      source.add(block.toString(), numConstants);
+    }
+    return source.finish("s", null);
+  }
+
+  //Writes the subtree as ifs which add the value of the leaf to s, and returns the number of constants written.
+  private static int addNode(SourceBuilder source, FlatEnsemble ensemble, int node, String label, StringBuilder block, String indent) {
+    if (node < 0) {
+      block.append(indent).append("s += ").append(literal(ensemble.getLeafValue(~node))).append(";\n");
+      block.append(indent).append("break ").append(label).append(";\n");
+      return 1;
+    }
+    //The right child is taken when the feature is not lower than the threshold, including NaN.
+    block.append(indent).append("if (").append(source.feature(ensemble.getFeatureId(node))).append(" < ")
+        .append(literal(ensemble.getThreshold(node))).append(") {\n");
+    int numConstants = 1 + addNode(source, ensemble, ensemble.getChild(node, true), label, block, indent + "  ");
+    block.append(indent).append("}\n");
+    return numConstants + addNode(source, ensemble, ensemble.getChild(node, false), label, block, indent);
+  }
+
+  private static SourceBuilder generateSource(RankBoost rankBoost) {
+    SourceBuilder source = new SourceBuilder("double");
+    for (WeakLearner learner : rankBoost.getLearners()) {
+      double[] scores = probe(learner);
+      source.add("s += " + source.feature(learner.getFid()) + " < " + literal(learner.getThreshold()) + " ? "
+          + literal(learner.getAlpha() * scores[0]) + " : " + literal(learner.getAlpha() * scores[1]) + ";", 3);
+    }
+    return source.finish("s", null);
+  }
+
+  private static SourceBuilder generateSource(AdaBoost adaBoost) {
+    SourceBuilder source = new SourceBuilder("int");
+    for (WeakLearner learner : adaBoost.getLearners()) {
+      double[] scores = probe(learner);
+      source.add("s += " + source.feature(learner.getFid()) + " < " + literal(learner.getThreshold()) + " ? "
+          + (int) scores[0] + " : " + (int) scores[1] + ";", 1);
+    }
+    return source.finish("Math.signum(s)", null);
+  }
+
+  //Returns the scores of the learner below and at its threshold.
+  private static double[] probe(WeakLearner learner) {
+    double[] features = new double[learner.getFid() + 1];
+    features[learner.getFid()] = Math.nextDown(learner.getThreshold());
+    double low = learner.predict(features);
+    features[learner.getFid()] = learner.getThreshold();
+    return new double[]{low, learner.predict(features)};
+  }
+
+  private static SourceBuilder generateSource(PRankTrainer.PRank prank) {
+    SourceBuilder source = new SourceBuilder("double");
+    double[] weights = prank.getWeights();
+    for (int i = 0; i < weights.length; i++)
+      source.add("s += " + source.feature(i) + " * " + literal(weights[i]) + ";", 1);
+    double[] thresholds = prank.getThresholds();
+    StringBuilder toRank = new StringBuilder("  private static double toRank(double wx) {\n");
+    for (int i = 0; i < thresholds.length; i++)
+      toRank.append("    if (wx < ").append(literal(thresholds[i])).append(") return ").append(i).append(";\n");
+    toRank.append("    return ").append(thresholds.length).append(";\n  }\n");
+    return source.finish("toRank(s)", toRank);
+  }
+
+  static String literal(double value) {
+    if (Double.isNaN(value)) return "Double.NaN";
+    if (value == Double.POSITIVE_INFINITY) return "Double.POSITIVE_INFINITY";
+    if (value == Double.NEGATIVE_INFINITY) return "Double.NEGATIVE_INFINITY";
+    return Double.toString(value) + "d";  //Double.toString is read back as the same value.
+  }
+
+  private static FeatureScorer compile(String source) throws Exception {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null)
+      throw new IllegalStateException("No Java compiler is available; a JDK is needed.");
+    Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+    StringWriter errors = new StringWriter();
+    try (StandardJavaFileManager standardManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+      JavaFileManager manager = new ForwardingJavaFileManager<JavaFileManager>(standardManager) {
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+          return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+            @Override
+            public OutputStream openOutputStream() {
+              ByteArrayOutputStream out = new ByteArrayOutputStream();
+              classes.put(className, out);
+              return out;
+            }
+          };
+        }
+      };
+      JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + CLASS_NAME + ".java"), JavaFileObject.Kind.SOURCE) {
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+          return source;
+        }
+      };
+      if (!compiler.getTask(errors, manager, null, Arrays.asList("-classpath", classPath(), "-g:none", "-proc:none"),
+          null, Collections.singletonList(file)).call())
+        throw new IllegalStateException("Compilation failed: " + errors);
+    }
+    ClassLoader loader = new ClassLoader(FeatureScorer.class.getClassLoader()) {
+      @Override
+      protected Class<?> findClass(String name) throws ClassNotFoundException {
+        ByteArrayOutputStream out = classes.get(name);
+        if (out == null)
+          throw new ClassNotFoundException(name);
+        byte[] bytes = out.toByteArray();
+        return defineClass(name, bytes, 0, bytes.length);
+      }
+    };
+    return (FeatureScorer) loader.loadClass(CLASS_NAME).getDeclaredConstructor().newInstance();
+  }
+
+  //The class path of the JVM may not hold LTR4L, e.g. when it is a plugin of Solr.
+  private static String classPath() throws Exception {
+    String classPath = System.getProperty("java.class.path");
+    CodeSource codeSource = FeatureScorer.class.getProtectionDomain().getCodeSource();
+    if (codeSource == null)
+      return classPath;
+    return Paths.get(codeSource.getLocation().toURI()).toString() + File.pathSeparator + classPath;
+  }
+
+  /**
+   * Source of a class which adds up statements in order in a variable s, and returns finish(s).
+   * Statements are spread over methods of nested classes, which pass s on.
+   */
+  static class SourceBuilder {
+    private final String type;  //of s
+    private final StringBuilder calls = new StringBuilder();
+    private final StringBuilder parts = new StringBuilder();
+    private StringBuilder part;
+    private StringBuilder method;
+    private int numParts;
+    private int numMethods;
+    private int numStatements;
+    private int numMethodConstants;
+    private int numConstants;
+    private int numFeatures;
+    private String source;
+
+    SourceBuilder(String type) {
+      this.type = type;
+    }
+
+    String feature(int featureId) {
+      numFeatures = Math.max(numFeatures, featureId + 1);
+      return "f[o + " + featureId + "]";
+    }
+
+    /**
+     * @param constants number of constants of the statement.
+     */
+    void add(String statement, int constants) {
+      if (part == null || (numConstants > 0 && numConstants + constants > CONSTANTS_PER_CLASS)) {
+        endPart();
+        part = new StringBuilder();
+        numConstants = 0;
+      }
+      if (method == null || numStatements == STATEMENTS_PER_METHOD
+          || (numMethodConstants > 0 && numMethodConstants + constants > CONSTANTS_PER_METHOD)) {
+        endMethod();
+        method = new StringBuilder();
+        method.append("    static ").append(type).append(" m").append(numMethods).append("(double[] f, int o, ")
+            .append(type).append(" s) {\n");
+        numStatements = 0;
+        numMethodConstants = 0;
+      }
+      method.append("      ").append(statement).append('\n');
+      numStatements++;
+      numMethodConstants += constants;
+      numConstants += constants;
+    }
+
+    private void endMethod() {
+      if (method == null) return;
+      method.append("      return s;\n    }\n");
+      part.append(method);
+      calls.append("    s = P").append(numParts).append(".m").append(numMethods++).append("(f, o, s);\n");
+      method = null;
+    }
+
+    private void endPart() {
+      endMethod();
+      if (part == null) return;
+      parts.append("  static final class P").append(numParts++).append(" {\n").append(part).append("  }\n");
+      part = null;
+    }
+
+    /**
+     * @param result expression of s which score returns.
+     * @param methods methods used by result, or null.
+     */
+    SourceBuilder finish(String result, CharSequence methods) {
+      endPart();
+      StringBuilder sb = new StringBuilder();
+      sb.append("public final class ").append(CLASS_NAME).append(" implements ").append(FeatureScorer.class.getName()).append(" {\n");
+      sb.append("  @Override\n  public double score(double[] f, int o) {\n");
+      sb.append("    ").append(type).append(" s = 0;\n").append(calls).append("    return ").append(result).append(";\n  }\n");
+      if (methods != null)
+        sb.append(methods);
+      sb.append(parts).append("}\n");
+      source = sb.toString();
+      return this;
+    }
+
+    int getNumFeatures() {
+      return numFeatures;
+    }
+
+    @Override
+    public String toString() {
+      return source;
+    }
+  }
+}
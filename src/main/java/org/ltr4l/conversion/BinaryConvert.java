@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.conversion;
+
+import org.ltr4l.Ranker;
+import org.ltr4l.tools.BinaryModel;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Converts a model between JSON and the binary format of {@link BinaryModel}. The direction is chosen by the input:
+ * a JSON model is written in the binary format, and a binary model as JSON.
+ */
+public class BinaryConvert {
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      throw new IllegalArgumentException("Please provide arguments as follows: <input-model> <output-model>");
+    }
+    String input = args[0];
+    String output = args[1];
+    File file = new File(output);
+    if (file.getParentFile() != null)
+      file.getParentFile().mkdirs();
+
+    if (BinaryModel.isBinary(input)) {
+      try (Writer writer = Files.newBufferedWriter(Paths.get(output))) {
+        BinaryModel.read(input).writeJson(writer);
+      }
+      return;
+    }
+    String json = new String(Files.readAllBytes(Paths.get(input)), "UTF-8");
+    //The number of features is not in the JSON, so it is taken from the model.
+    int numFeatures = Ranker.RankerFactory.getFromModel(new StringReader(json)).getNumFeatures();
+    BinaryModel.fromJson(new StringReader(json), numFeatures).write(output);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.conversion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ltr4l.boosting.CompressedEnsemble;
+import org.ltr4l.boosting.Ensemble;
+import org.ltr4l.boosting.FlatEnsemble;
+import org.ltr4l.boosting.RegressionTree;
+import org.ltr4l.evaluation.RankEval;
+import org.ltr4l.query.Query;
+import org.ltr4l.query.QuerySet;
+import org.ltr4l.tools.BinaryModel;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Compresses a tree ensemble model for serving with {@link CompressedEnsemble}, and reports the size of the model and,
+ * if validation data is given, how much the compression changes its scores and NDCG@10.
+ * The written model has the "scorer" param set to "compressed", so that it is read as a CompressedEnsemble.
+ */
+public class CompressEnsemble {
+  private static final int EVAL_K = 10;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      throw new IllegalArgumentException("Please provide arguments as follows: <input-model> <output-model> [<leafPrecision>] [<pruneEpsilon>] [<validation-data>]. \n" +
+          "leafPrecision is float (default) or short, and trees whose leaf values are all within pruneEpsilon (default 0) of 0 are dropped.");
+    }
+    String input = args[0];
+    String output = args[1];
+
+    ObjectMapper mapper = new ObjectMapper();
+    Ensemble.SavedModel savedModel;
+    try (Reader reader = BinaryModel.isBinary(input) ? BinaryModel.read(input).newReader() : Files.newBufferedReader(Paths.get(input))) {
+      savedModel = BinaryModel.readValue(mapper, reader, Ensemble.SavedModel.class);
+    }
+    Ensemble.TreeConfig config = savedModel.config;
+    if (config.params == null)
+      config.params = new HashMap<>();
+    String leafPrecision = args.length >= 3 ? args[2] : config.getLeafPrecision();
+    double pruneEpsilon = args.length >= 4 ? Double.parseDouble(args[3]) : config.getPruneEpsilon();
+    config.params.put("scorer", "compressed");
+    config.params.put("leafPrecision", leafPrecision);
+    config.params.put("pruneEpsilon", pruneEpsilon);
+
+    List<RegressionTree> trees = savedModel.toTrees();
+    FlatEnsemble original = new FlatEnsemble(trees);
+    CompressedEnsemble compressed = new CompressedEnsemble(trees, leafPrecision, pruneEpsilon);
+    System.out.printf("trees: %d (%d pruned)%n", compressed.getNumTrees(), compressed.getNumPrunedTrees());
+    System.out.printf("nodes: %d -> %d, leaves: %d%n", original.getNumNodes(), compressed.getNumNodes(), compressed.getNumLeaves());
+    System.out.printf("footprint: %d -> %d bytes%n", original.getFootprint(), compressed.getFootprint());
+    if (args.length >= 5)
+      report(original, compressed, QuerySet.create(args[4]).getQueries());
+
+    File file = new File(output);
+    if (file.getParentFile() != null)
+      file.getParentFile().mkdirs();
+    compressed.writeModel(config, output);
+  }
+
+  private static void report(FlatEnsemble original, CompressedEnsemble compressed, List<Query> queries) {
+    double maxDiff = 0d;
+    for (Query query : queries) {
+      double[] expected = original.predictBatch(query);
+      double[] scores = compressed.predictBatch(query);
+      for (int i = 0; i < scores.length; i++)
+        maxDiff = Math.max(maxDiff, Math.abs(scores[i] - expected[i]));
+    }
+    RankEval eval = RankEval.RankEvalFactory.get("ndcg");
+    double before = eval.calculateAvgAllQueries(original, queries, EVAL_K);
+    double after = eval.calculateAvgAllQueries(compressed, queries, EVAL_K);
+    System.out.printf("max score difference: %g%n", maxDiff);
+    System.out.printf("ndcg@%d: %f -> %f (%+f)%n", EVAL_K, before, after, after - before);
+  }
+}
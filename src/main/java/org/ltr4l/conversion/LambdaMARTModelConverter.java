@@ -56,7 +56,7 @@ public class LambdaMARTModelConverter implements LTRModelConverter {
       ObjectMapper mapper = new ObjectMapper();
       Ensemble.SavedModel ltr4lmodel = mapper.readValue(reader, Ensemble.SavedModel.class);
       assert(ltr4lmodel.config.algorithm.equals("LambdaMart"));
-      for (RegressionTree.SavedModel ltr4lTree : ltr4lmodel.treeModels) {
+      for (RegressionTree.SavedModel ltr4lTree : ltr4lmodel.toNodeModels()) {
         final Map<Integer, LTR4Lnode> idxNodeMap = new HashMap<>();
         int max = 0;
         for (int i = 0; i < ltr4lTree.leafIds.size(); i++) {
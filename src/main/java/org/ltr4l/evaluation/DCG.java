@@ -16,9 +16,10 @@
 
 package org.ltr4l.evaluation;
 
+import org.ltr4l.Ranker;
 import org.ltr4l.query.Document;
+import org.ltr4l.query.Query;
 
-import java.util.Comparator;
 import java.util.List;
 
 public class DCG implements RankEval {
@@ -31,16 +32,28 @@ public class DCG implements RankEval {
    * @return the score of DCG
    */
   static double dcg(List<Document> docsRanks, int position) {
+    return dcg(RankEval.labels(docsRanks), position);
+  }
+
+  /**
+   * Same as {@link #dcg(List, int)}, for the labels of the documents in ranked order.
+   */
+  static double dcg(int[] labels, int position) {
     double sum = 0;
     if (position > -1) {
-      final int pos = Math.min(position, docsRanks.size());
+      final int pos = Math.min(position, labels.length);
       for (int i = 0; i < pos; i++) {
-        sum += (Math.pow(2, docsRanks.get(i).getLabel()) - 1) / Math.log(i + 2);
+        sum += (Math.pow(2, labels[i]) - 1) / Math.log(i + 2);
       }
     }
     return sum * Math.log(2);  //Change of base
   }
 
+  @Override
+  public List<Document> rank(Ranker ranker, Query query, int position){
+    return RankEval.rankTop(ranker, query, position);  //The ideal DCG of NDCG sorts all labels itself.
+  }
+
   @Override
   public double calculate(List<Document> docRanks, int position){
     return dcg(docRanks, position);
@@ -56,11 +69,22 @@ public class DCG implements RankEval {
      */
     public double calculate(List<Document> docsRanks, int position) {
       //Accept docs in predicted ranking order
-      double dcg = dcg(docsRanks, position);
-      //System.out.println(dcg);
-      //Sort for ideal
-      docsRanks.sort(Comparator.comparingInt(Document::getLabel).reversed()); //to arrange in order of highest to lowest
-      double idealDcg = dcg(docsRanks, position);
+      int[] labels = RankEval.labels(docsRanks);
+      return ndcg(labels, RankEval.idealLabels(labels), position);
+    }
+
+    /**
+     * @param labels labels of the documents in ranked order.
+     * @param idealLabels the same labels, from highest to lowest.
+     * @param position the k-position of NDCG@k
+     */
+    static double ndcg(int[] labels, int[] idealLabels, int position) {
+      double idealDcg = dcg(idealLabels, position);
+      return ndcg(labels, idealDcg, position);
+    }
+
+    static double ndcg(int[] labels, double idealDcg, int position) {
+      double dcg = dcg(labels, position);
       return idealDcg == 0 ? 0.0 :
           dcg / idealDcg;
     }
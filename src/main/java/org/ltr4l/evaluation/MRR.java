@@ -30,4 +30,9 @@ public class MRR implements RankEval {
     for (int i = 0; i < docRanks.size(); i++) if (docRanks.get(i).getLabel() > 0) return i + 1;
     return docRanks.size();
   }
+
+  static double mrr(int[] labels){
+    for (int i = 0; i < labels.length; i++) if (labels[i] > 0) return i + 1;
+    return labels.length;
+  }
 }
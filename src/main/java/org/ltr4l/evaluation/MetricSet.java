@@ -0,0 +1,209 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.evaluation;
+
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.Query;
+import org.ltr4l.tools.IndexSorter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates several measures at several cutoffs in one pass, e.g. "ndcg@1", "ndcg@10", "precision@5", "map".
+ *
+ * Each query is ranked once, and all measures are calculated from the labels of the ranked and the ideal order.
+ * The ideal order and its DCG are cached per query, so validating the same queries every epoch only ranks them.
+ * Queries are evaluated in parallel on the common fork-join pool; the values are summed in query order afterwards,
+ * so the results do not depend on the threads and are the same as {@link RankEval#calculateAvgAllQueries}.
+ * Rankers which are not {@link Ranker#isThreadSafe() thread safe} rank the queries sequentially.
+ */
+public class MetricSet {
+  private enum Measure { DCG, NDCG, PRECISION, MAP, WAP, MRR }
+
+  private final List<String> names;
+  private final Measure[] measures;
+  private final int[] cutoffs;
+  private final int maxCutoff;   //Documents to order per query; Integer.MAX_VALUE if a measure needs the full ranking.
+  private final Map<Query, Ideal> idealCache = Collections.synchronizedMap(new WeakHashMap<>());
+
+  private static class Ideal {
+    final int[] labels;
+    final double[] dcg;  //Ideal DCG at the cutoff of each NDCG measure.
+
+    Ideal(int[] labels, double[] dcg) {
+      this.labels = labels;
+      this.dcg = dcg;
+    }
+  }
+
+  /**
+   * @param metrics measures as "name" or "name@k", where name is one of dcg, ndcg, precision, map, wap or mrr.
+   *                Without k, dcg, ndcg and precision use the whole list; map, wap and mrr ignore k.
+   */
+  public MetricSet(List<String> metrics) {
+    names = new ArrayList<>(metrics.size());
+    measures = new Measure[metrics.size()];
+    cutoffs = new int[metrics.size()];
+    int max = 0;
+    for (int m = 0; m < measures.length; m++) {
+      String metric = metrics.get(m).trim().toLowerCase();
+      int at = metric.indexOf('@');
+      String name = at < 0 ? metric : metric.substring(0, at);
+      try {
+        measures[m] = Measure.valueOf(name.toUpperCase());
+      }
+      catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Invalid evaluation type specified: " + metrics.get(m));
+      }
+      cutoffs[m] = at < 0 ? Integer.MAX_VALUE : Integer.parseInt(metric.substring(at + 1));
+      if (cutoffs[m] <= 0)
+        throw new IllegalArgumentException("k must be positive: " + metrics.get(m));
+      boolean fullRanking = measures[m] == Measure.MAP || measures[m] == Measure.WAP || measures[m] == Measure.MRR;
+      max = Math.max(max, fullRanking ? Integer.MAX_VALUE : cutoffs[m]);
+      names.add(at < 0 ? name : name + "@" + cutoffs[m]);
+    }
+    maxCutoff = max;
+  }
+
+  public static MetricSet of(String... metrics) {
+    return new MetricSet(Arrays.asList(metrics));
+  }
+
+  /**
+   * @return normalized names of the measures, e.g. "ndcg@10", in the order of {@link #evaluate}.
+   */
+  public List<String> getNames() {
+    return names;
+  }
+
+  /**
+   * Calculates the average of each measure over the queries. As in {@link RankEval#calculateAvgAllQueries},
+   * values which are not finite (e.g. MAP of a query without relevant documents) count as 0.
+   * @return averages, in the order of {@link #getNames()}.
+   */
+  public double[] evaluate(Ranker ranker, List<Query> queries) {
+    double[][] values = new double[queries.size()][];
+    if (ranker.isThreadSafe()) {
+      IntStream.range(0, queries.size()).parallel()
+          .forEach(q -> values[q] = evaluate(queries.get(q), rankedLabels(ranker, queries.get(q))));
+    }
+    else {
+      int[][] ranked = new int[queries.size()][];
+      for (int q = 0; q < ranked.length; q++)
+        ranked[q] = rankedLabels(ranker, queries.get(q));
+      IntStream.range(0, queries.size()).parallel()
+          .forEach(q -> values[q] = evaluate(queries.get(q), ranked[q]));
+    }
+    return average(values);
+  }
+
+  /**
+   * Same as {@link #evaluate(Ranker, List)}, for queries which were already scored, e.g. by a trainer which
+   * keeps the scores of its ranker.
+   * @param scores scores of the documents of each query, in the order of its doc list.
+   */
+  public double[] evaluate(List<Query> queries, double[][] scores) {
+    if (scores.length != queries.size())
+      throw new IllegalArgumentException("scores must have one array per query.");
+    double[][] values = new double[queries.size()][];
+    IntStream.range(0, queries.size()).parallel()
+        .forEach(q -> values[q] = evaluate(queries.get(q), rankedLabels(queries.get(q).getDocList(), scores[q])));
+    return average(values);
+  }
+
+  private double[] average(double[][] values) {
+    double[] totals = new double[measures.length];
+    for (double[] queryValues : values) {
+      for (int m = 0; m < measures.length; m++) {
+        if (Double.isFinite(queryValues[m]))
+          totals[m] += queryValues[m];
+      }
+    }
+    for (int m = 0; m < measures.length; m++)
+      totals[m] /= values.length;
+    return totals;
+  }
+
+  private int[] rankedLabels(Ranker ranker, Query query) {
+    if (maxCutoff < query.getDocList().size())
+      return RankEval.labels(ranker.topK(query, maxCutoff));
+    return RankEval.labels(ranker.sort(query));
+  }
+
+  //Orders the same way as Ranker.topK and Ranker.sort order by the scores of predictBatch.
+  private int[] rankedLabels(List<Document> docs, double[] scores) {
+    int[] order = maxCutoff < docs.size() ? IndexSorter.selectTop(scores, maxCutoff) : IndexSorter.argsort(scores, true);
+    int[] labels = new int[order.length];
+    for (int i = 0; i < order.length; i++)
+      labels[i] = docs.get(order[i]).getLabel();
+    return labels;
+  }
+
+  /**
+   * @param labels labels of the documents of query, in ranked order.
+   */
+  double[] evaluate(Query query, int[] labels) {
+    Ideal ideal = getIdeal(query, labels);
+    double[] values = new double[measures.length];
+    for (int m = 0; m < measures.length; m++) {
+      switch (measures[m]) {
+        case DCG:
+          values[m] = DCG.dcg(labels, cutoffs[m]);
+          break;
+        case NDCG:
+          values[m] = DCG.NDCG.ndcg(labels, ideal.dcg[m], cutoffs[m]);
+          break;
+        case PRECISION:
+          values[m] = Precision.precision(labels, cutoffs[m]);
+          break;
+        case MAP:
+          values[m] = Precision.AP.ap(labels);
+          break;
+        case WAP:
+          values[m] = Precision.WAP.wap(labels, ideal.labels);
+          break;
+        case MRR:
+          values[m] = MRR.mrr(labels);
+          break;
+      }
+    }
+    return values;
+  }
+
+  //The labels of a query must not change while it is cached.
+  private Ideal getIdeal(Query query, int[] labels) {
+    Ideal ideal = idealCache.get(query);
+    if (ideal == null) {
+      int[] idealLabels = RankEval.idealLabels(labels);
+      double[] dcg = new double[measures.length];
+      for (int m = 0; m < measures.length; m++) {
+        if (measures[m] == Measure.NDCG)
+          dcg[m] = DCG.dcg(idealLabels, cutoffs[m]);
+      }
+      ideal = new Ideal(idealLabels, dcg);
+      idealCache.put(query, ideal);
+    }
+    return ideal;
+  }
+}
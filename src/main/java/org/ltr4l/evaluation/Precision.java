@@ -16,10 +16,10 @@
 
 package org.ltr4l.evaluation;
 
+import org.ltr4l.Ranker;
 import org.ltr4l.query.Document;
+import org.ltr4l.query.Query;
 
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 
 public class Precision implements RankEval {
@@ -32,6 +32,19 @@ public class Precision implements RankEval {
     return ((double) total) / pos;
   }
 
+  static double precision(int[] labels, int position){
+    assert(position > 0);
+    final int pos = Math.min(position, labels.length);
+    int total = 0;
+    for (int i = 0; i < pos; i++) if (labels[i] != 0) total++;
+    return ((double) total) / pos;
+  }
+
+  @Override
+  public List<Document> rank(Ranker ranker, Query query, int position){
+    return RankEval.rankTop(ranker, query, position);
+  }
+
   public double calculate(List<Document> docRanks, int position){
     return precision(docRanks, position);
   }
@@ -50,14 +63,18 @@ public class Precision implements RankEval {
     //TODO: Confirm what "total number of relevant documents" means, and what to do in the case of 0.
     //TODO: Decide whether or not to throw exception when dividing by 0.
     public double calculate(List<Document> docRanks){
+      return ap(RankEval.labels(docRanks));
+    }
+
+    static double ap(int[] labels){
       double ap = 0;
-      int numRelDocs = RankEval.countNumRelDocs(docRanks);
-      //if (numRelDocs == 0) throw new ArithmeticException(); //This query has no relevant documents.
-      for (int k = 0; k < docRanks.size(); k++) {
-        Document doc = docRanks.get(k);
-        double rel = doc.getLabel() == 0 ? 0 : 1;
-        ap += precision(docRanks, k + 1) * rel;
+      int numRelDocs = 0;
+      for (int k = 0; k < labels.length; k++) {
+        double rel = labels[k] == 0 ? 0 : 1;
+        if (labels[k] != 0) numRelDocs++;
+        ap += ((double) numRelDocs) / (k + 1) * rel; //precision@(k + 1), counted on the way.
       }
+      //if (numRelDocs == 0) throw new ArithmeticException(); //This query has no relevant documents.
       return ap / numRelDocs;
     }
   }
@@ -71,13 +88,24 @@ public class Precision implements RankEval {
       return calculate(docRanks);
     }
     public double calculate(List<Document> docRanks){
-      List<Document> idealRanking = new ArrayList<>(docRanks);
-      int numRelDocs = RankEval.countNumRelDocs(docRanks);
-      idealRanking.sort(Comparator.comparingInt(Document::getLabel).reversed());
-      //int pos = Math.min(position, docRanks.size());
+      int[] labels = RankEval.labels(docRanks);
+      return wap(labels, RankEval.idealLabels(labels));
+    }
+
+    /**
+     * @param labels labels of the documents in ranked order.
+     * @param idealLabels the same labels, from highest to lowest.
+     */
+    static double wap(int[] labels, int[] idealLabels){
+      int numRelDocs = 0;
+      double cg = 0d;
+      double idealCg = 0d;
       double total = 0d;
-      for (int k = 0; k < docRanks.size(); k++){
-        total += identity(docRanks.get(k)) * RankEval.cg(docRanks, k + 1) / RankEval.cg(idealRanking, k+1);
+      for (int k = 0; k < labels.length; k++){
+        if (labels[k] != 0) numRelDocs++;
+        cg += labels[k];  //cg@(k + 1), accumulated on the way.
+        idealCg += idealLabels[k];
+        total += (labels[k] > 0 ? 1 : 0) * cg / idealCg;
       }
       return total / numRelDocs;
     }
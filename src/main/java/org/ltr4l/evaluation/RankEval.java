@@ -16,6 +16,7 @@
 
 package org.ltr4l.evaluation;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.ltr4l.Ranker;
@@ -27,6 +28,26 @@ public interface RankEval {
     return docRanks.stream().filter(doc -> doc.getLabel() != 0).mapToInt(doc -> 1).sum();
   }
 
+  static int[] labels(List<Document> docRanks){
+    int[] labels = new int[docRanks.size()];
+    for (int i = 0; i < labels.length; i++) labels[i] = docRanks.get(i).getLabel();
+    return labels;
+  }
+
+  /**
+   * Returns a copy of labels sorted from highest to lowest, i.e. the labels of the ideal ranking.
+   */
+  static int[] idealLabels(int[] labels){
+    int[] ideal = labels.clone();
+    Arrays.sort(ideal);
+    for (int i = 0, j = ideal.length - 1; i < j; i++, j--) {
+      int tmp = ideal[i];
+      ideal[i] = ideal[j];
+      ideal[j] = tmp;
+    }
+    return ideal;
+  }
+
   static double cg(List<Document> docRanks, int position){
     assert(position > 0);
     double cg = 0;
@@ -38,13 +59,31 @@ public interface RankEval {
   default double calculateAvgAllQueries(Ranker ranker, List<Query> queries, int position){
     double total = 0;
     for (Query query : queries) {
-      double queryVal = calculate(ranker.sort(query), position);
+      double queryVal = calculate(rank(ranker, query, position), position);
       if (!Double.isFinite(queryVal)) continue;
       total += queryVal;
     }
     return total / queries.size();
   }
 
+  /**
+   * Ranks the documents of the query for {@link #calculate(List, int)}. Measures which only look at the
+   * documents above position override this to rank just the top of the list.
+   */
+  default List<Document> rank(Ranker ranker, Query query, int position){
+    return ranker.sort(query);
+  }
+
+  /**
+   * Orders only the documents above position, for measures which do not look further down the list.
+   * @return all documents of the query; only the first position documents are ordered.
+   */
+  static List<Document> rankTop(Ranker ranker, Query query, int position){
+    if (position <= 0 || position >= query.getDocList().size())
+      return ranker.sort(query);
+    return ranker.topK(query, position);
+  }
+
   default int identity(Document doc){
     return doc.getLabel() > 0 ? 1 : 0;
   }
@@ -22,6 +22,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ltr4l.query.Document;
+import org.ltr4l.tools.BinaryModel;
 import org.ltr4l.tools.Regularization;
 import org.ltr4l.trainers.MLPTrainer;
 
@@ -71,6 +73,59 @@ public abstract class AbstractMLP <N extends AbstractNode.Node, E extends Abstra
     return network;
   }
 
+  /**
+   * For sparse documents, the first hidden layer only sums over the stored features.
+   */
+  @Override
+  public double forwardProp(Document doc) {
+    List<N> layer = network.get(0);
+    if (!doc.isSparse()) {
+      for (int i = 0; i < layer.size(); i++)
+        layer.get(i).setOutput(doc.getFeature(i));
+      return propagate(1);
+    }
+    for (N node : layer)
+      node.setOutput(0d);
+    for (int k = 0; k < doc.getNumStored(); k++)
+      layer.get(doc.getStoredIndex(k)).setOutput(doc.getStoredValue(k));  //Needed for back propagation.
+
+    for (N node : network.get(1))
+      node.updateOutput(doc);
+    return propagate(2);
+  }
+
+  public double forwardProp(double[] features) {
+    List<N> layer = network.get(0);
+    for (int i = 0; i < layer.size(); i++)
+      layer.get(i).setOutput(features[i]);
+    return propagate(1);
+  }
+
+  //Updates the outputs of the layers from fromLayer to the last layer, and returns the output of the network.
+  private double propagate(int fromLayer) {
+    for (int layerId = fromLayer; layerId < network.size(); layerId++) {
+      for (N node : network.get(layerId)) {
+        node.updateOutput();
+      }
+    }
+    return network.get(network.size() - 1).get(0).getOutput();
+  }
+
+  @Override
+  public double predict(Document doc) {
+    return forwardProp(doc);
+  }
+
+  @Override
+  public int getNumFeatures() {
+    return network.get(0).size();
+  }
+
+  @Override
+  public double predict(double[] features) {
+    return forwardProp(features);
+  }
+
   protected abstract N constructNode(Activation activation);
   protected abstract E constructEdge(N source, N destination, Optimizer opt, double weight);
 
@@ -78,7 +133,7 @@ public abstract class AbstractMLP <N extends AbstractNode.Node, E extends Abstra
   protected List<List<N>> readModel(Reader reader){
     try {
       ObjectMapper mapper = new ObjectMapper();
-      SavedModel savedModel = mapper.readValue(reader, SavedModel.class);
+      SavedModel savedModel = BinaryModel.readValue(mapper, reader, SavedModel.class);
 
       assert (savedModel.weights.size() > 0);
 
@@ -19,6 +19,7 @@ package org.ltr4l.nn;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -115,6 +116,26 @@ public abstract class AbstractMLPBase <N extends AbstractNode, E extends Abstrac
         .collect(Collectors.toList());
   }
 
+  //The weights of the input edges of every node, in network order.
+  @Override
+  public double[] copyParameters() {
+    List<Double> weights = new ArrayList<>();
+    for (List<N> layer : network)
+      for (N node : layer)
+        for (E edge : (List<E>) node.getInputEdges())
+          weights.add(edge.getWeight());
+    return weights.stream().mapToDouble(Double::doubleValue).toArray();
+  }
+
+  @Override
+  public void restoreParameters(double[] parameters) {
+    int i = 0;
+    for (List<N> layer : network)
+      for (N node : layer)
+        for (E edge : (List<E>) node.getInputEdges())
+          edge.setWeight(parameters[i++]);
+  }
+
   @Override
   public void writeModel(MLPTrainer.MLPConfig config, Writer writer) throws IOException {
     SavedModel savedModel = new SavedModel(config, obtainWeights());
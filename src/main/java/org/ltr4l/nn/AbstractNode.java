@@ -16,6 +16,8 @@
 
 package org.ltr4l.nn;
 
+import org.ltr4l.query.Document;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -116,6 +118,20 @@ public abstract class AbstractNode<E extends AbstractEdge> {
       }
       output = activation.output(totalInput);
     }
+
+    /**
+     * Updates the output of a node in the first hidden layer from the stored features of a document.
+     * Input edge i + 1 comes from feature i, and features which are not stored are 0, so they are skipped.
+     * @param input document fed into the input layer.
+     */
+    protected void updateOutput(Document input){
+      totalInput = inputEdges.get(0).getWeight(); //The first edge is the bias.
+
+      for (int k = 0; k < input.getNumStored(); k++) {
+        totalInput += input.getStoredValue(k) * inputEdges.get(input.getStoredIndex(k) + 1).getWeight();
+      }
+      output = activation.output(totalInput);
+    }
   }
 
 }
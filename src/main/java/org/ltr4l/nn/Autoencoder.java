@@ -16,6 +16,7 @@
 package org.ltr4l.nn;
 
 import org.ltr4l.tools.Error;
+import org.ltr4l.query.Document;
 import org.ltr4l.tools.Regularization;
 import org.ltr4l.nn.MLP.*;
 
@@ -222,6 +223,13 @@ public class Autoencoder extends AbstractMLP<Autoencoder.AENode, MLP.Edge> imple
       numAct++;
     }
 
+    @Override
+    protected void updateOutput(Document input){
+      super.updateOutput(input);
+      totalAct += output;
+      numAct++;
+    }
+
     public double getAvgAct(){
       return totalAct / numAct;
     }
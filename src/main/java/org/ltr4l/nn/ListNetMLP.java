@@ -20,7 +20,6 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.List;
 
-import org.ltr4l.query.Document;
 import org.ltr4l.tools.Error;
 import org.ltr4l.tools.Regularization;
 import org.ltr4l.trainers.MLPTrainer;
@@ -66,17 +65,6 @@ public class ListNetMLP extends AbstractMLP<ListNetMLP.LNode, ListNetMLP.LEdge>
     return new LEdge(source, destination, opt, weight);
   }
 
-  public double predict(Document doc) {
-    return predict(doc.getFeatures());
-  }
-
-  //Overloaded to accept Document object as well.
-  public double forwardProp(Document doc) {
-    List<Double> features = doc.getFeatures();
-    return forwardProp(features);
-
-  }
-
   public void backProp(double target) {
     backProp(null, target);
   }
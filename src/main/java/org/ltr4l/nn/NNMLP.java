@@ -16,6 +16,8 @@
 package org.ltr4l.nn;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ltr4l.query.Document;
+import org.ltr4l.tools.BinaryModel;
 import org.ltr4l.tools.Regularization;
 import org.ltr4l.trainers.MLPTrainer;
 
@@ -44,8 +46,25 @@ public class NNMLP extends MLP {
 
   @Override
   public double predict(List<Double> features) {
-    double threshold = 0.8;
     forwardProp(features);
+    return outputRank();
+  }
+
+  @Override
+  public double predict(Document doc) {
+    forwardProp(doc);
+    return outputRank();
+  }
+
+  @Override
+  public double predict(double[] features) {
+    forwardProp(features);
+    return outputRank();
+  }
+
+  //Returns the number of leading output nodes which fired.
+  private double outputRank() {
+    double threshold = 0.8;
     int nodeId;
     for (nodeId = 0; nodeId < network.get(network.size() - 1).size(); nodeId++) {
       MNode node = network.get(network.size() - 1).get(nodeId);
@@ -59,7 +78,7 @@ public class NNMLP extends MLP {
   protected List<List<MNode>> readModel(Reader reader){
     try {
       ObjectMapper mapper = new ObjectMapper();
-      SavedModel savedModel = mapper.readValue(reader, SavedModel.class);
+      SavedModel savedModel = BinaryModel.readValue(mapper, reader, SavedModel.class);
 
       assert (savedModel.weights.size() > 0);
 
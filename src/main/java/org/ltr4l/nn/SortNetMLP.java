@@ -25,6 +25,7 @@ import java.util.stream.Collectors;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.ltr4l.query.Document;
 import org.ltr4l.query.Query;
+import org.ltr4l.tools.BinaryModel;
 import org.ltr4l.tools.Error;
 import org.ltr4l.tools.Regularization;
 import org.ltr4l.trainers.MLPTrainer;
@@ -110,7 +111,7 @@ public class SortNetMLP extends AbstractMLPBase<SortNetMLP.SNode, SortNetMLP.SEd
   protected List<List<SNode>> readModel(Reader reader){
     try {
       ObjectMapper mapper = new ObjectMapper();
-      SavedModel model = mapper.readValue(reader, SavedModel.class);
+      SavedModel model = BinaryModel.readValue(mapper, reader, SavedModel.class);
       assert(model.weights.size() > 0);
 
       List<List<SNode>> network = new ArrayList<>();
@@ -337,6 +338,11 @@ public class SortNetMLP extends AbstractMLPBase<SortNetMLP.SNode, SortNetMLP.SEd
     iter++;
   }
 
+  @Override
+  public List<Document> topK(Query query, int k) {
+    return sort(query);  //Documents are only compared in pairs, so there are no scores to select from.
+  }
+
   @Override
   public List<Document> sort(Query query) {
     List<Document> ranks = new ArrayList<>(query.getDocList());
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.query;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary cache (.ltrbin) of a parsed dataset, written next to the text file so that later runs
+ * can skip parsing. The file holds the arrays of a {@link FeatureMatrix} in little-endian order:
+ * <pre>
+ * header:   magic, version, numFeatures, numQueries (int), numDocs, sourceLength, sourceModified, checksum (long)
+ * body:     queryIds[numQueries], queryOffsets[numQueries + 1], labels[numDocs] (int),
+ *           padding to 8 bytes, features[numDocs * numFeatures] (double, row-major)
+ * </pre>
+ * The cache is read through {@link FileChannel#map}, so pages are loaded by the OS as the arrays are copied.
+ */
+public final class DatasetCache {
+  public static final String SUFFIX = ".ltrbin";
+
+  private static final int MAGIC = 0x4C545242; //"LTRB"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 4 * 4 + 8 * 4;
+  private static final int MAP_SIZE = 1 << 30;  //Bytes mapped at a time; a multiple of 8.
+
+  private DatasetCache(){}
+
+  public static File getCacheFile(String source){
+    return new File(source + SUFFIX);
+  }
+
+  /**
+   * Checks if the cache of source exists and was made from a file of the same content. A cache newer than source, made
+   * from a file of the same size and time, is valid. If only the time differs, e.g. because source was touched or
+   * copied, the CRC32 of the content of source is compared with the one of the cache.
+   */
+  public static boolean isValid(File source, File cache){
+    if (!cache.isFile()) return false;
+    try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_SIZE) return false;
+      Header header = readHeader(channel);
+      if (header.sourceLength != source.length()) return false;
+      if (header.sourceModified == source.lastModified() && cache.lastModified() >= source.lastModified()) return true;
+      return header.checksum == checksum(source);
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  //CRC32 of the (decompressed) content of source, as LetorParser computes it while parsing.
+  private static long checksum(File source) throws IOException {
+    CRC32 crc = new CRC32();
+    try (InputStream in = LetorParser.decompressIfNeeded(new FileInputStream(source))) {
+      byte[] buf = new byte[64 * 1024];
+      int n;
+      while ((n = in.read(buf)) != -1)
+        crc.update(buf, 0, n);
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Writes the matrix to cache. The file is written to a temporary file first and then renamed,
+   * so that an interrupted run never leaves a partial cache.
+   * @param matrix parsed dataset.
+   * @param source text file the dataset was parsed from.
+   * @param checksum CRC32 of the content of source.
+   * @param cache file to write.
+   */
+  public static void write(FeatureMatrix matrix, File source, long checksum, File cache) throws IOException {
+    Path tmp = Files.createTempFile(cache.getAbsoluteFile().getParentFile().toPath(), cache.getName(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        int numQueries = matrix.getNumQueries();
+        int numDocs = matrix.getNumDocs();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(matrix.getNumFeatures()).putInt(numQueries);
+        buffer.putLong(numDocs).putLong(source.length()).putLong(source.lastModified()).putLong(checksum);
+        for (int q = 0; q < numQueries; q++)
+          buffer = putInt(channel, buffer, matrix.getQueryId(q));
+        for (int q = 0; q < numQueries; q++)
+          buffer = putInt(channel, buffer, matrix.getQueryStart(q));
+        buffer = putInt(channel, buffer, numDocs);
+        for (int label : matrix.getLabels())
+          buffer = putInt(channel, buffer, label);
+        if (buffer.position() % 8 != 0) buffer = putInt(channel, buffer, 0);
+        for (double feature : matrix.getRowMajor()) {
+          if (!buffer.hasRemaining()) flush(channel, buffer);
+          buffer.putDouble(feature);
+        }
+        flush(channel, buffer);
+      }
+      Files.move(tmp, cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Reads a cache written by {@link #write}.
+   * @return QuerySet whose documents are views onto the cached matrix.
+   */
+  public static QuerySet read(File cache) throws IOException {
+    try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+      Header header = readHeader(channel);
+      if (header.numDocs * (long) header.numFeatures > Integer.MAX_VALUE - 8)
+        throw new IOException("Dataset in " + cache + " is too large to be loaded.");
+      int numDocs = (int) header.numDocs;
+      long position = HEADER_SIZE;
+      int[] queryIds = new int[header.numQueries];
+      position = readInts(channel, position, queryIds);
+      int[] queryOffsets = new int[header.numQueries + 1];
+      position = readInts(channel, position, queryOffsets);
+      int[] labels = new int[numDocs];
+      position = readInts(channel, position, labels);
+      position = (position + 7) & ~7L;
+      double[] rows = new double[numDocs * header.numFeatures];
+      readDoubles(channel, position, rows);
+
+      FeatureMatrix matrix = new FeatureMatrix(header.numFeatures, rows, labels, queryOffsets, queryIds);
+      QuerySet querySet = new QuerySet(matrix.createQueries());
+      querySet.setFeatureMatrix(matrix);
+      return querySet;
+    }
+  }
+
+  private static class Header {
+    int numFeatures;
+    int numQueries;
+    long numDocs;
+    long sourceLength;
+    long sourceModified;
+    long checksum;
+  }
+
+  private static Header readHeader(FileChannel channel) throws IOException {
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getInt() != MAGIC) throw new IOException("Not an " + SUFFIX + " file.");
+    int version = buffer.getInt();
+    if (version != VERSION) throw new IOException("Unsupported " + SUFFIX + " version: " + version);
+    Header header = new Header();
+    header.numFeatures = buffer.getInt();
+    header.numQueries = buffer.getInt();
+    header.numDocs = buffer.getLong();
+    header.sourceLength = buffer.getLong();
+    header.sourceModified = buffer.getLong();
+    header.checksum = buffer.getLong();
+    return header;
+  }
+
+  private static ByteBuffer putInt(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+    if (!buffer.hasRemaining()) flush(channel, buffer);
+    return buffer.putInt(value);
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) channel.write(buffer);
+    buffer.clear();
+  }
+
+  private static long readInts(FileChannel channel, long position, int[] dest) throws IOException {
+    int done = 0;
+    while (done < dest.length) {
+      int count = Math.min(dest.length - done, MAP_SIZE / 4);
+      channel.map(FileChannel.MapMode.READ_ONLY, position, count * 4L)
+          .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(dest, done, count);
+      done += count;
+      position += count * 4L;
+    }
+    return position;
+  }
+
+  private static long readDoubles(FileChannel channel, long position, double[] dest) throws IOException {
+    int done = 0;
+    while (done < dest.length) {
+      int count = Math.min(dest.length - done, MAP_SIZE / 8);
+      channel.map(FileChannel.MapMode.READ_ONLY, position, count * 8L)
+          .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(dest, done, count);
+      done += count;
+      position += count * 8L;
+    }
+    return position;
+  }
+}
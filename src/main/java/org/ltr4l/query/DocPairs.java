@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.query;
+
+import org.ltr4l.tools.IndexSorter;
+
+import java.util.List;
+
+/**
+ * The document pairs (docA, docB) of a query with labelA &gt; labelB, generated on the fly.
+ *
+ * Instead of holding one array per pair, the documents are ordered by label (descending) and,
+ * for each position, the first position of a strictly lower label is kept. The pairs are then
+ * (position p, position q) for every q &gt;= getLowerStart(p), so a query of n documents only
+ * needs two int[n]:
+ * <pre>
+ * for (int p = 0; p &lt; pairs.getNumDocs(); p++)
+ *   for (int q = pairs.getLowerStart(p); q &lt; pairs.getNumDocs(); q++)
+ *     //pairs.getDocument(p) is ranked higher than pairs.getDocument(q)
+ * </pre>
+ */
+public class DocPairs {
+  private final List<Document> docs;
+  private final int[] order;        //indices of docs, by label descending; stable
+  private final int[] lowerStart;   //first position in order whose label is lower than the label at this position
+  private final long numPairs;
+
+  public DocPairs(List<Document> docs) {
+    this.docs = docs;
+    int n = docs.size();
+    double[] labels = new double[n];
+    for (int i = 0; i < n; i++)
+      labels[i] = docs.get(i).getLabel();
+    order = IndexSorter.argsort(labels, true);
+    lowerStart = new int[n];
+    long count = 0;
+    for (int p = n - 1; p >= 0; p--) {
+      if (p == n - 1) lowerStart[p] = n;
+      else if (labels[order[p]] == labels[order[p + 1]]) lowerStart[p] = lowerStart[p + 1];
+      else lowerStart[p] = p + 1;
+      count += n - lowerStart[p];
+    }
+    numPairs = count;
+  }
+
+  /**
+   * Receives a pair as indices into the document list of the query.
+   */
+  @FunctionalInterface
+  public interface PairConsumer {
+    void accept(int higher, int lower);
+  }
+
+  /**
+   * Calls consumer for every pair, without allocating per pair.
+   */
+  public void forEach(PairConsumer consumer) {
+    int n = order.length;
+    for (int p = 0; p < n; p++)
+      for (int q = lowerStart[p]; q < n; q++)
+        consumer.accept(order[p], order[q]);
+  }
+
+  public long size() {
+    return numPairs;
+  }
+
+  public boolean isEmpty() {
+    return numPairs == 0;
+  }
+
+  public int getNumDocs() {
+    return order.length;
+  }
+
+  /**
+   * @param position position in label order.
+   * @return index of the document in the document list of the query.
+   */
+  public int getDocIndex(int position) {
+    return order[position];
+  }
+
+  /**
+   * @param position position in label order.
+   * @return the document at position.
+   */
+  public Document getDocument(int position) {
+    return docs.get(order[position]);
+  }
+
+  /**
+   * @param position position in label order.
+   * @return the first position whose label is strictly lower than the label at position; getNumDocs() if there is none.
+   */
+  public int getLowerStart(int position) {
+    return lowerStart[position];
+  }
+}
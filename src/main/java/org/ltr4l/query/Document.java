@@ -16,19 +16,129 @@
 
 package org.ltr4l.query;
 
-import java.util.ArrayList;
+import org.ltr4l.tools.IndexSorter;
+
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
+/**
+ * A document of a query. Features are held as primitives; once the document belongs to a
+ * {@link FeatureMatrix}, it is a view onto its row of the matrix.
+ *
+ * A document can also be sparse, holding only the features which are not zero as parallel
+ * arrays of indices and values. Hot loops can iterate over the stored features with
+ * {@link #getNumStored()}, {@link #getStoredIndex(int)} and {@link #getStoredValue(int)},
+ * which work for both dense and sparse documents.
+ */
 public class Document {
+  private static final int INITIAL_CAPACITY = 8;
+
   private int label;
-  private final List<Double> features;
+  private double[] features;  //values of stored features
+  private int[] indices;      //feature ids of stored values if sparse, null if dense
+  private int numStored;     //number of stored values if sparse
+  private int offset;
+  private int length;
+  private FeatureMatrix matrix;
+  private int ordinal;
 
   public Document() {
-    features = new ArrayList<>();
+    features = new double[INITIAL_CAPACITY];
+    offset = 0;
+    length = 0;
+    ordinal = -1;
   }
   public Document(List<Double> features, int label) {
+    this(features.stream().mapToDouble(Double::doubleValue).toArray(), label);
+  }
+  public Document(double[] features, int label) {
     this.features = features;
+    this.offset = 0;
+    this.length = features.length;
     this.label = label;
+    ordinal = -1;
+  }
+
+  /**
+   * Creates a sparse document.
+   * @param indices feature ids of the values, in strictly ascending order.
+   * @param values values of the features; features which are not listed are 0.
+   * @param length number of features of the document.
+   * @param label label of the document.
+   */
+  public Document(int[] indices, double[] values, int length, int label) {
+    if (indices.length != values.length)
+      throw new IllegalArgumentException("indices and values must have the same length.");
+    for (int k = 0; k < indices.length; k++) {
+      if (indices[k] < 0 || indices[k] >= length || (k > 0 && indices[k] <= indices[k - 1]))
+        throw new IllegalArgumentException("indices must be ascending and within [0, length): " + indices[k]);
+    }
+    this.indices = indices;
+    this.features = values;
+    this.numStored = indices.length;
+    this.offset = 0;
+    this.length = length;
+    this.label = label;
+    ordinal = -1;
+  }
+
+  /**
+   * Creates a document from (feature id, value) pairs in any order. If the ids are 0, 1, 2... the document is dense,
+   * otherwise it is sparse with length max(id) + 1. When an id is repeated, the last value is used.
+   * @param ids 0-based feature ids. The array may be reordered.
+   * @param values values of the features. The array may be reordered.
+   * @param count number of pairs to use.
+   * @param label label of the document.
+   */
+  static Document of(int[] ids, double[] values, int count, int label) {
+    boolean contiguous = true;
+    boolean ascending = true;
+    for (int k = 0; k < count; k++) {
+      contiguous &= ids[k] == k;
+      ascending &= k == 0 || ids[k] > ids[k - 1];
+    }
+    if (contiguous)
+      return new Document(Arrays.copyOf(values, count), label);
+    if (!ascending) {
+      int[] order = new int[count];
+      double[] keys = new double[count];
+      for (int k = 0; k < count; k++) {
+        order[k] = k;
+        keys[k] = ids[k];
+      }
+      IndexSorter.sort(order, 0, count, keys, false);
+      int[] sortedIds = new int[count];
+      double[] sortedValues = new double[count];
+      int n = 0;
+      for (int k = 0; k < count; k++) {
+        int id = ids[order[k]];
+        if (n > 0 && sortedIds[n - 1] == id) n--;  //Stable sort, so the later value overwrites.
+        sortedIds[n] = id;
+        sortedValues[n++] = values[order[k]];
+      }
+      ids = sortedIds;
+      values = sortedValues;
+      count = n;
+    }
+    int length = count == 0 ? 0 : ids[count - 1] + 1;
+    return new Document(Arrays.copyOf(ids, count), Arrays.copyOf(values, count), length, label);
+  }
+
+  Document(FeatureMatrix matrix, int ordinal) {
+    label = matrix.getLabel(ordinal);
+    bind(matrix, ordinal);
+  }
+
+  void bind(FeatureMatrix matrix, int ordinal){
+    this.matrix = matrix;
+    this.ordinal = ordinal;
+    this.features = matrix.getRowMajor();
+    this.indices = null;
+    this.numStored = 0;
+    this.length = matrix.getNumFeatures();
+    this.offset = ordinal * length;
   }
 
   public int getLabel() {
@@ -37,21 +147,180 @@ public class Document {
 
   public void setLabel(int newLabel) {
     label = newLabel;
+    if (matrix != null) matrix.setLabel(ordinal, newLabel);
   }
 
+  /**
+   * Returns a view of the features of this document.
+   * Elements are boxed on access; use {@link #getFeature(int)} in loops.
+   * @return List view which writes through to this document.
+   */
   public List<Double> getFeatures() {
-    return features;
+    return new FeatureList();
   }
 
   public double getFeature(int i){
-    return features.get(i);
+    assert(i < length);
+    if (indices == null)
+      return features[offset + i];
+    int k = Arrays.binarySearch(indices, 0, numStored, i);
+    return k < 0 ? 0d : features[k];
+  }
+
+  public void setFeature(int i, double feature){
+    assert(i < length);
+    if (indices == null) {
+      features[offset + i] = feature;
+      if (matrix != null) matrix.featuresChanged();
+      return;
+    }
+    int k = Arrays.binarySearch(indices, 0, numStored, i);
+    if (k >= 0) {
+      features[k] = feature;
+    }
+    else if (feature != 0d) {
+      k = -k - 1;
+      if (numStored == indices.length) {
+        int capacity = Math.max(INITIAL_CAPACITY, numStored * 2);
+        indices = Arrays.copyOf(indices, capacity);
+        features = Arrays.copyOf(features, capacity);
+      }
+      System.arraycopy(indices, k, indices, k + 1, numStored - k);
+      System.arraycopy(features, k, features, k + 1, numStored - k);
+      indices[k] = i;
+      features[k] = feature;
+      numStored++;
+    }
   }
 
   public int getFeatureLength(){
-    return features.size();
+    return length;
   }
 
   public void addFeature(double feature) {
-    features.add(feature);
+    if (matrix != null)
+      throw new IllegalStateException("Features cannot be added to a document stored in a FeatureMatrix.");
+    if (indices != null) {
+      length++;
+      setFeature(length - 1, feature);
+      return;
+    }
+    if (length == features.length)
+      features = Arrays.copyOf(features, Math.max(INITIAL_CAPACITY, length * 2));
+    features[length++] = feature;
+  }
+
+  public boolean isSparse() {
+    return indices != null;
+  }
+
+  /**
+   * @return number of stored features; all features if dense, the features which may be non-zero if sparse.
+   */
+  public int getNumStored() {
+    return indices == null ? length : numStored;
+  }
+
+  /**
+   * @param k position in the stored features, 0 &lt;= k &lt; {@link #getNumStored()}.
+   * @return feature id of the k-th stored feature.
+   */
+  public int getStoredIndex(int k) {
+    return indices == null ? k : indices[k];
+  }
+
+  /**
+   * @param k position in the stored features, 0 &lt;= k &lt; {@link #getNumStored()}.
+   * @return value of the k-th stored feature.
+   */
+  public double getStoredValue(int k) {
+    return features[offset + k];
+  }
+
+  /**
+   * Copies the features into dest, starting at destPos. Features which are not stored are written as 0.
+   */
+  public void copyFeatures(double[] dest, int destPos){
+    if (indices == null) {
+      System.arraycopy(features, offset, dest, destPos, length);
+      return;
+    }
+    Arrays.fill(dest, destPos, destPos + length, 0d);
+    for (int k = 0; k < numStored; k++)
+      dest[destPos + indices[k]] = features[k];
+  }
+
+  public double[] toArray(){
+    double[] array = new double[length];
+    copyFeatures(array, 0);
+    return array;
+  }
+
+  /**
+   * Sets the number of features; features added by this are 0.
+   */
+  void setFeatureLength(int newLength){
+    assert(newLength >= length && matrix == null);
+    if (indices == null && features.length < newLength)
+      features = Arrays.copyOf(features, newLength);
+    length = newLength;
+  }
+
+  /**
+   * Converts this document to the sparse representation, dropping features which are 0.
+   */
+  void toSparse(){
+    if (indices != null) return;
+    assert(matrix == null);
+    int count = 0;
+    for (int i = 0; i < length; i++)
+      if (features[offset + i] != 0d) count++;
+    int[] newIndices = new int[count];
+    double[] newValues = new double[count];
+    int k = 0;
+    for (int i = 0; i < length; i++) {
+      if (features[offset + i] != 0d) {
+        newIndices[k] = i;
+        newValues[k++] = features[offset + i];
+      }
+    }
+    indices = newIndices;
+    features = newValues;
+    numStored = count;
+    offset = 0;
+  }
+
+  /**
+   * @return the matrix this document is stored in, or null if the document is not part of one.
+   */
+  public FeatureMatrix getFeatureMatrix() {
+    return matrix;
+  }
+
+  /**
+   * @return the row of this document in its {@link FeatureMatrix}, or -1 if the document is not part of one.
+   */
+  public int getOrdinal() {
+    return ordinal;
+  }
+
+  private class FeatureList extends AbstractList<Double> implements RandomAccess {
+    @Override
+    public Double get(int index) {
+      if (index < 0 || index >= length) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+      return getFeature(index);
+    }
+
+    @Override
+    public Double set(int index, Double element) {
+      Double old = get(index);
+      setFeature(index, element);
+      return old;
+    }
+
+    @Override
+    public int size() {
+      return length;
+    }
   }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Primitive, columnar storage for the documents of a set of queries.
+ * All features are held in a single row-major double[] (one row per document), together with
+ * int[] labels and query offsets. Documents of the queries become views onto their row, so that
+ * no boxed values are kept per feature.
+ *
+ * A feature-major copy of the features is built lazily, for algorithms which scan
+ * a single feature over all documents (e.g. split search of trees).
+ */
+public class FeatureMatrix {
+  private final int numFeatures;
+  private final int numDocs;
+  private final double[] rows;        //[doc * numFeatures + feature]
+  private final int[] labels;
+  private final int[] queryOffsets;   //documents of query q are [queryOffsets[q], queryOffsets[q + 1])
+  private final int[] queryIds;
+  private double[] columns;           //[feature * numDocs + doc], built on demand.
+
+  FeatureMatrix(int numFeatures, double[] rows, int[] labels, int[] queryOffsets, int[] queryIds){
+    assert(rows.length == labels.length * numFeatures);
+    assert(queryOffsets.length == queryIds.length + 1);
+    this.numFeatures = numFeatures;
+    this.numDocs = labels.length;
+    this.rows = rows;
+    this.labels = labels;
+    this.queryOffsets = queryOffsets;
+    this.queryIds = queryIds;
+  }
+
+  /**
+   * Copies the features and labels of the queries into a new matrix, in query order.
+   * After this call, the documents of the queries are views onto the returned matrix.
+   * Documents with fewer features than the longest document are padded with zeros.
+   * @param queries queries to store.
+   * @return matrix holding all documents of the queries.
+   * @throws IllegalArgumentException if the documents have too many features in total to fit in one array.
+   */
+  public static FeatureMatrix of(List<Query> queries){
+    int numDocs = 0;
+    int numFeatures = 0;
+    for (Query query : queries) {
+      numDocs += query.getDocList().size();
+      for (Document doc : query.getDocList())
+        numFeatures = Math.max(numFeatures, doc.getFeatureLength());
+    }
+    if (numDocs * (long) numFeatures > Integer.MAX_VALUE - 8)
+      throw new IllegalArgumentException("Dataset is too large for a dense matrix: " + numDocs + " documents of " + numFeatures + " features.");
+    double[] rows = new double[numDocs * numFeatures];
+    int[] labels = new int[numDocs];
+    int[] queryOffsets = new int[queries.size() + 1];
+    int[] queryIds = new int[queries.size()];
+    int row = 0;
+    for (int q = 0; q < queries.size(); q++) {
+      Query query = queries.get(q);
+      queryOffsets[q] = row;
+      queryIds[q] = query.getQueryId();
+      for (Document doc : query.getDocList()) {
+        doc.copyFeatures(rows, row * numFeatures);
+        labels[row] = doc.getLabel();
+        row++;
+      }
+    }
+    queryOffsets[queries.size()] = row;
+
+    FeatureMatrix matrix = new FeatureMatrix(numFeatures, rows, labels, queryOffsets, queryIds);
+    row = 0;
+    for (Query query : queries) {
+      for (Document doc : query.getDocList())
+        doc.bind(matrix, row++);
+      query.setFeatureLength(numFeatures);
+    }
+    return matrix;
+  }
+
+  /**
+   * Creates queries whose documents are views onto this matrix.
+   */
+  List<Query> createQueries(){
+    List<Query> queries = new ArrayList<>(getNumQueries());
+    for (int q = 0; q < getNumQueries(); q++) {
+      List<Document> docs = new ArrayList<>(getQueryEnd(q) - getQueryStart(q));
+      for (int d = getQueryStart(q); d < getQueryEnd(q); d++)
+        docs.add(new Document(this, d));
+      queries.add(new Query(docs, queryIds[q]));
+    }
+    return queries;
+  }
+
+  public int getNumFeatures() {
+    return numFeatures;
+  }
+
+  public int getNumDocs() {
+    return numDocs;
+  }
+
+  public int getNumQueries() {
+    return queryIds.length;
+  }
+
+  public double get(int doc, int feature){
+    return rows[doc * numFeatures + feature];
+  }
+
+  public int getLabel(int doc){
+    return labels[doc];
+  }
+
+  /**
+   * Returns the labels of all documents, indexed by document ordinal.
+   * The array is shared and must not be modified.
+   */
+  public int[] getLabels() {
+    return labels;
+  }
+
+  /**
+   * Returns the features in row-major order; the feature f of document d is at [d * numFeatures + f].
+   * The array is shared and must not be modified, other than through {@link Document#setFeature(int, double)}.
+   */
+  public double[] getRowMajor() {
+    return rows;
+  }
+
+  /**
+   * Returns the features in feature-major order; the feature f of document d is at [f * numDocs + d].
+   * The array is built on the first call and shared afterwards; it must not be modified.
+   */
+  public synchronized double[] getFeatureMajor() {
+    if (columns == null) {
+      double[] cols = new double[rows.length];
+      for (int d = 0; d < numDocs; d++) {
+        int rowStart = d * numFeatures;
+        for (int f = 0; f < numFeatures; f++)
+          cols[f * numDocs + d] = rows[rowStart + f];
+      }
+      columns = cols;
+    }
+    return columns;
+  }
+
+  public int getQueryStart(int q){
+    return queryOffsets[q];
+  }
+
+  public int getQueryEnd(int q){
+    return queryOffsets[q + 1];
+  }
+
+  public int getQueryId(int q){
+    return queryIds[q];
+  }
+
+  void setLabel(int doc, int label){
+    labels[doc] = label;
+  }
+
+  synchronized void featuresChanged(){
+    columns = null;
+  }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.query;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Parser of LETOR / svmlight formatted data:
+ * <pre>&lt;label&gt; qid:&lt;qid&gt; &lt;feature-id&gt;:&lt;feature-value&gt;... #&lt;comment&gt;</pre>
+ * Feature ids start from 1, and features which are omitted are 0.
+ *
+ * The input is read as bytes in line-aligned chunks, and the chunks are parsed in parallel without
+ * creating intermediate Strings. Parsed chunks are merged into the QuerySet in input order, so the
+ * result is the same as parsing the lines one by one. Gzip compressed input is detected and
+ * decompressed transparently.
+ */
+public class LetorParser {
+  public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+  private final int numThreads;
+  private final int chunkSize;
+
+  private long lines;
+  private long bytes;
+  private long checksum;
+  private long elapsedNanos;
+
+  public LetorParser() {
+    this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+  }
+
+  public LetorParser(int numThreads, int chunkSize) {
+    if (numThreads < 1) throw new IllegalArgumentException("numThreads must be positive.");
+    if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be positive.");
+    this.numThreads = numThreads;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Parses the stream and adds the documents to the querySet.
+   * The stream is not closed.
+   * @param in data, either plain or gzip compressed.
+   * @param querySet destination of the parsed documents.
+   * @throws IOException if the stream cannot be read.
+   * @throws NumberFormatException if a line is malformed.
+   */
+  public void parse(InputStream in, QuerySet querySet) throws IOException {
+    long start = System.nanoTime();
+    lines = 0;
+    bytes = 0;
+    CRC32 crc = new CRC32();
+    InputStream data = decompressIfNeeded(in);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      Deque<Future<Chunk>> pending = new ArrayDeque<>();
+      byte[] carry = new byte[0];
+      int carryLength = 0;
+      boolean eof = false;
+      while (!eof) {
+        byte[] buf = new byte[Math.max(chunkSize, carryLength * 2)];
+        System.arraycopy(carry, 0, buf, 0, carryLength);
+        int filled = carryLength;
+        int end;
+        while (true) {
+          int n = fill(data, buf, filled);
+          if (n < 0) eof = true;
+          else filled += n;
+          end = eof ? filled : lastLineEnd(buf, filled);
+          if (end > 0 || eof) break;
+          buf = Arrays.copyOf(buf, buf.length * 2); //A single line is longer than the buffer.
+        }
+        bytes += filled - carryLength;
+        crc.update(buf, carryLength, filled - carryLength);
+        carryLength = filled - end;
+        carry = Arrays.copyOfRange(buf, end, filled);
+        final byte[] chunkBuf = buf;
+        final int chunkEnd = end;
+        pending.add(executor.submit(() -> parseChunk(chunkBuf, chunkEnd)));
+        while (pending.size() > numThreads * 2)   //Bound the memory held by parsed chunks.
+          merge(pending.poll(), querySet);
+      }
+      while (!pending.isEmpty())
+        merge(pending.poll(), querySet);
+      checksum = crc.getValue();
+    }
+    finally {
+      executor.shutdownNow();
+      elapsedNanos = System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * @return number of documents parsed by the last call of parse.
+   */
+  public long getLines() {
+    return lines;
+  }
+
+  /**
+   * @return number of (decompressed) bytes read by the last call of parse.
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return CRC32 of the (decompressed) bytes read by the last call of parse.
+   */
+  public long getChecksum() {
+    return checksum;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  public double getLinesPerSecond() {
+    return elapsedNanos == 0 ? 0 : lines * 1e9 / elapsedNanos;
+  }
+
+  public double getMegabytesPerSecond() {
+    return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos / (1024 * 1024);
+  }
+
+  private void merge(Future<Chunk> future, QuerySet querySet) throws IOException {
+    Chunk chunk;
+    try {
+      chunk = future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+    }
+    for (int i = 0; i < chunk.size; i++)
+      querySet.addDocument(chunk.qids[i], chunk.docs[i]);
+    lines += chunk.size;
+  }
+
+  static InputStream decompressIfNeeded(InputStream in) throws IOException {
+    BufferedInputStream bin = new BufferedInputStream(in);
+    bin.mark(2);
+    int b1 = bin.read();
+    int b2 = bin.read();
+    bin.reset();
+    if (b1 == 0x1f && b2 == 0x8b)
+      return new GZIPInputStream(bin, 64 * 1024);
+    return bin;
+  }
+
+  static int fill(InputStream in, byte[] buf, int from) throws IOException {
+    int total = 0;
+    while (from + total < buf.length) {
+      int n = in.read(buf, from + total, buf.length - from - total);
+      if (n < 0) return total == 0 ? -1 : total;
+      total += n;
+    }
+    return total;
+  }
+
+  static int lastLineEnd(byte[] buf, int length) {
+    for (int i = length - 1; i >= 0; i--)
+      if (buf[i] == '\n') return i + 1;
+    return 0;
+  }
+
+  static class Chunk {
+    int size;
+    int[] qids = new int[256];
+    Document[] docs = new Document[256];
+
+    void add(int qid, Document doc) {
+      if (size == qids.length) {
+        qids = Arrays.copyOf(qids, size * 2);
+        docs = Arrays.copyOf(docs, size * 2);
+      }
+      qids[size] = qid;
+      docs[size++] = doc;
+    }
+  }
+
+  static Chunk parseChunk(byte[] buf, int end) {
+    Chunk chunk = new Chunk();
+    LineParser parser = new LineParser(buf);
+    int pos = 0;
+    while (pos < end) {
+      int lineEnd = pos;
+      while (lineEnd < end && buf[lineEnd] != '\n') lineEnd++;
+      parser.parseLine(pos, lineEnd, chunk);
+      pos = lineEnd + 1;
+    }
+    return chunk;
+  }
+
+  /**
+   * Parses single lines of a byte buffer. Not thread safe; one instance is used per chunk.
+   */
+  static class LineParser {
+    private final byte[] buf;
+    private double[] features = new double[64];
+    private int[] ids = new int[64];
+    private int pos;
+    private int end;
+
+    LineParser(byte[] buf) {
+      this.buf = buf;
+    }
+
+    void parseLine(int from, int to, Chunk chunk) {
+      pos = from;
+      end = to;
+      for (int i = from; i < to; i++) {
+        if (buf[i] == '#') { end = i; break; } //Ignore comments.
+      }
+      while (end > from && isSpace(buf[end - 1])) end--;
+      skipSpaces();
+      if (pos >= end) return;                      //Empty line.
+
+      int label = parseInt(nextToken());
+      int tokenStart = nextToken();
+      int colon = indexOf(tokenStart, pos, ':');
+      if (colon < 0) throw new NumberFormatException("No qid found: " + text(from, to));
+      int qid = parseInt(colon + 1, pos);
+
+      int numFeatures = 0;
+      while (true) {
+        skipSpaces();
+        if (pos >= end) break;
+        tokenStart = nextToken();
+        colon = indexOf(tokenStart, pos, ':');
+        if (colon < 0) throw new NumberFormatException("Malformed feature: " + text(tokenStart, pos));
+        if (numFeatures == features.length) {
+          features = Arrays.copyOf(features, numFeatures * 2);
+          ids = Arrays.copyOf(ids, numFeatures * 2);
+        }
+        int id = parseInt(tokenStart, colon);
+        if (id < 1) throw new NumberFormatException("Feature ids must start from 1: " + text(tokenStart, pos));
+        ids[numFeatures] = id - 1;
+        features[numFeatures++] = parseDouble(colon + 1, pos);
+      }
+      chunk.add(qid, Document.of(ids, features, numFeatures, label));
+    }
+
+    private int nextToken() {
+      skipSpaces();
+      int start = pos;
+      while (pos < end && !isSpace(buf[pos])) pos++;
+      if (start == pos) throw new NumberFormatException("Unexpected end of line.");
+      return start;
+    }
+
+    private void skipSpaces() {
+      while (pos < end && isSpace(buf[pos])) pos++;
+    }
+
+    private int parseInt(int start) {
+      return parseInt(start, pos);
+    }
+
+    private int indexOf(int from, int to, char c) {
+      for (int i = from; i < to; i++)
+        if (buf[i] == c) return i;
+      return -1;
+    }
+
+    private int parseInt(int from, int to) {
+      int i = from;
+      boolean negative = false;
+      if (i < to && (buf[i] == '-' || buf[i] == '+')) negative = buf[i++] == '-';
+      if (i == to) throw new NumberFormatException("For input string: \"" + text(from, to) + "\"");
+      long value = 0;
+      for (; i < to; i++) {
+        int d = buf[i] - '0';
+        if (d < 0 || d > 9 || value > Integer.MAX_VALUE)
+          throw new NumberFormatException("For input string: \"" + text(from, to) + "\"");
+        value = value * 10 + d;
+      }
+      value = negative ? -value : value;
+      if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+        throw new NumberFormatException("For input string: \"" + text(from, to) + "\"");
+      return (int) value;
+    }
+
+    /**
+     * Parses a decimal number. Numbers with at most 15 significant digits and a small exponent are
+     * exactly representable as (mantissa * 10^exp) with one rounding, so the result equals
+     * {@link Double#parseDouble(String)}; anything else falls back to it.
+     */
+    private double parseDouble(int from, int to) {
+      int i = from;
+      boolean negative = false;
+      if (i < to && (buf[i] == '-' || buf[i] == '+')) negative = buf[i++] == '-';
+      long mantissa = 0;
+      int digits = 0;
+      int exp = 0;
+      boolean seenDigit = false;
+      for (; i < to; i++) {
+        int d = buf[i] - '0';
+        if (d < 0 || d > 9) break;
+        seenDigit = true;
+        if (mantissa != 0 || d != 0) digits++;
+        mantissa = mantissa * 10 + d;
+        if (digits > 15) return slowParse(from, to);
+      }
+      if (i < to && buf[i] == '.') {
+        for (i++; i < to; i++) {
+          int d = buf[i] - '0';
+          if (d < 0 || d > 9) break;
+          seenDigit = true;
+          if (mantissa != 0 || d != 0) digits++;
+          mantissa = mantissa * 10 + d;
+          exp--;
+          if (digits > 15) return slowParse(from, to);
+        }
+      }
+      if (!seenDigit) return slowParse(from, to);
+      if (i < to && (buf[i] == 'e' || buf[i] == 'E')) {
+        int expStart = ++i;
+        boolean expNegative = false;
+        if (i < to && (buf[i] == '-' || buf[i] == '+')) expNegative = buf[i++] == '-';
+        int e = 0;
+        if (i == to) return slowParse(from, to);
+        for (; i < to; i++) {
+          int d = buf[i] - '0';
+          if (d < 0 || d > 9 || e > 1000) return slowParse(from, to);
+          e = e * 10 + d;
+        }
+        if (expStart == i) return slowParse(from, to);
+        exp += expNegative ? -e : e;
+      }
+      if (i != to || exp < -22 || exp > 22) return slowParse(from, to);
+      double value = exp < 0 ? mantissa / POW10[-exp] : mantissa * POW10[exp];
+      return negative ? -value : value;
+    }
+
+    private double slowParse(int from, int to) {
+      return Double.parseDouble(text(from, to));
+    }
+
+    private String text(int from, int to) {
+      return new String(buf, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isSpace(byte b) {
+      return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static final double[] POW10 = new double[23];
+    static {
+      POW10[0] = 1;
+      for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+  }
+}
@@ -99,6 +99,14 @@ public class Query {
     return docPairsList.toArray(new Document[docPairsList.size()][2]);
   }
 
+  /**
+   * Returns the pairs of documents with different labels, without materializing them.
+   * Prefer this to {@link #orderDocPairs()}, which allocates an array per pair.
+   */
+  public DocPairs getDocPairs() {
+    return new DocPairs(docList);
+  }
+
   public List<Document> getDocList() {
     return docList;
   }
@@ -115,9 +123,13 @@ public class Query {
     return featureLength;
   }
 
+  void setFeatureLength(int featureLength) {
+    this.featureLength = featureLength;
+  }
+
   public void addDocument(Document document) {
     if (docList.isEmpty())
-      featureLength = document.getFeatures().size();
+      featureLength = document.getFeatureLength();
     docList.add(document);
   }
 }
@@ -17,10 +17,10 @@
 package org.ltr4l.query;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.*;
 import java.util.function.Function;
@@ -30,6 +30,7 @@ public class QuerySet {
 
   private final List<Query> queries;
   private final Map<Integer, Query> queryMap; //TODO: Implement so that only one collection is necessary...
+  private FeatureMatrix featureMatrix;
 
   public QuerySet() {
     queries = new ArrayList<>();
@@ -37,23 +38,62 @@ public class QuerySet {
   }
   public QuerySet(List<Query> queries) {
     this.queries = queries;
-    queryMap = queries.stream().collect(Collectors.toMap(Query::getQueryId, Function.identity()));
+    queryMap = queries.stream().collect(Collectors.toMap(Query::getQueryId, Function.identity(), (first, second) -> first));
   }
 
   public void addQuery(Query query){
     if (!queryMap.containsKey(query.getQueryId())) {
       queries.add(query);
       queryMap.put(query.getQueryId(), query);
+      featureMatrix = null;
     }
   }
 
   public static QuerySet create(String file){
-    try(InputStream is = new FileInputStream(file)){
-      try(Reader reader = new InputStreamReader(is)){
-        QuerySet querySet = new QuerySet();
-        querySet.parseQueries(reader);
+    return create(file, true);
+  }
+
+  public static QuerySet create(String file, boolean useCache){
+    return create(file, useCache, false);
+  }
+
+  /**
+   * Loads a dataset file. If useCache is true, a binary cache ({@link DatasetCache}) next to the file is
+   * used when it is up to date, and is written after the text has been parsed otherwise.
+   * @param file LETOR formatted file, either plain or gzip compressed.
+   * @param useCache whether to read and write the binary cache.
+   * @param verbose whether to print the load time and throughput.
+   * @return the loaded QuerySet.
+   */
+  public static QuerySet create(String file, boolean useCache, boolean verbose){
+    File source = new File(file);
+    File cache = DatasetCache.getCacheFile(file);
+    try {
+      if (useCache && DatasetCache.isValid(source, cache)) {
+        long start = System.nanoTime();
+        QuerySet querySet = DatasetCache.read(cache);
+        if (verbose)
+          System.out.printf("Loaded %d documents from %s in %d ms.\n", querySet.getFeatureMatrix().getNumDocs(), cache,
+              (System.nanoTime() - start) / 1000000);
         return querySet;
       }
+      QuerySet querySet = new QuerySet();
+      LetorParser parser = new LetorParser();
+      try (InputStream is = new FileInputStream(source)) {
+        querySet.parseQueries(is, parser);
+      }
+      if (verbose)
+        System.out.printf("Loaded %d documents from %s in %d ms (%.0f lines/s, %.1f MB/s).\n", parser.getLines(), file,
+            parser.getElapsedNanos() / 1000000, parser.getLinesPerSecond(), parser.getMegabytesPerSecond());
+      if (useCache && !querySet.isSparse()) {
+        try {
+          DatasetCache.write(querySet.getFeatureMatrix(), source, parser.getChecksum(), cache);
+        }
+        catch (IOException e) {
+          System.err.printf("WARNING: Could not write dataset cache %s: %s\n", cache, e.getMessage());
+        }
+      }
+      return querySet;
     }
     catch (IOException e){
       throw new RuntimeException(e);
@@ -75,6 +115,29 @@ public class QuerySet {
     return queries;
   }
 
+  /**
+   * Returns the primitive storage of all documents in this set, building it if necessary.
+   * Once built, the documents of the queries are views onto the matrix; sparse documents become dense.
+   * @return the FeatureMatrix of this QuerySet.
+   */
+  public FeatureMatrix getFeatureMatrix() {
+    if (featureMatrix == null)
+      featureMatrix = FeatureMatrix.of(queries);
+    return featureMatrix;
+  }
+
+  /**
+   * @return true if the documents are stored sparsely, i.e. most of the parsed features were zero.
+   */
+  public boolean isSparse() {
+    return featureMatrix == null && !queries.isEmpty() && !queries.get(0).getDocList().isEmpty()
+        && queries.get(0).getDocList().get(0).isSparse();
+  }
+
+  void setFeatureMatrix(FeatureMatrix featureMatrix) {
+    this.featureMatrix = featureMatrix;
+  }
+
   public int getFeatureLength() {
     if (queries.isEmpty()) {
       System.err.println("No valid documents.");
@@ -93,20 +156,77 @@ public class QuerySet {
       if (!(line == null) && !line.equals(""))
         makeDocumentVector(line);
     }
+    compact();
+  }
+
+  /**
+   * Parses plain or gzip compressed data with a parallel {@link LetorParser}.
+   * @param is data to parse. The stream is not closed.
+   * @throws IOException if the stream cannot be read.
+   */
+  public void parseQueries(InputStream is) throws IOException {
+    parseQueries(is, new LetorParser());
+  }
+
+  public void parseQueries(InputStream is, LetorParser parser) throws IOException {
+    parser.parse(is, this);
+    compact();
+  }
+
+  /**
+   * Gives all documents the same number of features, and stores them in a {@link FeatureMatrix}
+   * unless most of their features are zero, in which case all documents are made sparse.
+   */
+  private void compact() {
+    int numFeatures = 0;
+    long numStored = 0;
+    long numDocs = 0;
+    for (Query query : queries) {
+      for (Document doc : query.getDocList()) {
+        numFeatures = Math.max(numFeatures, doc.getFeatureLength());
+        numStored += doc.getNumStored();
+        numDocs++;
+      }
+    }
+    if (numStored * 2 >= numDocs * numFeatures) {
+      featureMatrix = FeatureMatrix.of(queries);
+      return;
+    }
+    for (Query query : queries) {
+      for (Document doc : query.getDocList()) {
+        doc.toSparse();
+        doc.setFeatureLength(numFeatures);
+      }
+      query.setFeatureLength(numFeatures);
+    }
+    featureMatrix = null;
   }
 
   //  Dataset format: svmlight / libsvm format
   //  <label> <feature-id>:<feature-value>... #docid = <feature-value> inc = <feature-value> prob = <feature-value>
+  //  Feature ids start from 1. Features which are omitted are 0.
   private void makeDocumentVector(String line) {
     final String[] queryDocumentInfo = line.split("#docid")[0].split(" ");
     final int label = Integer.parseInt(queryDocumentInfo[0]);
     final int qid = Integer.parseInt(queryDocumentInfo[1].split(":")[1]); //queryid
-    Document document = new Document();
-    document.setLabel(label);
+    int[] ids = new int[queryDocumentInfo.length - 2];
+    double[] features = new double[queryDocumentInfo.length - 2];
     for (int i = 2; i < queryDocumentInfo.length; i++) {             //Parse the line for document features
-      double feature = Double.parseDouble(queryDocumentInfo[i].split(":")[1]);
-      document.addFeature(feature);
+      String[] idValue = queryDocumentInfo[i].split(":");
+      features[i - 2] = Double.parseDouble(idValue[1]);
+      ids[i - 2] = parseFeatureId(idValue[0]);
     }
+    addDocument(qid, Document.of(ids, features, features.length, label));
+  }
+
+  private static int parseFeatureId(String id) {
+    int featureId = Integer.parseInt(id);
+    if (featureId < 1)
+      throw new NumberFormatException("Feature ids must start from 1: " + id);
+    return featureId - 1;
+  }
+
+  void addDocument(int qid, Document document) {
     if (queryMap.containsKey(qid)) {
       Query query = queryMap.get(qid);
       query.addDocument(document);
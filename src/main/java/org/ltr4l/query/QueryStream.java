@@ -0,0 +1,286 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.query;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Queries of a LETOR formatted file (plain or gzip compressed), read from disk each time they are iterated,
+ * for datasets which do not fit in memory. Only one chunk of the file and the shuffle buffer are held in memory.
+ *
+ * Documents of a query must be on consecutive lines, as in the LETOR datasets.
+ * If a qid appears again later in the file, those documents are returned as another query.
+ */
+public class QueryStream implements Iterable<Query> {
+  private final String file;
+  private final int shuffleBufferSize;
+  private final int chunkSize;
+  private final Random random;
+  private int featureLength;
+
+  /**
+   * @param file LETOR formatted file.
+   * @param shuffleBufferSize number of queries held to shuffle the order of iteration. 0 or 1 keeps the file order.
+   * @param seed seed of the shuffling.
+   */
+  public QueryStream(String file, int shuffleBufferSize, long seed) {
+    this(file, shuffleBufferSize, seed, 1024 * 1024);
+  }
+
+  QueryStream(String file, int shuffleBufferSize, long seed, int chunkSize) {
+    if (shuffleBufferSize < 0) throw new IllegalArgumentException("shuffleBufferSize must not be negative.");
+    this.file = file;
+    this.shuffleBufferSize = shuffleBufferSize;
+    this.chunkSize = chunkSize;
+    this.random = new Random(seed);
+    featureLength = -1;
+  }
+
+  public QueryStream(String file) {
+    this(file, 0, 0L);
+  }
+
+  /**
+   * Returns the number of features of the documents, scanning the whole file on the first call.
+   */
+  public int getFeatureLength() {
+    if (featureLength < 0) {
+      int length = 0;
+      try (QueryReader reader = new QueryReader(0)) {
+        for (Query query = reader.read(); query != null; query = reader.read())
+          for (Document doc : query.getDocList())
+            length = Math.max(length, doc.getFeatureLength());
+      }
+      featureLength = length;
+    }
+    return featureLength;
+  }
+
+  /**
+   * Iterates the queries in file order, or in a locally shuffled order if a shuffle buffer is used.
+   * The file is closed when the iteration reaches the end.
+   */
+  @Override
+  public Iterator<Query> iterator() {
+    int length = getFeatureLength();
+    QueryReader reader = new QueryReader(length);
+    if (shuffleBufferSize <= 1)
+      return new QueryIterator(reader);
+    return new ShuffleIterator(reader);
+  }
+
+  /**
+   * Picks up to sampleSize queries uniformly from the whole file (reservoir sampling), e.g. for validation and
+   * loss calculation. The queries are returned in file order.
+   * @param sampleSize maximum number of queries to return.
+   * @return sampled queries, held in memory.
+   */
+  public List<Query> sample(int sampleSize) {
+    List<Query> reservoir = new ArrayList<>(sampleSize);
+    List<Long> positions = new ArrayList<>(sampleSize);
+    int length = 0;
+    long seen = 0;
+    try (QueryReader reader = new QueryReader(0)) {
+      for (Query query = reader.read(); query != null; query = reader.read(), seen++) {
+        for (Document doc : query.getDocList())
+          length = Math.max(length, doc.getFeatureLength());
+        if (reservoir.size() < sampleSize) {
+          reservoir.add(query);
+          positions.add(seen);
+        }
+        else {
+          long r = (long) (random.nextDouble() * (seen + 1));
+          if (r < sampleSize) {
+            reservoir.set((int) r, query);
+            positions.set((int) r, seen);
+          }
+        }
+      }
+    }
+    featureLength = length;
+    Integer[] order = new Integer[reservoir.size()];
+    for (int i = 0; i < order.length; i++) order[i] = i;
+    Arrays.sort(order, (a, b) -> Long.compare(positions.get(a), positions.get(b)));
+    List<Query> sample = new ArrayList<>(reservoir.size());
+    for (int i : order) {
+      Query query = reservoir.get(i);
+      pad(query, length);
+      sample.add(query);
+    }
+    return sample;
+  }
+
+  private static void pad(Query query, int length) {
+    for (Document doc : query.getDocList())
+      if (doc.getFeatureLength() < length) doc.setFeatureLength(length);
+    query.setFeatureLength(length);
+  }
+
+  /**
+   * Reads the queries of the file one by one.
+   */
+  private class QueryReader implements AutoCloseable {
+    private final int length;
+    private InputStream in;
+    private byte[] carry = new byte[0];
+    private int carryLength = 0;
+    private LetorParser.Chunk chunk;
+    private int chunkPos;
+    private boolean eof;
+
+    QueryReader(int length) {
+      this.length = length;
+      try {
+        in = LetorParser.decompressIfNeeded(new FileInputStream(file));
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * @return the next query, or null at the end of the file.
+     */
+    Query read() {
+      Query query = null;
+      int qid = 0;
+      while (true) {
+        if (chunk == null || chunkPos == chunk.size) {
+          if (!readChunk()) break;
+          continue;
+        }
+        if (query != null && chunk.qids[chunkPos] != qid) break;
+        if (query == null) {
+          query = new Query();
+          qid = chunk.qids[chunkPos];
+          query.setQueryId(qid);
+        }
+        query.addDocument(chunk.docs[chunkPos++]);
+      }
+      if (query != null && length > 0) pad(query, length);
+      return query;
+    }
+
+    private boolean readChunk() {
+      if (eof) return false;
+      try {
+        byte[] buf = new byte[Math.max(chunkSize, carryLength * 2)];
+        System.arraycopy(carry, 0, buf, 0, carryLength);
+        int filled = carryLength;
+        int end;
+        while (true) {
+          int n = LetorParser.fill(in, buf, filled);
+          if (n < 0) eof = true;
+          else filled += n;
+          end = eof ? filled : LetorParser.lastLineEnd(buf, filled);
+          if (end > 0 || eof) break;
+          buf = Arrays.copyOf(buf, buf.length * 2); //A single line is longer than the buffer.
+        }
+        carryLength = filled - end;
+        carry = Arrays.copyOfRange(buf, end, filled);
+        chunk = LetorParser.parseChunk(buf, end);
+        chunkPos = 0;
+        if (eof) close();
+        return true;
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (in == null) return;
+      try {
+        in.close();
+        in = null;
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private static class QueryIterator implements Iterator<Query> {
+    private final QueryReader reader;
+    private Query next;
+
+    QueryIterator(QueryReader reader) {
+      this.reader = reader;
+      next = reader.read();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Query next() {
+      if (next == null) throw new NoSuchElementException();
+      Query query = next;
+      next = reader.read();
+      return query;
+    }
+  }
+
+  /**
+   * Returns a random query of the buffer, and refills the buffer from the file.
+   */
+  private class ShuffleIterator implements Iterator<Query> {
+    private final QueryReader reader;
+    private final List<Query> buffer;
+
+    ShuffleIterator(QueryReader reader) {
+      this.reader = reader;
+      buffer = new ArrayList<>(shuffleBufferSize);
+      Query query;
+      while (buffer.size() < shuffleBufferSize && (query = reader.read()) != null)
+        buffer.add(query);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !buffer.isEmpty();
+    }
+
+    @Override
+    public Query next() {
+      if (buffer.isEmpty()) throw new NoSuchElementException();
+      int i = random.nextInt(buffer.size());
+      Query query = buffer.get(i);
+      Query replacement = reader.read();
+      if (replacement != null) {
+        buffer.set(i, replacement);
+      }
+      else {
+        buffer.set(i, buffer.get(buffer.size() - 1));
+        buffer.remove(buffer.size() - 1);
+      }
+      return query;
+    }
+  }
+}
@@ -18,6 +18,7 @@ package org.ltr4l.svm;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.ltr4l.Ranker;
 import org.ltr4l.query.Document;
+import org.ltr4l.query.Query;
 import org.ltr4l.tools.Config;
 import org.ltr4l.tools.Error;
 
@@ -33,6 +34,14 @@ public abstract class AbstractSVM<C extends AbstractSVM.SVMConfig> extends Ranke
 
   public abstract void optimize();
 
+  /**
+   * Optimizes the model for one epoch with the given queries.
+   * @throws UnsupportedOperationException if the model needs all training data in memory.
+   */
+  public void optimize(Iterable<Query> queries) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support streaming training data.");
+  }
+
   public static class SVMConfig extends Config {
     @JsonIgnore
     public String getSVMWeightInit(){
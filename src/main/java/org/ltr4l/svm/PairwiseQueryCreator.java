@@ -19,9 +19,7 @@ import org.ltr4l.query.Document;
 import org.ltr4l.query.Query;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import java.util.stream.Collectors;
 
 public class PairwiseQueryCreator {
@@ -33,31 +31,42 @@ public class PairwiseQueryCreator {
   }
 
   public static List<Query> createQueries(List<Query> origQueries){
-    Document[][][] pairs = origQueries.stream().map(q -> q.orderDocPairs()).toArray(Document[][][]::new);
-    //qid info lost in above; only index remains
+    //qid info is lost; only index remains
     List<Query> pwQueries = new ArrayList<>();
-    for (Document[][] origQuery : pairs){
-      if (origQuery == null)
-        continue;
-      Query nQuery = createQuery(origQuery);
-      pwQueries.add(nQuery);
+    for (Query origQuery : origQueries){
+      Query nQuery = createQuery(origQuery.getDocList());
+      if (nQuery != null)
+        pwQueries.add(nQuery);
     }
     return pwQueries;
   }
 
-  private static Query createQuery(Document[][] origQuery){
-    // Document[][] --> [pair#][0 or 1; which doc in pair]
-    Query query = new Query();
-    for (Document[] pair : origQuery){
-      assert(pair[0].getLabel() > pair[1].getLabel());
-      List<Double> feat0 = pair[0].getFeatures();
-      List<Double> feat1 = pair[1].getFeatures();
-      Document doc1 = new Document(VectorMath.diff(feat0, feat1), 1);
-      Document doc2 = new Document(VectorMath.diff(feat1, feat0), -1);
-      query.addDocument(doc1);
-      query.addDocument(doc2);
+  //Pairs are taken in the order of Query.orderDocPairs(), without materializing them.
+  //Returns null if all documents have the same label.
+  private static Query createQuery(List<Document> docs){
+    Query query = null;
+    for (int i = 0; i < docs.size(); i++){
+      Document docA = docs.get(i);
+      for (int k = i + 1; k < docs.size(); k++){
+        Document docB = docs.get(k);
+        if (docA.getLabel() == docB.getLabel())
+          continue;
+        Document higher = docA.getLabel() > docB.getLabel() ? docA : docB;
+        Document lower = higher == docA ? docB : docA;
+        if (query == null)
+          query = new Query();
+        query.addDocument(new Document(diff(higher, lower), 1));
+        query.addDocument(new Document(diff(lower, higher), -1));
+      }
     }
     return query;
   }
 
+  private static double[] diff(Document a, Document b){
+    double[] diff = a.toArray();
+    for (int i = 0; i < diff.length; i++)
+      diff[i] -= b.getFeature(i);
+    return diff;
+  }
+
 }
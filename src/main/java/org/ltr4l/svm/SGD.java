@@ -49,6 +49,44 @@ public class SGD extends Solver {
     return kernel.similarityK(features, weights, kParams.setC(bias));
   }
 
+  @Override
+  public double predict(Document doc) {
+    if (kernel != Kernel.Type.LINEAR && kernel != Kernel.Type.IDENTITY)
+      return predict(doc.getFeatures());
+    //Linear kernels only need the stored features of sparse documents.
+    double dotProd = 0;
+    for (int k = 0; k < doc.getNumStored(); k++)
+      dotProd += doc.getStoredValue(k) * weights.get(doc.getStoredIndex(k));
+    return kernel == Kernel.Type.LINEAR ? dotProd + bias : dotProd;
+  }
+
+  @Override
+  public double predict(double[] features) {
+    if (kernel != Kernel.Type.LINEAR && kernel != Kernel.Type.IDENTITY)
+      return super.predict(features);
+    double dotProd = 0;
+    for (int i = 0; i < features.length; i++)
+      dotProd += features[i] * weights.get(i);
+    return kernel == Kernel.Type.LINEAR ? dotProd + bias : dotProd;
+  }
+
+  //The weights followed by the bias.
+  @Override
+  public double[] copyParameters() {
+    double[] parameters = new double[weights.size() + 1];
+    for (int i = 0; i < weights.size(); i++)
+      parameters[i] = weights.get(i);
+    parameters[weights.size()] = bias;
+    return parameters;
+  }
+
+  @Override
+  public void restoreParameters(double[] parameters) {
+    for (int i = 0; i < weights.size(); i++)
+      weights.set(i, parameters[i]);
+    bias = parameters[weights.size()];
+  }
+
   @Override
   public void trainEpoch() {
     List<Document> data = new ArrayList<>(trainingData);
@@ -58,11 +96,34 @@ public class SGD extends Solver {
     updateWeights(lrRate);
   }
 
+  @Override
+  public void trainEpoch(Iterable<Query> queries) {
+    for (Query query : queries)
+      for (Document doc : query.getDocList())
+        iterate(doc);
+    updateWeights(lrRate);
+  }
+
   protected void iterate(Document doc) {
-    List<Double> features = doc.getFeatures();
-    double output = this.predict(features);
+    double output = this.predict(doc);
     double target = doc.getLabel();
-    iterate(features, output, target);
+    if (!doc.isSparse()) {
+      iterate(doc.getFeatures(), output, target);
+      return;
+    }
+    if (errorFunc.error(output, target) <= 0)
+      return;
+    double der = errorFunc.der(output, target);
+    if (der == 0d)
+      throw new IllegalArgumentException();
+    db += der;
+    for (int k = 0; k < doc.getNumStored(); k++) {  //Gradients of features which are not stored are 0.
+      int i = doc.getStoredIndex(k);
+      dw.set(i, dw.get(i) + der * doc.getStoredValue(k));
+    }
+    numTrained++;
+    if (batchSize != 0 && numTrained % batchSize == 0)
+      updateWeights(lrRate);
   }
 
   protected void iterate(List<Double> features, double output, double target){
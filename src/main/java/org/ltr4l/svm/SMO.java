@@ -71,6 +71,23 @@ public class SMO extends Solver {
     return output - bias;
   }
 
+  //The lagrange multipliers followed by the bias.
+  @Override
+  public double[] copyParameters() {
+    double[] parameters = new double[lagrangeMults.size() + 1];
+    for (int i = 0; i < lagrangeMults.size(); i++)
+      parameters[i] = lagrangeMults.get(i);
+    parameters[lagrangeMults.size()] = bias;
+    return parameters;
+  }
+
+  @Override
+  public void restoreParameters(double[] parameters) {
+    for (int i = 0; i < lagrangeMults.size(); i++)
+      lagrangeMults.set(i, parameters[i]);
+    bias = parameters[lagrangeMults.size()];
+  }
+
   @Override
   public void trainEpoch() {
     System.out.println("Beginning training... ");
@@ -41,9 +41,34 @@ public class SVM<C extends AbstractSVM.SVMConfig> extends AbstractSVM<C> {
     return solver.predict(features);
   }
 
+  @Override
+  public double predict(Document doc) {
+    return solver.predict(doc);
+  }
+
+  @Override
+  public double predict(double[] features) {
+    return solver.predict(features);
+  }
+
+  @Override
+  public double[] copyParameters() {
+    return solver.copyParameters();
+  }
+
+  @Override
+  public void restoreParameters(double[] parameters) {
+    solver.restoreParameters(parameters);
+  }
+
   @Override
   public void optimize(){
     solver.trainEpoch();
   }
 
+  @Override
+  public void optimize(Iterable<Query> queries){
+    solver.trainEpoch(queries);
+  }
+
 }
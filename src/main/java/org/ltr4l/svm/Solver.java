@@ -19,7 +19,9 @@ import org.ltr4l.query.Document;
 import org.ltr4l.query.Query;
 import org.ltr4l.tools.Error;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public abstract class Solver {
   protected int numTrained;
@@ -41,8 +43,31 @@ public abstract class Solver {
   }
 
   public abstract void trainEpoch();
+
+  /**
+   * Trains one epoch with the given queries instead of the training data held by the solver.
+   * @throws UnsupportedOperationException if the solver needs all training data in memory.
+   */
+  public void trainEpoch(Iterable<Query> queries) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support streaming training data.");
+  }
   public abstract double predict(List<Double> features);
 
+  public double predict(Document doc){
+    return predict(doc.getFeatures());
+  }
+
+  public double predict(double[] features){
+    return predict(Arrays.stream(features).boxed().collect(Collectors.toList()));
+  }
+
+  /**
+   * @return a copy of the parameters used for prediction.
+   */
+  public abstract double[] copyParameters();
+
+  public abstract void restoreParameters(double[] parameters);
+
   public static class Factory{
     public static Solver get(AbstractSVM.SVMConfig config, List<Query> trainingData) {
       Solver.Type type = config.getOptimizer();
@@ -0,0 +1,614 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary container of a model, which loads much faster than the JSON written by {@link org.ltr4l.Ranker#writeModel}.
+ * It holds the same content as the JSON, but arrays of numbers are stored as blocks of ints or doubles instead of text,
+ * so loading a model parses no numbers. Files are read through a memory mapping, and rankers such as
+ * {@link org.ltr4l.boosting.Ensemble} build their arrays from views of those blocks ({@link #getRoot()})
+ * instead of binding the model as JSON.
+ *
+ * All values are little-endian:
+ * <pre>
+ *   "LTRB", int version, string algorithm, int number of features (-1 if unknown),
+ *   int length of the payload, int CRC32 of the payload, payload
+ * </pre>
+ * The payload is the JSON model as one value: a tag byte, then for
+ * <ul>
+ *   <li>null, false, true: nothing</li>
+ *   <li>integer: long; number: double; string: int length, UTF-8 bytes</li>
+ *   <li>array: int byte length of the elements, int count, elements</li>
+ *   <li>object: int byte length of the fields, int count, then per field a string name and a value</li>
+ *   <li>int array: int count, ints; double array: int count, doubles</li>
+ * </ul>
+ * An array whose elements are all ints is an int array. An array of floating-point numbers, which may include
+ * the non-finite values Jackson writes as "NaN", "Infinity" and "-Infinity", is a double array. Other arrays,
+ * e.g. of longs or of both ints and doubles, are arrays of values, so that they read back as they were written.
+ */
+public class BinaryModel {
+  public static final int VERSION = 1;
+  private static final byte[] MAGIC = {'L', 'T', 'R', 'B'};
+
+  private static final byte NULL = 0;
+  private static final byte FALSE = 1;
+  private static final byte TRUE = 2;
+  private static final byte INTEGER = 3;
+  private static final byte NUMBER = 4;
+  private static final byte STRING = 5;
+  private static final byte ARRAY = 6;
+  private static final byte OBJECT = 7;
+  private static final byte INT_ARRAY = 8;
+  private static final byte DOUBLE_ARRAY = 9;
+
+  private final String algorithm;
+  private final int numFeatures;
+  private final ByteBuffer payload;  //little-endian, from position 0
+
+  private BinaryModel(String algorithm, int numFeatures, ByteBuffer payload){
+    this.algorithm = algorithm;
+    this.numFeatures = numFeatures;
+    this.payload = payload;
+  }
+
+  /**
+   * Converts a JSON model. The algorithm is taken from its config.
+   * @param numFeatures number of features the model reads, or -1 if unknown.
+   */
+  public static BinaryModel fromJson(Reader json, int numFeatures) throws IOException {
+    JsonNode model = new ObjectMapper().readTree(json);
+    String algorithm = model.path("config").path("algorithm").asText("");
+    Output out = new Output();
+    encode(model, out);
+    return new BinaryModel(algorithm, numFeatures, ByteBuffer.wrap(out.bytes, 0, out.size).slice().order(ByteOrder.LITTLE_ENDIAN));
+  }
+
+  /**
+   * @return whether the file starts like a binary model.
+   */
+  public static boolean isBinary(String file) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      byte[] head = new byte[MAGIC.length];
+      int n = 0;
+      while (n < head.length) {
+        int read = in.read(head, n, head.length - n);
+        if (read < 0) return false;
+        n += read;
+      }
+      return isBinary(head);
+    }
+  }
+
+  /**
+   * @param head at least the first bytes of a model file.
+   */
+  public static boolean isBinary(byte[] head){
+    return head.length >= MAGIC.length && Arrays.equals(Arrays.copyOf(head, MAGIC.length), MAGIC);
+  }
+
+  /**
+   * Reads a binary model file through a memory mapping.
+   */
+  public static BinaryModel read(String file) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Reads a binary model from the remaining bytes of buffer, e.g. a model which is already in memory.
+   * @throws IOException if the bytes are not a binary model of a supported version, or the checksum does not match.
+   */
+  public static BinaryModel read(ByteBuffer buffer) throws IOException {
+    ByteBuffer in = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    try {
+      byte[] magic = new byte[MAGIC.length];
+      in.get(magic);
+      if (!isBinary(magic))
+        throw new IOException("Not a binary model.");
+      int version = in.getInt();
+      if (version < 1 || version > VERSION)
+        throw new IOException("Unsupported binary model version: " + version);
+      String algorithm = readString(in);
+      int numFeatures = in.getInt();
+      int length = in.getInt();
+      int checksum = in.getInt();
+      if (length > in.remaining())
+        throw new IOException("Truncated binary model.");
+      ByteBuffer payload = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+      payload.limit(length);
+      if (crc(payload) != checksum)
+        throw new IOException("Checksum of the binary model does not match.");
+      return new BinaryModel(algorithm, numFeatures, payload);
+    }
+    catch (java.nio.BufferUnderflowException e) {
+      throw new IOException("Truncated binary model.", e);
+    }
+  }
+
+  private static int crc(ByteBuffer payload){
+    CRC32 crc = new CRC32();
+    crc.update(payload.duplicate());
+    return (int) crc.getValue();
+  }
+
+  public void write(String file) throws IOException {
+    Path path = Paths.get(file);
+    if (path.getParent() != null) Files.createDirectories(path.getParent());
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      write(out);
+    }
+  }
+
+  public void write(OutputStream out) throws IOException {
+    Output header = new Output();
+    header.putBytes(MAGIC);
+    header.putInt(VERSION);
+    header.putString(algorithm);
+    header.putInt(numFeatures);
+    header.putInt(payload.limit());
+    header.putInt(crc(payload));
+    out.write(header.bytes, 0, header.size);
+    byte[] bytes = new byte[payload.limit()];
+    payload.duplicate().get(bytes);
+    out.write(bytes);
+  }
+
+  /**
+   * Writes the model as JSON, in the format of {@link org.ltr4l.Ranker#writeModel}.
+   */
+  public void writeJson(Writer writer) throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.enable(SerializationFeature.INDENT_OUTPUT);
+    mapper.writeValue(writer, getModel());
+  }
+
+  public String getAlgorithm(){
+    return algorithm;
+  }
+
+  /**
+   * @return number of features the model reads, or -1 if unknown.
+   */
+  public int getNumFeatures(){
+    return numFeatures;
+  }
+
+  /**
+   * @return the model, as its JSON would be parsed.
+   */
+  public JsonNode getModel(){
+    return getRoot().toJson();
+  }
+
+  /**
+   * @return the model as a value which is read in place, without decoding the rest of the model.
+   */
+  public Value getRoot(){
+    return new Value(0);
+  }
+
+  /**
+   * Decodes only one field of the model, e.g. "config", skipping the others.
+   * @return the field, or null if the model has no such field.
+   */
+  public JsonNode getField(String name){
+    Value field = getRoot().get(name);
+    return field != null ? field.toJson() : null;
+  }
+
+  /**
+   * @return a Reader of the model as JSON, e.g. for the constructors of rankers which read a model.
+   * {@link #readValue(ObjectMapper, Reader, Class)} binds it without writing and parsing the JSON.
+   */
+  public Reader newReader(){
+    return new ModelReader(this);
+  }
+
+  /**
+   * @return the model of a reader of {@link #newReader()}, or null for other readers.
+   */
+  public static BinaryModel fromReader(Reader reader){
+    return reader instanceof ModelReader ? ((ModelReader) reader).model : null;
+  }
+
+  /**
+   * Binds a model read from reader. Readers of {@link #newReader()} are bound from the decoded model,
+   * others are parsed as JSON.
+   */
+  public static <T> T readValue(ObjectMapper mapper, Reader reader, Class<T> type) throws IOException {
+    if (reader instanceof ModelReader)
+      return mapper.treeToValue(((ModelReader) reader).model.getModel(), type);
+    return mapper.readValue(reader, type);
+  }
+
+  private static void encode(JsonNode node, Output out){
+    switch (node.getNodeType()) {
+      case NULL:
+      case MISSING:
+        out.put(NULL);
+        return;
+      case BOOLEAN:
+        out.put(node.booleanValue() ? TRUE : FALSE);
+        return;
+      case NUMBER:
+        if (node.isIntegralNumber() && node.canConvertToLong()) {
+          out.put(INTEGER);
+          out.putLong(node.longValue());
+        }
+        else {
+          out.put(NUMBER);
+          out.putDouble(node.doubleValue());
+        }
+        return;
+      case STRING:
+        out.put(STRING);
+        out.putString(node.textValue());
+        return;
+      case ARRAY:
+        encodeArray(node, out);
+        return;
+      case OBJECT:
+        out.put(OBJECT);
+        int start = out.reserveInt();
+        out.putInt(node.size());
+        for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+          Map.Entry<String, JsonNode> field = it.next();
+          out.putString(field.getKey());
+          encode(field.getValue(), out);
+        }
+        out.patchInt(start, out.size - start - 4);
+        return;
+      default:
+        throw new IllegalArgumentException("Cannot store " + node.getNodeType() + " in a binary model.");
+    }
+  }
+
+  private static void encodeArray(JsonNode array, Output out){
+    boolean ints = array.size() > 0;
+    boolean numbers = false;
+    boolean doubles = array.size() > 0;
+    for (JsonNode element : array) {
+      ints &= element.isInt();
+      numbers |= element.isNumber();
+      doubles &= element.isFloatingPointNumber() || isNonFinite(element);
+    }
+    if (ints) {
+      out.put(INT_ARRAY);
+      out.putInt(array.size());
+      for (JsonNode element : array)
+        out.putInt(element.intValue());
+    }
+    else if (doubles && numbers) {
+      out.put(DOUBLE_ARRAY);
+      out.putInt(array.size());
+      for (JsonNode element : array)
+        out.putDouble(element.isNumber() ? element.doubleValue() : Double.parseDouble(element.textValue()));
+    }
+    else {
+      out.put(ARRAY);
+      int start = out.reserveInt();
+      out.putInt(array.size());
+      for (JsonNode element : array)
+        encode(element, out);
+      out.patchInt(start, out.size - start - 4);
+    }
+  }
+
+  private static boolean isNonFinite(JsonNode node){
+    if (!node.isTextual()) return false;
+    String text = node.textValue();
+    return text.equals("NaN") || text.equals("Infinity") || text.equals("-Infinity");
+  }
+
+  private static JsonNode decode(ByteBuffer in){
+    JsonNodeFactory factory = JsonNodeFactory.instance;
+    byte tag = in.get();
+    switch (tag) {
+      case NULL:
+        return factory.nullNode();
+      case FALSE:
+        return factory.booleanNode(false);
+      case TRUE:
+        return factory.booleanNode(true);
+      case INTEGER:
+        long value = in.getLong();
+        return value == (int) value ? factory.numberNode((int) value) : factory.numberNode(value);
+      case NUMBER:
+        return factory.numberNode(in.getDouble());
+      case STRING:
+        return factory.textNode(readString(in));
+      case ARRAY: {
+        in.getInt();
+        int count = in.getInt();
+        ArrayNode array = factory.arrayNode(count);
+        for (int i = 0; i < count; i++)
+          array.add(decode(in));
+        return array;
+      }
+      case OBJECT: {
+        in.getInt();
+        int count = in.getInt();
+        ObjectNode object = factory.objectNode();
+        for (int i = 0; i < count; i++) {
+          String name = readString(in);
+          object.set(name, decode(in));
+        }
+        return object;
+      }
+      case INT_ARRAY: {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * values.length);
+        ArrayNode array = factory.arrayNode(values.length);
+        for (int v : values)
+          array.add(v);
+        return array;
+      }
+      case DOUBLE_ARRAY: {
+        double[] values = new double[in.getInt()];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + 8 * values.length);
+        ArrayNode array = factory.arrayNode(values.length);
+        for (double v : values)
+          array.add(v);
+        return array;
+      }
+      default:
+        throw new IllegalStateException("Unknown tag in binary model: " + tag);
+    }
+  }
+
+  private static void skip(ByteBuffer in){
+    byte tag = in.get();
+    switch (tag) {
+      case NULL:
+      case FALSE:
+      case TRUE:
+        return;
+      case INTEGER:
+      case NUMBER:
+        in.position(in.position() + 8);
+        return;
+      case STRING:
+      case ARRAY:
+      case OBJECT:
+        //The length of arrays and objects includes their count.
+        int length = in.getInt();
+        in.position(in.position() + length);
+        return;
+      case INT_ARRAY: {
+        int count = in.getInt();
+        in.position(in.position() + 4 * count);
+        return;
+      }
+      case DOUBLE_ARRAY: {
+        int count = in.getInt();
+        in.position(in.position() + 8 * count);
+        return;
+      }
+      default:
+        throw new IllegalStateException("Unknown tag in binary model: " + tag);
+    }
+  }
+
+  //Slices the next length bytes of in, and moves past them.
+  private static ByteBuffer slice(ByteBuffer in, int length){
+    ByteBuffer block = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+    block.limit(length);
+    in.position(in.position() + length);
+    return block;
+  }
+
+  private static String readString(ByteBuffer in){
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A value of the payload, which is read in place. Int and double arrays are returned as views of the payload,
+   * e.g. of the memory mapping of the file, so reading them copies and boxes nothing.
+   */
+  public class Value {
+    private final int position;  //of the tag
+
+    private Value(int position){
+      this.position = position;
+    }
+
+    private ByteBuffer open(){
+      ByteBuffer in = payload.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      in.position(position);
+      return in;
+    }
+
+    /**
+     * @return the field of an object, or null if this is not an object or it has no such field.
+     */
+    public Value get(String name){
+      ByteBuffer in = open();
+      if (in.get() != OBJECT) return null;
+      in.getInt();
+      int count = in.getInt();
+      for (int i = 0; i < count; i++) {
+        if (readString(in).equals(name))
+          return new Value(in.position());
+        skip(in);
+      }
+      return null;
+    }
+
+    /**
+     * @return the elements of an array of values, or null if this is not one, e.g. if it is an int or double array.
+     */
+    public List<Value> getElements(){
+      ByteBuffer in = open();
+      if (in.get() != ARRAY) return null;
+      in.getInt();
+      int count = in.getInt();
+      List<Value> elements = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        elements.add(new Value(in.position()));
+        skip(in);
+      }
+      return elements;
+    }
+
+    /**
+     * @return view of an int array, or null if this is not an int array.
+     */
+    public IntBuffer asInts(){
+      ByteBuffer in = open();
+      byte tag = in.get();
+      if (tag == ARRAY && isEmpty(in)) return IntBuffer.allocate(0);
+      if (tag != INT_ARRAY) return null;
+      int count = in.getInt();
+      return slice(in, 4 * count).asIntBuffer();
+    }
+
+    /**
+     * @return view of a double array, or null if this is not a double array.
+     */
+    public DoubleBuffer asDoubles(){
+      ByteBuffer in = open();
+      byte tag = in.get();
+      if (tag == ARRAY && isEmpty(in)) return DoubleBuffer.allocate(0);
+      if (tag != DOUBLE_ARRAY) return null;
+      int count = in.getInt();
+      return slice(in, 8 * count).asDoubleBuffer();
+    }
+
+    //Empty arrays are arrays of values.
+    private boolean isEmpty(ByteBuffer in){
+      in.getInt();
+      return in.getInt() == 0;
+    }
+
+    /**
+     * @return the value as its JSON would be parsed.
+     */
+    public JsonNode toJson(){
+      return decode(open());
+    }
+  }
+
+  //Growable little-endian byte array.
+  private static class Output {
+    private byte[] bytes = new byte[1024];
+    private int size;
+
+    private void ensure(int n){
+      if (size + n > bytes.length)
+        bytes = Arrays.copyOf(bytes, Math.max(size + n, 2 * bytes.length));
+    }
+
+    void put(byte b){
+      ensure(1);
+      bytes[size++] = b;
+    }
+
+    void putBytes(byte[] b){
+      ensure(b.length);
+      System.arraycopy(b, 0, bytes, size, b.length);
+      size += b.length;
+    }
+
+    void putInt(int v){
+      ensure(4);
+      patchInt(size, v);
+      size += 4;
+    }
+
+    //Leaves room for an int which is known later, and returns its position.
+    int reserveInt(){
+      putInt(0);
+      return size - 4;
+    }
+
+    void patchInt(int pos, int v){
+      for (int k = 0; k < 4; k++)
+        bytes[pos + k] = (byte) (v >>> (8 * k));
+    }
+
+    void putLong(long v){
+      ensure(8);
+      for (int k = 0; k < 8; k++)
+        bytes[size++] = (byte) (v >>> (8 * k));
+    }
+
+    void putDouble(double v){
+      putLong(Double.doubleToRawLongBits(v));
+    }
+
+    void putString(String s){
+      byte[] b = s.getBytes(StandardCharsets.UTF_8);
+      putInt(b.length);
+      putBytes(b);
+    }
+  }
+
+  //Reads the model as JSON text only if a consumer reads characters; readValue binds the decoded model instead.
+  private static class ModelReader extends Reader {
+    private final BinaryModel model;
+    private Reader json;
+
+    ModelReader(BinaryModel model){
+      this.model = model;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (json == null) {
+        StringWriter writer = new StringWriter();
+        model.writeJson(writer);
+        json = new StringReader(writer.toString());
+      }
+      return json.read(cbuf, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (json != null) json.close();
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package org.ltr4l.tools;
 
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.ltr4l.boosting.Ensemble;
 import org.ltr4l.boosting.RankBoost;
@@ -46,6 +47,8 @@ public class Config {
   public Config.Model model;
   public Config.Evaluation evaluation;
   public Config.Report report;
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public Config.EarlyStopping earlyStopping;
 
   public Config overrideBy(Config override){
     if(override != null){
@@ -59,6 +62,7 @@ public class Config {
       this.model = override.model;
       this.evaluation = override.evaluation;
       this.report = override.report;
+      this.earlyStopping = override.earlyStopping;
     }
 
     return this;
@@ -77,6 +81,18 @@ public class Config {
     public String training;
     public String validation;
     public String test;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Streaming streaming;
+  }
+
+  /**
+   * If set, training data is read from disk every epoch instead of being held in memory.
+   * Only a sample of the queries is held in memory, for loss calculation and validation.
+   */
+  public static class Streaming {
+    public int sampleSize = 1000;     //number of queries sampled from training and validation data.
+    public int shuffleBuffer = 1000;  //number of queries held to shuffle the training data.
+    public long seed = 0L;
   }
 
   public static class Model {
@@ -88,6 +104,8 @@ public class Config {
   public static class Evaluation {
     public String evaluator;
     public Map<String, Object> params;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public List<String> metrics;  //Additional measures to report, e.g. ["ndcg@1", "ndcg@5", "map"].
   }
 
   public static class Report {
@@ -95,6 +113,17 @@ public class Config {
     public String file;
   }
 
+  /**
+   * If set, training stops when the validation measure has not improved by more than minDelta for patience
+   * iterations, and the model of the best iteration is kept.
+   */
+  public static class EarlyStopping {
+    public int patience = 10;
+    public double minDelta = 0d;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String metric;  //e.g. "ndcg@5"; the evaluator at k of evaluation if not set.
+  }
+
   public static String getReqString(Map<String, Object> params, String name){
     Object obj = params.get(name);
     return Objects.requireNonNull(obj, name + " must be set in params!").toString();
@@ -43,21 +43,25 @@ public final class DataProcessor {
    * @return
    */
   public static HashMap<Integer, Double> calcVariances(List<Document> data){
-    assert(data.get(0).getFeatures().size() > 0);
+    assert(data.get(0).getFeatureLength() > 0);
     HashMap variance = new HashMap();
-    int featLength = data.get(0).getFeatures().size();
+    int featLength = data.get(0).getFeatureLength();
     for(int feature = 0; feature < featLength; feature++){
-      int i = feature; //For lambda
       double featAvg = getAvgOfFeature(data, feature);
-      double var = data.stream().mapToDouble(doc -> Math.pow(doc.getFeature(i) - featAvg, 2)).sum() / data.size();
-      variance.put(feature, var);
+      double var = 0d;
+      for(Document doc : data)
+        var += Math.pow(doc.getFeature(feature) - featAvg, 2);
+      variance.put(feature, var / data.size());
     }
     return variance;
   }
 
   public static double getAvgOfFeature(List<Document> data, int feature){
-    assert(feature < data.get(0).getFeatures().size());
-    return data.stream().mapToDouble(doc -> doc.getFeature(feature)).sum() / data.size();
+    assert(feature < data.get(0).getFeatureLength());
+    double sum = 0d;
+    for(Document doc : data)
+      sum += doc.getFeature(feature);
+    return sum / data.size();
   }
 
   public static List<Integer> orderSelectedFeatures(Map<Integer, Double> variance, double allowance) {
@@ -75,28 +79,30 @@ public final class DataProcessor {
 
   public static List<Document> scale(List<Document> data){
     double[][] featMinMax = getFeatureMinMax(data);
-    int featLength = data.get(0).getFeatures().size();
+    int featLength = data.get(0).getFeatureLength();
     for(Document doc : data){
-      List<Double> features = doc.getFeatures();
       for(int i = 0; i < featLength; i++){
-        double feature = features.get(i);
+        double feature = doc.getFeature(i);
         double min = featMinMax[i][0];
         double max = featMinMax[i][1];
         feature = (feature - min)/ (max - min);
-        features.set(i, feature);
+        doc.setFeature(i, feature);
       }
     }
     return data;
   }
 
   public static double[][] getFeatureMinMax(List<Document> data){
-    int featLength = data.get(0).getFeatures().size();
+    int featLength = data.get(0).getFeatureLength();
     double[][] featMinMax = new double[featLength][2];
     for(int feat = 0; feat < featLength; feat++){
-      int i = feat;
-      Set<Double> featureSet = data.stream().map(doc -> doc.getFeature(i)).collect(Collectors.toCollection(HashSet::new));
-      double min = Collections.min(featureSet);
-      double max = Collections.max(featureSet);
+      double min = data.get(0).getFeature(feat);
+      double max = min;
+      for(Document doc : data){
+        double feature = doc.getFeature(feat);
+        if(Double.compare(feature, min) < 0) min = feature;
+        if(Double.compare(feature, max) > 0) max = feature;
+      }
       featMinMax[feat] = new double[] {min, max};
     }
     return featMinMax;
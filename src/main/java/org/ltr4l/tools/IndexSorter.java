@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.tools;
+
+/**
+ * Sorts indices by primitive keys without boxing.
+ * The sort is a stable merge sort, so that elements with equal keys keep their original order;
+ * this matches the behavior of {@link java.util.List#sort} with a comparator, which the callers replace.
+ */
+public final class IndexSorter {
+
+  private IndexSorter(){}
+
+  /**
+   * Returns the indices of keys in ascending order of their values.
+   * @param keys values to sort by
+   * @return indices i such that keys[i] is ascending.
+   */
+  public static int[] argsort(double[] keys){
+    return argsort(keys, false);
+  }
+
+  /**
+   * Returns the indices of keys ordered by their values.
+   * @param keys values to sort by
+   * @param descending if true, the highest value is first.
+   * @return sorted indices.
+   */
+  public static int[] argsort(double[] keys, boolean descending){
+    int[] idx = new int[keys.length];
+    for (int i = 0; i < idx.length; i++) idx[i] = i;
+    sort(idx, 0, idx.length, keys, descending);
+    return idx;
+  }
+
+  /**
+   * Sorts idx[from, to) by keys[idx[i]], stably.
+   * @param idx indices to sort, in place.
+   * @param from first position (inclusive)
+   * @param to last position (exclusive)
+   * @param keys values to sort by
+   * @param descending if true, the highest value is first.
+   */
+  public static void sort(int[] idx, int from, int to, double[] keys, boolean descending){
+    if (to - from < 2) return;
+    int[] buffer = new int[to - from];
+    mergeSort(idx, from, to, keys, descending, buffer);
+  }
+
+  /**
+   * Selects the k highest keys with a bounded heap, in O(n log k).
+   * Ties are broken by index, so the first k positions are the same as in {@link #argsort(double[], boolean)} descending.
+   * @param keys values to select by
+   * @param k number of indices to order
+   * @return all indices; the first min(k, keys.length) are ordered from the highest key, the rest are in index order.
+   */
+  public static int[] selectTop(double[] keys, int k){
+    int n = keys.length;
+    if (k >= n) return argsort(keys, true);
+    if (k <= 0) return argsort(new double[n]);
+    int[] heap = new int[k];  //Min-heap: heap[0] is the worst of the selected indices.
+    for (int i = 0; i < k; i++) {
+      heap[i] = i;
+      siftUp(heap, i, keys);
+    }
+    for (int i = k; i < n; i++) {
+      if (isBetter(keys, i, heap[0])) {
+        heap[0] = i;
+        siftDown(heap, k, keys);
+      }
+    }
+    int[] result = new int[n];
+    boolean[] selected = new boolean[n];
+    for (int size = k; size > 0; size--) {  //Pop the worst first, filling from position k - 1.
+      result[size - 1] = heap[0];
+      selected[heap[0]] = true;
+      heap[0] = heap[size - 1];
+      siftDown(heap, size - 1, keys);
+    }
+    int pos = k;
+    for (int i = 0; i < n; i++)
+      if (!selected[i]) result[pos++] = i;
+    return result;
+  }
+
+  //Higher key first; for equal keys, the lower index first.
+  private static boolean isBetter(double[] keys, int a, int b){
+    int c = Double.compare(keys[a], keys[b]);
+    return c > 0 || (c == 0 && a < b);
+  }
+
+  private static void siftUp(int[] heap, int pos, double[] keys){
+    int node = heap[pos];
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      if (!isBetter(keys, heap[parent], node)) break;
+      heap[pos] = heap[parent];
+      pos = parent;
+    }
+    heap[pos] = node;
+  }
+
+  private static void siftDown(int[] heap, int size, double[] keys){
+    if (size == 0) return;
+    int node = heap[0];
+    int pos = 0;
+    while (true) {
+      int child = 2 * pos + 1;
+      if (child >= size) break;
+      if (child + 1 < size && isBetter(keys, heap[child], heap[child + 1])) child++;  //The worse child.
+      if (!isBetter(keys, node, heap[child])) break;
+      heap[pos] = heap[child];
+      pos = child;
+    }
+    heap[pos] = node;
+  }
+
+  private static void mergeSort(int[] idx, int from, int to, double[] keys, boolean descending, int[] buffer){
+    if (to - from <= 16) {
+      insertionSort(idx, from, to, keys, descending);
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    mergeSort(idx, from, mid, keys, descending, buffer);
+    mergeSort(idx, mid, to, keys, descending, buffer);
+    if (compare(keys, idx[mid - 1], idx[mid], descending) <= 0) return; //Already in order.
+    System.arraycopy(idx, from, buffer, 0, mid - from);
+    int i = 0;
+    int iEnd = mid - from;
+    int j = mid;
+    int k = from;
+    while (i < iEnd && j < to) {
+      if (compare(keys, idx[j], buffer[i], descending) < 0) idx[k++] = idx[j++];
+      else idx[k++] = buffer[i++];
+    }
+    while (i < iEnd) idx[k++] = buffer[i++];
+  }
+
+  private static void insertionSort(int[] idx, int from, int to, double[] keys, boolean descending){
+    for (int i = from + 1; i < to; i++) {
+      int current = idx[i];
+      int j = i - 1;
+      while (j >= from && compare(keys, idx[j], current, descending) > 0) {
+        idx[j + 1] = idx[j];
+        j--;
+      }
+      idx[j + 1] = current;
+    }
+  }
+
+  private static int compare(double[] keys, int a, int b, boolean descending){
+    return descending ? Double.compare(keys[b], keys[a]) : Double.compare(keys[a], keys[b]);
+  }
+}
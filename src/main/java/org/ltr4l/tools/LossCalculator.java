@@ -21,6 +21,15 @@ public interface LossCalculator<R extends Ranker> {
 
   public double calculateLoss(DataSet type, R ranker);
 
+  /**
+   * Same as {@link #calculateLoss(DataSet, Ranker)}, from scores the caller already has, e.g. kept by a boosting trainer.
+   * @param scores scores of the ranker as [query][doc], in the order of the queries of the data set and their doc lists.
+   * @throws UnsupportedOperationException if the loss does not depend on the scores alone.
+   */
+  public default double calculateLoss(DataSet type, double[][] scores) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot calculate the loss from scores.");
+  }
+
   public static enum DataSet{
     TRAINING,VALIDATION
   }
@@ -19,45 +19,83 @@ import org.ltr4l.Ranker;
 import org.ltr4l.boosting.RankBoost;
 import org.ltr4l.nn.RankNetMLP;
 import org.ltr4l.nn.SortNetMLP;
-import org.ltr4l.query.Document;
+import org.ltr4l.query.DocPairs;
 import org.ltr4l.query.Query;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 public abstract class PairwiseLossCalc<R extends Ranker> implements LossCalculator<R> {
-  protected final List<Document[][]> trainingPairs;
-  protected final List<Document[][]> validationPairs;
+  protected final List<DocPairs> trainingPairs;
+  protected final List<DocPairs> validationPairs;
 
   protected PairwiseLossCalc(List<Query> trainingSet, List<Query> validationSet){
-    trainingPairs = trainingSet.stream().map(query -> query.orderDocPairs()).collect(Collectors.toList());
-    validationPairs = validationSet.stream().map(query -> query.orderDocPairs()).collect(Collectors.toList());
+    trainingPairs = trainingSet.stream().map(Query::getDocPairs).collect(Collectors.toList());
+    validationPairs = validationSet.stream().map(Query::getDocPairs).collect(Collectors.toList());
   }
 
-  public List<Document[][]> getValidationPairs() {
+  public List<DocPairs> getValidationPairs() {
     return validationPairs;
   }
 
-  public List<Document[][]> getTrainingPairs() {
+  public List<DocPairs> getTrainingPairs() {
     return trainingPairs;
   }
 
-  @Override
-  public double calculateLoss(DataSet type, R ranker){
+  private List<DocPairs> getPairs(DataSet type){
     Objects.requireNonNull(type);
     switch (type){
       case TRAINING:
-        return calculateLoss(trainingPairs, ranker);
+        return trainingPairs;
       case VALIDATION:
-        return calculateLoss(validationPairs, ranker);
+        return validationPairs;
       default:
         throw new IllegalArgumentException();
     }
   }
 
-  protected abstract double calculateLoss(List<Document[][]> docPairs, R ranker);
+  @Override
+  public double calculateLoss(DataSet type, R ranker){
+    return calculateLoss(getPairs(type), ranker);
+  }
+
+  @Override
+  public double calculateLoss(DataSet type, double[][] scores){
+    List<DocPairs> docPairs = getPairs(type);
+    if (scores.length != docPairs.size())
+      throw new IllegalArgumentException("scores must have one array per query.");
+    return calculateLoss(docPairs, q -> inLabelOrder(docPairs.get(q), scores[q]));
+  }
+
+  protected abstract double calculateLoss(List<DocPairs> docPairs, R ranker);
+
+  /**
+   * Calculates the loss from the scores of each query, given in the label order of its pairs.
+   * @param labelOrderScores returns the scores of the q-th query of docPairs.
+   */
+  protected double calculateLoss(List<DocPairs> docPairs, IntFunction<double[]> labelOrderScores){
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot calculate the loss from scores.");
+  }
+
+  /**
+   * Scores each document of the query once, in the label order of pairs.
+   */
+  protected static double[] scoreInLabelOrder(DocPairs pairs, Ranker ranker){
+    double[] scores = new double[pairs.getNumDocs()];
+    for (int p = 0; p < scores.length; p++)
+      scores[p] = ranker.predict(pairs.getDocument(p));
+    return scores;
+  }
+
+  private static double[] inLabelOrder(DocPairs pairs, double[] queryScores){
+    double[] scores = new double[pairs.getNumDocs()];
+    for (int p = 0; p < scores.length; p++)
+      scores[p] = queryScores[pairs.getDocIndex(p)];
+    return scores;
+  }
 
   public static class RankNetLossCalc<R extends Ranker> extends PairwiseLossCalc<R> {
     private final Error errorFunc;
@@ -69,21 +107,28 @@ public abstract class PairwiseLossCalc<R extends Ranker> implements LossCalculat
     }
 
     @Override
-    protected double calculateLoss(List<Document[][]> docPairs, R ranker) {
+    protected double calculateLoss(List<DocPairs> docPairs, R ranker) {
+      return calculateLoss(docPairs, q -> scoreInLabelOrder(docPairs.get(q), ranker));
+    }
+
+    @Override
+    protected double calculateLoss(List<DocPairs> docPairs, IntFunction<double[]> labelOrderScores) {
       double loss = 0d;
       int processedQueryNum = 0;
-      for (Document[][] query : docPairs) {
-        if (query == null)
+      for (int i = 0; i < docPairs.size(); i++) {
+        DocPairs query = docPairs.get(i);
+        if (query.isEmpty())
           continue;
         processedQueryNum++;
+        double[] scores = labelOrderScores.apply(i);
         double queryLoss = 0d;
-        for (Document[] pair : query) {
-          double s1 = ranker.predict(pair[0].getFeatures());
-          double s2 = ranker.predict(pair[1].getFeatures());
-          double output = Math.pow(1 + Math.exp(s2 - s1), -1); //double output = Activation.Type.Sigmoid().output(s1 - s2);
-          queryLoss += errorFunc.error(output, 1d);
+        for (int p = 0; p < scores.length; p++) {
+          for (int q = query.getLowerStart(p); q < scores.length; q++) {
+            double output = Math.pow(1 + Math.exp(scores[q] - scores[p]), -1); //double output = Activation.Type.Sigmoid().output(s1 - s2);
+            queryLoss += errorFunc.error(output, 1d);
+          }
         }
-        loss += queryLoss / query.length;
+        loss += queryLoss / query.size();
       }
       return loss / processedQueryNum;
     }
@@ -100,21 +145,23 @@ public abstract class PairwiseLossCalc<R extends Ranker> implements LossCalculat
     }
 
     @Override
-    protected double calculateLoss(List<Document[][]> docPairs, SortNetMLP ranker) {
+    protected double calculateLoss(List<DocPairs> docPairs, SortNetMLP ranker) {
       double loss = 0d;
-      for (Document[][] pairs : docPairs) {
-        if (pairs == null)
+      for (DocPairs pairs : docPairs) {
+        if (pairs.isEmpty())
           continue;
         double queryLoss = 0d;
-        for (Document[] pair : pairs) {
-          List<Double> combinedFeatures = new ArrayList<>(pair[0].getFeatures());
-          combinedFeatures.addAll(pair[1].getFeatures());
-          ranker.forwardProp(combinedFeatures);
-          double[] outputs = ranker.getOutputs();
-          queryLoss += errorFunc.error(outputs[0], targets[0][0]);
-          queryLoss += errorFunc.error(outputs[1], targets[0][1]);
+        for (int p = 0; p < pairs.getNumDocs(); p++) {
+          for (int q = pairs.getLowerStart(p); q < pairs.getNumDocs(); q++) {
+            List<Double> combinedFeatures = new ArrayList<>(pairs.getDocument(p).getFeatures());
+            combinedFeatures.addAll(pairs.getDocument(q).getFeatures());
+            ranker.forwardProp(combinedFeatures);
+            double[] outputs = ranker.getOutputs();
+            queryLoss += errorFunc.error(outputs[0], targets[0][0]);
+            queryLoss += errorFunc.error(outputs[1], targets[0][1]);
+          }
         }
-        loss += queryLoss / (double) pairs.length;
+        loss += queryLoss / (double) pairs.size();
       }
       return loss / (double) docPairs.size();
     }
@@ -127,18 +174,24 @@ public abstract class PairwiseLossCalc<R extends Ranker> implements LossCalculat
     }
 
     @Override
-    protected double calculateLoss(List<Document[][]> docPairs, R ranker) {
+    protected double calculateLoss(List<DocPairs> docPairs, R ranker) {
+      return calculateLoss(docPairs, q -> scoreInLabelOrder(docPairs.get(q), ranker));
+    }
+
+    @Override
+    protected double calculateLoss(List<DocPairs> docPairs, IntFunction<double[]> labelOrderScores) {
       double loss = 0d;
-      int pairs = 0;
-      for(Document[][] query : docPairs){
-        if(query == null) continue; //Don't count unhelpful queries.
-        for(Document[] pair : query){
-          Document doc1 = pair[0]; //Note that docPairs are arranged so higher label is [0].
-          Document doc2 = pair[1];
-          double scoreDiff = ranker.predict(doc1.getFeatures()) - ranker.predict(doc2.getFeatures());
-          if(scoreDiff <= 0) loss++;
-          pairs++;
+      long pairs = 0;
+      for(int i = 0; i < docPairs.size(); i++){
+        DocPairs query = docPairs.get(i);
+        if(query.isEmpty()) continue; //Don't count unhelpful queries.
+        double[] scores = labelOrderScores.apply(i);
+        for(int p = 0; p < scores.length; p++){
+          for(int q = query.getLowerStart(p); q < scores.length; q++){ //p has the higher label.
+            if(scores[p] - scores[q] <= 0) loss++;
+          }
         }
+        pairs += query.size();
       }
       return loss / pairs;
     }
@@ -22,6 +22,7 @@ import org.ltr4l.query.Query;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.stream.IntStream;
 
 public abstract class PointwiseLossCalc<R extends Ranker> implements LossCalculator<R> {
   protected final List<Query> trainingSet;
@@ -32,21 +33,40 @@ public abstract class PointwiseLossCalc<R extends Ranker> implements LossCalcula
     this.validationSet = validationSet;
   }
 
-  @Override
-  public double calculateLoss(DataSet type, R ranker){
+  private List<Query> getQueries(DataSet type){
     Objects.requireNonNull(type);
     switch(type){
       case TRAINING:
-        return calculateLoss(trainingSet, ranker);
+        return trainingSet;
       case VALIDATION:
-        return calculateLoss(validationSet, ranker);
+        return validationSet;
       default:
         throw new IllegalArgumentException();
     }
   }
 
+  @Override
+  public double calculateLoss(DataSet type, R ranker){
+    return calculateLoss(getQueries(type), ranker);
+  }
+
+  @Override
+  public double calculateLoss(DataSet type, double[][] scores){
+    List<Query> queries = getQueries(type);
+    if (scores.length != queries.size())
+      throw new IllegalArgumentException("scores must have one array per query.");
+    return calculateLoss(queries, scores);
+  }
+
   protected abstract double calculateLoss(List<Query> queries, R ranker);
 
+  /**
+   * Calculates the loss from the scores of the documents, as [query][doc].
+   */
+  protected double calculateLoss(List<Query> queries, double[][] scores){
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot calculate the loss from scores.");
+  }
+
   public static class StandardPointLossCalc <R extends Ranker> extends PointwiseLossCalc<R> {
     protected final Error errorFunc;
 
@@ -60,7 +80,19 @@ public abstract class PointwiseLossCalc<R extends Ranker> implements LossCalcula
       double loss = 0d;
       for (Query query : queries) {
         List<Document> docList = query.getDocList();
-        loss += docList.stream().mapToDouble(doc -> errorFunc.error(ranker.predict(doc.getFeatures()), doc.getLabel())).sum() / docList.size();
+        loss += docList.stream().mapToDouble(doc -> errorFunc.error(ranker.predict(doc), doc.getLabel())).sum() / docList.size();
+      }
+      return loss / queries.size();
+    }
+
+    @Override
+    protected double calculateLoss(List<Query> queries, double[][] scores) {
+      double loss = 0d;
+      for (int q = 0; q < scores.length; q++) {
+        List<Document> docList = queries.get(q).getDocList();
+        double[] queryScores = scores[q];
+        loss += IntStream.range(0, docList.size())
+            .mapToDouble(d -> errorFunc.error(queryScores[d], docList.get(d).getLabel())).sum() / docList.size();
       }
       return loss / queries.size();
     }
@@ -87,5 +119,9 @@ public abstract class PointwiseLossCalc<R extends Ranker> implements LossCalcula
       return loss / queries.size();
     }
 
+    @Override
+    protected double calculateLoss(List<Query> queries, double[][] scores){
+      throw new UnsupportedOperationException("ListNetLossCalc cannot calculate the loss from scores.");
+    }
   }
 }
@@ -19,6 +19,9 @@ package org.ltr4l.tools;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class Report {
 
@@ -53,7 +56,18 @@ public class Report {
     file = getReportFile(config);
     verbose = config.verbose;
     ps = getReportPrintStream(file);
-    ps.println(",evaluation,tr_loss,va_loss");  // header for CSV file
+    StringBuilder header = new StringBuilder(",evaluation,tr_loss,va_loss");  // header for CSV file
+    for (String metric : getMetrics(config))
+      header.append(',').append(metric);
+    ps.println(header);
+  }
+
+  /**
+   * @return the additional measures set in evaluation.metrics of config, or an empty list.
+   */
+  public static List<String> getMetrics(Config config){
+    if (config.evaluation == null || config.evaluation.metrics == null) return Collections.emptyList();
+    return config.evaluation.metrics;
   }
 
   public void log(int iter, double eval, double tloss, double vloss){
@@ -62,6 +76,24 @@ public class Report {
     ps.printf("%d,%f,%f,%f\n", iter, eval, tloss, vloss);
   }
 
+  /**
+   * Same as {@link #log(int, double, double, double)}, followed by the values of evaluation.metrics.
+   */
+  public void log(int iter, double eval, double tloss, double vloss, double[] metrics){
+    if(verbose)
+      System.out.printf("%d tr_loss: %f va_loss: %f evaluation: %f %s\n", iter, tloss, vloss, eval, Arrays.toString(metrics));
+    ps.printf("%d,%f,%f,%f", iter, eval, tloss, vloss);
+    for (double metric : metrics)
+      ps.printf(",%f", metric);
+    ps.println();
+  }
+
+  public void log(String metric, double eval){
+    if(verbose)
+      System.out.printf("%s: %f\n", metric, eval);
+    ps.printf("%s,%f\n", metric, eval);
+  }
+
   public void log(double eval){
     if(verbose)
       System.out.printf("Evaluation score: %f\n", eval);
@@ -18,17 +18,24 @@ package org.ltr4l.trainers;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.ltr4l.Ranker;
 import org.ltr4l.boosting.Ensemble;
 import org.ltr4l.boosting.RankBoost;
+import org.ltr4l.boosting.ScoreCache;
 import org.ltr4l.evaluation.DCG;
+import org.ltr4l.evaluation.MetricSet;
 import org.ltr4l.evaluation.RankEval;
 import org.ltr4l.evaluation.RankEval.RankEvalFactory;
+import org.ltr4l.query.Document;
 import org.ltr4l.query.Query;
 import org.ltr4l.query.QuerySet;
+import org.ltr4l.query.QueryStream;
 import org.ltr4l.svm.AbstractSVM;
 import org.ltr4l.tools.Config;
 import org.ltr4l.tools.Error;
@@ -57,7 +64,17 @@ public abstract class AbstractTrainer<R extends Ranker, C extends Config> {
   protected final int evalK;
   protected final String modelFile;
   protected final RankEval eval;
+  protected final MetricSet metrics;  //The evaluator at evalK, evaluation.metrics of the config, then the early stopping metric.
+  private final int numReported;     //Measures of metrics written to the report.
+  protected final Config.EarlyStopping earlyStopping;  //null if training runs all iterations
+  protected final int stopMetric;    //Index in metrics of the measure early stopping watches.
+  private int bestIteration;
+  private double bestScore;
+  private double[] bestParameters;
   protected final  LossCalculator lossCalc;
+  protected QueryStream trainingStream;
+  protected ScoreCache trainingScores;    //null unless the trainer keeps the scores of its ranker
+  protected ScoreCache validationScores;
 
   AbstractTrainer(List<Query> training, List<Query> validation, C config, R ranker, Error errorFunc, LossCalculator lossCalc) {
     this.config = config;
@@ -72,6 +89,13 @@ public abstract class AbstractTrainer<R extends Ranker, C extends Config> {
     batchSize = config.batchSize;
     eval = getEvaluator(config);
     evalK = getEvaluatorAtK(config);
+    earlyStopping = config.earlyStopping;
+    if (earlyStopping != null && earlyStopping.patience < 1)
+      throw new IllegalArgumentException("earlyStopping.patience must be positive.");
+    List<String> names = getMetricNames(config, evalK);
+    numReported = names.size();
+    stopMetric = getStopMetric(earlyStopping, names);
+    metrics = new MetricSet(names);
     modelFile = getModelFile(config);
     report = Report.getReport(config);
   }
@@ -83,6 +107,29 @@ public abstract class AbstractTrainer<R extends Ranker, C extends Config> {
     return RankEvalFactory.get(evaluator);
   }
 
+  private static List<String> getMetricNames(Config config, int evalK){
+    List<String> names = new ArrayList<>();
+    if (config.evaluation == null || config.evaluation.evaluator == null || config.evaluation.evaluator.equals(""))
+      names.add("ndcg@" + evalK);
+    else
+      names.add(config.evaluation.evaluator + "@" + evalK);
+    names.addAll(Report.getMetrics(config));
+    return names;
+  }
+
+  //Adds the metric of earlyStopping to names if it is not evaluated already.
+  private static int getStopMetric(Config.EarlyStopping earlyStopping, List<String> names){
+    if (earlyStopping == null || earlyStopping.metric == null || earlyStopping.metric.isEmpty())
+      return 0;
+    String metric = MetricSet.of(earlyStopping.metric).getNames().get(0);
+    List<String> normalized = new MetricSet(names).getNames();
+    int index = normalized.indexOf(metric);
+    if (index >= 0)
+      return index;
+    names.add(metric);
+    return names.size() - 1;
+  }
+
   private static int getEvaluatorAtK(Config config){
     final int K_DEFAULT = 10;
     if(config.evaluation == null || config.evaluation.params == null) return K_DEFAULT;
@@ -103,17 +150,134 @@ public abstract class AbstractTrainer<R extends Ranker, C extends Config> {
     return ranker;
   }
 
+  /**
+   * Makes train() read the training queries from the stream every epoch, instead of the training set.
+   * The training set given to the constructor should then be a sample of the stream; it is still used
+   * to initialize the ranker and to calculate the training loss.
+   * @param trainingStream queries to train with.
+   * @throws UnsupportedOperationException if this trainer needs all training data in memory.
+   */
+  public void setTrainingStream(QueryStream trainingStream) {
+    if (!supportsStreaming())
+      throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support streaming training data.");
+    this.trainingStream = trainingStream;
+  }
+
+  protected boolean supportsStreaming() {
+    return false;
+  }
+
+  /**
+   * @return the queries to train with in this epoch; the training stream if set, otherwise the training set.
+   */
+  protected Iterable<Query> epochQueries() {
+    return trainingStream != null ? trainingStream : trainingSet;
+  }
+
+  /**
+   * Makes validation and loss calculation read the scores of the ranker from caches of the training and validation
+   * sets, instead of scoring every document with the whole ranker. The trainer must then call
+   * {@link #addLearnerScores} each time it adds a learner to the ranker.
+   * @param link function from the sum of the learners to the score of the ranker; null for the sum itself.
+   */
+  protected void cacheScores(DoubleUnaryOperator link) {
+    trainingScores = new ScoreCache(trainingSet, link);
+    validationScores = new ScoreCache(validationSet, link);
+  }
+
+  /**
+   * Adds the contribution of a learner which was just added to the ranker to the cached scores.
+   * @param pool documents are scored in parallel on pool, or sequentially if null.
+   */
+  protected void addLearnerScores(ToDoubleFunction<Document> learner, ForkJoinPool pool) {
+    trainingScores.add(learner, pool);
+    validationScores.add(learner, pool);
+  }
+
   public double[] calculateLoss() {
+    if (trainingScores != null)
+      return new double[]{lossCalc.calculateLoss(TRAINING, trainingScores.getScores()),
+          lossCalc.calculateLoss(VALIDATION, validationScores.getScores())};
     return new double[]{lossCalc.calculateLoss(TRAINING, ranker), lossCalc.calculateLoss(VALIDATION, ranker)};
   }
 
   public void validate(int iter, int pos) {
-    double newScore = eval.calculateAvgAllQueries(ranker, validationSet, pos);
+    if (pos != evalK) {
+      double newScore = eval.calculateAvgAllQueries(ranker, validationSet, pos);
+      maxScore = Math.max(maxScore, newScore);
+      double[] losses = calculateLoss();
+      report.log(iter, newScore, losses[0], losses[1]);
+      updateBest(iter, newScore);
+      return;
+    }
+    //All measures are calculated in one pass; the first is the evaluator.
+    double[] values = validationScores != null ? metrics.evaluate(validationSet, validationScores.getScores())
+        : metrics.evaluate(ranker, validationSet);
+    double newScore = values[0];
     if (newScore > maxScore) {
       maxScore = newScore;
     }
     double[] losses = calculateLoss();
-    report.log(iter, newScore, losses[0], losses[1]);
+    if (numReported == 1)
+      report.log(iter, newScore, losses[0], losses[1]);
+    else
+      report.log(iter, newScore, losses[0], losses[1], Arrays.copyOfRange(values, 1, numReported));
+    updateBest(iter, values[stopMetric]);
+  }
+
+  /**
+   * Records the validation score of an iteration for early stopping, and saves the model if it is the best so far.
+   * Does nothing if early stopping is not enabled.
+   */
+  protected void updateBest(int iter, double score) {
+    if (earlyStopping == null)
+      return;
+    if (bestIteration == 0 || score > bestScore + earlyStopping.minDelta) {
+      bestIteration = iter;
+      bestScore = score;
+      saveBestModel();
+    }
+  }
+
+  /**
+   * @return true if early stopping is enabled and the score has not improved for patience iterations up to iter.
+   */
+  protected boolean shouldStop(int iter) {
+    if (earlyStopping == null || bestIteration == 0 || iter - bestIteration < earlyStopping.patience)
+      return false;
+    System.out.printf("Validation has not improved for %d iterations. Stopping training early at iteration %d, keeping iteration %d.\n",
+        earlyStopping.patience, iter, bestIteration);
+    return true;
+  }
+
+  /**
+   * @return the iteration with the best validation score, or 0 if early stopping is not enabled.
+   */
+  public int getBestIteration() {
+    return bestIteration;
+  }
+
+  /**
+   * Saves the current model as the best one. Trainers whose ranker cannot copy its parameters override this
+   * together with {@link #restoreBestModel()}.
+   */
+  protected void saveBestModel() {
+    bestParameters = ranker.copyParameters();
+    if (bestParameters == null)
+      throw new UnsupportedOperationException(ranker.getClass().getSimpleName() + " does not support early stopping.");
+  }
+
+  /**
+   * Puts back the model saved by {@link #saveBestModel()}.
+   */
+  protected void restoreBestModel() {
+    ranker.restoreParameters(bestParameters);
+  }
+
+  //Called after the last iteration, before the model is written.
+  protected void finishTraining() {
+    if (earlyStopping != null && bestIteration > 0)
+      restoreBestModel();
   }
 
   public abstract void train();
@@ -122,7 +286,9 @@ public abstract class AbstractTrainer<R extends Ranker, C extends Config> {
     for (int i = 1; i <= epochNum; i++) {
       train();
       validate(i, evalK);
+      if (shouldStop(i)) break;
     }
+    finishTraining();
     report.close();
     try {
       if(!config.nomodel)
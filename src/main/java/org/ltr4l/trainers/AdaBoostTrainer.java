@@ -16,16 +16,21 @@
 package org.ltr4l.trainers;
 
 import org.ltr4l.boosting.*;
+import org.ltr4l.query.Document;
 import org.ltr4l.query.Query;
 import org.ltr4l.query.RankedDocs;
 import org.ltr4l.tools.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class AdaBoostTrainer extends AbstractTrainer<AdaBoost, RankBoost.RankBoostConfig> {
   private final ABDistribution ABDistribution;
   private final List<RankedDocs> rTrainingSet; //Contains doc lists sorted by label. Queries with no pairs of differing labels should be removed.
+  private final PresortedFeatures features; //Documents of rTrainingSet in order, sorted by each feature once.
+  private final ForkJoinPool pool; //Searches features in parallel; null if numThreads is 1.
+  private int bestNumLearners;
 
   public AdaBoostTrainer(List<Query> training, List<Query> validation, RankBoost.RankBoostConfig config, AdaBoost ranker){
     super(training,
@@ -42,6 +47,13 @@ public class AdaBoostTrainer extends AbstractTrainer<AdaBoost, RankBoost.RankBoo
       rTrainingSet.add(rDocs);
     }
     ABDistribution = new ABDistribution(rTrainingSet);
+    List<Document> docs = new ArrayList<>();
+    rTrainingSet.forEach(rd -> docs.addAll(rd.getRankedDocs()));
+    features = new PresortedFeatures(docs);
+    pool = TreeTools.getPool(config.getNumThreads());
+    cacheScores(Math::signum);
+    for (WeakLearner wl : ranker.getLearners())
+      addLearnerScores(doc -> (int) wl.predict(doc), pool);
   }
 
   public AdaBoostTrainer(List<Query> training, List<Query> validation, RankBoost.RankBoostConfig config){
@@ -50,11 +62,22 @@ public class AdaBoostTrainer extends AbstractTrainer<AdaBoost, RankBoost.RankBoo
 
   @Override
   public void train() {
-    WeakLearner wl = AdaWeakLearner.findWeakLearner(ABDistribution.getFullDist(), rTrainingSet, config.getNumSteps());
+    WeakLearner wl = AdaWeakLearner.findWeakLearner(ABDistribution.getFullDist(), features, config.getNumSteps(), pool);
     ranker.addLearner(wl);
+    addLearnerScores(doc -> (int) wl.predict(doc), pool);  //AdaBoost votes with the sign of the sum of the learners.
     ABDistribution.update(wl, rTrainingSet);
   }
 
+  @Override
+  protected void saveBestModel() {
+    bestNumLearners = ranker.getLearners().size();
+  }
+
+  @Override
+  protected void restoreBestModel() {
+    ranker.truncate(bestNumLearners);
+  }
+
   public static Class<RankBoost.RankBoostConfig> getCC(){
     return RankBoost.RankBoostConfig.class;
   }
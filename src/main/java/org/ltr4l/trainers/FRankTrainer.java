@@ -16,7 +16,6 @@
 
 package org.ltr4l.trainers;
 
-import java.util.HashMap;
 import java.util.List;
 
 import org.ltr4l.nn.Activation;
@@ -44,34 +43,38 @@ public class FRankTrainer extends RankNetTrainer {
     super(training, validation, config);
   }
 
+  @Override
+  protected boolean supportsStreaming() {
+    return false;
+  }
+
   @Override
   public void train() {
     int numTrained = 0;
     for (int iq = 0; iq < trainingSet.size(); iq++) {  //index query
-      if (trainingPairs.get(iq) == null)
+      if (trainingPairs.get(iq).isEmpty())
         continue; //if there are no valid pairs for the query, skip.
 
       Query query = trainingSet.get(iq);
       //int qsize = query.getDocList().size();
       //double[] lambdas = new double[qsize];
       //double[] ranks = new double[qsize];
-      HashMap<Document, Double> lambdas = new HashMap<>(); //lambdas
-      HashMap<Document, Double> ranks = new HashMap<>();   //Create map for documents ranks.
-      for (Document doc : query.getDocList()) {
-        lambdas.put(doc, 0d);
-        ranks.put(doc, ranker.forwardProp(doc));
-      }
+      List<Document> docs = query.getDocList();
+      double[] lambdas = new double[docs.size()]; //lambdas, indexed as docs
+      double[] ranks = new double[docs.size()];   //documents ranks
+      for (int i = 0; i < docs.size(); i++)
+        ranks[i] = ranker.forwardProp(docs.get(i));
 
-      for (Document[] pair : trainingPairs.get(iq)) {
-        double diff = ranks.get(pair[1]) - ranks.get(pair[0]);  //- (si - sj)
+      trainingPairs.get(iq).forEach((a, b) -> {
+        double diff = ranks[b] - ranks[a];  //- (si - sj)
         double lambda = Activation.Type.Sigmoid.output(diff);
-        lambdas.put(pair[0], lambdas.get(pair[0]) - lambda); //λ1 = λ1 - dλ
-        lambdas.put(pair[1], lambdas.get(pair[1]) + lambda); //λ2 = λ2 - dλ
-      }
+        lambdas[a] -= lambda; //λ1 = λ1 - dλ
+        lambdas[b] += lambda; //λ2 = λ2 - dλ
+      });
 
-      for (Document doc : query.getDocList()) {
-        ranker.forwardProp(doc);
-        ranker.backProp(lambdas.get(doc));
+      for (int i = 0; i < docs.size(); i++) {
+        ranker.forwardProp(docs.get(i));
+        ranker.backProp(lambdas[i]);
         numTrained++;
         if (batchSize != 0 && numTrained % batchSize == 0) ranker.updateWeights(lrRate, rgRate);
       }
@@ -18,12 +18,14 @@ package org.ltr4l.trainers;
 import org.ltr4l.boosting.*;
 import org.ltr4l.boosting.Split;
 import org.ltr4l.nn.Activation;
+import org.ltr4l.query.DocPairs;
 import org.ltr4l.query.Document;
 import org.ltr4l.query.Query;
 import org.ltr4l.tools.*;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.ltr4l.boosting.TreeTools.findMinLossFeat;
 
@@ -37,13 +39,21 @@ import static org.ltr4l.boosting.TreeTools.findMinLossFeat;
  */
 public class LambdaMartTrainer extends AbstractTrainer<Ensemble, Ensemble.TreeConfig> {
   private final List<Document> trainingDocs;
-  private final List<Document[][]> trainingPairs;
-  private final List<FeatureSortedDocs> featureSortedDocs;
+  private final List<DocPairs> trainingPairs;
+  private final FeatureBins featureBins;              //null in exact mode
+  private final PresortedFeatures presortedFeatures;  //null in histogram mode
+  private final RowPartition partition;
+  private final double[] targets;
+  private final FeatureHistogram rootHistogram;
+  private final ForkJoinPool pool; //Searches leaves and features in parallel; null if numThreads is 1.
+  private final TreeSampler sampler;  //null if every tree uses all rows and features
   private final double[][] thresholds;
   private final int numTrees;
   private final int numLeaves;
-  private final int numSteps;
+  private final int depth;  //of oblivious trees; 0 to grow leaf-wise trees
   private final double lrRate;
+  private int bestNumTrees;
+  private static final Activation SIGMOID = Activation.Type.Sigmoid;
 
   LambdaMartTrainer(List<Query> training, List<Query> validation, Ensemble.TreeConfig config, Ensemble ranker) {
     super(training, validation, config, ranker, StandardError.ENTROPY, new PairwiseLossCalc.RankNetLossCalc(training, validation, StandardError.ENTROPY));
@@ -52,31 +62,63 @@ public class LambdaMartTrainer extends AbstractTrainer<Ensemble, Ensemble.TreeCo
     numTrees = config.getNumTrees();
     numLeaves = config.getNumLeaves();
     lrRate = config.getLearningRate();
-    numSteps = config.getNumSteps();
+    depth = config.isOblivious() ? config.getDepth() : 0;
+    if (depth > 0 && config.isExactSplitSearch())
+      throw new IllegalArgumentException("Oblivious trees are only grown with splitSearch histogram.");
 
-    featureSortedDocs = new ArrayList<>();
+    pool = TreeTools.getPool(config.getNumThreads());
+    targets = new double[trainingDocs.size()];
+    for (int row = 0; row < targets.length; row++)
+      targets[row] = trainingDocs.get(row).getLabel();
+    int featLength = training.get(0).getFeatureLength();
     //{
     // {threshold, calculateScore}, //Feature 0
     // {threshold, calculateScore}, //Feature 1
     // ...
     //}
-    int featLength = training.get(0).getFeatureLength();
     thresholds = new double[featLength][2];
-    TreeTools treeTools = new RegressionTreeTools();
-    for (int feat = 0; feat < featLength; feat++) {
-      featureSortedDocs.add(FeatureSortedDocs.get(trainingDocs, feat));
-      thresholds[feat] = treeTools.findThreshold(featureSortedDocs.get(feat));
+    if (config.isExactSplitSearch()) {
+      //Every feature is sorted once; leaves are ranges of the sorted orders.
+      featureBins = null;
+      rootHistogram = null;
+      presortedFeatures = new PresortedFeatures(trainingDocs);
+      partition = presortedFeatures.newPartition();
+      for (int feat = 0; feat < featLength; feat++)
+        thresholds[feat] = presortedFeatures.findThreshold(feat, partition, 0, targets.length, targets);
     }
+    else {
+      //Features are quantized once; every split is then found from per-leaf histograms of the labels.
+      presortedFeatures = null;
+      featureBins = new FeatureBins(trainingDocs, config.getNumBins());
+      partition = RowPartition.of(trainingDocs);
+      rootHistogram = FeatureHistogram.build(featureBins, targets, partition.getOrder(0), 0, targets.length, pool);
+      for (int feat = 0; feat < featLength; feat++)
+        thresholds[feat] = rootHistogram.findThreshold(feat);
+    }
+    sampler = newSampler(trainingSet, featLength, config);
+    cacheScores(null);
+    for (RegressionTree tree : ranker.getTrees())
+      addLearnerScores(tree::predict, pool);
   }
 
   LambdaMartTrainer(List<Query> training, List<Query> validation, Ensemble.TreeConfig config){
     this(training, validation, config, new Ensemble());
   }
 
+  private static TreeSampler newSampler(List<Query> training, int featLength, Ensemble.TreeConfig config){
+    int[] queryStarts = new int[training.size() + 1];
+    for (int iq = 0; iq < training.size(); iq++)
+      queryStarts[iq + 1] = queryStarts[iq] + training.get(iq).getDocList().size();
+    TreeSampler sampler = new TreeSampler(queryStarts, featLength, config.getSubsample(), config.getQuerySubsample(),
+        config.getColsampleByTree(), config.getColsampleBySplit(), config.getSeed());
+    return sampler.samplesRows() || sampler.samplesFeatures() ? sampler : null;
+  }
+
   @Override
   public void trainAndValidate() {
     train();
     //validate(numTrees, evalK);
+    finishTraining();
     report.close();
     try {
       if(!config.nomodel)
@@ -88,74 +130,162 @@ public class LambdaMartTrainer extends AbstractTrainer<Ensemble, Ensemble.TreeCo
 
   @Override
   public void train() {
-    Map<Document, Double> pws = new HashMap<>();
     double minLoss = 0;
-    for(Document doc : trainingDocs) pws.put(doc,Math.pow(2, doc.getLabel()) - 1 );
-    //trainingDocs.forEach(doc -> pws.put(doc, pws.put(doc, Math.pow(2, doc.getLabel()) - 1)));
+    //Documents are identified by their row in trainingDocs, which lists the queries one after another.
+    int numQueries = trainingSet.size();
+    int[] queryStarts = new int[numQueries];
+    double[] idcgs = new double[numQueries];
+    int maxDocs = 0;
+    for (int iq = 0, start = 0; iq < numQueries; iq++) {
+      List<Document> docs = trainingSet.get(iq).getDocList();
+      queryStarts[iq] = start;
+      start += docs.size();
+      idcgs[iq] = LambdaRankTrainer.idcg(docs, docs.size());
+      maxDocs = Math.max(maxDocs, docs.size());
+    }
+    double[] pws = new double[trainingDocs.size()];
+    for (int row = 0; row < pws.length; row++)
+      pws[row] = Math.pow(2, trainingDocs.get(row).getLabel()) - 1;
+    double[] invLogs = new double[maxDocs];  //1 / log(rank + 2)
+    for (int i = 0; i < maxDocs; i++)
+      invLogs[i] = 1 / Math.log(i + 2);
 
-    HashMap<Document, Double> ranks = new HashMap<>(); //TODO: More efficient way?
-    HashMap<Document, Double> lambdas = new HashMap<>();
-    HashMap<Document, Double> logs = new HashMap<>();
-    HashMap<Document, Double> lambdaDers = new HashMap<>();
-    Activation sigmoid = Activation.Type.Sigmoid;
+    //Reused by every tree. Rows of queries without pairs stay 0, so they do not influence leaf scores.
+    double[] lambdas = new double[trainingDocs.size()];
+    double[] lambdaDers = new double[trainingDocs.size()];
+    double[] logs = new double[trainingDocs.size()];
 
     for (int t = 1; t <= numTrees; t++){
-      int minLossFeat = findMinLossFeat(thresholds, minLoss);
+      double[][] rootThresholds = thresholds;
+      double rootMinLoss = minLoss;
+      int numRows = targets.length;
+      FeatureHistogram treeHistogram = rootHistogram;
+      if (sampler != null) {
+        //The sampled rows are moved to the front of the partition, and the root is the best split of the sample.
+        sampler.nextTree();
+        partition.reset();
+        if (sampler.samplesRows())
+          numRows = partition.partition(0, targets.length, sampler::isInBag);
+        if (featureBins != null && numRows < targets.length)
+          treeHistogram = FeatureHistogram.build(featureBins, targets, partition.getOrder(0), 0, numRows, sampler.getTreeFeatures(), pool);
+        rootThresholds = findRootThresholds(sampler.getSplitFeatures(0), numRows, treeHistogram);
+        rootMinLoss = -1;
+      }
+      int minLossFeat = findMinLossFeat(rootThresholds, rootMinLoss);
       if(minLossFeat == -1){
         System.out.printf("Could not find valid feature with specified minimum loss. Stopping training early at tree %d \n", t);
         return;
       }
-      //First, calculate lambdas for this iteration.
-      for (int iq = 0; iq < trainingSet.size(); iq++) {
-        if (trainingPairs.get(iq) == null) //As we are skipping these, they must not influence leaf scores.
-          continue;
-
-        Query query = trainingSet.get(iq);
-        double N = LambdaRankTrainer.idcg(query.getDocList(), query.getDocList().size());
-        List<Document> sorted = ranker.sort(query);
-        for (int i = 0; i < sorted.size(); i++) {
-          Document doc = sorted.get(i);
-          ranks.put(doc, ranker.predict(doc.getFeatures()));
-          lambdas.put(doc, 0d);
-          lambdaDers.put(doc, 0d);
-          logs.put(doc, 1 / Math.log(i + 2));
-        }
+      //First, calculate lambdas for this iteration. Queries write disjoint rows, so they are processed in parallel.
+      TreeTools.forEach(pool, numQueries, iq -> computeLambdas(trainingPairs.get(iq), trainingScores.getScores(iq),
+          queryStarts[iq], idcgs[iq], pws, invLogs, logs, lambdas, lambdaDers));
 
-        for (Document[] pair : trainingPairs.get(iq)) {
-          double dNCG = (pws.get(pair[0]) - pws.get(pair[1])) * (logs.get(pair[0]) - logs.get(pair[1])) / N;
-          double diff = ranks.get(pair[1]) - ranks.get(pair[0]);  //- (si - sj) ; sigmoid has minus sign
-          double lambda = Math.abs(sigmoid.output(diff) * dNCG);
-          double lambdaDer = lambda * (1 - (lambda/dNCG));
-          lambdas.put(pair[0], lambdas.get(pair[0]) - lambda); //λ1 = λ1 - dλ
-          lambdas.put(pair[1], lambdas.get(pair[1]) + lambda); //λ2 = λ2 - dλ
-          lambdaDers.put(pair[0], lambdaDers.get(pair[0]) - lambdaDer);
-          lambdaDers.put(pair[1], lambdaDers.get(pair[1]) + lambdaDer);
-        }
-      }
       //Then create tree
-      double[] minThresholdLoss = thresholds[minLossFeat];
+      double[] minThresholdLoss = rootThresholds[minLossFeat];
       double minThreshold = minThresholdLoss[0];
       RegressionTree tree;
       try {
-        tree = new RegressionTree(numLeaves, minLossFeat, minThreshold, trainingDocs, numSteps);
+        if (depth > 0) {
+          if (sampler == null) partition.reset();
+          tree = ObliviousTree.grow(depth, featureBins, partition, numRows, targets, treeHistogram,
+              sampler == null ? null : sampler.getTreeFeatures(), sampler == null ? null : sampler::getSplitFeatures, pool);
+        }
+        else if (sampler != null && presortedFeatures != null)
+          tree = new RegressionTree(numLeaves, minLossFeat, minThreshold, presortedFeatures, partition, numRows, targets,
+              sampler::getSplitFeatures, pool);
+        else if (sampler != null)
+          tree = new RegressionTree(numLeaves, minLossFeat, minThreshold, featureBins, partition, numRows, targets, treeHistogram,
+              sampler.getTreeFeatures(), sampler::getSplitFeatures, pool);
+        else if (presortedFeatures != null)
+          tree = new RegressionTree(numLeaves, minLossFeat, minThreshold, presortedFeatures, partition, targets, pool);
+        else
+          tree = new RegressionTree(numLeaves, minLossFeat, minThreshold, featureBins, partition, targets, rootHistogram, pool);
       }
       catch (InvalidFeatureThresholdException ie) {
         System.out.printf("Valid tree could not be created. Stopping training early at tree %d \n", t - 1);
         return; //TODO: Implement solution to continue creating trees. For now, stop training.
       }
-      //RegressionTree tree = new RegressionTree(numLeaves, minLossFeat, minThreshold, trainingDocs);
       ranker.addTree(tree);
       minLoss = minThresholdLoss[1]; //For the next tree.
 
-      List<Split> terminalLeaves = tree.getTerminalLeaves();
-      //Assign lambdas as leaf scores
-      for(Split leaf : terminalLeaves){
-        double y = leaf.getScoredDocs().stream().filter(doc -> lambdas.containsKey(doc)).mapToDouble(doc -> lambdas.get(doc)).sum();
-        double w = leaf.getScoredDocs().stream().filter(doc -> lambdaDers.containsKey(doc)).mapToDouble(doc -> lambdaDers.get(doc)).sum();
-        //if(w == 0) w += 1e-8; //To avoid dividing by zero
-        leaf.setScore(lrRate * y / w);
+      //Assign lambdas as leaf scores (Newton step)
+      if (tree instanceof ObliviousTree) {
+        ObliviousTree oblivious = (ObliviousTree) tree;
+        for (int leaf = 0; leaf < oblivious.getNumLeaves(); leaf++)
+          oblivious.setLeafValue(leaf, newtonStep(oblivious.sumOverRows(leaf, lambdas), oblivious.sumOverRows(leaf, lambdaDers)));
       }
+      else {
+        for(Split leaf : tree.getTerminalLeaves()){
+          double y = leaf.sumOverRows(lambdas);
+          double w = leaf.sumOverRows(lambdaDers);
+          //if(w == 0) w += 1e-8; //To avoid dividing by zero
+          leaf.setScore(newtonStep(y, w));
+        }
+      }
+      tree.clearTrainingData();
+      addLearnerScores(tree::predict, pool);
       validate(t, evalK);
+      if (shouldStop(t)) return;
+    }
+  }
+
+  private double newtonStep(double y, double w) {
+    return w == 0 ? 0d : lrRate * y / w;  //w is 0 if no row of the leaf belongs to a query with pairs.
+  }
+
+  //{threshold, loss} of each feature for the root of a sampled tree; features which are not searched have an infinite loss.
+  private double[][] findRootThresholds(int[] features, int numRows, FeatureHistogram histogram) {
+    double[][] rootThresholds = new double[thresholds.length][];
+    Arrays.fill(rootThresholds, new double[]{Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY});
+    int numSearched = features == null ? thresholds.length : features.length;
+    TreeTools.forEach(pool, numSearched, i -> {
+      int feat = features == null ? i : features[i];
+      rootThresholds[feat] = presortedFeatures != null ? presortedFeatures.findThreshold(feat, partition, 0, numRows, targets)
+          : histogram.findThreshold(feat);
+    });
+    return rootThresholds;
+  }
+
+  @Override
+  protected void saveBestModel() {
+    bestNumTrees = ranker.getTrees().size();
+  }
+
+  @Override
+  protected void restoreBestModel() {
+    ranker.truncate(bestNumTrees);
+  }
+
+  //Overwrites the lambdas and their derivatives of the rows of one query, which start at queryStart.
+  //scores are the current scores of the documents of the query, kept by the score cache.
+  private void computeLambdas(DocPairs pairs, double[] scores, int queryStart, double N, double[] pws, double[] invLogs,
+                              double[] logs, double[] lambdas, double[] lambdaDers) {
+    if (pairs.isEmpty()) //As we are skipping these, they must not influence leaf scores.
+      return;
+    int numDocs = pairs.getNumDocs();
+    int[] sorted = IndexSorter.argsort(scores, true);
+    for (int i = 0; i < sorted.length; i++) {
+      int row = queryStart + sorted[i];
+      lambdas[row] = 0d;
+      lambdaDers[row] = 0d;
+      logs[row] = invLogs[i];
+    }
+
+    for (int p = 0; p < numDocs; p++) {
+      int a = pairs.getDocIndex(p);
+      int rowA = queryStart + a;
+      for (int q = pairs.getLowerStart(p); q < numDocs; q++) {
+        int b = pairs.getDocIndex(q);
+        int rowB = queryStart + b;
+        double dNCG = (pws[rowA] - pws[rowB]) * (logs[rowA] - logs[rowB]) / N;
+        double diff = scores[b] - scores[a];  //- (si - sj) ; sigmoid has minus sign
+        double lambda = Math.abs(SIGMOID.output(diff) * dNCG);
+        double lambdaDer = lambda * (1 - (lambda/dNCG));
+        lambdas[rowA] -= lambda; //λ1 = λ1 - dλ
+        lambdas[rowB] += lambda; //λ2 = λ2 - dλ
+        lambdaDers[rowA] -= lambdaDer;
+        lambdaDers[rowB] += lambdaDer;
+      }
     }
   }
 
@@ -18,13 +18,14 @@ package org.ltr4l.trainers;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 
 import org.ltr4l.nn.Activation;
 import org.ltr4l.nn.RankNetMLP;
+import org.ltr4l.query.DocPairs;
 import org.ltr4l.query.Document;
 import org.ltr4l.query.Query;
+import org.ltr4l.tools.IndexSorter;
 
 /**
  * LambdaRankTrainer trains the RankNetTrainer's network
@@ -48,47 +49,57 @@ public class LambdaRankTrainer extends RankNetTrainer {
   @Override
   public void train() {
     int numTrained = 0;
-    for (int iq = 0; iq < trainingSet.size(); iq++) {
-      if (trainingPairs.get(iq) == null)
-        continue;
-
-      Query query = trainingSet.get(iq);
-
-      HashMap<Document, Double> ranks = new HashMap<>();
-      HashMap<Document, Double> lambdas = new HashMap<>();
-      HashMap<Document, Double> pws = new HashMap<>();
-      HashMap<Document, Double> logs = new HashMap<>();
-      double N = idcg(query.getDocList(), query.getDocList().size());
-
-
-      List<Document> sorted = ranker.sort(query);
-
-      for (int i = 0; i < sorted.size(); i++) {
-        Document doc = sorted.get(i);
-        ranks.put(doc, ranker.forwardProp(doc));
-        lambdas.put(doc, 0d);
-        pws.put(doc, Math.pow(2, doc.getLabel()) - 1);
-        logs.put(doc, 1 / Math.log(i + 2));
-      }
-
-      for (Document[] pair : trainingPairs.get(iq)) {
-        double dNCG = (pws.get(pair[0]) - pws.get(pair[1])) * (logs.get(pair[0]) - logs.get(pair[1])) / N;
-        double diff = ranks.get(pair[1]) - ranks.get(pair[0]);  //- (si - sj)
-        double lambda = Math.abs(Activation.Type.Sigmoid.output(diff) * dNCG); //TODO: Make static method or class variable
-        lambdas.put(pair[0], lambdas.get(pair[0]) - lambda); //λ1 = λ1 - dλ
-        lambdas.put(pair[1], lambdas.get(pair[1]) + lambda); //λ2 = λ2 - dλ
+    if (trainingStream != null) {
+      for (Query query : trainingStream) {
+        DocPairs pairs = query.getDocPairs();
+        if (!pairs.isEmpty())
+          numTrained = trainQuery(query, pairs, numTrained);
       }
-
-      for (Document doc : query.getDocList()) {
-        ranker.forwardProp(doc);
-        ranker.backProp(lambdas.get(doc));
-        numTrained++;
-        if (batchSize != 0 && numTrained % batchSize == 0) ranker.updateWeights(lrRate, rgRate);
+    }
+    else {
+      for (int iq = 0; iq < trainingSet.size(); iq++) {
+        if (trainingPairs.get(iq).isEmpty())
+          continue;
+        numTrained = trainQuery(trainingSet.get(iq), trainingPairs.get(iq), numTrained);
       }
     }
     ranker.updateWeights(lrRate, rgRate); //Update at the end of the epoch, regardless of batchSize.
   }
 
+  private int trainQuery(Query query, DocPairs pairs, int numTrained) {
+    //Values of the documents, indexed as in the document list of the query.
+    List<Document> docs = query.getDocList();
+    int size = docs.size();
+    double N = idcg(docs, size);
+    double[] ranks = new double[size];
+    double[] pws = new double[size];
+    double[] logs = new double[size];
+    double[] lambdas = new double[size];
+    for (int i = 0; i < size; i++) {
+      ranks[i] = ranker.forwardProp(docs.get(i));
+      pws[i] = Math.pow(2, docs.get(i).getLabel()) - 1;
+    }
+    int[] sorted = IndexSorter.argsort(ranks, true);
+    for (int i = 0; i < size; i++)
+      logs[sorted[i]] = 1 / Math.log(i + 2);
+
+    pairs.forEach((a, b) -> {
+      double dNCG = (pws[a] - pws[b]) * (logs[a] - logs[b]) / N;
+      double diff = ranks[b] - ranks[a];  //- (si - sj)
+      double lambda = Math.abs(Activation.Type.Sigmoid.output(diff) * dNCG); //TODO: Make static method or class variable
+      lambdas[a] -= lambda; //λ1 = λ1 - dλ
+      lambdas[b] += lambda; //λ2 = λ2 - dλ
+    });
+
+    for (int i = 0; i < size; i++) {
+      ranker.forwardProp(docs.get(i));
+      ranker.backProp(lambdas[i]);
+      numTrained++;
+      if (batchSize != 0 && numTrained % batchSize == 0) ranker.updateWeights(lrRate, rgRate);
+    }
+    return numTrained;
+  }
+
   /**
    * This method returns the ideal DCG given a list of documents.
    * @param docList List of documents for which ideal DCG is desired.
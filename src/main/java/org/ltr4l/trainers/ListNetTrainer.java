@@ -52,9 +52,14 @@ public class ListNetTrainer extends MLPTrainer<ListNetMLP> {
     this(training, validation, config, new ListNetMLP(training.get(0).getFeatureLength(), config));
   }
 
+  @Override
+  protected boolean supportsStreaming() {
+    return true;
+  }
+
   @Override
   public void train() {
-    for (Query query : trainingSet) {
+    for (Query query : epochQueries()) {
       for (Document doc : query.getDocList()) {
         ranker.forwardProp(doc);
         ranker.backProp(doc.getLabel());
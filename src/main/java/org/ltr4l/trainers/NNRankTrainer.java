@@ -55,7 +55,7 @@ public class NNRankTrainer extends MLPTrainer<MLP> {
     int numTrained = 0;
     for (Query query : trainingSet) {
       for (Document doc : query.getDocList()) {
-        int output = (int) ranker.predict(doc.getFeatures());
+        int output = (int) ranker.predict(doc);
         int label = doc.getLabel();
         if (output != label) {
           ranker.backProp(errorFunc, targets[label]);
@@ -54,8 +54,19 @@ public class OAPBPMTrainer extends AbstractTrainer<OAPBPMTrainer.OAPBPMRank, OAP
       trainingDocList.addAll(query.getDocList());
   }
 
+  @Override
+  protected boolean supportsStreaming() {
+    return true;
+  }
+
   @Override
   public void train() {
+    if (trainingStream != null) {
+      for (Query query : trainingStream)
+        for (Document doc : query.getDocList())
+          ranker.updateWeights(doc);
+      return;
+    }
     for (Document doc : trainingDocList)
       ranker.updateWeights(doc);
   }
@@ -90,7 +101,7 @@ public class OAPBPMTrainer extends AbstractTrainer<OAPBPMTrainer.OAPBPMRank, OAP
       for (PRankTrainer.PRank prank : pRanks) {
         //Will or will not present document to the perceptron.
         if (bernoulli() == 1) {
-          double prediction = prank.predict(doc.getFeatures());
+          double prediction = prank.predict(doc);
           int label = doc.getLabel();
           if (label != prediction) { //if the prediction is wrong, update that perceptron's weights
             prank.updateWeights(doc);
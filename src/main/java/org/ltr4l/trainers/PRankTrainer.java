@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.IntStream;
@@ -28,6 +29,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import org.ltr4l.Ranker;
 import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
 import org.ltr4l.query.Query;
 import org.ltr4l.query.QuerySet;
 import org.ltr4l.tools.*;
@@ -59,8 +61,19 @@ public class PRankTrainer extends AbstractTrainer<PRankTrainer.PRank, Config> {
       trainingDocList.addAll(query.getDocList());
   }
 
+  @Override
+  protected boolean supportsStreaming() {
+    return true;
+  }
+
   @Override
   public void train() {
+    if (trainingStream != null) {
+      for (Query query : trainingStream)  //The stream shuffles the order of the queries.
+        for (Document doc : query.getDocList())
+          ranker.updateWeights(doc);
+      return;
+    }
     Collections.shuffle(trainingDocList);
     for (Document doc : trainingDocList)
       ranker.updateWeights(doc);
@@ -85,10 +98,28 @@ public class PRankTrainer extends AbstractTrainer<PRankTrainer.PRank, Config> {
       return weights;
     }
 
+    @Override
+    public int getNumFeatures() {
+      return weights == null ? -1 : weights.length;
+    }
+
     public double[] getThresholds() {
       return thresholds;
     }
 
+    @Override
+    public double[] copyParameters() {
+      double[] parameters = Arrays.copyOf(weights, weights.length + thresholds.length);
+      System.arraycopy(thresholds, 0, parameters, weights.length, thresholds.length);
+      return parameters;
+    }
+
+    @Override
+    public void restoreParameters(double[] parameters) {
+      System.arraycopy(parameters, 0, weights, 0, weights.length);
+      System.arraycopy(parameters, weights.length, thresholds, 0, thresholds.length);
+    }
+
     @Override
     public void writeModel(Config config, Writer writer) throws IOException {
       SavedModel savedModel = new SavedModel(config, weights, thresholds);
@@ -100,7 +131,7 @@ public class PRankTrainer extends AbstractTrainer<PRankTrainer.PRank, Config> {
     // TODO: use Factory...?
     public static PRank readModel(Reader reader) throws IOException {
       ObjectMapper mapper = new ObjectMapper();
-      SavedModel savedModel = mapper.readValue(reader, SavedModel.class);
+      SavedModel savedModel = BinaryModel.readValue(mapper, reader, SavedModel.class);
       // TODO: don't want to do that...
       PRank prank = new PRank(savedModel.weights.length, savedModel.thresholds.length);
       prank.weights = savedModel.weights;
@@ -109,8 +140,8 @@ public class PRankTrainer extends AbstractTrainer<PRankTrainer.PRank, Config> {
     }
 
     public void updateWeights(Document doc) {
-      double wx = predictRelScore(doc.getFeatures());
-      int output = (int) predict(doc.getFeatures());
+      double wx = predictRelScore(doc);
+      int output = (int) predict(doc);
       int label = doc.getLabel();
       if (output == label)//if output == label, do not update weights.
         return;
@@ -127,8 +158,8 @@ public class PRankTrainer extends AbstractTrainer<PRankTrainer.PRank, Config> {
           tau[r] = 0;
       }
       int T = IntStream.of(tau).sum();
-      for (int i = 0; i <= weights.length - 1; i++) {
-        weights[i] += T * doc.getFeature(i);
+      for (int k = 0; k < doc.getNumStored(); k++) {  //Features which are not stored are 0.
+        weights[doc.getStoredIndex(k)] += T * doc.getStoredValue(k);
       }
       for (int r = 0; r <= thresholds.length - 1; r++) {
         thresholds[r] -= tau[r];
@@ -136,9 +167,37 @@ public class PRankTrainer extends AbstractTrainer<PRankTrainer.PRank, Config> {
     }
 
 
+    @Override
+    public boolean isThreadSafe() {
+      return true;
+    }
+
     @Override
     public double predict(List<Double> features) {
-      double wx = predictRelScore(features);
+      return toRank(predictRelScore(features));
+    }
+
+    @Override
+    public double predict(Document doc) {
+      return toRank(predictRelScore(doc));
+    }
+
+    @Override
+    public double predict(double[] features) {
+      return toRank(predictRelScore(features, 0));
+    }
+
+    @Override
+    public double[] predictBatch(FeatureMatrix matrix) {
+      double[] scores = new double[matrix.getNumDocs()];
+      double[] rows = matrix.getRowMajor();
+      int numFeatures = matrix.getNumFeatures();
+      for (int d = 0; d < scores.length; d++)
+        scores[d] = toRank(predictRelScore(rows, d * numFeatures));
+      return scores;
+    }
+
+    private double toRank(double wx) {
       for (int i = 0; i < thresholds.length; i++) {
         double b = thresholds[i];
         if (wx < b)
@@ -155,6 +214,22 @@ public class PRankTrainer extends AbstractTrainer<PRankTrainer.PRank, Config> {
       return wx;
     }
 
+    private double predictRelScore(double[] features, int offset){
+      double wx = 0;
+      for (int i = 0; i < weights.length; i++){
+        wx += features[offset + i] * weights[i];
+      }
+      return wx;
+    }
+
+    private double predictRelScore(Document doc){
+      double wx = 0;
+      for (int k = 0; k < doc.getNumStored(); k++){
+        wx += doc.getStoredValue(k) * weights[doc.getStoredIndex(k)];
+      }
+      return wx;
+    }
+
     private static class SavedModel {
       public Config config;
       public double[] weights;
@@ -15,19 +15,26 @@
  */
 package org.ltr4l.trainers;
 
+import org.ltr4l.boosting.PresortedFeatures;
 import org.ltr4l.boosting.RBDistribution;
 import org.ltr4l.boosting.RankBoost;
+import org.ltr4l.boosting.TreeTools;
 import org.ltr4l.boosting.WeakLearner;
+import org.ltr4l.query.Document;
 import org.ltr4l.query.Query;
 import org.ltr4l.query.RankedDocs;
 import org.ltr4l.tools.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class RankBoostTrainer extends AbstractTrainer<RankBoost, RankBoost.RankBoostConfig>{
   private final RBDistribution distribution;
   private final List<RankedDocs> rTrainingSet; //Contains doc lists sorted by label. Queries with no pairs of differing labels should be removed.
+  private final PresortedFeatures features; //Documents of rTrainingSet in order, sorted by each feature once.
+  private final ForkJoinPool pool; //Searches features in parallel; null if numThreads is 1.
+  private int bestNumLearners;
 
   public RankBoostTrainer(List<Query> training, List<Query> validation, RankBoost.RankBoostConfig config, RankBoost ranker){
     super(training, validation, config, ranker, StandardError.ENTROPY, new PairwiseLossCalc.RankBoostLossCalc(training, validation));
@@ -39,6 +46,13 @@ public class RankBoostTrainer extends AbstractTrainer<RankBoost, RankBoost.RankB
       rTrainingSet.add(rDocs);
     }
     distribution = new RBDistribution(rTrainingSet);
+    List<Document> docs = new ArrayList<>();
+    rTrainingSet.forEach(rd -> docs.addAll(rd.getRankedDocs()));
+    features = new PresortedFeatures(docs);
+    pool = TreeTools.getPool(config.getNumThreads());
+    cacheScores(null);
+    for (WeakLearner wl : ranker.getLearners())
+      addLearnerScores(doc -> wl.getAlpha() * wl.predict(doc), pool);
   }
 
   public RankBoostTrainer(List<Query> training, List<Query> validation, RankBoost.RankBoostConfig config){
@@ -48,8 +62,20 @@ public class RankBoostTrainer extends AbstractTrainer<RankBoost, RankBoost.RankB
   @Override
   public void train() {
     //One iteration of training.
-    WeakLearner wl = WeakLearner.findWeakLearner(distribution, rTrainingSet, config.getNumSteps());
+    WeakLearner wl = WeakLearner.findWeakLearner(distribution, features, config.getNumSteps(), pool);
     ranker.addLearner(wl);
-    distribution.update(wl, rTrainingSet);
+    addLearnerScores(doc -> wl.getAlpha() * wl.predict(doc), pool);  //As RankBoost sums the learners.
+    distribution.update(wl, rTrainingSet, pool);
+  }
+
+  //Learners are only added, so the best model is a prefix of the learners.
+  @Override
+  protected void saveBestModel() {
+    bestNumLearners = ranker.getLearners().size();
+  }
+
+  @Override
+  protected void restoreBestModel() {
+    ranker.truncate(bestNumLearners);
   }
 }
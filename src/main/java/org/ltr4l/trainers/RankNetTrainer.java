@@ -26,6 +26,7 @@ import org.ltr4l.nn.Activation;
 import org.ltr4l.nn.NetworkShape;
 import org.ltr4l.nn.Optimizer;
 import org.ltr4l.nn.RankNetMLP;
+import org.ltr4l.query.DocPairs;
 import org.ltr4l.query.Document;
 import org.ltr4l.query.Query;
 import org.ltr4l.query.QuerySet;
@@ -42,7 +43,7 @@ import org.ltr4l.tools.Error;
  *
  */
 public class RankNetTrainer extends MLPTrainer<RankNetMLP> {
-  protected final List<Document[][]> trainingPairs;
+  protected final List<DocPairs> trainingPairs;
 
   RankNetTrainer(List<Query> training, List<Query> validation, MLPConfig config, RankNetMLP ranker) {
     super(training, validation, config, ranker, StandardError.ENTROPY, new PairwiseLossCalc.RankNetLossCalc<>(training, validation, StandardError.ENTROPY));
@@ -58,21 +59,42 @@ public class RankNetTrainer extends MLPTrainer<RankNetMLP> {
     );
   }
 
+  @Override
+  protected boolean supportsStreaming() {
+    return true;
+  }
+
   @Override
   public void train() {
-    double threshold = 0.5;
-    //Present all docs of randomly selected query
-    //For number of queries / 6 times.
     int numTrained = 0;
-    for (int i = 0; i < trainingPairs.size() / 6; i++) {
-      int iq = new Random().nextInt(trainingPairs.size());
-      if (trainingPairs.get(iq) == null)
-        //i--;  //Note: if all queries have null for document pairs, will loop infinitely.
-        continue;
+    if (trainingStream != null) {
+      //Present all pairs of every query; the stream shuffles the order of the queries.
+      for (Query query : trainingStream) {
+        DocPairs pairs = query.getDocPairs();
+        if (!pairs.isEmpty())
+          numTrained = trainPairs(pairs, numTrained);
+      }
+    }
+    else {
+      //Present all docs of randomly selected query
+      //For number of queries / 6 times.
+      for (int i = 0; i < trainingPairs.size() / 6; i++) {
+        int iq = new Random().nextInt(trainingPairs.size());
+        if (trainingPairs.get(iq).isEmpty())
+          //i--;  //Note: if all queries have null for document pairs, will loop infinitely.
+          continue;
+        numTrained = trainPairs(trainingPairs.get(iq), numTrained);
+      }
+    }
+    if (batchSize != 0) ranker.updateWeights(lrRate, rgRate); //Update at the end of the epoch, regardless of batchSize.
+  }
 
-      for (Document[] docPair : trainingPairs.get(iq)) { //for each document pair in query iq
-        Document docA = docPair[0];
-        Document docB = docPair[1];
+  private int trainPairs(DocPairs pairs, int numTrained) {
+    double threshold = 0.5;
+    for (int p = 0; p < pairs.getNumDocs(); p++) { //for each document pair in the query
+      Document docA = pairs.getDocument(p);
+      for (int q = pairs.getLowerStart(p); q < pairs.getNumDocs(); q++) {
+        Document docB = pairs.getDocument(q);
 
         double si = ranker.forwardProp(docA);
         double sj = ranker.forwardProp(docB);
@@ -87,11 +109,11 @@ public class RankNetTrainer extends MLPTrainer<RankNetMLP> {
           if(batchSize == 0) ranker.updateWeights(lrRate, rgRate);
         }
       }
-      if (batchSize != 0 && ((numTrained) % batchSize) == 0){
-        ranker.updateWeights(lrRate, rgRate);
-      }
     }
-    if (batchSize != 0) ranker.updateWeights(lrRate, rgRate); //Update at the end of the epoch, regardless of batchSize.
+    if (batchSize != 0 && ((numTrained) % batchSize) == 0){
+      ranker.updateWeights(lrRate, rgRate);
+    }
+    return numTrained;
   }
 }
 
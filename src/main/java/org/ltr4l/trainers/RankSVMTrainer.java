@@ -21,7 +21,9 @@ import org.ltr4l.tools.Error;
 import org.ltr4l.tools.LossCalculator;
 import org.ltr4l.tools.StandardError;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.StreamSupport;
 
 public class RankSVMTrainer extends AbstractTrainer<SVM, AbstractSVM.SVMConfig> {
   protected final List<Query> pwValidation;
@@ -53,11 +55,28 @@ public class RankSVMTrainer extends AbstractTrainer<SVM, AbstractSVM.SVMConfig>
     }
     double[] losses = new double[]{0d, 0d};
     report.log(iter, newScore, losses[0], losses[1]);
+    updateBest(iter, stopMetric == 0 ? newScore : metrics.evaluate(ranker, pwValidation)[stopMetric]);
+  }
+
+  @Override
+  protected boolean supportsStreaming() {
+    return config.getOptimizer() == Solver.Type.sgd;
   }
 
   @Override
   public void train() {
-    ranker.optimize();
+    if (trainingStream == null) {
+      ranker.optimize();
+      return;
+    }
+    if (config.dataIsSVMFormat()) {
+      ranker.optimize(trainingStream);
+      return;
+    }
+    //Pairwise queries are created for each query as it is read.
+    ranker.optimize(() -> StreamSupport.stream(trainingStream.spliterator(), false)
+        .flatMap(query -> PairwiseQueryCreator.createQueries(Collections.singletonList(query)).stream())
+        .iterator());
   }
 
 }
@@ -0,0 +1,110 @@
+package org.ltr4l.boosting;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+import org.ltr4l.query.Query;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class CompressedEnsembleTest {
+
+  private static void assertPredictions(Ensemble ensemble, CompressedEnsemble compressed, List<Document> docs, double delta) {
+    FeatureMatrix matrix = FeatureMatrix.of(Collections.singletonList(new Query(new ArrayList<>(docs))));
+    double[] batch = compressed.predictBatch(docs);
+    double[] matrixBatch = compressed.predictBatch(matrix);
+    for (int i = 0; i < docs.size(); i++) {
+      Document doc = docs.get(i);
+      double expected = ensemble.predict(doc);
+      double[] features = new double[doc.getFeatureLength()];
+      doc.copyFeatures(features, 0);
+      Assert.assertEquals(expected, compressed.predict(doc), delta);
+      Assert.assertEquals(compressed.predict(doc), compressed.predict(features), 0d);
+      Assert.assertEquals(compressed.predict(doc), compressed.predict(doc.getFeatures()), 0d);
+      Assert.assertEquals(compressed.predict(doc), batch[i], 0d);
+      Assert.assertEquals(compressed.predict(doc), matrixBatch[i], 0d);
+    }
+  }
+
+  @Test
+  public void testPredict() throws Exception {
+    Random random = new Random(0);
+    for (int numLeaves : new int[]{3, 7, 64}) {
+      Ensemble ensemble = new Ensemble();
+      QuickScorerTest.randomTrees(random, 30, numLeaves, 5).forEach(ensemble::addTree);
+      List<Document> docs = TreeToolsTest.randomDocs(random, 100, 5);
+      docs.add(new Document(new double[]{Double.NaN, -0d, 0d, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY}, 0));
+
+      //Thresholds are exact, so scores only differ by the rounding of leaf values.
+      assertPredictions(ensemble, new CompressedEnsemble(ensemble.getTrees(), "float", 0d), docs, 1e-5);
+      double maxLeaf = 0d;
+      for (RegressionTree tree : ensemble.getTrees())
+        for (Split leaf : tree.getTerminalLeaves())
+          maxLeaf = Math.max(maxLeaf, Math.abs(leaf.getScore()));
+      assertPredictions(ensemble, new CompressedEnsemble(ensemble.getTrees(), "short", 0d), docs, 30 * maxLeaf / Short.MAX_VALUE);
+    }
+  }
+
+  @Test
+  public void testDeduplication() throws Exception {
+    Ensemble ensemble = new Ensemble(new StringReader(EnsembleTest.MODEL_SRC));
+    List<RegressionTree> trees = new ArrayList<>(ensemble.getTrees());
+    trees.addAll(ensemble.getTrees());
+    Ensemble.TreeConfig config = new ObjectMapper().readValue(new StringReader(EnsembleTest.CONFIG_SRC), Ensemble.TreeConfig.class);
+    CompressedEnsemble single = new CompressedEnsemble(ensemble, config);
+    CompressedEnsemble doubled = new CompressedEnsemble(trees, "float", 0d);
+
+    Assert.assertEquals(6, doubled.getNumTrees());
+    Assert.assertEquals(single.getNumNodes(), doubled.getNumNodes());
+    Assert.assertEquals(single.getNumLeaves(), doubled.getNumLeaves());
+    Assert.assertTrue(single.getFootprint() < new FlatEnsemble(ensemble).getFootprint());
+    double[] features = {0.5, 0.7, 0.2};
+    Assert.assertEquals(2 * single.predict(features), doubled.predict(features), 1e-12);
+  }
+
+  @Test
+  public void testPrune() throws Exception {
+    Random random = new Random(1);
+    Ensemble ensemble = new Ensemble();
+    List<RegressionTree> trees = QuickScorerTest.randomTrees(random, 10, 7, 5);
+    for (RegressionTree tree : trees.subList(0, 4))
+      for (Split leaf : tree.getTerminalLeaves())
+        leaf.setScore(leaf.getScore() * 1e-6);
+    trees.forEach(ensemble::addTree);
+
+    CompressedEnsemble compressed = new CompressedEnsemble(trees, "float", 1e-4);
+    Assert.assertEquals(6, compressed.getNumTrees());
+    Assert.assertEquals(4, compressed.getNumPrunedTrees());
+    assertPredictions(ensemble, compressed, TreeToolsTest.randomDocs(random, 50, 5), 4 * 1e-4 + 1e-5);
+  }
+
+  @Test
+  public void testWriteModel() throws Exception {
+    Random random = new Random(2);
+    Ensemble ensemble = new Ensemble();
+    QuickScorerTest.randomTrees(random, 20, 7, 5).forEach(ensemble::addTree);
+    CompressedEnsemble compressed = new CompressedEnsemble(ensemble.getTrees(), "float", 0d);
+
+    Ensemble.TreeConfig config = new ObjectMapper().readValue(new StringReader(EnsembleTest.CONFIG_SRC), Ensemble.TreeConfig.class);
+    config.params.put("scorer", "compressed");
+    StringWriter writer = new StringWriter();
+    compressed.writeModel(config, writer);
+    Ranker read = Ranker.RankerFactory.getFromModel(new StringReader(writer.toString()));
+    Assert.assertTrue(read instanceof CompressedEnsemble);
+    for (Document doc : TreeToolsTest.randomDocs(random, 50, 5))
+      Assert.assertEquals(compressed.predict(doc), read.predict(doc), 0d);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidLeafPrecision() throws Exception {
+    new CompressedEnsemble(new Ensemble(new StringReader(EnsembleTest.MODEL_SRC)).getTrees(), "half", 0d);
+  }
+}
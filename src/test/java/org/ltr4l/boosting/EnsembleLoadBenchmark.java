@@ -0,0 +1,64 @@
+package org.ltr4l.boosting;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the time to load a large {@link Ensemble} from its JSON model and from its binary model with
+ * {@link Ranker.RankerFactory#getFromModelFile(String, boolean)}, and checks that both score the same.
+ * The build only compiles *Test classes, so compile this one against the test classes and run
+ * e.g. java -cp ... org.ltr4l.boosting.EnsembleLoadBenchmark [numTrees] [numLeaves] [rounds]
+ */
+public class EnsembleLoadBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int numTrees = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int numLeaves = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    int numFeatures = 100;
+    Random random = new Random(0);
+    Ensemble ensemble = new Ensemble();
+    QuickScorerTest.randomTrees(random, numTrees, numLeaves, numFeatures).forEach(ensemble::addTree);
+    Ensemble.TreeConfig config = new ObjectMapper().readValue(new StringReader(EnsembleTest.CONFIG_SRC), Ensemble.TreeConfig.class);
+
+    File json = File.createTempFile("ensemble", ".json");
+    File binary = File.createTempFile("ensemble", ".bin");
+    try {
+      try (Writer writer = new FileWriter(json)) {
+        ensemble.writeModel(config, writer);
+      }
+      ensemble.writeBinaryModel(config, binary.getPath());
+      List<Document> docs = TreeToolsTest.randomDocs(random, 100, numFeatures);
+      double[] expected = ensemble.predictBatch(docs);
+
+      System.out.println("format,size(bytes),first(ms),best(ms)");
+      for (File file : new File[]{json, binary}) {
+        long first = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round <= rounds; round++) {
+          long start = System.nanoTime();
+          Ranker ranker = Ranker.RankerFactory.getFromModelFile(file.getPath(), false);
+          long elapsed = System.nanoTime() - start;
+          if (!Arrays.equals(expected, ranker.predictBatch(docs)))
+            throw new IllegalStateException("The model loaded from " + file + " scores differently.");
+          if (round == 0) first = elapsed;
+          else best = Math.min(best, elapsed);
+        }
+        System.out.printf("%s,%d,%.1f,%.1f%n", file == json ? "json" : "binary", file.length(), first / 1e6, best / 1e6);
+      }
+    }
+    finally {
+      json.delete();
+      binary.delete();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package org.ltr4l.boosting;
+
+import org.ltr4l.Ranker;
+import org.ltr4l.compiler.ModelCompiler;
+import org.ltr4l.query.Document;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the time to score documents with {@link Ensemble}, {@link FlatEnsemble}, {@link QuickScorer} and
+ * a class compiled by {@link ModelCompiler} for several sizes of ensembles. The build only compiles *Test classes,
+ * so compile this one against the test classes and run
+ * e.g. java -cp ... org.ltr4l.boosting.EnsembleScorerBenchmark [numDocs] [numFeatures] [rounds]
+ * Compiled classes of large ensembles need tens of thousands of documents before the JIT has compiled them all.
+ */
+public class EnsembleScorerBenchmark {
+  private static final int[] NUM_TREES = {100, 500, 1000, 2000};
+  private static final int[] NUM_LEAVES = {8, 32, 64};
+
+  public static void main(String[] args) {
+    int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int numFeatures = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+    Random random = new Random(0);
+    List<Document> docs = TreeToolsTest.randomDocs(random, numDocs, numFeatures);
+
+    System.out.println("trees,leaves,Ensemble(us/doc),FlatEnsemble(us/doc),QuickScorer(us/doc),Compiled(us/doc)");
+    for (int numTrees : NUM_TREES) {
+      for (int numLeaves : NUM_LEAVES) {
+        Ensemble ensemble = new Ensemble();
+        QuickScorerTest.randomTrees(random, numTrees, numLeaves, numFeatures).forEach(ensemble::addTree);
+        FlatEnsemble flat = new FlatEnsemble(ensemble);
+        QuickScorer quickScorer = new QuickScorer(ensemble);
+        Ranker compiled = ModelCompiler.compile(flat);
+        double[] expected = ensemble.predictBatch(docs);
+        System.out.printf("%d,%d,%.3f,%.3f,%.3f,%.3f%n", numTrees, numLeaves, time(ensemble, docs, expected, rounds),
+            time(flat, docs, expected, rounds), time(quickScorer, docs, expected, rounds), time(compiled, docs, expected, rounds));
+      }
+    }
+  }
+
+  //Returns the best time of the rounds in microseconds per document, after a warm-up round.
+  private static double time(Ranker ranker, List<Document> docs, double[] expected, int rounds) {
+    long best = Long.MAX_VALUE;
+    for (int round = 0; round <= rounds; round++) {
+      long start = System.nanoTime();
+      double[] scores = new double[docs.size()];
+      for (int i = 0; i < scores.length; i++)
+        scores[i] = ranker.predict(docs.get(i));  //One document at a time, as a reranker does.
+      long elapsed = System.nanoTime() - start;
+      for (int i = 0; i < scores.length; i++)
+        if (scores[i] != expected[i])
+          throw new IllegalStateException(ranker.getClass().getSimpleName() + " scored document " + i + " differently.");
+      if (round > 0) best = Math.min(best, elapsed);
+    }
+    return best / 1000d / docs.size();
+  }
+}
@@ -4,16 +4,22 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.ltr4l.Ranker;
 import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+import org.ltr4l.query.Query;
+import org.ltr4l.tools.BinaryModel;
 
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 public class EnsembleTest {
-  private static final String MODEL_SRC = "{\n" +
+  static final String MODEL_SRC = "{\n" +
       "  \"config\" : {\n" +
       "    \"algorithm\" : \"LambdaMart\",\n" +
       "    \"numIterations\" : 100,\n" +
@@ -72,7 +78,7 @@ public class EnsembleTest {
       "  } ]\n" +
       "}";
 
-  private static final String CONFIG_SRC = "{\n" +
+  static final String CONFIG_SRC = "{\n" +
       "  \"algorithm\" : \"LambdaMart\",\n" +
       "  \"numIterations\" : 100,\n" +
       "  \"verbose\": true,\n" +
@@ -167,6 +173,63 @@ public class EnsembleTest {
     Assert.assertEquals(ensemble.predict(docs.get(2).getFeatures()), predictions[3], 0.00001);
   }
 
+  @Test
+  public void predictBatch() throws Exception{
+    double[][] samples = {
+        {0.6, 0.5, 0.5},
+        {0.7, 0.6, 0.6},
+        {0.75, 0.7, 0.44}
+    };
+    List<Document> docs = TreeToolsTest.makeDocsWithFeatures(samples);
+    Query query = new Query(docs);
+    FeatureMatrix matrix = FeatureMatrix.of(Collections.singletonList(query));
+
+    double[] batch = ensemble.predictBatch(docs);
+    double[] matrixBatch = ensemble.predictBatch(matrix);
+    for (int i = 0; i < docs.size(); i++) {
+      double expected = ensemble.predict(docs.get(i).getFeatures());
+      Assert.assertEquals(expected, ensemble.predict(docs.get(i)), 0.0000001);
+      Assert.assertEquals(expected, ensemble.predict(samples[i]), 0.0000001);
+      Assert.assertEquals(expected, batch[i], 0.0000001);
+      Assert.assertEquals(expected, matrixBatch[i], 0.0000001);
+    }
+
+    List<Document> sorted = ensemble.sort(query);
+    Assert.assertSame(docs.get(0), sorted.get(0));
+    Assert.assertSame(docs.get(2), sorted.get(1));
+    Assert.assertSame(docs.get(1), sorted.get(2));
+
+    List<Document> top = ensemble.topK(query, 1);
+    Assert.assertEquals(3, top.size());
+    Assert.assertSame(docs.get(0), top.get(0));
+  }
+
+  //Scorers built from the blocks of a binary model score as those read from JSON.
+  @Test
+  public void testReadBinaryScorer() throws Exception{
+    Random random = new Random(0);
+    Ensemble nodeTrees = new Ensemble();
+    QuickScorerTest.randomTrees(random, 20, 16, 5).forEach(nodeTrees::addTree);
+    Ensemble obliviousTrees = new Ensemble();
+    for (int t = 0; t < 5; t++)
+      obliviousTrees.addTree(new ObliviousTree(new int[]{t % 5, (t + 2) % 5}, new double[]{0.5, 0.3}, new double[]{1, -2, 0.25, t}));
+    List<Document> docs = TreeToolsTest.randomDocs(random, 50, 5);
+
+    for (Ensemble model : new Ensemble[]{nodeTrees, obliviousTrees}) {
+      for (String scorer : new String[]{"flat", "quickscorer", "compressed", "tree"}) {
+        Ensemble.TreeConfig scorerConfig = new ObjectMapper().readValue(
+            CONFIG_SRC.replace("\"numTrees\" : 15,", "\"numTrees\" : 15,\n    \"scorer\" : \"" + scorer + "\","), Ensemble.TreeConfig.class);
+        StringWriter json = new StringWriter();
+        model.writeModel(scorerConfig, json);
+        Ranker fromJson = Ranker.RankerFactory.getFromModel(new StringReader(json.toString()));
+        Ranker fromBinary = Ranker.RankerFactory.getFromModel(BinaryModel.fromJson(new StringReader(json.toString()), 5));
+        Assert.assertEquals(fromJson.getClass(), fromBinary.getClass());
+        Assert.assertEquals(fromJson.getNumFeatures(), fromBinary.getNumFeatures());
+        Assert.assertArrayEquals(fromJson.predictBatch(docs), fromBinary.predictBatch(docs), 0d);
+      }
+    }
+  }
+
   public double[] getPredictions(Document doc){
     double[] predictions = new double[ensemble.getTrees().size() + 1];
     double total = 0;
@@ -0,0 +1,181 @@
+package org.ltr4l.boosting;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ltr4l.query.Document;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class FeatureHistogramTest {
+
+  private static List<Document> randomDocs(int numDocs, int numFeatures, int numValues, long seed){
+    Random random = new Random(seed);
+    return TreeToolsTest.randomDocs(numDocs, numFeatures, () -> random.nextInt(numValues) / 10d, () -> random.nextInt(5));
+  }
+
+  private static int[] allRows(int numDocs){
+    int[] rows = new int[numDocs];
+    for (int i = 0; i < numDocs; i++) rows[i] = i;
+    return rows;
+  }
+
+  @Test
+  public void testBins() throws Exception {
+    List<Document> docs = TreeToolsTest.makeDocsWithFeatures(new double[][]{
+        {3.0, 1.0},
+        {1.0, 1.0},
+        {2.0, 1.0},
+        {1.0, 1.0}
+    });
+    FeatureBins bins = new FeatureBins(docs);
+    Assert.assertEquals(3, bins.getNumBins(0));
+    Assert.assertEquals(2, bins.getBin(0, 0));
+    Assert.assertEquals(0, bins.getBin(0, 1));
+    Assert.assertEquals(1, bins.getBin(0, 2));
+    Assert.assertEquals(0, bins.getBin(0, 3));
+    Assert.assertEquals(2.0, bins.getLowerBound(0, 1), 0d);
+    Assert.assertEquals(1, bins.getNumBins(1));
+  }
+
+  @Test
+  public void testQuantileBins() throws Exception {
+    List<Document> docs = randomDocs(1000, 1, 1000, 1L);
+    FeatureBins bins = new FeatureBins(docs, 16);
+    Assert.assertTrue(bins.getNumBins(0) <= 16);
+    for (int row = 0; row < docs.size(); row++) {
+      int bin = bins.getBin(0, row);
+      double value = docs.get(row).getFeature(0);
+      Assert.assertTrue(value >= bins.getLowerBound(0, bin));
+      if (bin + 1 < bins.getNumBins(0))
+        Assert.assertTrue(value < bins.getLowerBound(0, bin + 1));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooManyBins() throws Exception {
+    new FeatureBins(randomDocs(10, 1, 10, 1L), 257);
+  }
+
+  @Test
+  public void testFindThresholdMatchesExactSearch() throws Exception {
+    List<Document> docs = randomDocs(200, 5, 30, 2L);
+    FeatureBins bins = new FeatureBins(docs);
+    FeatureHistogram histogram = FeatureHistogram.build(bins, TreeToolsTest.labels(docs), allRows(docs.size()));
+    TreeTools treeTools = new RegressionTreeTools();
+    for (int feat = 0; feat < 5; feat++) {
+      double[] expected = treeTools.findThreshold(FeatureSortedDocs.get(docs, feat));
+      double[] actual = histogram.findThreshold(feat);
+      Assert.assertEquals(expected[1], actual[1], 0.0000001);
+      Assert.assertEquals(expected[0], actual[0], 0d);
+    }
+    Assert.assertEquals(treeTools.calcWLloss(docs), histogram.getLoss(), 0.0000001);
+  }
+
+  @Test
+  public void testSubtract() throws Exception {
+    List<Document> docs = randomDocs(100, 3, 20, 3L);
+    FeatureBins bins = new FeatureBins(docs);
+    double[] targets = TreeToolsTest.labels(docs);
+    int[] rows = allRows(docs.size());
+    int[] left = new int[40];
+    int[] right = new int[60];
+    System.arraycopy(rows, 0, left, 0, 40);
+    System.arraycopy(rows, 40, right, 0, 60);
+    FeatureHistogram parent = FeatureHistogram.build(bins, targets, rows);
+    FeatureHistogram expected = FeatureHistogram.build(bins, targets, right);
+    FeatureHistogram actual = parent.subtract(FeatureHistogram.build(bins, targets, left));
+    Assert.assertEquals(expected.getCount(), actual.getCount());
+    Assert.assertEquals(expected.getLoss(), actual.getLoss(), 0.0000001);
+    for (int feat = 0; feat < 3; feat++)
+      Assert.assertArrayEquals(expected.findThreshold(feat), actual.findThreshold(feat), 0.0000001);
+  }
+
+  //Half of the values are zero, the others between -2 and 2.
+  private static List<Document> sparseDocs(int numDocs, int numFeatures, long seed){
+    Random random = new Random(seed);
+    return TreeToolsTest.randomDocs(numDocs, numFeatures, () -> random.nextBoolean() ? 0d : (random.nextInt(40) - 20) / 10d,
+        () -> random.nextInt(5));
+  }
+
+  @Test
+  public void testSparseBins() throws Exception {
+    List<Document> docs = sparseDocs(300, 4, 5L);
+    docs.add(new Document(new double[]{1.0, 0d, 0d, 0d}, 2));
+    List<Document> sparseDocs = TreeToolsTest.toSparse(docs);
+    //A stored zero shares the bin of the zeros which are not stored.
+    sparseDocs.set(docs.size() - 1, new Document(new int[]{0, 1}, new double[]{1.0, 0d}, 4, 2));
+    for (int maxBins : new int[]{FeatureBins.DEFAULT_MAX_BINS, 8}) {
+      FeatureBins expected = new FeatureBins(docs, maxBins);
+      FeatureBins actual = new FeatureBins(sparseDocs, maxBins);
+      Assert.assertEquals(expected.getNumFeatures(), actual.getNumFeatures());
+      for (int feat = 0; feat < 4; feat++) {
+        Assert.assertEquals(expected.getNumBins(feat), actual.getNumBins(feat));
+        for (int bin = 0; bin < expected.getNumBins(feat); bin++)
+          Assert.assertEquals(expected.getLowerBound(feat, bin), actual.getLowerBound(feat, bin), 0d);
+        for (int row = 0; row < docs.size(); row++)
+          Assert.assertEquals(expected.getBin(feat, row), actual.getBin(feat, row));
+        Assert.assertArrayEquals(expected.getBins(feat), actual.getBins(feat));
+      }
+    }
+  }
+
+  @Test
+  public void testSparseHistogram() throws Exception {
+    List<Document> docs = sparseDocs(300, 5, 6L);
+    double[] targets = TreeToolsTest.labels(docs);
+    FeatureBins denseBins = new FeatureBins(docs, 8);
+    FeatureBins sparseBins = new FeatureBins(TreeToolsTest.toSparse(docs), 8);
+    int[] rows = allRows(docs.size());
+    int[] features = {1, 3, 4};
+    ForkJoinPool pool = TreeTools.getPool(3);
+    try {
+      FeatureHistogram expected = FeatureHistogram.build(denseBins, targets, rows, 100, 250, features, null);
+      FeatureHistogram actual = FeatureHistogram.build(sparseBins, targets, rows, 100, 250, features, null);
+      FeatureHistogram parallel = FeatureHistogram.build(sparseBins, targets, rows, 100, 250, features, pool);
+      Assert.assertEquals(expected.getCount(), actual.getCount());
+      Assert.assertEquals(expected.getLoss(), actual.getLoss(), 0.0000001);
+      for (int feat : features) {
+        Assert.assertArrayEquals(expected.findThreshold(feat), actual.findThreshold(feat), 0.0000001);
+        Assert.assertArrayEquals(actual.findThreshold(feat), parallel.findThreshold(feat), 0d);
+      }
+      OptimalLeafLoss expectedSplit = expected.findMinLeafThreshold(features, null);
+      OptimalLeafLoss actualSplit = actual.findMinLeafThreshold(features, null);
+      Assert.assertEquals(expectedSplit.getOptimalFeature(), actualSplit.getOptimalFeature());
+      Assert.assertEquals(expectedSplit.getOptimalThreshold(), actualSplit.getOptimalThreshold(), 0d);
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testConstantFeature() throws Exception {
+    List<Document> docs = TreeToolsTest.makeDocsWithFeatures(new double[][]{{1.0}, {1.0}, {1.0}});
+    FeatureBins bins = new FeatureBins(docs);
+    FeatureHistogram histogram = FeatureHistogram.build(bins, new double[]{0, 1, 2}, allRows(3));
+    double[] threshLoss = histogram.findThreshold(0);
+    Assert.assertEquals(Double.POSITIVE_INFINITY, threshLoss[0], 0d);
+    Assert.assertEquals(Double.POSITIVE_INFINITY, threshLoss[1], 0d);
+  }
+
+  @Test
+  public void testBinnedTreeMatchesExactTree() throws Exception {
+    List<Document> docs = randomDocs(300, 4, 25, 4L);
+    double[] targets = TreeToolsTest.labels(docs);
+    FeatureBins bins = new FeatureBins(docs);
+    FeatureHistogram rootHistogram = FeatureHistogram.build(bins, targets, allRows(docs.size()));
+    OptimalLeafLoss rootSplit = rootHistogram.findMinLeafThreshold();
+
+    RegressionTree binned = new RegressionTree(6, rootSplit.getOptimalFeature(), rootSplit.getOptimalThreshold(), bins, RowPartition.of(docs), targets, rootHistogram, null);
+    RegressionTree exact = new RegressionTree(6, rootSplit.getOptimalFeature(), rootSplit.getOptimalThreshold(), docs, 0);
+    Assert.assertEquals(exact.getModelInfo(RegressionTree.IntProp.FEATURE), binned.getModelInfo(RegressionTree.IntProp.FEATURE));
+    Assert.assertEquals(exact.getModelInfo(RegressionTree.DoubleProp.THRESHOLD), binned.getModelInfo(RegressionTree.DoubleProp.THRESHOLD));
+    Assert.assertEquals(6, binned.getTerminalLeaves().size());
+    List<Split> exactLeaves = exact.getTerminalLeaves();
+    List<Split> binnedLeaves = binned.getTerminalLeaves();
+    for (int l = 0; l < exactLeaves.size(); l++)
+      Assert.assertEquals(exactLeaves.get(l).getScoredDocs().size(), binnedLeaves.get(l).getScoredDocs().size());
+  }
+}
@@ -0,0 +1,73 @@
+package org.ltr4l.boosting;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+import org.ltr4l.query.Query;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class FlatEnsembleTest {
+  private Ensemble ensemble;
+  private FlatEnsemble flat;
+
+  @Before
+  public void setUp() throws Exception {
+    ensemble = new Ensemble(new StringReader(EnsembleTest.MODEL_SRC));
+    flat = new FlatEnsemble(ensemble);
+  }
+
+  @Test
+  public void testGetFromModel() throws Exception {
+    Ranker ranker = Ranker.RankerFactory.getFromModel(new StringReader(EnsembleTest.MODEL_SRC));
+    Assert.assertTrue(ranker instanceof FlatEnsemble);
+    Assert.assertEquals(3, ((FlatEnsemble) ranker).getNumTrees());
+  }
+
+  @Test
+  public void testPredict() throws Exception {
+    Random random = new Random(0);
+    double[][] samples = new double[50][3];
+    for (double[] sample : samples)
+      for (int i = 0; i < sample.length; i++)
+        sample[i] = random.nextDouble();
+    samples[0] = new double[]{0.748092, 0.670009, 0.44423};  //on the thresholds
+    List<Document> docs = TreeToolsTest.makeDocsWithFeatures(samples);
+    FeatureMatrix matrix = FeatureMatrix.of(Collections.singletonList(new Query(new ArrayList<>(docs))));
+
+    double[] batch = flat.predictBatch(docs);
+    double[] matrixBatch = flat.predictBatch(matrix);
+    for (int i = 0; i < samples.length; i++) {
+      double expected = ensemble.predict(samples[i]);
+      Assert.assertEquals(expected, flat.predict(samples[i]), 0d);
+      Assert.assertEquals(expected, flat.predict(docs.get(i).getFeatures()), 0d);
+      Assert.assertEquals(expected, batch[i], 0d);
+      Assert.assertEquals(expected, matrixBatch[i], 0d);
+    }
+  }
+
+  @Test
+  public void testPredictSparse() throws Exception {
+    Document dense = new Document(new double[]{0d, 0.8, 0d}, 0);
+    Document sparse = new Document(new int[]{1}, new double[]{0.8}, 2, 0);  //Feature 2 is not in the document.
+    Assert.assertEquals(ensemble.predict(dense), flat.predict(sparse), 0d);
+    Assert.assertEquals(ensemble.predict(dense), flat.predictBatch(Collections.singletonList(sparse))[0], 0d);
+  }
+
+  @Test
+  public void testWriteModel() throws Exception {
+    Ensemble.TreeConfig config = new ObjectMapper().readValue(new StringReader(EnsembleTest.CONFIG_SRC), Ensemble.TreeConfig.class);
+    StringWriter writer = new StringWriter();
+    flat.writeModel(config, writer);
+    Assert.assertEquals(EnsembleTest.MODEL_SRC, writer.toString());
+  }
+}
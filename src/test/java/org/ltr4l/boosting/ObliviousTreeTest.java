@@ -0,0 +1,128 @@
+package org.ltr4l.boosting;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+import org.ltr4l.query.Query;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ObliviousTreeTest {
+
+  private static ObliviousTree randomTree(Random random, int depth, int numFeatures) {
+    int[] features = new int[depth];
+    double[] thresholds = new double[depth];
+    double[] leafValues = new double[1 << depth];
+    for (int level = 0; level < depth; level++) {
+      features[level] = random.nextInt(numFeatures);
+      thresholds[level] = Math.round(random.nextDouble() * 10) / 10d;
+    }
+    for (int leaf = 0; leaf < leafValues.length; leaf++)
+      leafValues[leaf] = random.nextGaussian();
+    return new ObliviousTree(features, thresholds, leafValues);
+  }
+
+  @Test
+  public void testPredict() throws Exception {
+    Random random = new Random(0);
+    List<Document> docs = TreeToolsTest.randomDocs(random, 100, 5);
+    docs.get(0).setFeature(0, Double.NaN);
+    FeatureMatrix matrix = FeatureMatrix.of(Collections.singletonList(new Query(new ArrayList<>(docs))));
+    for (int depth = 2; depth <= 6; depth++) {
+      ObliviousTree tree = randomTree(random, depth, 5);
+      //The nodes route documents to the same leaves as the leaf index.
+      RegressionTree nodes = new RegressionTree(tree.getSavedModel());
+      double[] batch = tree.predictBatch(matrix);
+      for (int d = 0; d < docs.size(); d++) {
+        Document doc = docs.get(d);
+        double expected = nodes.predict(doc);
+        Assert.assertEquals(expected, tree.predict(doc), 0d);
+        Assert.assertEquals(expected, tree.predict(doc.toArray()), 0d);
+        Assert.assertEquals(expected, tree.predict(doc.getFeatures()), 0d);
+        Assert.assertEquals(expected, batch[d], 0d);
+      }
+    }
+  }
+
+  @Test
+  public void testGrow() throws Exception {
+    Random random = new Random(1);
+    List<Document> docs = TreeToolsTest.randomDocs(random, 300, 4);
+    double[] targets = new double[docs.size()];
+    for (int row = 0; row < targets.length; row++)
+      targets[row] = random.nextInt(3);
+    FeatureBins bins = new FeatureBins(docs);
+    RowPartition partition = RowPartition.of(docs);
+    FeatureHistogram rootHistogram = FeatureHistogram.build(bins, targets, partition.getOrder(0));
+    ObliviousTree tree = ObliviousTree.grow(3, bins, partition, targets.length, targets, rootHistogram, null, null, null);
+
+    //The first level is the best split of the root.
+    OptimalLeafLoss rootSplit = rootHistogram.findMinLeafThreshold();
+    Assert.assertEquals(rootSplit.getOptimalFeature(), tree.getFeature(0));
+    Assert.assertEquals(rootSplit.getOptimalThreshold(), tree.getThreshold(0), 0d);
+
+    //The rows of each leaf are the documents the tree routes to it.
+    double[] ones = new double[targets.length];
+    Arrays.fill(ones, 1d);
+    int[] counts = new int[tree.getNumLeaves()];
+    for (int leaf = 0; leaf < tree.getNumLeaves(); leaf++)
+      tree.setLeafValue(leaf, leaf);
+    for (Document doc : docs)
+      counts[(int) tree.predict(doc)]++;
+    for (int leaf = 0; leaf < tree.getNumLeaves(); leaf++)
+      Assert.assertEquals(counts[leaf], tree.sumOverRows(leaf, ones), 0d);
+
+    tree.clearTrainingData();
+    try {
+      tree.sumOverRows(0, ones);
+      Assert.fail();
+    }
+    catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test
+  public void testWriteModel() throws Exception {
+    Random random = new Random(2);
+    Ensemble ensemble = new Ensemble();
+    for (int t = 0; t < 10; t++)
+      ensemble.addTree(randomTree(random, 4, 5));
+    Ensemble.TreeConfig config = new ObjectMapper().readValue(new StringReader(
+        EnsembleTest.CONFIG_SRC.replace("\"numLeaves\" : 3,", "\"numLeaves\" : 16,\n    \"treeType\" : \"oblivious\",")),
+        Ensemble.TreeConfig.class);
+    StringWriter writer = new StringWriter();
+    ensemble.writeModel(config, writer);
+    String model = writer.toString();
+    Assert.assertTrue(model.contains("\"obliviousModels\""));
+    Assert.assertFalse(model.contains("\"treeModels\""));
+
+    Ensemble read = new Ensemble(new StringReader(model));
+    Ranker<Ensemble.TreeConfig> scorer = Ensemble.readScorer(new StringReader(model));
+    Assert.assertTrue(scorer instanceof Ensemble);
+    Assert.assertTrue(read.getTree(0) instanceof ObliviousTree);
+    FlatEnsemble flat = new FlatEnsemble(read);
+    List<Document> docs = TreeToolsTest.randomDocs(random, 50, 5);
+    FeatureMatrix matrix = FeatureMatrix.of(Collections.singletonList(new Query(new ArrayList<>(docs))));
+    double[] batch = scorer.predictBatch(matrix);
+    for (int d = 0; d < docs.size(); d++) {
+      double expected = ensemble.predict(docs.get(d));
+      Assert.assertEquals(expected, read.predict(docs.get(d)), 0d);
+      Assert.assertEquals(expected, batch[d], 0d);
+      Assert.assertEquals(expected, flat.predict(docs.get(d)), 0d);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidDepth() throws Exception {
+    new ObliviousTree(new int[0], new double[0], new double[1]);
+  }
+}
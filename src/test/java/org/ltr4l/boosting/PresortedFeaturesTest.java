@@ -0,0 +1,111 @@
+package org.ltr4l.boosting;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ltr4l.query.Document;
+import org.ltr4l.tools.IndexSorter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class PresortedFeaturesTest {
+
+  private static List<Document> randomDocs(int numDocs, int numFeatures, long seed){
+    Random random = new Random(seed);
+    return TreeToolsTest.randomDocs(numDocs, numFeatures, () -> random.nextInt(50), () -> random.nextInt(5));
+  }
+
+  @Test
+  public void testPartitionIsStable() throws Exception {
+    List<Document> docs = randomDocs(100, 3, 1L);
+    PresortedFeatures features = new PresortedFeatures(docs);
+    RowPartition partition = features.newPartition();
+    int mid = partition.partition(0, docs.size(), row -> features.getValue(2, row) < 25);
+    for (int feat = 0; feat < 3; feat++) {
+      int[] order = partition.getOrder(feat);
+      for (int pos = 0; pos < docs.size(); pos++) {
+        Assert.assertEquals(pos < mid, features.getValue(2, order[pos]) < 25);
+        if (pos != 0 && pos != mid)
+          Assert.assertTrue(features.getValue(feat, order[pos - 1]) <= features.getValue(feat, order[pos]));
+      }
+    }
+    //Every order holds the same rows in each range.
+    Set<Integer> left = new HashSet<>();
+    for (int pos = 0; pos < mid; pos++) left.add(partition.getOrder(0)[pos]);
+    for (int feat = 1; feat < 3; feat++)
+      for (int pos = 0; pos < mid; pos++)
+        Assert.assertTrue(left.contains(partition.getOrder(feat)[pos]));
+
+    int[] first = partition.getOrder(0).clone();
+    partition.reset();
+    Assert.assertFalse(Arrays.equals(first, partition.getOrder(0)));
+    Assert.assertEquals(mid, partition.partition(0, docs.size(), row -> features.getValue(2, row) < 25));
+    Assert.assertArrayEquals(first, partition.getOrder(0));
+  }
+
+  @Test
+  public void testFindThresholdMatchesRegressionTreeTools() throws Exception {
+    List<Document> docs = randomDocs(200, 4, 2L);
+    PresortedFeatures features = new PresortedFeatures(docs);
+    RowPartition partition = features.newPartition();
+    double[] targets = TreeToolsTest.labels(docs);
+    int mid = partition.partition(0, docs.size(), row -> features.getValue(0, row) < 20);
+    TreeTools treeTools = new RegressionTreeTools();
+    List<Document> rightDocs = new ArrayList<>(partition.getDocuments(mid, docs.size()));
+    for (int feat = 0; feat < 4; feat++) {
+      double[] expected = treeTools.findThreshold(FeatureSortedDocs.get(rightDocs, feat));
+      double[] actual = features.findThreshold(feat, partition, mid, docs.size(), targets);
+      Assert.assertEquals(expected[0], actual[0], 0d);
+      Assert.assertEquals(expected[1], actual[1], 0.0000001);
+    }
+  }
+
+  @Test
+  public void testTreeMatchesExactTree() throws Exception {
+    List<Document> docs = randomDocs(300, 5, 3L);
+    double[] targets = TreeToolsTest.labels(docs);
+    PresortedFeatures features = new PresortedFeatures(docs);
+    RowPartition partition = features.newPartition();
+    OptimalLeafLoss rootSplit = features.findMinLeafThreshold(partition, 0, docs.size(), targets, null);
+
+    RegressionTree exact = new RegressionTree(7, rootSplit.getOptimalFeature(), rootSplit.getOptimalThreshold(), docs, 0);
+    for (int t = 0; t < 2; t++) {  //The partition is reused by the next tree.
+      RegressionTree presorted = new RegressionTree(7, rootSplit.getOptimalFeature(), rootSplit.getOptimalThreshold(), features, partition, targets, null);
+      Assert.assertEquals(exact.getModelInfo(RegressionTree.IntProp.FEATURE), presorted.getModelInfo(RegressionTree.IntProp.FEATURE));
+      Assert.assertEquals(exact.getModelInfo(RegressionTree.DoubleProp.THRESHOLD), presorted.getModelInfo(RegressionTree.DoubleProp.THRESHOLD));
+      List<Split> exactLeaves = exact.getTerminalLeaves();
+      List<Split> leaves = presorted.getTerminalLeaves();
+      for (int l = 0; l < leaves.size(); l++)
+        Assert.assertEquals(new HashSet<>(exactLeaves.get(l).getScoredDocs()), new HashSet<>(leaves.get(l).getScoredDocs()));
+
+      presorted.clearTrainingData();
+      for (Split leaf : presorted.getTerminalLeaves())
+        Assert.assertTrue(leaf.getScoredDocs().isEmpty());
+    }
+  }
+
+  @Test
+  public void testSparseFeatures() throws Exception {
+    Random random = new Random(4L);
+    List<Document> docs = TreeToolsTest.randomDocs(200, 4, () -> random.nextBoolean() ? 0d : random.nextInt(21) - 10, () -> 0);
+    docs.get(199).setFeature(0, 1.0);  //The last zero of feature 0 is not the last row.
+    PresortedFeatures sparse = new PresortedFeatures(TreeToolsTest.toSparse(docs));
+    for (int feat = 0; feat < 4; feat++) {
+      double[] column = new double[docs.size()];
+      int lastZero = -1;
+      for (int row = 0; row < column.length; row++) {
+        column[row] = docs.get(row).getFeature(feat);
+        if (column[row] == 0d) lastZero = row;
+      }
+      Assert.assertArrayEquals(IndexSorter.argsort(column), sparse.getOrder(feat));
+      Assert.assertEquals(lastZero, sparse.getLastZeroRow(feat));
+      for (int row : sparse.getStoredRows(feat))
+        Assert.assertNotEquals(0d, column[row], 0d);
+    }
+    Assert.assertEquals(-1, new PresortedFeatures(TreeToolsTest.makeDocsWithFeatures(new double[][]{{1.0}, {2.0}})).getLastZeroRow(0));
+  }
+}
@@ -0,0 +1,95 @@
+package org.ltr4l.boosting;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+import org.ltr4l.query.Query;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class QuickScorerTest {
+
+  /**
+   * Makes trees of numLeaves leaves with random shapes, features, thresholds and scores.
+   */
+  static List<RegressionTree> randomTrees(Random random, int numTrees, int numLeaves, int numFeatures) {
+    List<RegressionTree> trees = new ArrayList<>();
+    for (int t = 0; t < numTrees; t++) {
+      RegressionTree.SavedModel model = new RegressionTree.SavedModel(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+      addNodes(random, model, 0, numLeaves, numFeatures);
+      trees.add(new RegressionTree(model));
+    }
+    return trees;
+  }
+
+  private static void addNodes(Random random, RegressionTree.SavedModel model, int leafId, int numLeaves, int numFeatures) {
+    model.leafIds.add(leafId);
+    if (numLeaves == 1) {
+      model.featureIds.add(-1);
+      model.thresh.add(Double.NEGATIVE_INFINITY);
+      model.scores.add(random.nextGaussian());
+      return;
+    }
+    model.featureIds.add(random.nextInt(numFeatures));
+    model.thresh.add(Math.round(random.nextDouble() * 10) / 10d);  //Rounded, so that documents hit thresholds.
+    model.scores.add(0d);
+    //Keeps the trees shallow enough for the leaf ids.
+    int numLeft = Math.max(1, Math.min(numLeaves - 1, numLeaves / 4 + random.nextInt(numLeaves / 2 + 1)));
+    addNodes(random, model, 2 * leafId + 1, numLeft, numFeatures);
+    addNodes(random, model, 2 * leafId + 2, numLeaves - numLeft, numFeatures);
+  }
+
+  @Test
+  public void testPredict() throws Exception {
+    Random random = new Random(0);
+    for (int numLeaves : new int[]{3, 7, 64}) {
+      Ensemble ensemble = new Ensemble();
+      randomTrees(random, 30, numLeaves, 5).forEach(ensemble::addTree);
+      QuickScorer scorer = new QuickScorer(ensemble);
+      List<Document> docs = TreeToolsTest.randomDocs(random, 100, 5);
+      FeatureMatrix matrix = FeatureMatrix.of(Collections.singletonList(new Query(new ArrayList<>(docs))));
+
+      double[] batch = scorer.predictBatch(docs);
+      double[] matrixBatch = scorer.predictBatch(matrix);
+      for (int i = 0; i < docs.size(); i++) {
+        double expected = ensemble.predict(docs.get(i));
+        Assert.assertEquals(expected, scorer.predict(docs.get(i)), 0d);
+        Assert.assertEquals(expected, scorer.predict(docs.get(i).getFeatures()), 0d);
+        Assert.assertEquals(expected, batch[i], 0d);
+        Assert.assertEquals(expected, matrixBatch[i], 0d);
+      }
+    }
+  }
+
+  @Test
+  public void testPredictNaN() throws Exception {
+    Random random = new Random(1);
+    Ensemble ensemble = new Ensemble();
+    randomTrees(random, 10, 8, 3).forEach(ensemble::addTree);
+    QuickScorer scorer = new QuickScorer(ensemble);
+    double[] features = {Double.NaN, 0.5, Double.NaN};
+    Assert.assertEquals(ensemble.predict(features), scorer.predict(features), 0d);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooManyLeaves() throws Exception {
+    new QuickScorer(randomTrees(new Random(2), 1, QuickScorer.MAX_LEAVES + 1, 3));
+  }
+
+  @Test
+  public void testReadScorer() throws Exception {
+    Assert.assertTrue(Ranker.RankerFactory.getFromModel(new StringReader(EnsembleTest.MODEL_SRC)) instanceof FlatEnsemble);
+    String model = EnsembleTest.MODEL_SRC.replace("\"numTrees\" : 15,", "\"numTrees\" : 15,\n      \"scorer\" : \"quickscorer\",");
+    Ranker ranker = Ranker.RankerFactory.getFromModel(new StringReader(model));
+    Assert.assertTrue(ranker instanceof QuickScorer);
+    Assert.assertEquals(3, ((QuickScorer) ranker).getNumTrees());
+    model = EnsembleTest.MODEL_SRC.replace("\"numTrees\" : 15,", "\"numTrees\" : 15,\n      \"scorer\" : \"tree\",");
+    Assert.assertTrue(Ranker.RankerFactory.getFromModel(new StringReader(model)) instanceof Ensemble);
+  }
+}
@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.ltr4l.boosting.TreeToolsTest.addLabels;
 import static org.ltr4l.boosting.TreeToolsTest.makeDocsWithFeatures;
@@ -114,6 +115,65 @@ public class RBDistributionTest {
 
   @Test
   public void testUpdate() throws Exception{
+    RBDistribution distribution = new RBDistribution(queries);
+    WeakLearner[] learners = {new WeakLearner(4, 10.0, 2), new WeakLearner(2, 5.0, 0.5), new WeakLearner(4, 10.0, 2)};
+    for (WeakLearner wl : learners)
+      distribution.update(wl, queries);
+
+    //Each round multiplies pair (i, j) by exp(alpha * (h(i) - h(j))), and the weights are normalized.
+    double[][][] expected = new double[queries.size()][][];
+    double sum = 0d;
+    for (int qid = 0; qid < queries.size(); qid++) {
+      RankedDocs query = queries.get(qid);
+      expected[qid] = new double[query.size()][query.size()];
+      for (int i = 0; i < query.size(); i++) {
+        for (int j = 0; j < query.size(); j++) {
+          if (query.getLabel(i) <= query.getLabel(j)) continue;
+          double weight = 1d;
+          for (WeakLearner wl : learners)
+            weight *= Math.exp(wl.getAlpha() * (wl.predict(query.get(i)) - wl.predict(query.get(j))));
+          expected[qid][i][j] = weight;
+          sum += weight;
+        }
+      }
+    }
+    double total = sum;
+    for (int qid = 0; qid < queries.size(); qid++) {
+      double[][] qDist = distribution.getQueryDist(qid);
+      for (int i = 0; i < qDist.length; i++)
+        Assert.assertArrayEquals(Arrays.stream(expected[qid][i]).map(d -> d / total).toArray(), qDist[i], 1e-12);
+    }
+    Assert.assertEquals(1d, sumDistribution(distribution.getFullDist()), 1e-12);
+  }
+
+  @Test
+  public void testParallelUpdate() throws Exception{
+    Random random = new Random(0);
+    List<RankedDocs> longQueries = TreeToolsTest.randomQueries(random, 8, 300, 3, 4);
+    RBDistribution sequential = new RBDistribution(longQueries);
+    RBDistribution parallel = new RBDistribution(longQueries);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for (int round = 0; round < 50; round++) {
+      WeakLearner wl = new WeakLearner(round % 3, random.nextDouble(), 1 + random.nextDouble());
+      sequential.update(wl, longQueries);
+      parallel.update(wl, longQueries, pool);
+    }
+    Assert.assertEquals(sequential.getNormFactor(), parallel.getNormFactor(), 0d);
+    Assert.assertArrayEquals(sequential.calcPotential(), parallel.calcPotential(pool));
+    pool.shutdown();
+
+    //The potential is the weight of the pairs where a document has the lower label minus those where it has the higher one.
+    double[][] potential = sequential.calcPotential();
+    for (int qid = 0; qid < 2; qid++) {
+      double[][] qDist = sequential.getQueryDist(qid);
+      for (int i = 0; i < qDist.length; i++) {
+        double expected = 0d;
+        for (int j = 0; j < qDist.length; j++)
+          expected += qDist[j][i] - qDist[i][j];
+        Assert.assertEquals(expected, potential[qid][i], 1e-12);
+      }
+    }
+    Assert.assertEquals(1d, sumDistribution(sequential.getFullDist()), 1e-9);
   }
 
   @Test
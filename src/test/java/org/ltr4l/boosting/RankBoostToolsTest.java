@@ -7,6 +7,7 @@ import org.ltr4l.query.Document;
 import org.ltr4l.query.RankedDocs;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -120,4 +121,66 @@ public class RankBoostToolsTest {
     Assert.assertEquals(4, oml.getOptimalFeature());
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testPresortedFeatures() throws Exception{
+    PresortedFeatures features = new PresortedFeatures(allDocs);
+    for (int numSteps : new int[]{0, 3, 6, 15}) {
+      OptimalLeafLoss expected = rbt.findMinLeafThreshold(allDocs, numSteps);
+      OptimalLeafLoss oml = rbt.findMinLeafThreshold(features, numSteps);
+      Assert.assertEquals(expected.getOptimalFeature(), oml.getOptimalFeature());
+      Assert.assertEquals(expected.getOptimalThreshold(), oml.getOptimalThreshold(), 0d);
+      Assert.assertEquals(expected.getMinLoss(), oml.getMinLoss(), 1e-12);
+    }
+  }
+
+  @Test
+  public void testPresortedFeaturesRandom() throws Exception{
+    Random random = new Random(0);
+    List<RankedDocs> randomQueries = TreeToolsTest.randomQueries(random, 6, 40, 5, 3);
+    List<Document> docs = new ArrayList<>();
+    randomQueries.forEach(rd -> docs.addAll(rd.getRankedDocs()));
+    PresortedFeatures features = new PresortedFeatures(docs);
+
+    RBDistribution distribution = new RBDistribution(randomQueries);
+    ForkJoinPool pool = new ForkJoinPool(3);
+    for (int round = 0; round < 5; round++) {
+      for (int numSteps : new int[]{0, 4, 10}) {
+        double[][] potential = distribution.calcPotential();
+        OptimalLeafLoss expected = new RankBoostTools(potential, randomQueries).findMinLeafThreshold(docs, numSteps);
+        RankBoostTools tools = new RankBoostTools(potential);
+        tools.setPool(pool);
+        OptimalLeafLoss oml = tools.findMinLeafThreshold(features, numSteps);
+        Assert.assertEquals(expected.getOptimalFeature(), oml.getOptimalFeature());
+        Assert.assertEquals(expected.getOptimalThreshold(), oml.getOptimalThreshold(), 0d);
+        Assert.assertEquals(expected.getMinLoss(), oml.getMinLoss(), 1e-9);
+      }
+      distribution.update(WeakLearner.findWeakLearner(distribution, features, 0, pool), randomQueries);
+    }
+    pool.shutdown();
+  }
+
+  @Test
+  public void testPresortedSparseFeatures() throws Exception{
+    Random random = new Random(1);
+    List<RankedDocs> sparseQueries = new ArrayList<>();
+    for (int q = 0; q < 6; q++)  //Two thirds of the values are zero, the others between -1 and 1.
+      sparseQueries.add(new RankedDocs(TreeToolsTest.toSparse(TreeToolsTest.randomDocs(40, 5,
+          () -> random.nextInt(3) == 0 ? (random.nextInt(9) - 4) / 4d : 0d, () -> random.nextInt(3)))));
+    List<Document> docs = new ArrayList<>();
+    sparseQueries.forEach(rd -> docs.addAll(rd.getRankedDocs()));
+    PresortedFeatures features = new PresortedFeatures(docs);
+
+    RBDistribution distribution = new RBDistribution(sparseQueries);
+    for (int round = 0; round < 5; round++) {
+      for (int numSteps : new int[]{0, 4, 10}) {
+        double[][] potential = distribution.calcPotential();
+        OptimalLeafLoss expected = new RankBoostTools(potential, sparseQueries).findMinLeafThreshold(docs, numSteps);
+        OptimalLeafLoss oml = new RankBoostTools(potential).findMinLeafThreshold(features, numSteps);
+        Assert.assertEquals(expected.getOptimalFeature(), oml.getOptimalFeature());
+        Assert.assertEquals(expected.getOptimalThreshold(), oml.getOptimalThreshold(), 0d);
+        Assert.assertEquals(expected.getMinLoss(), oml.getMinLoss(), 1e-9);
+      }
+      distribution.update(WeakLearner.findWeakLearner(distribution, features, 0, null), sparseQueries);
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package org.ltr4l.boosting;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.Query;
+import org.ltr4l.tools.LossCalculator;
+import org.ltr4l.tools.PairwiseLossCalc;
+import org.ltr4l.tools.PointwiseLossCalc;
+import org.ltr4l.tools.StandardError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class ScoreCacheTest {
+
+  private static List<Query> queries(int numQueries, Random random) {
+    List<Query> queries = new ArrayList<>();
+    for (int q = 0; q < numQueries; q++) {
+      List<Document> docs = new ArrayList<>();
+      int numDocs = 1 + random.nextInt(20);
+      for (int d = 0; d < numDocs; d++)
+        docs.add(new Document(new double[]{random.nextDouble(), random.nextDouble(), random.nextDouble()}, random.nextInt(3)));
+      queries.add(new Query(docs, q));
+    }
+    return queries;
+  }
+
+  private static WeakLearner randomLearner(Random random) {
+    return new WeakLearner(random.nextInt(3), random.nextDouble(), random.nextDouble() * 2 - 1);
+  }
+
+  @Test
+  public void testScoresMatchRanker() throws Exception {
+    Random random = new Random(5L);
+    List<Query> queries = queries(30, random);
+    RankBoost ranker = new RankBoost();
+    ScoreCache cache = new ScoreCache(queries);
+    ScoreCache parallelCache = new ScoreCache(queries);
+    for (int i = 0; i < 20; i++) {
+      WeakLearner wl = randomLearner(random);
+      ranker.addLearner(wl);
+      cache.add(doc -> wl.getAlpha() * wl.predict(doc), null);
+      parallelCache.add(doc -> wl.getAlpha() * wl.predict(doc), ForkJoinPool.commonPool());
+      for (int q = 0; q < queries.size(); q++) {
+        Assert.assertArrayEquals(ranker.predictBatch(queries.get(q)), cache.getScores(q), 0d);
+        Assert.assertArrayEquals(cache.getScores(q), parallelCache.getScores(q), 0d);
+      }
+    }
+  }
+
+  @Test
+  public void testLink() throws Exception {
+    Random random = new Random(9L);
+    List<Query> queries = queries(10, random);
+    AdaBoost ranker = new AdaBoost();
+    ScoreCache cache = new ScoreCache(queries, Math::signum);
+    for (int q = 0; q < queries.size(); q++)
+      Assert.assertArrayEquals(ranker.predictBatch(queries.get(q)), cache.getScores(q), 0d);
+    for (int i = 0; i < 7; i++) {
+      WeakLearner wl = randomLearner(random);
+      ranker.addLearner(wl);
+      cache.add(doc -> (int) wl.predict(doc), null);
+      for (int q = 0; q < queries.size(); q++)
+        Assert.assertArrayEquals(ranker.predictBatch(queries.get(q)), cache.getScores(q), 0d);
+    }
+  }
+
+  @Test
+  public void testLossFromScores() throws Exception {
+    Random random = new Random(3L);
+    List<Query> training = queries(20, random);
+    List<Query> validation = queries(10, random);
+    RankBoost ranker = new RankBoost();
+    ScoreCache trainingScores = new ScoreCache(training);
+    ScoreCache validationScores = new ScoreCache(validation);
+    for (int i = 0; i < 10; i++) {
+      WeakLearner wl = randomLearner(random);
+      ranker.addLearner(wl);
+      trainingScores.add(doc -> wl.getAlpha() * wl.predict(doc), null);
+      validationScores.add(doc -> wl.getAlpha() * wl.predict(doc), null);
+    }
+
+    List<LossCalculator<RankBoost>> lossCalcs = new ArrayList<>();
+    lossCalcs.add(new PairwiseLossCalc.RankNetLossCalc<>(training, validation, StandardError.ENTROPY));
+    lossCalcs.add(new PairwiseLossCalc.RankBoostLossCalc<>(training, validation));
+    lossCalcs.add(new PointwiseLossCalc.StandardPointLossCalc<>(training, validation, StandardError.SQUARE));
+    for (LossCalculator<RankBoost> lossCalc : lossCalcs) {
+      Assert.assertEquals(lossCalc.calculateLoss(LossCalculator.DataSet.TRAINING, ranker),
+          lossCalc.calculateLoss(LossCalculator.DataSet.TRAINING, trainingScores.getScores()), 0d);
+      Assert.assertEquals(lossCalc.calculateLoss(LossCalculator.DataSet.VALIDATION, ranker),
+          lossCalc.calculateLoss(LossCalculator.DataSet.VALIDATION, validationScores.getScores()), 0d);
+    }
+  }
+}
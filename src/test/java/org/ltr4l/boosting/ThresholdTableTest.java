@@ -0,0 +1,101 @@
+package org.ltr4l.boosting;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ThresholdTableTest {
+  private static final double[] SPECIAL_THRESHOLDS = {0d, -0d, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NaN};
+
+  private static double randomThreshold(Random random) {
+    if (random.nextInt(20) == 0)
+      return SPECIAL_THRESHOLDS[random.nextInt(SPECIAL_THRESHOLDS.length)];
+    return Math.round(random.nextGaussian() * 8) / 8d;  //Learners share thresholds.
+  }
+
+  private static List<double[]> randomFeatures(Random random, int numDocs, int numFeatures) {
+    List<double[]> docs = new ArrayList<>();
+    for (int d = 0; d < numDocs; d++) {
+      double[] features = new double[numFeatures];
+      for (int f = 0; f < numFeatures; f++)
+        features[f] = random.nextInt(10) == 0 ? SPECIAL_THRESHOLDS[random.nextInt(SPECIAL_THRESHOLDS.length)]
+            : Math.round(random.nextGaussian() * 8) / 8d;
+      docs.add(features);
+    }
+    return docs;
+  }
+
+  private static void assertScores(AdaBoost model, ThresholdTable table, List<double[]> docs, double delta) {
+    for (double[] features : docs) {
+      double expected = model.predict(features);
+      Assert.assertEquals(expected, table.predict(features), delta);
+      Assert.assertEquals(expected, table.predict(new Document(features, 0)), delta);
+      List<Double> list = new ArrayList<>();
+      for (double feature : features)
+        list.add(feature);
+      Assert.assertEquals(model.predict(list), table.predict(list), delta);
+    }
+  }
+
+  @Test
+  public void testRankBoost() throws Exception {
+    Random random = new Random(0);
+    RankBoost rankBoost = new RankBoost();
+    for (int i = 0; i < 2000; i++)
+      rankBoost.addLearner(new WeakLearner(random.nextInt(10), randomThreshold(random), random.nextGaussian()));
+    ThresholdTable table = new ThresholdTable(rankBoost);
+    Assert.assertEquals(rankBoost.getNumFeatures(), table.getNumFeatures());
+    //Summed in another order than the learners.
+    assertScores(rankBoost, table, randomFeatures(random, 300, 10), 1e-10);
+  }
+
+  @Test
+  public void testAdaBoost() throws Exception {
+    Random random = new Random(1);
+    AdaBoost read = new AdaBoost();
+    AdaBoost trained = new AdaBoost();
+    for (int i = 0; i < 501; i++) {
+      int fid = random.nextInt(8);
+      double threshold = randomThreshold(random);
+      read.addLearner(new WeakLearner(fid, threshold, 1d));
+      trained.addLearner(new AdaWeakLearner(fid, threshold, 1d));
+    }
+    //Votes are the same.
+    List<double[]> docs = randomFeatures(random, 300, 8);
+    assertScores(read, new ThresholdTable(read), docs, 0d);
+    assertScores(trained, new ThresholdTable(trained), docs, 0d);
+  }
+
+  @Test
+  public void testReadScorer() throws Exception {
+    String model = "{\n  \"config\" : {\n    \"algorithm\" : \"RankBoost\",\n    \"params\" : {\n      \"numSteps\" : 0\n    }\n  },\n" +
+        "  \"features\" : [ 0, 2, 1, 0 ],\n  \"thresholds\" : [ 0.5, 0.25, 0.75, 0.5 ],\n  \"weights\" : [ 0.3, 0.6, -0.2, 0.1 ]\n}";
+    Ranker ranker = Ranker.RankerFactory.getFromModel(new StringReader(model));
+    Assert.assertTrue(ranker instanceof ThresholdTable);
+    RankBoost rankBoost = new RankBoost(new StringReader(model));
+    for (double[] features : randomFeatures(new Random(2), 50, 3))
+      Assert.assertEquals(rankBoost.predict(features), ranker.predict(features), 1e-12);
+
+    //The table writes the learners it was made of.
+    RankBoost.RankBoostConfig config = new RankBoost.RankBoostConfig();
+    config.algorithm = "RankBoost";
+    StringWriter expected = new StringWriter();
+    rankBoost.writeModel(config, expected);
+    StringWriter written = new StringWriter();
+    ranker.writeModel(config, written);
+    Assert.assertEquals(expected.toString(), written.toString());
+
+    String learners = model.replace("\"numSteps\" : 0", "\"numSteps\" : 0,\n      \"scorer\" : \"learners\"");
+    Assert.assertEquals(RankBoost.class, Ranker.RankerFactory.getFromModel(new StringReader(learners)).getClass());
+    Assert.assertEquals(AdaBoost.class,
+        Ranker.RankerFactory.getFromModel(new StringReader(learners.replace("RankBoost", "AdaBoost"))).getClass());
+    Assert.assertTrue(Ranker.RankerFactory.getFromModel(new StringReader(model.replace("RankBoost", "AdaBoost"))) instanceof ThresholdTable);
+  }
+}
@@ -0,0 +1,97 @@
+package org.ltr4l.boosting;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TreeSamplerTest {
+
+  private static final int[] QUERY_STARTS = {0, 10, 25, 30, 50, 60};
+
+  @Test
+  public void testNoSampling() throws Exception {
+    TreeSampler sampler = new TreeSampler(QUERY_STARTS, 8, 1d, 1d, 1d, 1d, 0L);
+    Assert.assertFalse(sampler.samplesRows());
+    Assert.assertFalse(sampler.samplesFeatures());
+    sampler.nextTree();
+    for (int row = 0; row < 60; row++)
+      Assert.assertTrue(sampler.isInBag(row));
+    Assert.assertNull(sampler.getTreeFeatures());
+    Assert.assertNull(sampler.getSplitFeatures(3));
+  }
+
+  @Test
+  public void testQuerySubsample() throws Exception {
+    TreeSampler sampler = new TreeSampler(QUERY_STARTS, 8, 1d, 0.6, 1d, 1d, 1L);
+    for (int t = 0; t < 10; t++) {
+      sampler.nextTree();
+      int numQueries = 0;
+      for (int q = 0; q < QUERY_STARTS.length - 1; q++) {
+        //Queries are sampled as a whole.
+        boolean inBag = sampler.isInBag(QUERY_STARTS[q]);
+        for (int row = QUERY_STARTS[q]; row < QUERY_STARTS[q + 1]; row++)
+          Assert.assertEquals(inBag, sampler.isInBag(row));
+        if (inBag) numQueries++;
+      }
+      Assert.assertEquals(3, numQueries);
+    }
+  }
+
+  @Test
+  public void testSubsample() throws Exception {
+    TreeSampler sampler = new TreeSampler(QUERY_STARTS, 8, 0.25, 1d, 1d, 1d, 2L);
+    sampler.nextTree();
+    int numRows = 0;
+    for (int row = 0; row < 60; row++)
+      if (sampler.isInBag(row)) numRows++;
+    Assert.assertEquals(15, numRows);
+  }
+
+  @Test
+  public void testFeatures() throws Exception {
+    TreeSampler sampler = new TreeSampler(QUERY_STARTS, 20, 1d, 1d, 0.5, 0.4, 3L);
+    sampler.nextTree();
+    int[] treeFeatures = sampler.getTreeFeatures();
+    Assert.assertEquals(10, treeFeatures.length);
+    for (int leafId = 0; leafId < 7; leafId++) {
+      int[] splitFeatures = sampler.getSplitFeatures(leafId);
+      Assert.assertEquals(4, splitFeatures.length);
+      for (int i = 0; i < splitFeatures.length; i++) {
+        Assert.assertTrue(Arrays.binarySearch(treeFeatures, splitFeatures[i]) >= 0);
+        Assert.assertTrue(i == 0 || splitFeatures[i] > splitFeatures[i - 1]);
+      }
+      //The features of a leaf do not depend on when they are asked for.
+      Assert.assertArrayEquals(splitFeatures, sampler.getSplitFeatures(leafId));
+    }
+  }
+
+  @Test
+  public void testSeed() throws Exception {
+    TreeSampler sampler1 = new TreeSampler(QUERY_STARTS, 20, 0.5, 0.8, 0.5, 0.5, 7L);
+    TreeSampler sampler2 = new TreeSampler(QUERY_STARTS, 20, 0.5, 0.8, 0.5, 0.5, 7L);
+    for (int t = 0; t < 5; t++) {
+      sampler1.nextTree();
+      sampler2.nextTree();
+      for (int row = 0; row < 60; row++)
+        Assert.assertEquals(sampler1.isInBag(row), sampler2.isInBag(row));
+      Assert.assertArrayEquals(sampler1.getTreeFeatures(), sampler2.getTreeFeatures());
+      Assert.assertArrayEquals(sampler1.getSplitFeatures(2), sampler2.getSplitFeatures(2));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidFraction() throws Exception {
+    new TreeSampler(QUERY_STARTS, 8, 1d, 1d, 0d, 1d, 0L);
+  }
+
+  @Test
+  public void testChoose() throws Exception {
+    int[] chosen = TreeSampler.choose(new Random(0L), 10, 4);
+    Assert.assertEquals(4, chosen.length);
+    for (int i = 1; i < chosen.length; i++)
+      Assert.assertTrue(chosen[i] > chosen[i - 1]);
+    Assert.assertArrayEquals(new int[]{0, 1, 2}, TreeSampler.choose(new Random(0L), 3, 3));
+  }
+}
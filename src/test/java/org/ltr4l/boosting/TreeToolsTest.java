@@ -4,11 +4,16 @@ import org.junit.Test;
 import org.junit.Assert;
 
 import org.ltr4l.query.Document;
+import org.ltr4l.query.RankedDocs;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
 
 public class TreeToolsTest {
 
@@ -44,6 +49,26 @@ public class TreeToolsTest {
     Assert.assertTrue(sortedDocs.get(4) == docList.get(3));
   }
 
+  @Test
+  public void testOrderByFeatureSparse() throws Exception{
+    double[][] docs = {
+        {0d, 2.0, 0d},
+        {-1.0, 0d, 0d},
+        {0d, 0d, -0d},
+        {3.0, 2.0, 0d},
+        {0d, -5.0, 1.0},
+        {-1.0, 0d, 0d}
+    };
+    List<Document> denseDocs = makeDocsWithFeatures(docs);
+    List<Document> sparseDocs = toSparse(denseDocs);
+    for (int feat = 0; feat < 3; feat++) {
+      List<Document> sortedDense = TreeTools.orderByFeature(denseDocs, feat);
+      List<Document> sortedSparse = TreeTools.orderByFeature(sparseDocs, feat);
+      for (int i = 0; i < docs.length; i++)
+        Assert.assertEquals(denseDocs.indexOf(sortedDense.get(i)), sparseDocs.indexOf(sortedSparse.get(i)));
+    }
+  }
+
   @Test(expected = AssertionError.class)
   public void testOrderByFeatureOutOfRange() throws Exception{
     double[][] docs = {
@@ -112,6 +137,47 @@ public class TreeToolsTest {
   }
 
 
+  @Test
+  public void testParallelSearchIsDeterministic() throws Exception{
+    Random random = new Random(5L);
+    //Few values, so that many thresholds tie.
+    List<Document> docs = randomDocs(200, 8, () -> random.nextInt(4), () -> random.nextInt(3));
+    ForkJoinPool pool = TreeTools.getPool(4);
+    try {
+      OptimalLeafLoss sequential = new RegressionTreeTools().findMinLeafThreshold(docs, 0);
+      OptimalLeafLoss parallel = new RegressionTreeTools().setPool(pool).findMinLeafThreshold(docs, 0);
+      Assert.assertEquals(sequential.getOptimalFeature(), parallel.getOptimalFeature());
+      Assert.assertEquals(sequential.getOptimalThreshold(), parallel.getOptimalThreshold(), 0d);
+      Assert.assertEquals(sequential.getMinLoss(), parallel.getMinLoss(), 0d);
+
+      RegressionTree sequentialTree = new RegressionTree(8, sequential.getOptimalFeature(), sequential.getOptimalThreshold(), docs, 0);
+      RegressionTree parallelTree = new RegressionTree(8, sequential.getOptimalFeature(), sequential.getOptimalThreshold(), docs, 0, pool);
+      Assert.assertEquals(sequentialTree.getModelInfo(RegressionTree.IntProp.ID), parallelTree.getModelInfo(RegressionTree.IntProp.ID));
+      Assert.assertEquals(sequentialTree.getModelInfo(RegressionTree.IntProp.FEATURE), parallelTree.getModelInfo(RegressionTree.IntProp.FEATURE));
+      Assert.assertEquals(sequentialTree.getModelInfo(RegressionTree.DoubleProp.THRESHOLD), parallelTree.getModelInfo(RegressionTree.DoubleProp.THRESHOLD));
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testFindOptimalLeafTie() throws Exception{
+    Map<Split, OptimalLeafLoss> leafLossMap = new HashMap<>();
+    Split leaf3 = new Split(null, docs(0, 1), 3);
+    Split leaf1 = new Split(null, docs(0, 1), 1);
+    Split leaf2 = new Split(null, docs(0, 1), 2);
+    leafLossMap.put(leaf3, new OptimalLeafLoss(0, 1.0, 0.5));
+    leafLossMap.put(leaf1, new OptimalLeafLoss(0, 1.0, 0.5));
+    leafLossMap.put(leaf2, new OptimalLeafLoss(0, 1.0, 0.7));
+    Assert.assertSame(leaf1, TreeTools.findOptimalLeaf(leafLossMap));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeNumThreads() throws Exception{
+    TreeTools.getPool(-1);
+  }
+
   public static List<Document> makeDocsWithFeatures(double[][] docFeats){
     List<Document> docs = new ArrayList<>();
     for(double[] features : docFeats){
@@ -139,5 +205,72 @@ public class TreeToolsTest {
     return docList;
   }
 
+  /**
+   * Makes dense documents whose features and labels are drawn, document by document, from the given suppliers.
+   */
+  public static List<Document> randomDocs(int numDocs, int numFeatures, DoubleSupplier feature, IntSupplier label){
+    List<Document> docs = new ArrayList<>();
+    for (int d = 0; d < numDocs; d++) {
+      double[] features = new double[numFeatures];
+      for (int f = 0; f < numFeatures; f++)
+        features[f] = feature.getAsDouble();
+      docs.add(new Document(features, label.getAsInt()));
+    }
+    return docs;
+  }
+
+  /**
+   * Makes unlabeled documents whose features are rounded to 0.1, so that they hit the thresholds of {@link QuickScorerTest#randomTrees}.
+   */
+  public static List<Document> randomDocs(Random random, int numDocs, int numFeatures){
+    return randomDocs(numDocs, numFeatures, () -> Math.round(random.nextDouble() * 10) / 10d, () -> 0);
+  }
 
+  /**
+   * Makes sparse copies of docs, which store only the features which are not 0d.
+   */
+  public static List<Document> toSparse(List<Document> docs){
+    List<Document> sparseDocs = new ArrayList<>();
+    for (Document doc : docs) {
+      double[] features = doc.toArray();
+      int count = 0;
+      for (double feature : features) if (Double.compare(feature, 0d) != 0) count++;
+      int[] indices = new int[count];
+      double[] values = new double[count];
+      int k = 0;
+      for (int i = 0; i < features.length; i++) {
+        if (Double.compare(features[i], 0d) != 0) {
+          indices[k] = i;
+          values[k++] = features[i];
+        }
+      }
+      sparseDocs.add(new Document(indices, values, features.length, doc.getLabel()));
+    }
+    return sparseDocs;
+  }
+
+  public static double[] labels(List<Document> docs){
+    double[] targets = new double[docs.size()];
+    for (int i = 0; i < targets.length; i++)
+      targets[i] = docs.get(i).getLabel();
+    return targets;
+  }
+
+  /**
+   * Makes queries of random documents and labels. Features are multiples of 1/8, so that they tie as real features do.
+   */
+  public static List<RankedDocs> randomQueries(Random random, int numQueries, int numDocs, int numFeatures, int numLabels){
+    List<RankedDocs> queries = new ArrayList<>();
+    for (int q = 0; q < numQueries; q++) {
+      double[][] docs = new double[numDocs][numFeatures];
+      int[] labels = new int[numDocs];
+      for (int d = 0; d < numDocs; d++) {
+        for (int f = 0; f < numFeatures; f++)
+          docs[d][f] = Math.round(random.nextDouble() * 8) / 8d;
+        labels[d] = random.nextInt(numLabels);
+      }
+      queries.add(new RankedDocs(addLabels(makeDocsWithFeatures(docs), labels)));
+    }
+    return queries;
+  }
 }
\ No newline at end of file
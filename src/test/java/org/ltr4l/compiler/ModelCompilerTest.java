@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.compiler;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ltr4l.Ranker;
+import org.ltr4l.boosting.AdaBoost;
+import org.ltr4l.boosting.Ensemble;
+import org.ltr4l.boosting.FlatEnsemble;
+import org.ltr4l.boosting.QuickScorer;
+import org.ltr4l.boosting.RankBoost;
+import org.ltr4l.boosting.ThresholdTable;
+import org.ltr4l.boosting.TreeToolsTest;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.FeatureMatrix;
+import org.ltr4l.query.Query;
+import org.ltr4l.query.QuerySet;
+import org.ltr4l.tools.Config;
+import org.ltr4l.tools.RandomDataGenerator;
+import org.ltr4l.trainers.AbstractTrainer;
+import org.ltr4l.trainers.PRankTrainer;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Random;
+
+public class ModelCompilerTest {
+  private static final String LAMBDAMART_CONFIG = "{\n" +
+      "  \"algorithm\" : \"LambdaMart\",\n" +
+      "  \"numIterations\" : 20,\n" +
+      "  \"params\" : {\n" +
+      "    \"numTrees\" : 20,\n" +
+      "    \"numLeaves\" : 8,\n" +
+      "    \"learningRate\" : 0.1\n" +
+      "  },\n" +
+      "  \"evaluation\" : {\n" +
+      "    \"evaluator\" : \"NDCG\",\n" +
+      "    \"params\" : {\n" +
+      "      \"k\" : 10\n" +
+      "    }\n" +
+      "  }\n" +
+      "}";
+
+  private static void assertSameScores(Ranker expected, Ranker compiled, List<Document> docs) {
+    Assert.assertTrue(compiled instanceof CompiledRanker);
+    for (Document doc : docs) {
+      double[] features = doc.toArray();
+      Assert.assertEquals(expected.predict(features), compiled.predict(features), 0d);
+      Assert.assertEquals(expected.predict(features), compiled.predict(doc), 0d);
+      Assert.assertEquals(expected.predict(features), compiled.predict(doc.getFeatures()), 0d);
+    }
+  }
+
+  private static List<Document> randomDocs(int numDocs, int numFeatures, long seed) {
+    Random random = new Random(seed);
+    List<Document> docs = TreeToolsTest.randomDocs(numDocs, numFeatures, () -> random.nextInt(5) == 0 ? 0.5 : random.nextDouble(), () -> 0);
+    docs.get(0).setFeature(0, Double.NaN);
+    return docs;
+  }
+
+  //Makes a RankBoost model of random weak learners.
+  private static String boostModel(int numLearners, int numFeatures, long seed) {
+    Random random = new Random(seed);
+    StringBuilder features = new StringBuilder();
+    StringBuilder thresholds = new StringBuilder();
+    StringBuilder weights = new StringBuilder();
+    for (int i = 0; i < numLearners; i++) {
+      String separator = i == 0 ? "" : ", ";
+      features.append(separator).append(random.nextInt(numFeatures));
+      thresholds.append(separator).append(random.nextInt(5) == 0 ? 0.5 : random.nextDouble());
+      weights.append(separator).append(random.nextGaussian());
+    }
+    return "{\"features\" : [" + features + "], \"thresholds\" : [" + thresholds + "], \"weights\" : [" + weights + "]}";
+  }
+
+  @Test
+  public void testEnsemble() throws Exception {
+    RandomDataGenerator rdg = new RandomDataGenerator(3, 2);
+    QuerySet trainSet = rdg.getRandomQuerySet(4, 20, 2);
+    QuerySet validSet = rdg.getRandomQuerySet(2, 10, 2);
+    AbstractTrainer trainer = AbstractTrainer.TrainerFactory.getTrainer(trainSet, validSet,
+        new StringReader(LAMBDAMART_CONFIG), null);
+    trainer.trainAndValidate();
+    Ensemble ensemble = (Ensemble) trainer.getRanker();
+    List<Document> docs = randomDocs(200, 3, 0);
+
+    assertSameScores(ensemble, ModelCompiler.compile(ensemble), docs);
+    assertSameScores(ensemble, ModelCompiler.compile(new FlatEnsemble(ensemble)), docs);
+    assertSameScores(ensemble, ModelCompiler.compile(new QuickScorer(ensemble)), docs);
+
+    Ranker compiled = ModelCompiler.compile(ensemble);
+    FeatureMatrix matrix = FeatureMatrix.of(validSet.getQueries());
+    Assert.assertArrayEquals(ensemble.predictBatch(matrix), compiled.predictBatch(matrix), 0d);
+    for (Query query : validSet.getQueries())
+      Assert.assertArrayEquals(ensemble.predictBatch(query), compiled.predictBatch(query), 0d);
+
+    //The model is written by the ensemble it was compiled from.
+    Ensemble.TreeConfig config = new Ensemble.TreeConfig();
+    config.algorithm = "LambdaMart";
+    Writer expected = new StringWriter();
+    ensemble.writeModel(config, expected);
+    Writer written = new StringWriter();
+    compiled.writeModel(config, written);
+    Assert.assertEquals(expected.toString(), written.toString());
+
+    Ranker read = Ranker.RankerFactory.getFromModel(new StringReader(written.toString()), true);
+    assertSameScores(ensemble, read, docs);
+    Assert.assertTrue(((CompiledRanker) read).getRanker() instanceof FlatEnsemble);
+  }
+
+  @Test
+  public void testRankBoost() throws Exception {
+    RankBoost rankBoost = new RankBoost(new StringReader(boostModel(50, 6, 1)));
+    assertSameScores(rankBoost, ModelCompiler.compile(rankBoost), randomDocs(200, 6, 1));
+    //A table is compiled from its learners.
+    assertSameScores(rankBoost, ModelCompiler.compile(new ThresholdTable(rankBoost)), randomDocs(200, 6, 1));
+  }
+
+  @Test
+  public void testAdaBoost() throws Exception {
+    AdaBoost adaBoost = new AdaBoost(new StringReader(boostModel(51, 6, 2)));
+    assertSameScores(adaBoost, ModelCompiler.compile(adaBoost), randomDocs(200, 6, 2));
+  }
+
+  @Test
+  public void testLargeModel() throws Exception {
+    //Spread over several methods and nested classes.
+    RankBoost rankBoost = new RankBoost(new StringReader(boostModel(5000, 30, 3)));
+    ModelCompiler.SourceBuilder source = ModelCompiler.generateSource(rankBoost);
+    Assert.assertTrue(source.toString().contains("static final class P1 "));
+    assertSameScores(rankBoost, ModelCompiler.compile(rankBoost), randomDocs(100, 30, 3));
+  }
+
+  @Test
+  public void testPRank() throws Exception {
+    PRankTrainer.PRank prank = new PRankTrainer.PRank(4, 3);
+    Random random = new Random(4);
+    for (int i = 0; i < prank.getWeights().length; i++)
+      prank.getWeights()[i] = random.nextGaussian();
+    prank.getThresholds()[0] = -0.5;
+    prank.getThresholds()[1] = 0d;
+    prank.getThresholds()[2] = 0.5;
+    assertSameScores(prank, ModelCompiler.compile(prank), randomDocs(200, 4, 4));
+  }
+
+  @Test
+  public void testNotSupported() throws Exception {
+    Ranker<Config> ranker = new Ranker<Config>() {
+      @Override
+      public void writeModel(Config config, Writer writer) {
+      }
+
+      @Override
+      public double predict(List<Double> features) {
+        return 0d;
+      }
+    };
+    Assert.assertFalse(ModelCompiler.isSupported(ranker));
+    Assert.assertSame(ranker, ModelCompiler.compile(ranker));
+  }
+
+  @Test
+  public void testLiteral() throws Exception {
+    Assert.assertEquals("0.1d", ModelCompiler.literal(0.1));
+    Assert.assertEquals("-0.0d", ModelCompiler.literal(-0d));
+    Assert.assertEquals("1.0E-300d", ModelCompiler.literal(1e-300));
+    Assert.assertEquals("Double.NaN", ModelCompiler.literal(Double.NaN));
+    Assert.assertEquals("Double.NEGATIVE_INFINITY", ModelCompiler.literal(Double.NEGATIVE_INFINITY));
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.evaluation;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ltr4l.Ranker;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.Query;
+import org.ltr4l.tools.Config;
+
+public class MetricSetTest {
+
+  //Scores documents by their first feature.
+  private static class FirstFeatureRanker extends Ranker<Config> {
+    private final boolean threadSafe;
+
+    FirstFeatureRanker(boolean threadSafe) {
+      this.threadSafe = threadSafe;
+    }
+
+    @Override
+    public void writeModel(Config config, Writer writer) {
+    }
+
+    @Override
+    public double predict(List<Double> features) {
+      return features.get(0);
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+      return threadSafe;
+    }
+  }
+
+  private static List<Query> queries(int numQueries, long seed) {
+    Random random = new Random(seed);
+    List<Query> queries = new ArrayList<>();
+    for (int q = 0; q < numQueries; q++) {
+      List<Document> docs = new ArrayList<>();
+      int numDocs = 1 + random.nextInt(30);
+      for (int d = 0; d < numDocs; d++)
+        docs.add(new Document(new double[]{random.nextDouble()}, random.nextInt(4)));
+      queries.add(new Query(docs, q));
+    }
+    return queries;
+  }
+
+  @Test
+  public void testNames() {
+    MetricSet metrics = MetricSet.of("NDCG@5", " map", "precision@1");
+    Assert.assertEquals(Arrays.asList("ndcg@5", "map", "precision@1"), metrics.getNames());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadName() {
+    MetricSet.of("ndcg@5", "MyGreatestEvaluator!");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadCutoff() {
+    MetricSet.of("ndcg@0");
+  }
+
+  @Test
+  public void testEvaluateQuery() {
+    MetricSet metrics = MetricSet.of("dcg@3", "ndcg@3", "precision@2", "map", "mrr");
+    int[] labels = {3, 2, 3, 0, 1, 2};
+    Query query = new Query(DCGTest.docs(labels), 0);
+    double[] values = metrics.evaluate(query, labels);
+    List<Document> ranked = DCGTest.docs(labels);
+    Assert.assertEquals(new DCG().calculate(ranked, 3), values[0], 0.0000001);
+    Assert.assertEquals(new DCG.NDCG().calculate(ranked, 3), values[1], 0.0000001);
+    Assert.assertEquals(new Precision().calculate(ranked, 2), values[2], 0.0000001);
+    Assert.assertEquals(new Precision.AP().calculate(ranked, 0), values[3], 0.0000001);
+    Assert.assertEquals(new MRR().calculate(ranked, 0), values[4], 0.0000001);
+  }
+
+  @Test
+  public void testEvaluateMatchesRankEval() {
+    List<Query> queries = queries(50, 7L);
+    String[] names = {"dcg", "ndcg", "precision", "map", "wap", "mrr"};
+    List<String> metricNames = new ArrayList<>();
+    for (String name : names)
+      metricNames.add(name + "@5");
+    MetricSet metrics = new MetricSet(metricNames);
+
+    for (boolean threadSafe : new boolean[]{true, false}) {
+      Ranker ranker = new FirstFeatureRanker(threadSafe);
+      double[] values = metrics.evaluate(ranker, queries);
+      for (int m = 0; m < names.length; m++) {
+        double expected = RankEval.RankEvalFactory.get(names[m]).calculateAvgAllQueries(ranker, queries, 5);
+        Assert.assertEquals(names[m], expected, values[m], 0.0000001);
+      }
+      //The ideal ranking is cached after the first call.
+      Assert.assertArrayEquals(values, metrics.evaluate(ranker, queries), 0d);
+    }
+  }
+
+  @Test
+  public void testEvaluateScores() {
+    List<Query> queries = queries(50, 11L);
+    MetricSet metrics = MetricSet.of("ndcg@3", "ndcg", "precision@5", "map");
+    Ranker ranker = new FirstFeatureRanker(true);
+    double[][] scores = new double[queries.size()][];
+    for (int q = 0; q < scores.length; q++)
+      scores[q] = ranker.predictBatch(queries.get(q));
+    Assert.assertArrayEquals(metrics.evaluate(ranker, queries), metrics.evaluate(queries, scores), 0d);
+  }
+}
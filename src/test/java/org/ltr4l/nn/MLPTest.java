@@ -18,6 +18,7 @@ package org.ltr4l.nn;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.ltr4l.query.Document;
 import org.ltr4l.tools.Regularization;
 
 public class MLPTest extends MLPTestBase<MLP.MNode, MLP.Edge> {
@@ -159,4 +160,17 @@ public class MLPTest extends MLPTestBase<MLP.MNode, MLP.Edge> {
     Assert.assertTrue(inputEdge10.getOptimizer() instanceof Optimizer.SGD);
     Assert.assertTrue(inputEdge11.getOptimizer() instanceof Optimizer.SGD);
   }
+
+  @Test
+  public void testForwardPropSparse() throws Exception {
+    MLP mlp = new MLP(5, NetworkShape.parseSetting("3,Sigmoid 1,Identity"),
+        new Optimizer.SGDFactory(), new Regularization.L2(), WeightInitializer.Type.normal.name());
+    Document dense = new Document(new double[]{0d, 1.5, 0d, 0d, -2.0}, 1);
+    Document sparse = new Document(new int[]{1, 4}, new double[]{1.5, -2.0}, 5, 1);
+    mlp.forwardProp(new Document(new double[]{1d, 1d, 1d, 1d, 1d}, 0)); //Inputs must be reset by the sparse path.
+    double expected = mlp.forwardProp(dense);
+    Assert.assertEquals(expected, mlp.forwardProp(sparse), 1e-12);
+    for (int i = 0; i < 5; i++)
+      Assert.assertEquals(dense.getFeature(i), mlp.getNode(0, i).getOutput(), 0.0);
+  }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.query;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+public class DatasetCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final String DATA = "2 qid:1 1:0.1 2:0.2 3:0.3\n" +
+      "0 qid:1 1:0.4 2:0.5 3:0.6\n" +
+      "1 qid:7 1:0.7 2:0.8 3:0.9 #docid = 3\n";
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    File source = folder.newFile("train.txt");
+    Files.write(source.toPath(), DATA.getBytes(StandardCharsets.UTF_8));
+    File cache = DatasetCache.getCacheFile(source.getPath());
+
+    QuerySet parsed = QuerySet.create(source.getPath());
+    Assert.assertTrue(cache.isFile());
+    Assert.assertTrue(DatasetCache.isValid(source, cache));
+
+    QuerySet cached = DatasetCache.read(cache);
+    List<Query> expected = parsed.getQueries();
+    List<Query> actual = cached.getQueries();
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int q = 0; q < expected.size(); q++) {
+      Assert.assertEquals(expected.get(q).getQueryId(), actual.get(q).getQueryId());
+      Assert.assertEquals(expected.get(q).getFeatureLength(), actual.get(q).getFeatureLength());
+      List<Document> expDocs = expected.get(q).getDocList();
+      List<Document> actDocs = actual.get(q).getDocList();
+      Assert.assertEquals(expDocs.size(), actDocs.size());
+      for (int d = 0; d < expDocs.size(); d++) {
+        Assert.assertEquals(expDocs.get(d).getLabel(), actDocs.get(d).getLabel());
+        Assert.assertArrayEquals(expDocs.get(d).toArray(), actDocs.get(d).toArray(), 0.0);
+      }
+    }
+    Assert.assertSame(cached.getFeatureMatrix(), actual.get(0).getDocList().get(0).getFeatureMatrix());
+  }
+
+  @Test
+  public void testStaleCache() throws Exception {
+    File source = folder.newFile("train.txt");
+    Files.write(source.toPath(), DATA.getBytes(StandardCharsets.UTF_8));
+    File cache = DatasetCache.getCacheFile(source.getPath());
+    QuerySet.create(source.getPath());
+    Assert.assertTrue(DatasetCache.isValid(source, cache));
+
+    Files.write(source.toPath(), (DATA + "0 qid:8 1:1.0 2:1.0 3:1.0\n").getBytes(StandardCharsets.UTF_8));
+    Assert.assertFalse(DatasetCache.isValid(source, cache));
+    Assert.assertEquals(3, QuerySet.create(source.getPath()).getQueries().size());
+  }
+
+  @Test
+  public void testTouchedSource() throws Exception {
+    File source = folder.newFile("train.txt");
+    Files.write(source.toPath(), DATA.getBytes(StandardCharsets.UTF_8));
+    File cache = DatasetCache.getCacheFile(source.getPath());
+    QuerySet.create(source.getPath());
+    //Same content, newer time: the checksum decides.
+    Assert.assertTrue(source.setLastModified(cache.lastModified() + 10000));
+    Assert.assertTrue(DatasetCache.isValid(source, cache));
+
+    //Same size, other content.
+    Files.write(source.toPath(), DATA.replace("0.9", "0.8").getBytes(StandardCharsets.UTF_8));
+    Assert.assertTrue(source.setLastModified(cache.lastModified() + 20000));
+    Assert.assertFalse(DatasetCache.isValid(source, cache));
+  }
+
+  @Test
+  public void testNoCache() throws Exception {
+    File source = folder.newFile("train.txt");
+    Files.write(source.toPath(), DATA.getBytes(StandardCharsets.UTF_8));
+    QuerySet.create(source.getPath(), false);
+    Assert.assertFalse(DatasetCache.getCacheFile(source.getPath()).exists());
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.query;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class DocPairsTest {
+
+  private static List<Document> makeDocs(int... labels) {
+    List<Document> docs = new ArrayList<>();
+    for (int label : labels)
+      docs.add(new Document(new double[]{label}, label));
+    return docs;
+  }
+
+  @Test
+  public void testSameAsOrderDocPairs() throws Exception {
+    List<Document> docs = makeDocs(0, 2, 1, 0, 2, 3, 1, 0);
+    Query query = new Query(docs);
+    Document[][] expected = query.orderDocPairs();
+    DocPairs pairs = query.getDocPairs();
+    Assert.assertEquals(expected.length, pairs.size());
+
+    Set<String> expectedSet = new HashSet<>();
+    for (Document[] pair : expected)
+      expectedSet.add(docs.indexOf(pair[0]) + "-" + docs.indexOf(pair[1]));
+    Set<String> actualSet = new HashSet<>();
+    pairs.forEach((higher, lower) -> {
+      Assert.assertTrue(docs.get(higher).getLabel() > docs.get(lower).getLabel());
+      actualSet.add(higher + "-" + lower);
+    });
+    Assert.assertEquals(expectedSet, actualSet);
+
+    int count = 0;
+    for (int p = 0; p < pairs.getNumDocs(); p++) {
+      for (int q = pairs.getLowerStart(p); q < pairs.getNumDocs(); q++) {
+        Assert.assertTrue(pairs.getDocument(p).getLabel() > pairs.getDocument(q).getLabel());
+        Assert.assertSame(docs.get(pairs.getDocIndex(q)), pairs.getDocument(q));
+        count++;
+      }
+    }
+    Assert.assertEquals(pairs.size(), count);
+  }
+
+  @Test
+  public void testNoPairs() throws Exception {
+    DocPairs pairs = new Query(makeDocs(1, 1, 1)).getDocPairs();
+    Assert.assertTrue(pairs.isEmpty());
+    Assert.assertEquals(0, pairs.size());
+    for (int p = 0; p < pairs.getNumDocs(); p++)
+      Assert.assertEquals(3, pairs.getLowerStart(p));
+    Assert.assertNull(new Query(makeDocs(1, 1, 1)).orderDocPairs());
+  }
+}
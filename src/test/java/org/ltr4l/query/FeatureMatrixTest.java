@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.query;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class FeatureMatrixTest {
+
+  private QuerySet parse(String data) throws Exception {
+    QuerySet querySet = new QuerySet();
+    try (StringReader sr = new StringReader(data)) {
+      querySet.parseQueries(sr);
+    }
+    return querySet;
+  }
+
+  @Test
+  public void testLayout() throws Exception {
+    QuerySet querySet = parse("2 qid:1 1:0.1 2:0.2 3:0.3\n" +
+        "0 qid:1 1:0.4 2:0.5 3:0.6\n" +
+        "1 qid:7 1:0.7 2:0.8 3:0.9\n");
+    FeatureMatrix matrix = querySet.getFeatureMatrix();
+    Assert.assertEquals(3, matrix.getNumFeatures());
+    Assert.assertEquals(3, matrix.getNumDocs());
+    Assert.assertEquals(2, matrix.getNumQueries());
+    Assert.assertEquals(0, matrix.getQueryStart(0));
+    Assert.assertEquals(2, matrix.getQueryEnd(0));
+    Assert.assertEquals(3, matrix.getQueryEnd(1));
+    Assert.assertEquals(7, matrix.getQueryId(1));
+    Assert.assertArrayEquals(new int[]{2, 0, 1}, matrix.getLabels());
+
+    double[] rows = matrix.getRowMajor();
+    double[] columns = matrix.getFeatureMajor();
+    for (int d = 0; d < 3; d++) {
+      for (int f = 0; f < 3; f++) {
+        double expected = (d * 3 + f + 1) / 10.0;
+        Assert.assertEquals(expected, matrix.get(d, f), 0.0);
+        Assert.assertEquals(expected, rows[d * 3 + f], 0.0);
+        Assert.assertEquals(expected, columns[f * 3 + d], 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testDocumentsAreViews() throws Exception {
+    QuerySet querySet = parse("2 qid:1 1:0.1 2:0.2\n" +
+        "0 qid:1 1:0.4 2:0.5\n");
+    FeatureMatrix matrix = querySet.getFeatureMatrix();
+    List<Document> docs = querySet.getQueries().get(0).getDocList();
+    Assert.assertSame(matrix, docs.get(1).getFeatureMatrix());
+    Assert.assertEquals(1, docs.get(1).getOrdinal());
+
+    matrix.getFeatureMajor();
+    docs.get(1).setFeature(0, 9.0);
+    docs.get(1).setLabel(4);
+    Assert.assertEquals(9.0, matrix.get(1, 0), 0.0);
+    Assert.assertEquals(9.0, matrix.getFeatureMajor()[1], 0.0); //rebuilt after the change.
+    Assert.assertEquals(4, matrix.getLabel(1));
+    Assert.assertEquals(9.0, docs.get(1).getFeatures().get(0), 0.0);
+  }
+
+  @Test (expected = IllegalStateException.class)
+  public void testAddFeatureToBoundDocument() throws Exception {
+    QuerySet querySet = parse("2 qid:1 1:0.1 2:0.2\n");
+    querySet.getQueries().get(0).getDocList().get(0).addFeature(1.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooLarge() throws Exception {
+    List<Document> docs = new ArrayList<>();
+    for (int d = 0; d < 3; d++)
+      docs.add(new Document(new int[0], new double[0], 1 << 30, 0));  //Sparse, so only the matrix would be large.
+    FeatureMatrix.of(Collections.singletonList(new Query(docs)));
+  }
+}
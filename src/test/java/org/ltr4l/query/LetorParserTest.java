@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.query;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+public class LetorParserTest {
+
+  private static String makeData(int numLines) {
+    Random random = new Random(7);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < numLines; i++) {
+      sb.append(random.nextInt(3)).append(" qid:").append(random.nextInt(20));
+      for (int f = 1; f <= 5; f++) {
+        double v = random.nextDouble() * Math.pow(10, random.nextInt(8) - 4);
+        String value = f == 5 ? Double.toString(-v) : String.format("%.6f", v);
+        sb.append(' ').append(f).append(':').append(value);
+      }
+      sb.append(i % 2 == 0 ? " #docid = " + i + "\n" : "\r\n");
+    }
+    return sb.toString();
+  }
+
+  private static void assertSameQueries(QuerySet expected, QuerySet actual) {
+    List<Query> expQueries = expected.getQueries();
+    List<Query> actQueries = actual.getQueries();
+    Assert.assertEquals(expQueries.size(), actQueries.size());
+    for (int q = 0; q < expQueries.size(); q++) {
+      Assert.assertEquals(expQueries.get(q).getQueryId(), actQueries.get(q).getQueryId());
+      List<Document> expDocs = expQueries.get(q).getDocList();
+      List<Document> actDocs = actQueries.get(q).getDocList();
+      Assert.assertEquals(expDocs.size(), actDocs.size());
+      for (int d = 0; d < expDocs.size(); d++) {
+        Assert.assertEquals(expDocs.get(d).getLabel(), actDocs.get(d).getLabel());
+        Assert.assertArrayEquals(expDocs.get(d).toArray(), actDocs.get(d).toArray(), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testSameAsReaderParser() throws Exception {
+    String data = makeData(500);
+    QuerySet expected = new QuerySet();
+    expected.parseQueries(new StringReader(data));
+
+    QuerySet actual = new QuerySet();
+    LetorParser parser = new LetorParser(4, 256); //Small chunks so that lines cross chunk borders.
+    actual.parseQueries(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), parser);
+    assertSameQueries(expected, actual);
+    Assert.assertEquals(500, parser.getLines());
+    Assert.assertEquals(data.length(), parser.getBytes());
+  }
+
+  @Test
+  public void testGzip() throws Exception {
+    String data = makeData(100);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+      gos.write(data.getBytes(StandardCharsets.UTF_8));
+    }
+    QuerySet expected = new QuerySet();
+    expected.parseQueries(new StringReader(data));
+    QuerySet actual = new QuerySet();
+    actual.parseQueries(new ByteArrayInputStream(bos.toByteArray()));
+    assertSameQueries(expected, actual);
+  }
+
+  @Test
+  public void testLongLine() throws Exception {
+    String data = "1 qid:3 1:0.5 2:1e-3 3:12345678901234567890 4:.25 5:-0\n";
+    QuerySet querySet = new QuerySet();
+    querySet.parseQueries(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), new LetorParser(2, 8));
+    Document doc = querySet.getQueries().get(0).getDocList().get(0);
+    Assert.assertArrayEquals(new double[]{0.5, 1e-3, 12345678901234567890.0, 0.25, -0.0}, doc.toArray(), 0.0);
+  }
+
+  @Test (expected = NumberFormatException.class)
+  public void testInvalidNumber() throws Exception {
+    String data = "0 qid:1 1:5.000000ab 2:3.465736\n";
+    new QuerySet().parseQueries(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test (expected = NumberFormatException.class)
+  public void testNoQid() throws Exception {
+    String data = "0 qid1 15.000000 23.465736\n";
+    new QuerySet().parseQueries(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -70,6 +70,48 @@ public class QuerySetTest {
     }
   }
 
+  @Test
+  public void testParseFeatureIds() throws Exception{
+    StringReader sr = new StringReader("1 qid:1 3:0.5 1:0.25 #docid = 1\n" +
+        "2 qid:1 1:1.0 2:2.0 3:3.0 4:4.0\n");
+    QuerySet querySet = new QuerySet();
+    querySet.parseQueries(sr);
+    List<Document> docs = querySet.getQueries().get(0).getDocList();
+    Assert.assertEquals(4, querySet.getFeatureLength());
+    Assert.assertArrayEquals(new double[]{0.25, 0d, 0.5, 0d}, docs.get(0).toArray(), 0.0);
+    Assert.assertArrayEquals(new double[]{1.0, 2.0, 3.0, 4.0}, docs.get(1).toArray(), 0.0);
+    Assert.assertFalse(querySet.isSparse());
+  }
+
+  @Test
+  public void testParseSparse() throws Exception{
+    StringReader sr = new StringReader("1 qid:1 2:0.5 #docid = 1\n" +
+        "0 qid:2 100:2.0\n");
+    QuerySet querySet = new QuerySet();
+    querySet.parseQueries(sr);
+    Assert.assertTrue(querySet.isSparse());
+    Assert.assertEquals(100, querySet.getFeatureLength());
+    Document doc1 = querySet.getQueries().get(0).getDocList().get(0);
+    Document doc2 = querySet.getQueries().get(1).getDocList().get(0);
+    Assert.assertEquals(100, doc1.getFeatureLength());
+    Assert.assertEquals(1, doc1.getNumStored());
+    Assert.assertEquals(1, doc1.getStoredIndex(0));
+    Assert.assertEquals(0.5, doc1.getFeature(1), 0.0);
+    Assert.assertEquals(0d, doc1.getFeature(99), 0.0);
+    Assert.assertEquals(2.0, doc2.getFeature(99), 0.0);
+    Assert.assertEquals(2.0, doc2.getFeatures().get(99), 0.0);
+
+    doc1.setFeature(50, 3.0);
+    Assert.assertEquals(2, doc1.getNumStored());
+    Assert.assertEquals(3.0, doc1.getFeature(50), 0.0);
+  }
+
+  @Test (expected = NumberFormatException.class)
+  public void testParseFeatureIdZero() throws Exception{
+    StringReader sr = new StringReader("1 qid:1 0:0.5 1:0.25\n");
+    new QuerySet().parseQueries(sr);
+  }
+
   @Test
   public void testFindMaxLabel() throws Exception {
     StringReader sr = new StringReader("0 qid:1 1:5.000000 2:3.465736 3:0.500000 4:0.476551 #docid = 244338\n" +
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.query;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class QueryStreamTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File writeData(int numQueries, int docsPerQuery) throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int q = 0; q < numQueries; q++) {
+      for (int d = 0; d < docsPerQuery; d++) {
+        sb.append(d % 3).append(" qid:").append(q + 1);
+        int numFeatures = q == 3 ? 5 : 3;  //Query 4 has more features than the others.
+        for (int f = 1; f <= numFeatures; f++)
+          sb.append(' ').append(f).append(':').append(q + d * 0.1 + f * 0.01);
+        sb.append('\n');
+      }
+    }
+    File file = folder.newFile();
+    Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  @Test
+  public void testIterateInFileOrder() throws Exception {
+    File file = writeData(10, 4);
+    QueryStream stream = new QueryStream(file.getPath(), 0, 0L, 64); //Small chunks so that queries cross chunk borders.
+    Assert.assertEquals(5, stream.getFeatureLength());
+    int qid = 1;
+    for (Query query : stream) {
+      Assert.assertEquals(qid, query.getQueryId());
+      Assert.assertEquals(4, query.getDocList().size());
+      Assert.assertEquals(5, query.getFeatureLength());
+      for (Document doc : query.getDocList())
+        Assert.assertEquals(5, doc.getFeatureLength());
+      Assert.assertEquals(qid - 1 + 0.01, query.getDocList().get(0).getFeature(0), 1e-9);
+      qid++;
+    }
+    Assert.assertEquals(11, qid);
+
+    qid = 1;
+    for (Query query : stream)  //Can be iterated again, e.g. for the next epoch.
+      Assert.assertEquals(qid++, query.getQueryId());
+    Assert.assertEquals(11, qid);
+  }
+
+  @Test
+  public void testShuffle() throws Exception {
+    File file = writeData(50, 2);
+    QueryStream stream = new QueryStream(file.getPath(), 10, 1L, 64);
+    List<Integer> order = new ArrayList<>();
+    for (Query query : stream)
+      order.add(query.getQueryId());
+    Assert.assertEquals(50, order.size());
+    Assert.assertEquals(50, new HashSet<>(order).size());
+    List<Integer> fileOrder = new ArrayList<>();
+    for (int i = 1; i <= 50; i++) fileOrder.add(i);
+    Assert.assertNotEquals(fileOrder, order);
+  }
+
+  @Test
+  public void testSample() throws Exception {
+    File file = writeData(30, 3);
+    QueryStream stream = new QueryStream(file.getPath(), 0, 2L);
+    List<Query> sample = stream.sample(5);
+    Assert.assertEquals(5, sample.size());
+    Set<Integer> qids = new HashSet<>();
+    int previous = 0;
+    for (Query query : sample) {
+      Assert.assertTrue(query.getQueryId() > previous);  //File order.
+      previous = query.getQueryId();
+      qids.add(query.getQueryId());
+      Assert.assertEquals(5, query.getFeatureLength());
+    }
+    Assert.assertEquals(5, qids.size());
+    Assert.assertEquals(30, stream.sample(100).size());
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ltr4l.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.Assert;
+import org.junit.Test;
+import org.ltr4l.Ranker;
+import org.ltr4l.nn.RankNetMLP;
+import org.ltr4l.trainers.MLPTrainer;
+import org.ltr4l.trainers.PRankTrainer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class BinaryModelTest {
+  private static final String MODEL = "{\n" +
+      "  \"config\" : {\n" +
+      "    \"algorithm\" : \"LambdaMart\",\n" +
+      "    \"verbose\" : true,\n" +
+      "    \"nomodel\" : false,\n" +
+      "    \"params\" : {\n" +
+      "      \"numTrees\" : 2,\n" +
+      "      \"learningRate\" : 0.05,\n" +
+      "      \"seed\" : 12345678901\n" +
+      "    },\n" +
+      "    \"report\" : null\n" +
+      "  },\n" +
+      "  \"treeModels\" : [ {\n" +
+      "    \"leafIds\" : [ 0, 1, 2 ],\n" +
+      "    \"featureIds\" : [ 1, -1, -1 ],\n" +
+      "    \"thresh\" : [ 0.5, \"-Infinity\", \"-Infinity\" ],\n" +
+      "    \"scores\" : [ 0.0, -1.25, 3.0E-5 ]\n" +
+      "  } ],\n" +
+      "  \"empty\" : [ ],\n" +
+      "  \"names\" : [ \"a\", \"NaN\" ],\n" +
+      "  \"nested\" : [ [ 1, 2 ], [ 0.5 ] ]\n" +
+      "}";
+
+  private static String prettyPrint(JsonNode node) throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.enable(SerializationFeature.INDENT_OUTPUT);
+    StringWriter writer = new StringWriter();
+    mapper.writeValue(writer, node);
+    return writer.toString();
+  }
+
+  private static byte[] toBytes(BinaryModel model) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    model.write(out);
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    String json = prettyPrint(new ObjectMapper().readTree(MODEL));
+    BinaryModel model = BinaryModel.fromJson(new StringReader(json), 2);
+    BinaryModel read = BinaryModel.read(ByteBuffer.wrap(toBytes(model)));
+    Assert.assertEquals("LambdaMart", read.getAlgorithm());
+    Assert.assertEquals(2, read.getNumFeatures());
+
+    StringWriter writer = new StringWriter();
+    read.writeJson(writer);
+    Assert.assertEquals(json, writer.toString());
+    Assert.assertEquals(json, prettyPrint(read.getModel()));
+  }
+
+  @Test
+  public void testMixedNumbers() throws Exception {
+    String json = "{\"values\" : [ 1, 2.5 ], \"seeds\" : [ 12345678901234567, 1 ], \"integral\" : [ 1.0, 2 ]}";
+    BinaryModel model = BinaryModel.fromJson(new StringReader(json), -1);
+    //Arrays which are not all ints or all doubles keep the type of each element.
+    Assert.assertEquals(new ObjectMapper().readTree(json), model.getModel());
+    Assert.assertEquals(12345678901234567L, model.getModel().get("seeds").get(0).longValue());
+    Assert.assertTrue(model.getModel().get("values").get(0).isInt());
+    Assert.assertNull(model.getRoot().get("values").asDoubles());
+    Assert.assertEquals("", model.getAlgorithm());
+  }
+
+  @Test
+  public void testRoot() throws Exception {
+    BinaryModel model = BinaryModel.read(ByteBuffer.wrap(toBytes(BinaryModel.fromJson(new StringReader(MODEL), 2))));
+    BinaryModel.Value tree = model.getRoot().get("treeModels").getElements().get(0);
+    IntBuffer leafIds = tree.get("leafIds").asInts();
+    Assert.assertEquals(3, leafIds.limit());
+    Assert.assertEquals(2, leafIds.get(2));
+    Assert.assertNull(tree.get("leafIds").asDoubles());
+    DoubleBuffer thresh = tree.get("thresh").asDoubles();
+    Assert.assertEquals(0.5, thresh.get(0), 0d);
+    Assert.assertEquals(Double.NEGATIVE_INFINITY, thresh.get(1), 0d);
+    Assert.assertEquals(3.0E-5, tree.get("scores").asDoubles().get(2), 0d);
+    Assert.assertEquals(0, model.getRoot().get("empty").asInts().limit());
+    Assert.assertNull(model.getRoot().get("names").asDoubles());
+    Assert.assertNull(model.getRoot().get("config").getElements());
+    Assert.assertNull(model.getRoot().get("weights"));
+    Assert.assertEquals(new ObjectMapper().readTree(MODEL).get("nested"), model.getRoot().get("nested").toJson());
+  }
+
+  @Test
+  public void testGetField() throws Exception {
+    BinaryModel model = BinaryModel.fromJson(new StringReader(MODEL), 2);
+    Assert.assertEquals(new ObjectMapper().readTree(MODEL).get("nested"), model.getField("nested"));
+    Assert.assertEquals("LambdaMart", model.getField("config").get("algorithm").asText());
+    Assert.assertNull(model.getField("weights"));
+  }
+
+  @Test
+  public void testFile() throws Exception {
+    File file = File.createTempFile("model", ".bin");
+    File json = File.createTempFile("model", ".json");
+    try {
+      BinaryModel.fromJson(new StringReader(MODEL), 2).write(file.getPath());
+      Files.write(json.toPath(), MODEL.getBytes("UTF-8"));
+      Assert.assertTrue(BinaryModel.isBinary(file.getPath()));
+      Assert.assertFalse(BinaryModel.isBinary(json.getPath()));
+      Assert.assertEquals(prettyPrint(new ObjectMapper().readTree(MODEL)), prettyPrint(BinaryModel.read(file.getPath()).getModel()));
+    }
+    finally {
+      file.delete();
+      json.delete();
+    }
+  }
+
+  @Test
+  public void testInvalid() throws Exception {
+    byte[] bytes = toBytes(BinaryModel.fromJson(new StringReader(MODEL), 2));
+    byte[] corrupted = bytes.clone();
+    corrupted[corrupted.length - 3] ^= 1;
+    byte[] newer = bytes.clone();
+    newer[4] = (byte) (BinaryModel.VERSION + 1);
+    byte[] older = bytes.clone();
+    older[4] = 0;
+    for (byte[] invalid : new byte[][]{corrupted, newer, older, Arrays.copyOf(bytes, 20), MODEL.getBytes("UTF-8")}) {
+      try {
+        BinaryModel.read(ByteBuffer.wrap(invalid));
+        Assert.fail();
+      }
+      catch (IOException expected) {
+      }
+    }
+  }
+
+  //The ranker loaded from the binary model scores as the one loaded from JSON.
+  private static void assertSameRanker(Ranker ranker, Config config, int numFeatures) throws IOException {
+    StringWriter json = new StringWriter();
+    ranker.writeModel(config, json);
+    Ranker fromJson = Ranker.RankerFactory.getFromModel(new StringReader(json.toString()));
+    BinaryModel model = BinaryModel.read(ByteBuffer.wrap(toBytes(BinaryModel.fromJson(new StringReader(json.toString()), ranker.getNumFeatures()))));
+    Ranker fromBinary = Ranker.RankerFactory.getFromModel(model);
+    Assert.assertEquals(fromJson.getClass(), fromBinary.getClass());
+    Assert.assertEquals(numFeatures, model.getNumFeatures());
+
+    Random random = new Random(0);
+    for (int i = 0; i < 20; i++) {
+      double[] features = new double[numFeatures];
+      for (int f = 0; f < numFeatures; f++)
+        features[f] = random.nextDouble();
+      Assert.assertEquals(fromJson.predict(features), fromBinary.predict(features), 0d);
+    }
+  }
+
+  @Test
+  public void testRankers() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    PRankTrainer.PRank prank = new PRankTrainer.PRank(4, 2);
+    prank.restoreParameters(new double[]{0.5, -1, 2, 0.25, 0.1, 0.9});
+    Config prankConfig = mapper.readValue("{\"algorithm\" : \"PRank\"}", Config.class);
+    assertSameRanker(prank, prankConfig, 4);
+
+    MLPTrainer.MLPConfig mlpConfig = mapper.readValue("{\"algorithm\" : \"RankNet\", \"params\" : {\"learningRate\" : 0.01, " +
+        "\"optimizer\" : \"sgd\", \"weightInit\" : \"xavier\", \"layers\" : [ {\"activator\" : \"Sigmoid\", \"num\" : 3} ], " +
+        "\"regularization\" : {\"regularizer\" : \"L2\", \"rate\" : 0.01}}}",
+        MLPTrainer.MLPConfig.class);
+    assertSameRanker(new RankNetMLP(5, mlpConfig), mlpConfig, 5);
+
+    String rankBoost = "{\n  \"config\" : {\n    \"algorithm\" : \"RankBoost\",\n    \"numIterations\" : 3\n  },\n" +
+        "  \"features\" : [ 0, 2, 1 ],\n  \"thresholds\" : [ 0.5, 0.25, 0.75 ],\n  \"weights\" : [ 0.3, 0.6, -0.2 ]\n}";
+    Ranker ranker = Ranker.RankerFactory.getFromModel(new StringReader(rankBoost));
+    Ranker fromBinary = Ranker.RankerFactory.getFromModel(BinaryModel.fromJson(new StringReader(rankBoost), 3));
+    double[] features = {0.6, 0.1, 0.3};
+    Assert.assertEquals(ranker.predict(features), fromBinary.predict(features), 0d);
+    Assert.assertEquals(3, ranker.getNumFeatures());
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 org.LTR4L
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ltr4l.tools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class IndexSorterTest {
+
+  @Test
+  public void testArgsortStable() throws Exception {
+    double[] keys = {2.0, 1.0, 2.0, 3.0, 1.0};
+    Assert.assertArrayEquals(new int[]{1, 4, 0, 2, 3}, IndexSorter.argsort(keys));
+    Assert.assertArrayEquals(new int[]{3, 0, 2, 1, 4}, IndexSorter.argsort(keys, true));
+  }
+
+  @Test
+  public void testSelectTop() throws Exception {
+    double[] keys = {2.0, 1.0, 2.0, 3.0, 1.0, 5.0, 0.0};
+    int[] top = IndexSorter.selectTop(keys, 3);
+    Assert.assertArrayEquals(new int[]{5, 3, 0, 1, 2, 4, 6}, top);  //Top 3 ordered, then the rest in index order.
+    Assert.assertArrayEquals(IndexSorter.argsort(keys, true), IndexSorter.selectTop(keys, 7));
+    Assert.assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6}, IndexSorter.selectTop(keys, 0));
+  }
+
+  @Test
+  public void testSelectTopRandom() throws Exception {
+    Random random = new Random(0);
+    for (int trial = 0; trial < 100; trial++) {
+      double[] keys = new double[1 + random.nextInt(200)];
+      for (int i = 0; i < keys.length; i++)
+        keys[i] = random.nextInt(10);  //Many ties.
+      int k = random.nextInt(keys.length + 1);
+      int[] expected = IndexSorter.argsort(keys, true);
+      int[] actual = IndexSorter.selectTop(keys, k);
+      Assert.assertArrayEquals(Arrays.copyOf(expected, k), Arrays.copyOf(actual, k));
+      int[] all = actual.clone();
+      Arrays.sort(all);
+      for (int i = 0; i < all.length; i++)
+        Assert.assertEquals(i, all[i]);
+    }
+  }
+}
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.After;
@@ -119,6 +120,64 @@ public class AbstractTrainerTest {
     Assert.assertEquals("report/franknet-report.csv", trainer.report.getReportFile());
   }
 
+  @Test
+  public void testEarlyStopping() throws Exception {
+    final String JSON = "{\n" +
+        "  \"algorithm\" : \"FRankNet\",\n" +
+        "  \"numIterations\" : 100,\n" +
+        "  \"earlyStopping\" : {\n" +
+        "    \"patience\" : 2,\n" +
+        "    \"minDelta\" : 0.01\n" +
+        "  }\n" +
+        "}\n";
+
+    trainer = new NullAbstractTrainer(new QuerySet(), new QuerySet(), new StringReader(JSON), null);
+    double[] scores = {0.5, 0.6, 0.605, 0.61};
+    for (int iter = 1; iter <= 3; iter++) {
+      trainer.updateBest(iter, scores[iter - 1]);
+      Assert.assertFalse(trainer.shouldStop(iter));
+    }
+    //Neither 0.605 nor 0.61 improves 0.6 by more than minDelta.
+    trainer.updateBest(4, scores[3]);
+    Assert.assertTrue(trainer.shouldStop(4));
+    Assert.assertEquals(2, trainer.getBestIteration());
+  }
+
+  @Test
+  public void testEarlyStoppingMetric() throws Exception {
+    final String JSON = "{\n" +
+        "  \"algorithm\" : \"FRankNet\",\n" +
+        "  \"numIterations\" : 100,\n" +
+        "  \"evaluation\" : {\n" +
+        "    \"evaluator\" : \"NDCG\",\n" +
+        "    \"params\" : {\n" +
+        "      \"k\" : 10\n" +
+        "    },\n" +
+        "    \"metrics\" : [\"map\"]\n" +
+        "  },\n" +
+        "  \"earlyStopping\" : {\n" +
+        "    \"metric\" : \"NDCG@5\"\n" +
+        "  }\n" +
+        "}\n";
+
+    trainer = new NullAbstractTrainer(new QuerySet(), new QuerySet(), new StringReader(JSON), null);
+    Assert.assertEquals(Arrays.asList("ndcg@10", "map", "ndcg@5"), trainer.metrics.getNames());
+    Assert.assertEquals(2, trainer.stopMetric);
+  }
+
+  @Test
+  public void testNoEarlyStopping() throws Exception {
+    final String JSON = "{\n" +
+        "  \"algorithm\" : \"FRankNet\",\n" +
+        "  \"numIterations\" : 100\n" +
+        "}\n";
+
+    trainer = new NullAbstractTrainer(new QuerySet(), new QuerySet(), new StringReader(JSON), null);
+    trainer.updateBest(1, 0.5);
+    Assert.assertFalse(trainer.shouldStop(100));
+    Assert.assertEquals(0, trainer.getBestIteration());
+  }
+
   private static class NullRanker extends Ranker<Config> {
 
     @Override
@@ -130,12 +189,17 @@ public class AbstractTrainerTest {
     public double predict(List<Double> features) {
       return 0;
     }
+
+    @Override
+    public double[] copyParameters() {
+      return new double[0];
+    }
   }
 
   private static class NullAbstractTrainer extends AbstractTrainer<NullRanker, Config> {
 
     NullAbstractTrainer(QuerySet training, QuerySet validation, Reader reader, Config override) {
-      super(training.getQueries(), validation.getQueries(), Config.getConfig(reader, Config.ConfigType.BASIC).overrideBy(override), null, null, null);
+      super(training.getQueries(), validation.getQueries(), Config.getConfig(reader, Config.ConfigType.BASIC).overrideBy(override), new NullRanker(), null, null);
     }
 
     @Override
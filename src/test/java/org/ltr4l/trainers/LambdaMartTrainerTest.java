@@ -3,14 +3,21 @@ package org.ltr4l.trainers;
 import org.junit.Assert;
 import org.junit.Test;
 import org.ltr4l.Ranker;
+import org.ltr4l.boosting.Ensemble;
+import org.ltr4l.boosting.ObliviousTree;
+import org.ltr4l.boosting.RegressionTree;
+import org.ltr4l.boosting.Split;
 import org.ltr4l.evaluation.RankEval;
 import org.ltr4l.query.Document;
 import org.ltr4l.query.Query;
 import org.ltr4l.query.QuerySet;
+import org.ltr4l.tools.BinaryModel;
 import org.ltr4l.tools.DataProcessor;
 import org.ltr4l.tools.RandomDataGenerator;
 
+import java.io.File;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -164,4 +171,125 @@ public class LambdaMartTrainerTest {
     }
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testExactSplitSearch() throws Exception {
+    RandomDataGenerator rdg = new RandomDataGenerator(2, 3);
+
+    QuerySet trainSet = rdg.getRandomQuerySet(2, 10, 2);
+    QuerySet validSet = rdg.getRandomQuerySet(2, 10, 2);
+    String config = JSON_CONFIG.replace("\"numLeaves\" : 3,", "\"numLeaves\" : 3,\n    \"splitSearch\" : \"exact\",");
+
+    AbstractTrainer trainer = AbstractTrainer.TrainerFactory.getTrainer(trainSet, validSet,
+        new StringReader(config), null);
+    trainer.trainAndValidate();
+
+    Ensemble ensemble = (Ensemble) trainer.getRanker();
+    Assert.assertFalse(ensemble.getTrees().isEmpty());
+    //Trained trees do not keep the training documents.
+    for (RegressionTree tree : ensemble.getTrees())
+      for (Split leaf : tree.getTerminalLeaves())
+        Assert.assertTrue(leaf.getScoredDocs().isEmpty());
+  }
+
+  @Test
+  public void testSubsampling() throws Exception {
+    RandomDataGenerator rdg = new RandomDataGenerator(2, 3);
+
+    QuerySet trainSet = rdg.getRandomQuerySet(2, 10, 2);
+    QuerySet validSet = rdg.getRandomQuerySet(2, 10, 2);
+    for (String splitSearch : new String[]{"histogram", "exact"}) {
+      String config = JSON_CONFIG.replace("\"numLeaves\" : 3,", "\"numLeaves\" : 3,\n    \"splitSearch\" : \"" + splitSearch + "\",\n" +
+          "    \"subsample\" : 0.8,\n    \"querySubsample\" : 0.9,\n    \"colsampleBySplit\" : 0.5,\n    \"seed\" : 11,");
+
+      Ensemble[] ensembles = new Ensemble[2];
+      for (int i = 0; i < ensembles.length; i++) {
+        AbstractTrainer trainer = AbstractTrainer.TrainerFactory.getTrainer(trainSet, validSet,
+            new StringReader(config), null);
+        trainer.trainAndValidate();
+        ensembles[i] = (Ensemble) trainer.getRanker();
+      }
+      //The same seed gives the same model.
+      Assert.assertFalse(ensembles[0].getTrees().isEmpty());
+      for (Query query : validSet.getQueries())
+        Assert.assertArrayEquals(ensembles[0].predictBatch(query), ensembles[1].predictBatch(query), 0d);
+    }
+  }
+
+  @Test
+  public void testObliviousTrees() throws Exception {
+    RandomDataGenerator rdg = new RandomDataGenerator(2, 3);
+
+    QuerySet trainSet = rdg.getRandomQuerySet(2, 10, 2);
+    QuerySet validSet = rdg.getRandomQuerySet(2, 10, 2);
+    String config = JSON_CONFIG.replace("\"numLeaves\" : 3,", "\"numLeaves\" : 3,\n    \"treeType\" : \"oblivious\",\n    \"depth\" : 2,");
+
+    AbstractTrainer trainer = AbstractTrainer.TrainerFactory.getTrainer(trainSet, validSet,
+        new StringReader(config), null);
+    trainer.trainAndValidate();
+
+    Ensemble ensemble = (Ensemble) trainer.getRanker();
+    Assert.assertFalse(ensemble.getTrees().isEmpty());
+    for (RegressionTree tree : ensemble.getTrees()) {
+      Assert.assertTrue(tree instanceof ObliviousTree);
+      Assert.assertEquals(2, ((ObliviousTree) tree).getDepth());
+    }
+    StringWriter writer = new StringWriter();
+    ensemble.writeModel((Ensemble.TreeConfig) trainer.config, writer);
+    Ranker scorer = Ranker.RankerFactory.getFromModel(new StringReader(writer.toString()));
+    for (Query query : validSet.getQueries())
+      Assert.assertArrayEquals(ensemble.predictBatch(query), scorer.predictBatch(query), 0d);
+  }
+
+  @Test
+  public void testBinaryModel() throws Exception {
+    RandomDataGenerator rdg = new RandomDataGenerator(2, 3);
+
+    QuerySet trainSet = rdg.getRandomQuerySet(2, 10, 2);
+    QuerySet validSet = rdg.getRandomQuerySet(2, 10, 2);
+    File file = File.createTempFile("lambdamart", ".bin");
+    try {
+      String config = JSON_CONFIG.replace("\"report\" : {", "\"model\" : {\n    \"format\" : \"binary\",\n" +
+          "    \"file\" : \"" + file.getPath() + "\"\n  },\n\n  \"report\" : {");
+      AbstractTrainer trainer = AbstractTrainer.TrainerFactory.getTrainer(trainSet, validSet,
+          new StringReader(config), null);
+      trainer.trainAndValidate();
+
+      Ensemble ensemble = (Ensemble) trainer.getRanker();
+      ensemble.writeModel((Ensemble.TreeConfig) trainer.config, file.getPath());
+      Assert.assertTrue(BinaryModel.isBinary(file.getPath()));
+      Ranker scorer = Ranker.RankerFactory.getFromModelFile(file.getPath(), false);
+      for (Query query : validSet.getQueries())
+        Assert.assertArrayEquals(ensemble.predictBatch(query), scorer.predictBatch(query), 0d);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testObliviousTreesNeedHistograms() throws Exception {
+    RandomDataGenerator rdg = new RandomDataGenerator(2, 3);
+    QuerySet trainSet = rdg.getRandomQuerySet(2, 10, 2);
+    String config = JSON_CONFIG.replace("\"numLeaves\" : 3,", "\"numLeaves\" : 3,\n    \"treeType\" : \"oblivious\",\n    \"splitSearch\" : \"exact\",");
+    AbstractTrainer.TrainerFactory.getTrainer(trainSet, trainSet, new StringReader(config), null);
+  }
+
+  @Test
+  public void testEarlyStopping() throws Exception {
+    RandomDataGenerator rdg = new RandomDataGenerator(2, 3);
+
+    QuerySet trainSet = rdg.getRandomQuerySet(2, 10, 2);
+    QuerySet validSet = rdg.getRandomQuerySet(2, 10, 2);
+    String config = JSON_CONFIG.replace("  \"report\" : {", "  \"earlyStopping\" : {\n    \"patience\" : 2\n  },\n  \"report\" : {");
+
+    AbstractTrainer trainer = AbstractTrainer.TrainerFactory.getTrainer(trainSet, validSet,
+        new StringReader(config), null);
+    trainer.trainAndValidate();
+
+    //The model is cut back to the trees of the best validated iteration.
+    Ensemble ensemble = (Ensemble) trainer.getRanker();
+    Assert.assertTrue(trainer.getBestIteration() > 0);
+    Assert.assertEquals(trainer.getBestIteration(), ensemble.getTrees().size());
+  }
+
+}
@@ -81,4 +81,19 @@ public class PRankTest {
     Assert.assertEquals(0.123, prankR.thresholds[1], 0.001);
     Assert.assertEquals(34.5, prankR.thresholds[2], 0.001);
   }
+
+  @Test
+  public void testCopyRestoreParameters() throws Exception {
+    PRankTrainer.PRank prank = new PRankTrainer.PRank(3, 2);
+    prank.weights = new double[]{1.1, 2.2, 3.3};
+    prank.thresholds = new double[]{-0.5, 0.5};
+    double[] parameters = prank.copyParameters();
+    Assert.assertArrayEquals(new double[]{1.1, 2.2, 3.3, -0.5, 0.5}, parameters, 0d);
+
+    prank.weights[0] = 9.9;
+    prank.thresholds[1] = 9.9;
+    prank.restoreParameters(parameters);
+    Assert.assertArrayEquals(new double[]{1.1, 2.2, 3.3}, prank.weights, 0d);
+    Assert.assertArrayEquals(new double[]{-0.5, 0.5}, prank.thresholds, 0d);
+  }
 }
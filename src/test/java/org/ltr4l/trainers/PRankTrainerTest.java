@@ -16,17 +16,28 @@
 
 package org.ltr4l.trainers;
 
+import java.io.File;
+import java.io.PrintWriter;
 import java.io.StringReader;
+import java.util.List;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.ltr4l.Ranker;
 import org.ltr4l.evaluation.RankEval;
+import org.ltr4l.query.Document;
+import org.ltr4l.query.Query;
 import org.ltr4l.query.QuerySet;
+import org.ltr4l.query.QueryStream;
 import org.ltr4l.tools.RandomDataGenerator;
 
 public class PRankTrainerTest {
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   private static final String JSON_CONFIG = "{\n" +
       "  \"algorithm\" : \"PRank\",\n" +
       "  \"numIterations\" : 100,\n" +
@@ -165,4 +176,46 @@ public class PRankTrainerTest {
       //Assert.assertTrue(eval2 > 0.8);
     }
   }
+
+  @Test
+  public void testTrainingStream() throws Exception {
+    RandomDataGenerator rdg = new RandomDataGenerator(1, 2);
+    QuerySet trainSet = rdg.getRandomQuerySet(20, 10, 2);
+    QuerySet validSet = rdg.getRandomQuerySet(2, 10, 2);
+    File file = folder.newFile();
+    try (PrintWriter pw = new PrintWriter(file)) {
+      for (Query query : trainSet.getQueries()) {
+        for (Document doc : query.getDocList()) {
+          pw.print(doc.getLabel() + " qid:" + query.getQueryId());
+          for (int i = 0; i < doc.getFeatureLength(); i++)
+            pw.print(" " + (i + 1) + ":" + doc.getFeature(i));
+          pw.println();
+        }
+      }
+    }
+    QueryStream stream = new QueryStream(file.getPath(), 5, 0L);
+    QuerySet sample = new QuerySet(stream.sample(5));
+
+    AbstractTrainer trainer = AbstractTrainer.TrainerFactory.getTrainer(sample, validSet,
+        new StringReader(JSON_CONFIG), null);
+    trainer.setTrainingStream(stream);
+    trainer.trainAndValidate();
+
+    //Every epoch reads all queries of the stream, in the order a stream with the same seed gives.
+    QueryStream expectedStream = new QueryStream(file.getPath(), 5, 0L);
+    List<Query> expectedSample = expectedStream.sample(5);
+    PRankTrainer.PRank expected = new PRankTrainer.PRank(expectedSample.get(0).getFeatureLength(), QuerySet.findMaxLabel(expectedSample));
+    int numQueries = 0;
+    for (int epoch = 0; epoch < 100; epoch++) {
+      for (Query query : expectedStream) {
+        numQueries++;
+        for (Document doc : query.getDocList())
+          expected.updateWeights(doc);
+      }
+    }
+    Assert.assertEquals(20 * 100, numQueries);
+    PRankTrainer.PRank prank = (PRankTrainer.PRank) trainer.getRanker();
+    Assert.assertArrayEquals(expected.getWeights(), prank.getWeights(), 0d);
+    Assert.assertArrayEquals(expected.getThresholds(), prank.getThresholds(), 0d);
+  }
 }